@@ -0,0 +1,233 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Generates the methods implementing an accessor interface on the instrumented class, so that an interceptor casts
+ * the target to the interface and reads a field, writes it or calls a method directly instead of reflectively.
+ * <p>
+ * An accessor interface declares a single method. Primitive types must match the member exactly, reference types
+ * are cast, so the interface may declare {@code Object} for a type the plugin cannot see. A field written through a
+ * setter loses its {@code final} modifier, as the JVM rejects writes to a final field outside of its initializer.
+ * The interface is injected into the class loader of the instrumented class like an interceptor, so the classes of
+ * the bootstrap class loader can not have accessors.
+ */
+final class ASMAccessors {
+
+    private static final String OBJECT_INTERNAL_NAME = "java/lang/Object";
+
+    private ASMAccessors() {
+    }
+
+    // the instrumented class links against the interface
+    static void injectAccessorType(InstrumentContext pluginContext, ClassLoader classLoader, String className,
+            Class<?> accessorType) throws InstrumentException {
+        Objects.requireNonNull(accessorType, "accessorType");
+        if (classLoader == null) {
+            throw new InstrumentException(String.format(
+                    "accessor can not be added to a class of the bootstrap class loader, class=%s, accessor=%s",
+                    className, accessorType.getName()));
+        }
+        try {
+            pluginContext.injectClass(classLoader, accessorType.getName());
+        } catch (Exception ex) {
+            throw new InstrumentException(accessorType.getName() + " not found Caused by:" + ex.getMessage(), ex);
+        }
+    }
+
+    static MethodNode newGetter(ASMClassNodeAdapter classNode, Class<?> getterType, String fieldName)
+            throws InstrumentException {
+        final Method getter = getAccessorMethod(classNode, getterType);
+        if (getter.getParameterTypes().length != 0 || getter.getReturnType() == void.class) {
+            throw new InstrumentException("getter must take no argument and return a value: " + getter);
+        }
+        final FieldNode fieldNode = getDeclaredField(classNode, fieldName);
+        final Type fieldType = Type.getType(fieldNode.desc);
+        final Type returnType = Type.getReturnType(getter);
+        checkConvertible(fieldType, returnType, getter);
+
+        final MethodNode methodNode = newMethodNode(getter);
+        final InsnList instructions = methodNode.instructions;
+        if ((fieldNode.access & Opcodes.ACC_STATIC) != 0) {
+            instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, classNode.getInternalName(), fieldNode.name,
+                    fieldNode.desc));
+        } else {
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+            instructions.add(new FieldInsnNode(Opcodes.GETFIELD, classNode.getInternalName(), fieldNode.name,
+                    fieldNode.desc));
+        }
+        checkCast(instructions, fieldType, returnType);
+        instructions.add(new InsnNode(returnType.getOpcode(Opcodes.IRETURN)));
+        return methodNode;
+    }
+
+    static MethodNode newSetter(ASMClassNodeAdapter classNode, Class<?> setterType, String fieldName)
+            throws InstrumentException {
+        final Method setter = getAccessorMethod(classNode, setterType);
+        if (setter.getParameterTypes().length != 1 || setter.getReturnType() != void.class) {
+            throw new InstrumentException("setter must take one argument and return void: " + setter);
+        }
+        final FieldNode fieldNode = getDeclaredField(classNode, fieldName);
+        final Type fieldType = Type.getType(fieldNode.desc);
+        final Type parameterType = Type.getArgumentTypes(setter)[0];
+        checkConvertible(parameterType, fieldType, setter);
+        fieldNode.access &= ~Opcodes.ACC_FINAL;
+
+        final MethodNode methodNode = newMethodNode(setter);
+        final InsnList instructions = methodNode.instructions;
+        final boolean isStatic = (fieldNode.access & Opcodes.ACC_STATIC) != 0;
+        if (!isStatic) {
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        }
+        instructions.add(new VarInsnNode(parameterType.getOpcode(Opcodes.ILOAD), 1));
+        checkCast(instructions, parameterType, fieldType);
+        instructions.add(new FieldInsnNode(isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD,
+                classNode.getInternalName(), fieldNode.name, fieldNode.desc));
+        instructions.add(new InsnNode(Opcodes.RETURN));
+        return methodNode;
+    }
+
+    static MethodNode newInvoker(ASMClassNodeAdapter classNode, Class<?> invokerType, String methodName,
+            String... parameterTypes) throws InstrumentException {
+        Objects.requireNonNull(methodName, "methodName");
+        final Method invoker = getAccessorMethod(classNode, invokerType);
+        final MethodNode targetNode = classNode
+                .findDeclaredMethodNode(methodName, JavaAssistUtils.javaTypeToJvmSignature(parameterTypes));
+        if (targetNode == null || methodName.equals("<init>") || methodName.equals("<clinit>")) {
+            throw new InstrumentException(String.format("method %s%s not declared by %s", methodName,
+                    JavaAssistUtils.javaTypeToJvmSignature(parameterTypes), classNode.getName()));
+        }
+        final Type[] invokerArgumentTypes = Type.getArgumentTypes(invoker);
+        final Type[] targetArgumentTypes = Type.getArgumentTypes(targetNode.desc);
+        if (invokerArgumentTypes.length != targetArgumentTypes.length) {
+            throw new InstrumentException("invoker and method arguments differ: " + invoker);
+        }
+        final Type invokerReturnType = Type.getReturnType(invoker);
+        final Type targetReturnType = Type.getReturnType(targetNode.desc);
+        if (invokerReturnType.getSort() != Type.VOID) {
+            checkConvertible(targetReturnType, invokerReturnType, invoker);
+        }
+
+        final MethodNode methodNode = newMethodNode(invoker);
+        final InsnList instructions = methodNode.instructions;
+        final int opcode;
+        if ((targetNode.access & Opcodes.ACC_STATIC) != 0) {
+            opcode = Opcodes.INVOKESTATIC;
+        } else {
+            opcode = (targetNode.access & Opcodes.ACC_PRIVATE) != 0 ? Opcodes.INVOKESPECIAL : Opcodes.INVOKEVIRTUAL;
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        }
+        int index = 1;
+        for (int i = 0; i < invokerArgumentTypes.length; i++) {
+            checkConvertible(invokerArgumentTypes[i], targetArgumentTypes[i], invoker);
+            instructions.add(new VarInsnNode(invokerArgumentTypes[i].getOpcode(Opcodes.ILOAD), index));
+            checkCast(instructions, invokerArgumentTypes[i], targetArgumentTypes[i]);
+            index += invokerArgumentTypes[i].getSize();
+        }
+        instructions.add(new MethodInsnNode(opcode, classNode.getInternalName(), targetNode.name, targetNode.desc,
+                false));
+        if (invokerReturnType.getSort() == Type.VOID) {
+            if (targetReturnType.getSort() != Type.VOID) {
+                instructions.add(new InsnNode(targetReturnType.getSize() == 2 ? Opcodes.POP2 : Opcodes.POP));
+            }
+        } else {
+            checkCast(instructions, targetReturnType, invokerReturnType);
+        }
+        instructions.add(new InsnNode(invokerReturnType.getOpcode(Opcodes.IRETURN)));
+        return methodNode;
+    }
+
+    private static Method getAccessorMethod(ASMClassNodeAdapter classNode, Class<?> accessorType)
+            throws InstrumentException {
+        Objects.requireNonNull(accessorType, "accessorType");
+        if (classNode.isInterface()) {
+            throw new InstrumentException("accessors cannot be added to an interface: " + classNode.getName());
+        }
+        if (!accessorType.isInterface()) {
+            throw new InstrumentException("accessor type must be an interface: " + accessorType.getName());
+        }
+        final List<Method> methods = new ArrayList<>(1);
+        for (Method method : accessorType.getDeclaredMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        if (methods.size() != 1) {
+            throw new InstrumentException("accessor type must declare a single method: " + accessorType.getName());
+        }
+        final Method method = methods.get(0);
+        final String parameterDesc = Type.getMethodDescriptor(method);
+        if (classNode.hasDeclaredMethod(method.getName(), parameterDesc.substring(0, parameterDesc.indexOf(')') + 1))) {
+            throw new InstrumentException(String.format("%s already declares %s", classNode.getName(), method));
+        }
+        return method;
+    }
+
+    private static FieldNode getDeclaredField(ASMClassNodeAdapter classNode, String fieldName)
+            throws InstrumentException {
+        Objects.requireNonNull(fieldName, "fieldName");
+        final FieldNode fieldNode = classNode.findDeclaredFieldNode(fieldName);
+        if (fieldNode == null) {
+            throw new InstrumentException(String.format("field %s not declared by %s", fieldName,
+                    classNode.getName()));
+        }
+        return fieldNode;
+    }
+
+    private static MethodNode newMethodNode(Method accessor) {
+        return new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC, accessor.getName(),
+                Type.getMethodDescriptor(accessor), null, null);
+    }
+
+    private static void checkConvertible(Type from, Type to, Method accessor) throws InstrumentException {
+        if (from.equals(to) || (isReference(from) && isReference(to))) {
+            return;
+        }
+        throw new InstrumentException(String.format("%s cannot be converted to %s by %s", from.getClassName(),
+                to.getClassName(), accessor));
+    }
+
+    private static boolean isReference(Type type) {
+        return type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY;
+    }
+
+    private static void checkCast(InsnList instructions, Type from, Type to) {
+        if (from.equals(to) || !isReference(to) || OBJECT_INTERNAL_NAME.equals(to.getInternalName())) {
+            return;
+        }
+        instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, to.getInternalName()));
+    }
+}
@@ -17,7 +17,9 @@
 
 package cn.polarismesh.agent.core.asm.instrument;
 
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
 import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
 import cn.polarismesh.agent.core.common.utils.JvmUtils;
 import cn.polarismesh.agent.core.common.utils.JvmVersion;
@@ -27,11 +29,15 @@ import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
 import cn.polarismesh.agent.core.extension.instrument.MethodFilter;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
-public class ASMClass implements InstrumentClass {
+public class ASMClass implements SharableInstrumentClass {
 
     private static final String FIELD_PREFIX = "_$PINPOINT$_";
 
@@ -40,6 +46,10 @@ public class ASMClass implements InstrumentClass {
     private final ASMClassNodeAdapter classNode;
 
     private final InterceptorDefinitionFactory factory;
+    // this, or the class a view is bound to another context for, it holds the state of the transform
+    private final ASMClass shared;
+    // methods with interceptors added, woven by toBytecode()
+    private final Map<MethodNode, ASMMethodNodeAdapter> interceptedMethods;
     private boolean modified = false;
     private String name;
 
@@ -53,6 +63,24 @@ public class ASMClass implements InstrumentClass {
         this.pluginContext = pluginContext;
         this.classNode = Objects.requireNonNull(classNode, "classNode");
         this.factory = factory;
+        this.shared = this;
+        this.interceptedMethods = new IdentityHashMap<>();
+    }
+
+    private ASMClass(InstrumentContext pluginContext, ASMClass shared) {
+        this.pluginContext = Objects.requireNonNull(pluginContext, "pluginContext");
+        this.classNode = shared.classNode;
+        this.factory = shared.factory;
+        this.shared = shared;
+        this.interceptedMethods = shared.interceptedMethods;
+    }
+
+    @Override
+    public InstrumentClass bind(InstrumentContext instrumentContext) {
+        if (instrumentContext == this.pluginContext) {
+            return this;
+        }
+        return new ASMClass(instrumentContext, this.shared);
     }
 
     public ClassLoader getClassLoader() {
@@ -190,6 +218,34 @@ public class ASMClass implements InstrumentClass {
         return hasField(name, null);
     }
 
+    @Override
+    public void addGetter(Class<?> getterType, String fieldName) throws InstrumentException {
+        injectAccessorType(getterType);
+        addAccessor(getterType, ASMAccessors.newGetter(this.classNode, getterType, fieldName));
+    }
+
+    @Override
+    public void addSetter(Class<?> setterType, String fieldName) throws InstrumentException {
+        injectAccessorType(setterType);
+        addAccessor(setterType, ASMAccessors.newSetter(this.classNode, setterType, fieldName));
+    }
+
+    @Override
+    public void addInvoker(Class<?> invokerType, String methodName, String... parameterTypes)
+            throws InstrumentException {
+        injectAccessorType(invokerType);
+        addAccessor(invokerType, ASMAccessors.newInvoker(this.classNode, invokerType, methodName, parameterTypes));
+    }
+
+    private void injectAccessorType(Class<?> accessorType) throws InstrumentException {
+        ASMAccessors.injectAccessorType(this.pluginContext, getClassLoader(), getName(), accessorType);
+    }
+
+    private void addAccessor(Class<?> accessorType, MethodNode methodNode) {
+        this.classNode.addInterface(Type.getInternalName(accessorType));
+        this.classNode.addMethod(methodNode);
+    }
+
     @Override
     public List<InstrumentClass> getNestedClasses(ClassFilter filter) {
         Objects.requireNonNull(filter, "filter");
@@ -206,15 +262,46 @@ public class ASMClass implements InstrumentClass {
     }
 
     public boolean isModified() {
-        return modified;
+        return this.shared.modified;
     }
 
     void setModified(boolean modified) {
-        this.modified = modified;
+        this.shared.modified = modified;
+    }
+
+    int getMajorVersion() {
+        return this.classNode.getMajorVersion();
+    }
+
+    ASMMethodNodeAdapter loadCode(ASMMethodNodeAdapter methodNode) {
+        return this.classNode.loadCode(methodNode);
+    }
+
+    void setModified(ASMMethodNodeAdapter methodNode) {
+        this.classNode.setModified(methodNode);
+        this.shared.modified = true;
+    }
+
+    /**
+     * Adds the interceptor to the chain of the method, every interceptor of a method is woven in a single block.
+     */
+    void addInterceptor(ASMMethodNodeAdapter methodNode, int interceptorId,
+            InterceptorDefinition interceptorDefinition, boolean before, boolean after) {
+        ASMMethodNodeAdapter interceptedMethod = this.interceptedMethods.get(methodNode.getMethodNode());
+        if (interceptedMethod == null) {
+            interceptedMethod = methodNode;
+            this.interceptedMethods.put(methodNode.getMethodNode(), methodNode);
+        }
+        interceptedMethod.addInterceptor(interceptorId, interceptorDefinition, before, after);
+        setModified(interceptedMethod);
     }
 
     @Override
     public byte[] toBytecode() {
+        for (ASMMethodNodeAdapter methodNode : this.interceptedMethods.values()) {
+            methodNode.weaveInterceptors();
+        }
+        this.interceptedMethods.clear();
         return classNode.toByteArray();
     }
 }
\ No newline at end of file
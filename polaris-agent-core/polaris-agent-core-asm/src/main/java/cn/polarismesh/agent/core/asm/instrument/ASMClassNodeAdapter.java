@@ -30,10 +30,17 @@ import java.io.InputStream;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
@@ -63,24 +70,17 @@ public class ASMClassNodeAdapter {
             return null;
         }
         final ClassReader classReader = new ClassReader(bytes);
-        final ClassNode classNode = new ClassNode();
-
-        final int parsingOptions = getParsingOption(skipCode);
-        classReader.accept(classNode, parsingOptions);
-
-        return new ASMClassNodeAdapter(pluginClassInputStreamProvider, classLoader, protectionDomain, classNode,
+        return new ASMClassNodeAdapter(pluginClassInputStreamProvider, classLoader, protectionDomain, classReader,
                 skipCode);
     }
 
-    private static int getParsingOption(boolean skipCode) {
-        if (skipCode) {
-            return ClassReader.SKIP_CODE;
-        } else {
-            return 0;
-        }
+    private static ClassNode parseHeaders(ClassReader classReader) {
+        final ClassNode classNode = new ClassNode();
+        classReader.accept(classNode, ClassReader.SKIP_CODE);
+        return classNode;
     }
 
-    private static byte[] readStream(String classPath, ClassInputStreamProvider pluginClassInputStreamProvider,
+    static byte[] readStream(String classPath, ClassInputStreamProvider pluginClassInputStreamProvider,
             ProtectionDomain protectionDomain, ClassLoader classLoader) {
 
         final Scanner scanner = ClassScannerFactory.newScanner(protectionDomain);
@@ -117,6 +117,15 @@ public class ASMClassNodeAdapter {
     private final ProtectionDomain protectionDomain;
     private final ClassNode classNode;
     private final boolean skipCode;
+    // the reader the class node was parsed from, null if unknown
+    private final ClassReader classReader;
+    private final int originalFieldCount;
+    private final int originalMethodCount;
+    // one flag per method of the class file if the method bodies are parsed on demand, null otherwise
+    private final boolean[] parsedMethods;
+    // method name and parameter descriptor to the index of the first method declaring them
+    private Map<String, Integer> methodIndex;
+    private Set<MethodNode> modifiedMethods;
 
     public ASMClassNodeAdapter(final ClassInputStreamProvider pluginInputStreamProvider, final ClassLoader classLoader,
             ProtectionDomain protectionDomain, final ClassNode classNode) {
@@ -125,11 +134,32 @@ public class ASMClassNodeAdapter {
 
     public ASMClassNodeAdapter(final ClassInputStreamProvider pluginInputStreamProvider, final ClassLoader classLoader,
             ProtectionDomain protectionDomain, final ClassNode classNode, final boolean skipCode) {
+        this(pluginInputStreamProvider, classLoader, protectionDomain, null, classNode, skipCode, false);
+    }
+
+    /**
+     * Parses only the class headers, the body of a method is parsed once {@link #loadCode(ASMMethodNodeAdapter)}
+     * asks for it. {@link #toByteArray()} copies the constant pool and the unmodified methods from
+     * {@code classReader} as is.
+     */
+    public ASMClassNodeAdapter(final ClassInputStreamProvider pluginInputStreamProvider, final ClassLoader classLoader,
+            ProtectionDomain protectionDomain, final ClassReader classReader, final boolean skipCode) {
+        this(pluginInputStreamProvider, classLoader, protectionDomain, classReader, parseHeaders(classReader),
+                skipCode, !skipCode);
+    }
+
+    private ASMClassNodeAdapter(final ClassInputStreamProvider pluginInputStreamProvider,
+            final ClassLoader classLoader, ProtectionDomain protectionDomain, final ClassReader classReader,
+            final ClassNode classNode, final boolean skipCode, final boolean parseOnDemand) {
         this.pluginInputStreamProvider = pluginInputStreamProvider;
         this.classLoader = classLoader;
         this.protectionDomain = protectionDomain;
+        this.classReader = classReader;
         this.classNode = classNode;
         this.skipCode = skipCode;
+        this.originalFieldCount = classNode.fields == null ? 0 : classNode.fields.size();
+        this.originalMethodCount = classNode.methods == null ? 0 : classNode.methods.size();
+        this.parsedMethods = parseOnDemand ? new boolean[this.originalMethodCount] : null;
     }
 
     public String getInternalName() {
@@ -185,7 +215,11 @@ public class ASMClassNodeAdapter {
             throw new IllegalStateException("not supported operation, skipCode option is true.");
         }
 
-        return findDeclaredMethod(methodName, desc);
+        final MethodNode methodNode = findDeclaredMethodNode(methodName, desc);
+        if (methodNode == null) {
+            return null;
+        }
+        return new ASMMethodNodeAdapter(getInternalName(), methodNode);
     }
 
     public List<ASMMethodNodeAdapter> getDeclaredConstructors() {
@@ -197,28 +231,69 @@ public class ASMClassNodeAdapter {
     }
 
     public boolean hasDeclaredMethod(final String methodName, final String desc) {
-        return findDeclaredMethod(methodName, desc) != null;
+        return findDeclaredMethodNode(methodName, desc) != null;
+    }
+
+    /**
+     * The body of the returned method is not parsed yet if the class is parsed on demand.
+     *
+     * @param desc the descriptor or its prefix, null for any
+     */
+    MethodNode findDeclaredMethodNode(final String methodName, final String desc) {
+        final int index = findDeclaredMethodIndex(methodName, desc);
+        if (index == -1) {
+            return null;
+        }
+        return this.classNode.methods.get(index);
     }
 
-    private ASMMethodNodeAdapter findDeclaredMethod(final String methodName, final String desc) {
+    private int findDeclaredMethodIndex(final String methodName, final String desc) {
         Objects.requireNonNull(methodName, "methodName");
 
         final List<MethodNode> declaredMethods = classNode.methods;
         if (CollectionUtils.isEmpty(declaredMethods)) {
-            return null;
+            return -1;
         }
 
-        for (MethodNode methodNode : declaredMethods) {
+        if (desc != null && desc.endsWith(")")) {
+            // parameter descriptor.
+            final Integer index = getMethodIndex().get(methodName.concat(desc));
+            return index == null ? -1 : index;
+        }
+
+        for (int i = 0; i < declaredMethods.size(); i++) {
+            final MethodNode methodNode = declaredMethods.get(i);
             if (!StringMatchUtils.equals(methodNode.name, methodName)) {
                 continue;
             }
 
             if (desc == null || StringMatchUtils.startWith(methodNode.desc, desc)) {
-                return new ASMMethodNodeAdapter(getInternalName(), methodNode);
+                return i;
             }
         }
 
-        return null;
+        return -1;
+    }
+
+    private Map<String, Integer> getMethodIndex() {
+        if (this.methodIndex == null) {
+            final List<MethodNode> methods = this.classNode.methods;
+            final Map<String, Integer> methodIndex = new HashMap<>(methods.size() * 2);
+            for (int i = 0; i < methods.size(); i++) {
+                addMethodIndex(methodIndex, methods.get(i), i);
+            }
+            this.methodIndex = methodIndex;
+        }
+        return this.methodIndex;
+    }
+
+    private static void addMethodIndex(Map<String, Integer> methodIndex, MethodNode methodNode, int index) {
+        final String parameterDesc = methodNode.desc.substring(0, methodNode.desc.indexOf(')') + 1);
+        final String key = methodNode.name.concat(parameterDesc);
+        if (!methodIndex.containsKey(key)) {
+            // first declared wins, as a linear search would.
+            methodIndex.put(key, index);
+        }
     }
 
     private List<ASMMethodNodeAdapter> findDeclaredMethod(final String methodName) {
@@ -240,6 +315,56 @@ public class ASMClassNodeAdapter {
         return methodNodes;
     }
 
+    /**
+     * Returns the method with its body parsed, the given adapter itself if it already is. The adapter may refer to
+     * the header only node the parsed one replaced, the method is looked up by name and descriptor.
+     */
+    public ASMMethodNodeAdapter loadCode(final ASMMethodNodeAdapter methodNode) {
+        Objects.requireNonNull(methodNode, "methodNode");
+        if (this.parsedMethods == null) {
+            return methodNode;
+        }
+        final MethodNode node = methodNode.getMethodNode();
+        final List<MethodNode> methods = this.classNode.methods;
+        for (int i = 0; i < this.originalMethodCount; i++) {
+            final MethodNode original = methods.get(i);
+            if (original != node && !(original.name.equals(node.name) && original.desc.equals(node.desc))) {
+                continue;
+            }
+            if (!this.parsedMethods[i]) {
+                return new ASMMethodNodeAdapter(getInternalName(), parseCode(i));
+            }
+            if (original == node) {
+                return methodNode;
+            }
+            return new ASMMethodNodeAdapter(getInternalName(), original);
+        }
+        // added to the class node.
+        return methodNode;
+    }
+
+    private MethodNode parseCode(final int index) {
+        final MethodNode[] parsed = new MethodNode[1];
+        this.classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+            private int methodIndex = 0;
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                    String[] exceptions) {
+                if (methodIndex++ != index) {
+                    // the body is skipped.
+                    return null;
+                }
+                parsed[0] = new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions);
+                return parsed[0];
+            }
+        }, 0);
+        // the access of the header only node may have been changed.
+        parsed[0].access = this.classNode.methods.get(index).access;
+        this.classNode.methods.set(index, parsed[0]);
+        this.parsedMethods[index] = true;
+        return parsed[0];
+    }
 
     public List<ASMMethodNodeAdapter> getDeclaredMethods() {
         if (this.skipCode) {
@@ -345,6 +470,40 @@ public class ASMClassNodeAdapter {
         return null;
     }
 
+    // declared by this class only.
+    FieldNode findDeclaredFieldNode(final String fieldName) {
+        if (this.classNode.fields == null) {
+            return null;
+        }
+        for (FieldNode fieldNode : this.classNode.fields) {
+            if (fieldNode.name.equals(fieldName)) {
+                return fieldNode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param interfaceName internal name of the interface
+     * @return false if the class already implements it directly
+     */
+    public boolean addInterface(final String interfaceName) {
+        Objects.requireNonNull(interfaceName, "interfaceName");
+        if (this.classNode.interfaces == null) {
+            this.classNode.interfaces = new ArrayList<>();
+        }
+        if (this.classNode.interfaces.contains(interfaceName)) {
+            return false;
+        }
+        this.classNode.interfaces.add(interfaceName);
+        return true;
+    }
+
+    void addMethod(final MethodNode methodNode) {
+        Objects.requireNonNull(methodNode, "methodNode");
+        addMethodNode0(methodNode);
+    }
+
     public ASMFieldNodeAdapter addField(final String fieldName, final String fieldDesc) {
         Objects.requireNonNull(fieldName, "fieldName");
         Objects.requireNonNull(fieldDesc, "fieldDesc");
@@ -393,6 +552,17 @@ public class ASMClassNodeAdapter {
             this.classNode.methods = new ArrayList<>();
         }
         this.classNode.methods.add(methodNode);
+        if (this.methodIndex != null) {
+            addMethodIndex(this.methodIndex, methodNode, this.classNode.methods.size() - 1);
+        }
+    }
+
+    void setModified(final ASMMethodNodeAdapter methodNode) {
+        Objects.requireNonNull(methodNode, "methodNode");
+        if (this.modifiedMethods == null) {
+            this.modifiedMethods = Collections.newSetFromMap(new IdentityHashMap<MethodNode, Boolean>());
+        }
+        this.modifiedMethods.add(methodNode.getMethodNode());
     }
 
     private InsnList getInsnList(MethodNode methodNode) {
@@ -437,8 +607,79 @@ public class ASMClassNodeAdapter {
             flags = ClassWriter.COMPUTE_MAXS;
         }
 
-        final ClassWriter classWriter = new ASMClassWriter(this.pluginInputStreamProvider, flags, this.classLoader);
-        this.classNode.accept(classWriter);
+        if (this.classReader == null || this.skipCode) {
+            final ClassWriter classWriter = new ASMClassWriter(this.pluginInputStreamProvider, flags,
+                    this.classLoader);
+            this.classNode.accept(classWriter);
+            return classWriter.toByteArray();
+        }
+
+        // copy the constant pool and the unmodified methods from the original class file.
+        final ClassWriter classWriter = new ASMClassWriter(this.classReader, this.pluginInputStreamProvider, flags,
+                this.classLoader);
+        this.classReader.accept(new CopyThroughClassVisitor(classWriter), 0);
         return classWriter.toByteArray();
     }
+
+    /**
+     * Streams the original class file, re-emitting from the class node only the modified methods and the members
+     * added to it. The methods are visited in class file order, the same order as {@code classNode.methods}.
+     */
+    private class CopyThroughClassVisitor extends ClassVisitor {
+
+        private int methodIndex = 0;
+
+        private int fieldIndex = 0;
+
+        CopyThroughClassVisitor(ClassVisitor classVisitor) {
+            super(Opcodes.ASM9, classVisitor);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                String[] interfaces) {
+            // with the interfaces added to the class node.
+            final String[] classInterfaces = classNode.interfaces == null ? interfaces
+                    : classNode.interfaces.toArray(new String[0]);
+            super.visit(version, access, name, signature, superName, classInterfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+                Object value) {
+            if (fieldIndex < originalFieldCount) {
+                // the access of the field may have been changed on the class node.
+                access = classNode.fields.get(fieldIndex++).access;
+            }
+            return super.visitField(access, name, descriptor, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                String[] exceptions) {
+            if (methodIndex < originalMethodCount) {
+                final MethodNode methodNode = classNode.methods.get(methodIndex++);
+                if (modifiedMethods != null && modifiedMethods.contains(methodNode)) {
+                    methodNode.accept(this.cv);
+                    return null;
+                }
+                // the node may be header only, the body is copied through with the access changed on it.
+                access = methodNode.access;
+            }
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            final List<FieldNode> fields = classNode.fields;
+            for (int i = originalFieldCount; fields != null && i < fields.size(); i++) {
+                fields.get(i).accept(this.cv);
+            }
+            final List<MethodNode> methods = classNode.methods;
+            for (int i = originalMethodCount; methods != null && i < methods.size(); i++) {
+                methods.get(i).accept(this.cv);
+            }
+            super.visitEnd();
+        }
+    }
 }
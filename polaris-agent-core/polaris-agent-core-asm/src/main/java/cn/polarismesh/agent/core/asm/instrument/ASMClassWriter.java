@@ -17,16 +17,13 @@
 
 package cn.polarismesh.agent.core.asm.instrument;
 
+import cn.polarismesh.agent.core.asm.instrument.TypeHierarchyCache.TypeInfo;
 import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
-import cn.polarismesh.agent.core.common.utils.IOUtils;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Opcodes;
 
 public class ASMClassWriter extends ClassWriter {
 
@@ -37,6 +34,7 @@ public class ASMClassWriter extends ClassWriter {
 
     private final ClassInputStreamProvider pluginInputStreamProvider;
     private final ClassLoader classLoader;
+    private final TypeHierarchyCache typeHierarchyCache = TypeHierarchyCache.getInstance();
 
     public ASMClassWriter(final ClassInputStreamProvider pluginInputStreamProvider, final int flags,
             final ClassLoader classLoader) {
@@ -45,6 +43,13 @@ public class ASMClassWriter extends ClassWriter {
         this.classLoader = classLoader;
     }
 
+    public ASMClassWriter(final ClassReader classReader, final ClassInputStreamProvider pluginInputStreamProvider,
+            final int flags, final ClassLoader classLoader) {
+        super(classReader, flags);
+        this.pluginInputStreamProvider = pluginInputStreamProvider;
+        this.classLoader = classLoader;
+    }
+
     @Override
     protected String getCommonSuperClass(String classInternalName1, String classInternalName2) {
         return get(classInternalName1, classInternalName2);
@@ -63,69 +68,65 @@ public class ASMClassWriter extends ClassWriter {
             return classInternalName1;
         }
 
-        final ClassReader classReader1 = getClassReader(classInternalName1);
-        if (classReader1 == null) {
+        final TypeInfo typeInfo1 = getTypeInfo(classInternalName1);
+        if (typeInfo1 == null) {
             logger.warn(String.format("Skip getCommonSuperClass(). not found class %s", classInternalName1));
             return OBJECT_CLASS_INTERNAL_NAME;
         }
 
-        final ClassReader classReader2 = getClassReader(classInternalName2);
-        if (classReader2 == null) {
+        final TypeInfo typeInfo2 = getTypeInfo(classInternalName2);
+        if (typeInfo2 == null) {
             logger.warn(String.format("Skip getCommonSuperClass(). not found class %s", classInternalName2));
             return OBJECT_CLASS_INTERNAL_NAME;
         }
 
         // interface.
-        if (isInterface(classReader1)) {
+        if (typeInfo1.isInterface()) {
             // <interface, class> or <interface, interface>
-            return getCommonInterface(classReader1, classReader2);
+            return getCommonInterface(typeInfo1, typeInfo2);
         }
 
         // interface.
-        if (isInterface(classReader2)) {
+        if (typeInfo2.isInterface()) {
             // <class, interface>
-            return getCommonInterface(classReader2, classReader1);
+            return getCommonInterface(typeInfo2, typeInfo1);
         }
 
         // class.
         // <class, class>
-        return getCommonClass(classReader1, classReader2);
-    }
-
-    private boolean isInterface(final ClassReader classReader) {
-        return (classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        return getCommonClass(typeInfo1, typeInfo2);
     }
 
     // <interface, interface> or <interface, class>
-    private String getCommonInterface(final ClassReader classReader1, final ClassReader classReader2) {
+    private String getCommonInterface(final TypeInfo typeInfo1, final TypeInfo typeInfo2) {
         final Set<String> interfaceHierarchy = new HashSet<>();
-        traversalInterfaceHierarchy(interfaceHierarchy, classReader1);
+        traversalInterfaceHierarchy(interfaceHierarchy, typeInfo1);
 
-        if (isInterface(classReader2)) {
-            if (interfaceHierarchy.contains(classReader2.getClassName())) {
-                return classReader2.getClassName();
+        if (typeInfo2.isInterface()) {
+            if (interfaceHierarchy.contains(typeInfo2.getClassName())) {
+                return typeInfo2.getClassName();
             }
         }
 
-        final String interfaceInternalName = getImplementedInterface(interfaceHierarchy, classReader2);
+        final String interfaceInternalName = getImplementedInterface(interfaceHierarchy, typeInfo2);
         if (interfaceInternalName != null) {
             return interfaceInternalName;
         }
         return OBJECT_CLASS_INTERNAL_NAME;
     }
 
-    private void traversalInterfaceHierarchy(final Set<String> interfaceHierarchy, final ClassReader classReader) {
-        if (classReader != null && interfaceHierarchy.add(classReader.getClassName())) {
-            for (String interfaceInternalName : classReader.getInterfaces()) {
-                traversalInterfaceHierarchy(interfaceHierarchy, getClassReader(interfaceInternalName));
+    private void traversalInterfaceHierarchy(final Set<String> interfaceHierarchy, final TypeInfo typeInfo) {
+        if (typeInfo != null && interfaceHierarchy.add(typeInfo.getClassName())) {
+            for (String interfaceInternalName : typeInfo.getInterfaces()) {
+                traversalInterfaceHierarchy(interfaceHierarchy, getTypeInfo(interfaceInternalName));
             }
         }
     }
 
-    private String getImplementedInterface(final Set<String> interfaceHierarchy, final ClassReader classReader) {
-        ClassReader cr = classReader;
-        while (cr != null) {
-            final String[] interfaceInternalNames = cr.getInterfaces();
+    private String getImplementedInterface(final Set<String> interfaceHierarchy, final TypeInfo typeInfo) {
+        TypeInfo type = typeInfo;
+        while (type != null) {
+            final String[] interfaceInternalNames = type.getInterfaces();
             for (String name : interfaceInternalNames) {
                 if (name != null && interfaceHierarchy.contains(name)) {
                     return name;
@@ -133,34 +134,34 @@ public class ASMClassWriter extends ClassWriter {
             }
 
             for (String name : interfaceInternalNames) {
-                final String interfaceInternalName = getImplementedInterface(interfaceHierarchy, getClassReader(name));
+                final String interfaceInternalName = getImplementedInterface(interfaceHierarchy, getTypeInfo(name));
                 if (interfaceInternalName != null) {
                     return interfaceInternalName;
                 }
             }
 
-            final String superClassInternalName = cr.getSuperName();
+            final String superClassInternalName = type.getSuperName();
             if (superClassInternalName == null || superClassInternalName.equals(OBJECT_CLASS_INTERNAL_NAME)) {
                 break;
             }
-            cr = getClassReader(superClassInternalName);
+            type = getTypeInfo(superClassInternalName);
         }
 
         return null;
     }
 
-    private String getCommonClass(final ClassReader classReader1, final ClassReader classReader2) {
+    private String getCommonClass(final TypeInfo typeInfo1, final TypeInfo typeInfo2) {
         final Set<String> classHierarchy = new HashSet<>();
-        classHierarchy.add(classReader1.getClassName());
-        classHierarchy.add(classReader2.getClassName());
+        classHierarchy.add(typeInfo1.getClassName());
+        classHierarchy.add(typeInfo2.getClassName());
 
-        String superClassInternalName1 = classReader1.getSuperName();
+        String superClassInternalName1 = typeInfo1.getSuperName();
         if (!classHierarchy.add(superClassInternalName1)) {
             // find common super class.
             return superClassInternalName1;
         }
 
-        String superClassInternalName2 = classReader2.getSuperName();
+        String superClassInternalName2 = typeInfo2.getSuperName();
         if (!classHierarchy.add(superClassInternalName2)) {
             // find common super class.
             return superClassInternalName2;
@@ -192,30 +193,15 @@ public class ASMClassWriter extends ClassWriter {
 
 
     private String getSuperClassInternalName(final String classInternalName) {
-        final ClassReader classReader = getClassReader(classInternalName);
-        if (classReader == null) {
+        final TypeInfo typeInfo = getTypeInfo(classInternalName);
+        if (typeInfo == null) {
             return null;
         }
 
-        return classReader.getSuperName();
+        return typeInfo.getSuperName();
     }
 
-    private ClassReader getClassReader(final String classInternalName) {
-        if (classInternalName == null) {
-            return null;
-        }
-
-        final String classFileName = classInternalName.concat(".class");
-        final InputStream in = pluginInputStreamProvider.getResourceAsStream(this.classLoader, classFileName);
-        if (in == null) {
-            return null;
-        }
-
-        try {
-            final byte[] bytes = IOUtils.toByteArray(in);
-            return new ClassReader(bytes);
-        } catch (IOException e) {
-            return null;
-        }
+    private TypeInfo getTypeInfo(final String classInternalName) {
+        return typeHierarchyCache.getTypeInfo(pluginInputStreamProvider, this.classLoader, classInternalName);
     }
 }
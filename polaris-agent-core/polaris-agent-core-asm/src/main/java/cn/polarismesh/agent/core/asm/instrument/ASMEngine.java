@@ -28,7 +28,6 @@ import java.security.ProtectionDomain;
 import java.util.Objects;
 import java.util.jar.JarFile;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
 
 public class ASMEngine implements InstrumentEngine {
 
@@ -61,12 +60,11 @@ public class ASMEngine implements InstrumentEngine {
                 return new ASMClass(instrumentContext, classNode, factory);
             }
 
-            // Use ASM tree api.
+            // Use ASM tree api, method bodies are parsed on demand.
             final ClassReader classReader = new ClassReader(classFileBuffer);
-            final ClassNode classNode = new ClassNode();
-            classReader.accept(classNode, 0);
-
-            return new ASMClass(instrumentContext, classLoader, protectionDomain, classNode, factory);
+            final ASMClassNodeAdapter classNodeAdapter = new ASMClassNodeAdapter(instrumentContext, classLoader,
+                    protectionDomain, classReader, false);
+            return new ASMClass(instrumentContext, classNodeAdapter, factory);
         } catch (Exception e) {
             throw new NotFoundInstrumentException(e);
         }
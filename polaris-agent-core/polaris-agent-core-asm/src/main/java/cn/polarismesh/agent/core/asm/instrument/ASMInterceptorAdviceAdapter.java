@@ -0,0 +1,638 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorType;
+import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.Method;
+
+/**
+ * Weaves the interceptor chain of a method while it streams from the {@code ClassReader} to the
+ * {@code ClassWriter}.
+ * <p>
+ * The emitted code is the one {@link ASMMethodNodeAdapter} builds on the tree API: the interceptors and the argument
+ * array, unless none of them takes it, are loaded on method entry (after {@code this()} or {@code super()} in a
+ * constructor), {@code before()} is called in chain order, every return jumps to one exit calling {@code after()} in
+ * reverse order with the result and the whole original code is covered by one handler calling {@code after()} with
+ * the throwable. Each interceptor call is guarded by its own handler passing what it throws to
+ * {@link InterceptorRegistry#handleInterceptorException(Throwable, int)}. New locals are allocated by the
+ * {@code LocalVariablesSorter}, so the method is never buffered. The class must be read with
+ * {@code ClassReader.SKIP_FRAMES}, frames are recomputed by the writer.
+ */
+final class ASMInterceptorAdviceAdapter extends AdviceAdapter {
+
+    static final String INTERCEPTOR_VARIABLE_NAME = "_$PINPOINT$_interceptor";
+
+    private static final String RESULT_VARIABLE_NAME = "_$PINPOINT$_result";
+
+    private static final String THROWABLE_VARIABLE_NAME = "_$PINPOINT$_throwable";
+
+    private static final String ARGS_VARIABLE_NAME = "_$PINPOINT$_args";
+
+    private static final String STATE_VARIABLE_NAME = "_$PINPOINT$_state";
+
+    private static final Type INTERCEPTOR_REGISTRY_TYPE = Type.getType(InterceptorRegistry.class);
+
+    private static final Type INTERCEPTOR_TYPE = Type.getType(Interceptor.class);
+
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+
+    private static final Type OBJECT_ARRAY_TYPE = Type.getType(Object[].class);
+
+    private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
+
+    private static final Type SHORT_CIRCUIT_TYPE = Type.getType(ShortCircuit.class);
+
+    private static final Method GET_VALUE_METHOD = new Method("getValue", OBJECT_TYPE, new Type[0]);
+
+    private static final Method GET_INTERCEPTOR_METHOD = new Method("getInterceptor", INTERCEPTOR_TYPE,
+            new Type[]{Type.INT_TYPE});
+
+    private static final Method ENTER_SCOPE_METHOD = new Method("enterScope", Type.BOOLEAN_TYPE,
+            new Type[]{INTERCEPTOR_TYPE});
+
+    private static final Method LEAVE_SCOPE_METHOD = new Method("leaveScope", Type.VOID_TYPE,
+            new Type[]{INTERCEPTOR_TYPE});
+
+    private static final Method SAMPLE_METHOD = new Method("sample", Type.BOOLEAN_TYPE,
+            new Type[]{INTERCEPTOR_TYPE});
+
+    private static final Method RECORD_SAMPLE_COST_METHOD = new Method("recordSampleCost", Type.VOID_TYPE,
+            new Type[]{INTERCEPTOR_TYPE, Type.LONG_TYPE});
+
+    private static final Type SYSTEM_TYPE = Type.getType(System.class);
+
+    private static final Method NANO_TIME_METHOD = new Method("nanoTime", Type.LONG_TYPE, new Type[0]);
+
+    private static final Method HANDLE_INTERCEPTOR_EXCEPTION_METHOD = new Method("handleInterceptorException",
+            Type.VOID_TYPE, new Type[]{THROWABLE_TYPE, Type.INT_TYPE});
+
+    private final ASMInterceptorChain interceptorChain;
+    private final boolean after;
+    private final boolean invokeDynamic;
+    private final boolean isStatic;
+    private final boolean isConstructor;
+    private final Type[] argumentTypes;
+    private final Type returnType;
+
+    private final Label variableStartLabel = new Label();
+    private final Label variableEndLabel = new Label();
+    private final Label tryStartLabel = new Label();
+    // end of the try block and start of its handler.
+    private final Label tryEndLabel = new Label();
+    private final Label exitLabel = new Label();
+
+    private boolean entered = false;
+    private boolean tryStartPending = false;
+
+    private int[] interceptorVars;
+    // whether the scoped interceptor is called in this invocation, 1 if it is, 0 if it is not and -1 until the scope
+    // is entered.
+    private int[] scopeVars;
+    // whether the sampled interceptor is called in this invocation.
+    private int[] sampleVars;
+    // time spent in the timed interceptor.
+    private int[] costVars;
+    // the short circuit returned by before().
+    private int[] shortCircuitVars;
+    // the state returned by before() and passed to after().
+    private int[] stateVars;
+    private int resultVar;
+    private int throwableVar;
+    private int argsVar = -1;
+    // the value returned by the original code, kept while the after interceptors run.
+    private int returnVar = -1;
+
+    ASMInterceptorAdviceAdapter(MethodVisitor methodVisitor, int access, String name, String descriptor,
+            ASMInterceptorChain interceptorChain, boolean invokeDynamic) {
+        super(Opcodes.ASM9, methodVisitor, access, name, descriptor);
+        this.interceptorChain = interceptorChain;
+        this.after = interceptorChain.hasAfter();
+        this.invokeDynamic = invokeDynamic;
+        this.isStatic = (access & Opcodes.ACC_STATIC) != 0;
+        this.isConstructor = "<init>".equals(name);
+        this.argumentTypes = Type.getArgumentTypes(descriptor);
+        this.returnType = Type.getReturnType(descriptor);
+    }
+
+    private static int getInterceptorParameterCount(InterceptorDefinition interceptorDefinition) {
+        if (interceptorDefinition.getBeforeMethod() != null) {
+            // skip target.
+            return interceptorDefinition.getBeforeMethod().getParameterTypes().length - 1;
+        }
+        // skip target, result, throwable.
+        return interceptorDefinition.getAfterMethod().getParameterTypes().length - 3;
+    }
+
+    @Override
+    protected void onMethodEnter() {
+        this.entered = true;
+        final ASMInterceptorChain interceptorChain = this.interceptorChain;
+        this.interceptorVars = new int[interceptorChain.size()];
+        this.scopeVars = new int[interceptorChain.size()];
+        this.shortCircuitVars = new int[interceptorChain.size()];
+        this.stateVars = new int[interceptorChain.size()];
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            this.interceptorVars[i] = newLocal(INTERCEPTOR_TYPE);
+            this.scopeVars[i] = interceptorChain.isScoped(i) ? newLocal(Type.INT_TYPE) : -1;
+            this.shortCircuitVars[i] = interceptorChain.isShortCircuit(i) ? newLocal(SHORT_CIRCUIT_TYPE) : -1;
+            this.stateVars[i] =
+                    interceptorChain.isStateful(i) && interceptorChain.isAfter(i) ? newLocal(OBJECT_TYPE) : -1;
+        }
+        if (this.after) {
+            this.resultVar = newLocal(OBJECT_TYPE);
+            this.throwableVar = newLocal(THROWABLE_TYPE);
+            if (this.returnType.getSort() != Type.VOID) {
+                this.returnVar = newLocal(this.returnType);
+            }
+        }
+
+        mark(this.variableStartLabel);
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            if (this.invokeDynamic) {
+                invokeDynamic(ASMInterceptorCallSite.NAME, ASMInterceptorCallSite.DESCRIPTOR,
+                        ASMInterceptorCallSite.BOOTSTRAP_METHOD, interceptorChain.getInterceptorId(i));
+            } else {
+                push(interceptorChain.getInterceptorId(i));
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, GET_INTERCEPTOR_METHOD);
+            }
+            storeLocal(this.interceptorVars[i]);
+            if (this.scopeVars[i] != -1) {
+                push(-1);
+                storeLocal(this.scopeVars[i]);
+            }
+            if (this.shortCircuitVars[i] != -1) {
+                // null unless before() is called and returns one.
+                loadNull();
+                storeLocal(this.shortCircuitVars[i]);
+            }
+            if (this.stateVars[i] != -1) {
+                // null unless before() is called.
+                loadNull();
+                storeLocal(this.stateVars[i]);
+            }
+        }
+        if (this.after) {
+            loadNull();
+            storeLocal(this.resultVar);
+            loadNull();
+            storeLocal(this.throwableVar);
+        }
+
+        // sampled before the arguments are built.
+        this.sampleVars = new int[interceptorChain.size()];
+        this.costVars = new int[interceptorChain.size()];
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            this.sampleVars[i] = -1;
+            this.costVars[i] = -1;
+            if (interceptorChain.isSampled(i)) {
+                this.sampleVars[i] = newLocal(Type.BOOLEAN_TYPE);
+                loadLocal(this.interceptorVars[i]);
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, SAMPLE_METHOD);
+                storeLocal(this.sampleVars[i]);
+            }
+            if (interceptorChain.isTimed(i)) {
+                this.costVars[i] = newLocal(Type.LONG_TYPE);
+                push(0L);
+                storeLocal(this.costVars[i]);
+            }
+        }
+
+        if (interceptorChain.hasArgsArray()) {
+            // Object target, Object[] args
+            this.argsVar = newLocal(OBJECT_ARRAY_TYPE);
+            final Label endLabel = new Label();
+            if (interceptorChain.isArgsArraySampled()) {
+                // built only if one of the interceptors taking it sampled the invocation.
+                final Label buildLabel = new Label();
+                for (int i = 0; i < interceptorChain.size(); i++) {
+                    if (interceptorChain.getInterceptorDefinition(i).getInterceptorType()
+                            == InterceptorType.ARRAY_ARGS) {
+                        loadLocal(this.sampleVars[i]);
+                        ifZCmp(NE, buildLabel);
+                    }
+                }
+                loadNull();
+                storeLocal(this.argsVar);
+                goTo(endLabel);
+                mark(buildLabel);
+            }
+            if (this.argumentTypes.length == 0) {
+                loadNull();
+            } else {
+                loadArgArray();
+            }
+            storeLocal(this.argsVar);
+            mark(endLabel);
+        }
+
+        // the handler of the original code does not cover the scopes entered before it starts.
+        final Label enterStartLabel = interceptorChain.hasScope() ? new Label() : null;
+        if (enterStartLabel != null) {
+            mark(enterStartLabel);
+        }
+        // before, in chain order.
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            if (interceptorChain.isScoped(i)) {
+                loadLocal(this.interceptorVars[i]);
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, ENTER_SCOPE_METHOD);
+                storeLocal(this.scopeVars[i]);
+            }
+            if (interceptorChain.isBefore(i)) {
+                invokeInterceptor(i, false);
+            }
+        }
+        if (interceptorChain.hasShortCircuit()) {
+            returnShortCircuit();
+        }
+        if (enterStartLabel != null) {
+            visitEnterHandler(enterStartLabel);
+        }
+
+        if (this.after) {
+            if (this.isConstructor) {
+                // entered after this() or super(), the original handlers are already visited.
+                beginTry();
+            } else {
+                // entered on visitCode(), before the original handlers.
+                this.tryStartPending = true;
+            }
+        }
+    }
+
+    // the value of the first short circuit of the chain, if any, is returned instead of running the original code.
+    // a value that does not convert to the return type is handled as an exception of its interceptor.
+    private void returnShortCircuit() {
+        for (int i = 0; i < this.interceptorChain.size(); i++) {
+            if (this.shortCircuitVars[i] == -1) {
+                continue;
+            }
+            final Label nextLabel = new Label();
+            loadLocal(this.shortCircuitVars[i]);
+            ifNull(nextLabel);
+            final Label startLabel = new Label();
+            final Label endLabel = new Label();
+            this.mv.visitTryCatchBlock(startLabel, endLabel, endLabel, THROWABLE_TYPE.getInternalName());
+            mark(startLabel);
+            loadLocal(this.shortCircuitVars[i]);
+            invokeVirtual(SHORT_CIRCUIT_TYPE, GET_VALUE_METHOD);
+            if (this.returnType.getSort() == Type.VOID) {
+                pop();
+            } else {
+                // any number is converted to a primitive return type.
+                unbox(this.returnType);
+            }
+            if (this.after) {
+                if (this.returnVar != -1) {
+                    storeLocal(this.returnVar);
+                }
+                goTo(this.exitLabel);
+            } else {
+                returnValue();
+            }
+            // handler.
+            mark(endLabel);
+            push(this.interceptorChain.getInterceptorId(i));
+            invokeStatic(INTERCEPTOR_REGISTRY_TYPE, HANDLE_INTERCEPTOR_EXCEPTION_METHOD);
+            mark(nextLabel);
+        }
+    }
+
+    // leaves the scopes entered so far and rethrows.
+    private void visitEnterHandler(Label enterStartLabel) {
+        final Label enterEndLabel = new Label();
+        final Label enteredLabel = new Label();
+        // visited after the handlers of the interceptor calls, which keep precedence over this one.
+        this.mv.visitTryCatchBlock(enterStartLabel, enterEndLabel, enterEndLabel, THROWABLE_TYPE.getInternalName());
+        goTo(enteredLabel);
+        mark(enterEndLabel);
+        for (int i = this.interceptorChain.size() - 1; i >= 0; i--) {
+            if (this.interceptorChain.isScoped(i)) {
+                final Label skipLabel = new Label();
+                loadLocal(this.scopeVars[i]);
+                ifZCmp(LT, skipLabel);
+                loadLocal(this.interceptorVars[i]);
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, LEAVE_SCOPE_METHOD);
+                mark(skipLabel);
+            }
+        }
+        throwException();
+        mark(enteredLabel);
+    }
+
+    private void beginTry() {
+        this.tryStartPending = false;
+        // visited after the original handlers, which keep precedence over this one.
+        this.mv.visitTryCatchBlock(this.tryStartLabel, this.tryEndLabel, this.tryEndLabel,
+                THROWABLE_TYPE.getInternalName());
+        mark(this.tryStartLabel);
+    }
+
+    private void beginTryIfPending() {
+        if (this.tryStartPending) {
+            beginTry();
+        }
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        if (this.entered) {
+            beginTryIfPending();
+            if (this.after) {
+                // try catch handler.
+                mark(this.tryEndLabel);
+                storeLocal(this.throwableVar);
+                loadNull();
+                storeLocal(this.resultVar);
+                invokeAfter();
+                // throw exception.
+                loadLocal(this.throwableVar);
+                throwException();
+
+                // exit.
+                mark(this.exitLabel);
+                if (this.returnVar == -1) {
+                    // void.
+                    loadNull();
+                } else {
+                    loadLocal(this.returnVar);
+                    box(this.returnType);
+                }
+                storeLocal(this.resultVar);
+                loadNull();
+                storeLocal(this.throwableVar);
+                invokeAfter();
+                if (this.returnVar != -1) {
+                    loadLocal(this.returnVar);
+                    final int sort = this.returnType.getSort();
+                    if (sort == Type.OBJECT || sort == Type.ARRAY) {
+                        // the merged type of the returned values may be wider than the return type.
+                        checkCast(this.returnType);
+                    }
+                }
+                returnValue();
+            }
+            mark(this.variableEndLabel);
+            for (int interceptorVar : this.interceptorVars) {
+                visitInterceptorLocalVariable(INTERCEPTOR_VARIABLE_NAME, INTERCEPTOR_TYPE, interceptorVar);
+            }
+            if (this.after) {
+                visitInterceptorLocalVariable(RESULT_VARIABLE_NAME, OBJECT_TYPE, this.resultVar);
+                visitInterceptorLocalVariable(THROWABLE_VARIABLE_NAME, THROWABLE_TYPE, this.throwableVar);
+            }
+            if (this.argsVar != -1) {
+                visitInterceptorLocalVariable(ARGS_VARIABLE_NAME, OBJECT_ARRAY_TYPE, this.argsVar);
+            }
+            for (int stateVar : this.stateVars) {
+                if (stateVar != -1) {
+                    visitInterceptorLocalVariable(STATE_VARIABLE_NAME, OBJECT_TYPE, stateVar);
+                }
+            }
+        }
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    private void visitInterceptorLocalVariable(String name, Type type, int index) {
+        // indexes returned by newLocal() are already remapped.
+        this.mv.visitLocalVariable(name, type.getDescriptor(), null, this.variableStartLabel, this.variableEndLabel,
+                index);
+    }
+
+    // after, in reverse chain order.
+    private void invokeAfter() {
+        final ASMInterceptorChain interceptorChain = this.interceptorChain;
+        for (int i = interceptorChain.size() - 1; i >= 0; i--) {
+            if (interceptorChain.isAfter(i)) {
+                invokeInterceptor(i, true);
+            }
+            if (interceptorChain.isScoped(i)) {
+                loadLocal(this.interceptorVars[i]);
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, LEAVE_SCOPE_METHOD);
+            }
+        }
+    }
+
+    // the exceptions of the interceptor are swallowed, the stack must be empty.
+    private void invokeInterceptor(int interceptorIndex, boolean after) {
+        final InterceptorDefinition interceptorDefinition = this.interceptorChain
+                .getInterceptorDefinition(interceptorIndex);
+        final Label startLabel = new Label();
+        // end of the guarded call and start of its handler.
+        final Label endLabel = new Label();
+        final Label nextLabel = new Label();
+        final boolean timed = this.interceptorChain.isTimed(interceptorIndex);
+        final Label doneLabel = timed ? new Label() : nextLabel;
+        if (this.interceptorChain.isScoped(interceptorIndex)) {
+            loadLocal(this.scopeVars[interceptorIndex]);
+            ifZCmp(EQ, nextLabel);
+        }
+        if (this.interceptorChain.isSampled(interceptorIndex)) {
+            loadLocal(this.sampleVars[interceptorIndex]);
+            ifZCmp(EQ, nextLabel);
+        }
+        if (timed) {
+            // cost -= System.nanoTime()
+            loadLocal(this.costVars[interceptorIndex]);
+            invokeStatic(SYSTEM_TYPE, NANO_TIME_METHOD);
+            math(SUB, Type.LONG_TYPE);
+            storeLocal(this.costVars[interceptorIndex]);
+        }
+        this.mv.visitTryCatchBlock(startLabel, endLabel, endLabel, THROWABLE_TYPE.getInternalName());
+        mark(startLabel);
+        loadInterceptorArguments(interceptorIndex, interceptorDefinition, after);
+        invokeInterface(Type.getType(interceptorDefinition.getInterceptorBaseClass()),
+                Method.getMethod(after ? interceptorDefinition.getAfterMethod()
+                        : interceptorDefinition.getBeforeMethod()));
+        if (!after && this.shortCircuitVars[interceptorIndex] != -1) {
+            storeLocal(this.shortCircuitVars[interceptorIndex]);
+        } else if (!after && this.interceptorChain.isStateful(interceptorIndex)) {
+            // dropped if after() is not called.
+            if (this.stateVars[interceptorIndex] == -1) {
+                pop();
+            } else {
+                storeLocal(this.stateVars[interceptorIndex]);
+            }
+        }
+        goTo(doneLabel);
+        // handler.
+        mark(endLabel);
+        push(this.interceptorChain.getInterceptorId(interceptorIndex));
+        invokeStatic(INTERCEPTOR_REGISTRY_TYPE, HANDLE_INTERCEPTOR_EXCEPTION_METHOD);
+        if (timed) {
+            mark(doneLabel);
+            // cost += System.nanoTime()
+            loadLocal(this.costVars[interceptorIndex]);
+            invokeStatic(SYSTEM_TYPE, NANO_TIME_METHOD);
+            math(ADD, Type.LONG_TYPE);
+            storeLocal(this.costVars[interceptorIndex]);
+            if (after || !this.interceptorChain.isAfter(interceptorIndex)) {
+                // the last call of the invocation.
+                loadLocal(this.interceptorVars[interceptorIndex]);
+                loadLocal(this.costVars[interceptorIndex]);
+                invokeStatic(INTERCEPTOR_REGISTRY_TYPE, RECORD_SAMPLE_COST_METHOD);
+            }
+        }
+        mark(nextLabel);
+    }
+
+    private void loadInterceptorArguments(int interceptorIndex, InterceptorDefinition interceptorDefinition,
+            boolean after) {
+        loadLocal(this.interceptorVars[interceptorIndex]);
+        checkCast(Type.getType(interceptorDefinition.getInterceptorBaseClass()));
+
+        // target(this) object.
+        if (this.isStatic) {
+            loadNull();
+        } else {
+            loadThis();
+        }
+
+        final InterceptorType interceptorType = interceptorDefinition.getInterceptorType();
+        if (interceptorType == InterceptorType.ARRAY_ARGS) {
+            loadLocal(this.argsVar);
+        } else if (interceptorType == InterceptorType.BASIC) {
+            // Object target, Object arg0, Object arg1 ...
+            final int interceptorParameterCount = getInterceptorParameterCount(interceptorDefinition);
+            for (int i = 0; i < interceptorParameterCount; i++) {
+                if (i < this.argumentTypes.length) {
+                    loadArg(i);
+                    box(this.argumentTypes[i]);
+                } else {
+                    loadNull();
+                }
+            }
+        }
+
+        if (after) {
+            loadLocal(this.resultVar);
+            loadLocal(this.throwableVar);
+            if (this.stateVars[interceptorIndex] != -1) {
+                loadLocal(this.stateVars[interceptorIndex]);
+            }
+        }
+    }
+
+    private void loadNull() {
+        this.mv.visitInsn(Opcodes.ACONST_NULL);
+    }
+
+    // the first instruction or label of the original code starts the try block.
+
+    @Override
+    public void visitLabel(Label label) {
+        beginTryIfPending();
+        super.visitLabel(label);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        beginTryIfPending();
+        if (this.entered && this.after && opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+            // every return jumps to the exit, out of the range of any handler.
+            if (this.returnVar != -1) {
+                storeLocal(this.returnVar);
+            }
+            goTo(this.exitLabel);
+            return;
+        }
+        super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        beginTryIfPending();
+        super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        beginTryIfPending();
+        super.visitVarInsn(opcode, var);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        beginTryIfPending();
+        super.visitTypeInsn(opcode, type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        beginTryIfPending();
+        super.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcodeAndSource, String owner, String name, String descriptor,
+            boolean isInterface) {
+        beginTryIfPending();
+        super.visitMethodInsn(opcodeAndSource, owner, name, descriptor, isInterface);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+            Object... bootstrapMethodArguments) {
+        beginTryIfPending();
+        super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        beginTryIfPending();
+        super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        beginTryIfPending();
+        super.visitLdcInsn(value);
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+        beginTryIfPending();
+        super.visitIincInsn(var, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        beginTryIfPending();
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        beginTryIfPending();
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        beginTryIfPending();
+        super.visitMultiANewArrayInsn(descriptor, numDimensions);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
+import cn.polarismesh.agent.core.common.conf.ConfigManager;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Interceptor loading through an invokedynamic call site linked by {@link InterceptorRegistry#bootstrap}.
+ * <p>
+ * The call site is linked on the first invocation of the instrumented method and keeps the interceptor registered at
+ * that time, instead of reading the registry on every invocation. It is only relinked by the interceptor switch.
+ */
+final class ASMInterceptorCallSite {
+
+    static final String NAME = "getInterceptor";
+
+    static final String DESCRIPTOR = Type.getMethodDescriptor(Type.getType(Interceptor.class));
+
+    static final Handle BOOTSTRAP_METHOD = new Handle(Opcodes.H_INVOKESTATIC,
+            Type.getInternalName(InterceptorRegistry.class), "bootstrap",
+            Type.getMethodDescriptor(Type.getType(CallSite.class), Type.getType(MethodHandles.Lookup.class),
+                    Type.getType(String.class), Type.getType(MethodType.class), Type.INT_TYPE), false);
+
+    // invokedynamic is supported from the Java 7 class file format.
+    private static final int MIN_MAJOR_VERSION = Opcodes.V1_7;
+
+    private ASMInterceptorCallSite() {
+    }
+
+    /**
+     * @param majorVersion class file major version of the instrumented class
+     */
+    static boolean isEnabled(int majorVersion) {
+        return majorVersion >= MIN_MAJOR_VERSION && ConfigManager.INSTANCE
+                .getBooleanValue(ConfigManager.KEY_INSTRUMENT_INVOKEDYNAMIC, false);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorType;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.Sampled;
+import cn.polarismesh.agent.core.extension.interceptor.scope.Scope;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Interceptors of one method, in the order they were added.
+ * <p>
+ * They are woven as a single block: each interceptor is loaded into its own local, the argument array and the
+ * result are built once for all of them, {@code before()} is called in order and {@code after()} in reverse order,
+ * so the first interceptor wraps the others. The woven code is straight-line, nothing is allocated per call to walk
+ * the chain.
+ * <p>
+ * An interceptor annotated with {@link Scope} enters its scope right before its {@code before()} and leaves it right
+ * after its {@code after()}, its calls are skipped if the scope says so. The scopes entered are left as well when
+ * the code entering the chain throws. An interceptor annotated with
+ * {@link Sampled} is asked once per invocation before the arguments are built, the argument array is not built at
+ * all when only sampled interceptors take it and none of them sampled the invocation.
+ * <p>
+ * The {@link ShortCircuit} returned by a {@code before()} is kept in a local, once every {@code before()} is called
+ * the first one found in chain order is returned in place of the original code. The state returned by the
+ * {@code before()} of a {@link StatefulInterceptor} is kept in a local as well and passed to its {@code after()}.
+ */
+final class ASMInterceptorChain {
+
+    private final List<Entry> entries = new ArrayList<>(2);
+
+    void add(int interceptorId, InterceptorDefinition interceptorDefinition, boolean before, boolean after) {
+        this.entries.add(new Entry(interceptorId, interceptorDefinition, before, after));
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    int getInterceptorId(int index) {
+        return this.entries.get(index).interceptorId;
+    }
+
+    InterceptorDefinition getInterceptorDefinition(int index) {
+        return this.entries.get(index).interceptorDefinition;
+    }
+
+    boolean isBefore(int index) {
+        return this.entries.get(index).before;
+    }
+
+    boolean isAfter(int index) {
+        return this.entries.get(index).after;
+    }
+
+    boolean isScoped(int index) {
+        return this.entries.get(index).scoped;
+    }
+
+    boolean isSampled(int index) {
+        return this.entries.get(index).sampled;
+    }
+
+    // the cost of the sampled invocations is measured.
+    boolean isTimed(int index) {
+        return this.entries.get(index).timed;
+    }
+
+    // before() may return a value in place of the original code.
+    boolean isShortCircuit(int index) {
+        return this.entries.get(index).shortCircuit;
+    }
+
+    // before() returns the state passed to after().
+    boolean isStateful(int index) {
+        return this.entries.get(index).stateful;
+    }
+
+    boolean hasScope() {
+        for (Entry entry : this.entries) {
+            if (entry.scoped) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean hasShortCircuit() {
+        for (Entry entry : this.entries) {
+            if (entry.shortCircuit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // code runs on exit, to call after() or to leave a scope.
+    boolean hasAfter() {
+        for (Entry entry : this.entries) {
+            if (entry.after || entry.scoped) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // one of the interceptors takes the arguments as an array.
+    boolean hasArgsArray() {
+        for (Entry entry : this.entries) {
+            if (entry.interceptorDefinition.getInterceptorType() == InterceptorType.ARRAY_ARGS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // every interceptor taking the argument array is sampled.
+    boolean isArgsArraySampled() {
+        for (Entry entry : this.entries) {
+            if (entry.interceptorDefinition.getInterceptorType() == InterceptorType.ARRAY_ARGS && !entry.sampled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+
+        private final int interceptorId;
+        private final InterceptorDefinition interceptorDefinition;
+        private final boolean before;
+        private final boolean after;
+        private final boolean scoped;
+        private final boolean sampled;
+        private final boolean timed;
+        private final boolean shortCircuit;
+        private final boolean stateful;
+
+        private Entry(int interceptorId, InterceptorDefinition interceptorDefinition, boolean before,
+                boolean after) {
+            this.interceptorId = interceptorId;
+            this.interceptorDefinition = Objects.requireNonNull(interceptorDefinition, "interceptorDefinition");
+            this.before = before;
+            this.after = after;
+            final Class<?> interceptorClass = interceptorDefinition.getInterceptorClass();
+            this.scoped = interceptorClass.isAnnotationPresent(Scope.class);
+            final Sampled sampled = interceptorClass.getAnnotation(Sampled.class);
+            this.sampled = sampled != null;
+            this.timed = sampled != null && sampled.targetOverhead() > 0;
+            // by the type the code is woven for, the implementation may narrow the return type of before()
+            final Class<?> interceptorBaseClass = interceptorDefinition.getInterceptorBaseClass();
+            this.shortCircuit = before && interceptorBaseClass == ShortCircuitInterceptor.class;
+            this.stateful = interceptorBaseClass == StatefulInterceptor.class
+                    || interceptorBaseClass == StatefulInterceptor0.class;
+        }
+    }
+}
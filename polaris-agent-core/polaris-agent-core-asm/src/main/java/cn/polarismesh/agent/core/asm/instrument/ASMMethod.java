@@ -20,6 +20,7 @@ package cn.polarismesh.agent.core.asm.instrument;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.CaptureType;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder;
 import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
 import cn.polarismesh.agent.core.common.exception.InstrumentException;
 import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
@@ -27,6 +28,10 @@ import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
 import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.Sampled;
 import java.lang.reflect.Constructor;
 import java.util.Objects;
 
@@ -37,7 +42,8 @@ public class ASMMethod implements InstrumentMethod {
 
     private final InstrumentContext pluginContext;
     private final ASMClass declaringClass;
-    private final ASMMethodNodeAdapter methodNode;
+    // the method body is parsed by the first addInterceptor()
+    private ASMMethodNodeAdapter methodNode;
 
     private final InterceptorDefinitionFactory factory;
 
@@ -83,13 +89,6 @@ public class ASMMethod implements InstrumentMethod {
         }
     }
 
-    private int addInterceptor0(Interceptor interceptor) {
-        final int interceptorId = InterceptorRegistry.addInterceptor(interceptor);
-
-        addInterceptor0(interceptor, interceptorId);
-        return interceptorId;
-    }
-
     private Interceptor newInterceptor(Class<? extends Interceptor> interceptorClass) {
         return createInterceptor(interceptorClass);
     }
@@ -105,45 +104,46 @@ public class ASMMethod implements InstrumentMethod {
         }
     }
 
-    private void addInterceptor0(Interceptor interceptor, int interceptorId) {
-        Objects.requireNonNull(interceptor, "interceptor");
+    // returns false if the method is skipped
+    private boolean addInterceptor0(Class<? extends Interceptor> interceptorType, int interceptorId) {
+        this.methodNode = this.declaringClass.loadCode(this.methodNode);
+        this.methodNode.setInvokeDynamic(ASMInterceptorCallSite.isEnabled(this.declaringClass.getMajorVersion()));
 
-        final InterceptorDefinition interceptorDefinition = this.factory
-                .createInterceptorDefinition(interceptor.getClass());
+        final InterceptorDefinition interceptorDefinition = this.factory.createInterceptorDefinition(interceptorType);
         final Class<?> interceptorClass = interceptorDefinition.getInterceptorClass();
         final CaptureType captureType = interceptorDefinition.getCaptureType();
+        // woven by a previous transform, the interceptors of this transform are only woven by toBytecode().
         if (this.methodNode.hasInterceptor()) {
             logger.warn(String.format("Skip adding interceptor. 'already intercepted method' class=%s, interceptor=%s",
                     this.declaringClass.getName(), interceptorClass.getName()));
-            return;
+            return false;
         }
 
         if (this.methodNode.isAbstract() || this.methodNode.isNative()) {
             logger.warn(String.format("Skip adding interceptor. 'abstract or native method' class=%s, interceptor=%s",
                     this.declaringClass.getName(), interceptorClass.getName()));
-            return;
+            return false;
         }
 
-        // add before interceptor.
-        if (isBeforeInterceptor(captureType) && interceptorDefinition.getBeforeMethod() != null) {
-            this.methodNode.addBeforeInterceptor(interceptorId, interceptorDefinition);
-            this.declaringClass.setModified(true);
-        } else {
+        final boolean before = isBeforeInterceptor(captureType) && interceptorDefinition.getBeforeMethod() != null;
+        if (!before) {
             logger.info(
                     String.format(
-                            "Skip adding before interceptorDefinition because the interceptorDefinition doesn't have before method: %s",
+                            "Skip adding before interceptor because the interceptor does not capture before: %s",
                             interceptorClass.getName()));
         }
-
-        // add after interface.
-        if (isAfterInterceptor(captureType) && interceptorDefinition.getAfterMethod() != null) {
-            this.methodNode.addAfterInterceptor(interceptorId, interceptorDefinition);
-            this.declaringClass.setModified(true);
-        } else {
+        final boolean after = isAfterInterceptor(captureType) && interceptorDefinition.getAfterMethod() != null;
+        if (!after) {
             logger.info(
-                    String.format("Skip adding after interceptor because the interceptor doesn't have after method: %s",
+                    String.format("Skip adding after interceptor because the interceptor does not capture after: %s",
                             interceptorClass.getName()));
         }
+        if (!before && !after) {
+            return false;
+        }
+        // chained with the interceptors already added in this transform.
+        this.declaringClass.addInterceptor(this.methodNode, interceptorId, interceptorDefinition, before, after);
+        return true;
     }
 
     private boolean isBeforeInterceptor(CaptureType captureType) {
@@ -155,11 +155,51 @@ public class ASMMethod implements InstrumentMethod {
     }
 
     @Override
-    public int addInterceptor(Class<? extends Interceptor> interceptorClass) {
+    public int addInterceptor(Class<? extends Interceptor> interceptorClass) throws InstrumentException {
         Objects.requireNonNull(interceptorClass, "interceptorClass");
 
-        final Interceptor interceptor = newInterceptor(interceptorClass);
-        return addInterceptor0(interceptor);
+        assertInterceptable(interceptorClass);
+        // a speculative transform only reserves the id, the interceptor is registered once the bytecode is used
+        final boolean speculative = TransformRecorder.isSpeculative();
+        final Interceptor interceptor = speculative ? null : newInterceptor(interceptorClass);
+        // registered and recorded only once it is woven
+        final int interceptorId = InterceptorRegistry.reserveInterceptorId();
+        boolean woven = false;
+        try {
+            woven = addInterceptor0(interceptorClass, interceptorId);
+        } finally {
+            if (!woven) {
+                InterceptorRegistry.releaseInterceptorId(interceptorId);
+            }
+        }
+        if (!woven) {
+            return NOT_WOVEN;
+        }
+        if (!speculative && !InterceptorRegistry.setInterceptor(interceptorId, interceptor,
+                this.declaringClass.getClassLoader())) {
+            throw new PolarisAgentException("interceptor id already in use: " + interceptorId);
+        }
+        TransformRecorder.recordInterceptor(this.pluginContext, interceptorId, interceptorClass);
+        return interceptorId;
+    }
+
+    private void assertInterceptable(Class<? extends Interceptor> interceptorClass) throws InstrumentException {
+        final Class<?> interceptorBaseClass = this.factory.createInterceptorDefinition(interceptorClass)
+                .getInterceptorBaseClass();
+        // the original code of a constructor initializes the instance, it can not be skipped.
+        if (isConstructor() && interceptorBaseClass == ShortCircuitInterceptor.class) {
+            throw new InstrumentException(String.format(
+                    "ShortCircuitInterceptor can not intercept a constructor, class=%s, interceptor=%s",
+                    this.declaringClass.getName(), interceptorClass.getName()));
+        }
+        // an unsampled before() returns nothing, neither a short circuit nor the state its after() expects.
+        if (interceptorClass.isAnnotationPresent(Sampled.class) && (interceptorBaseClass
+                == ShortCircuitInterceptor.class || interceptorBaseClass == StatefulInterceptor.class
+                || interceptorBaseClass == StatefulInterceptor0.class)) {
+            throw new InstrumentException(String.format(
+                    "@Sampled is not supported by %s, class=%s, interceptor=%s", interceptorBaseClass.getSimpleName(),
+                    this.declaringClass.getName(), interceptorClass.getName()));
+        }
     }
 
 }
\ No newline at end of file
@@ -23,6 +23,9 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LineNumberNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -32,6 +35,8 @@ public class ASMMethodNodeAdapter {
     private final String declaringClassInternalName;
     private final MethodNode methodNode;
     private final ASMMethodVariables methodVariables;
+    // interceptors added and not woven yet
+    private ASMInterceptorChain interceptorChain;
 
     public ASMMethodNodeAdapter(final String declaringClassInternalName, final MethodNode methodNode) {
         if (declaringClassInternalName == null || methodNode == null) {
@@ -59,6 +64,14 @@ public class ASMMethodNodeAdapter {
         return this.declaringClassInternalName;
     }
 
+    /**
+     * Loads the interceptor through an invokedynamic call site instead of the registry, the class file version must
+     * support it.
+     */
+    public void setInvokeDynamic(boolean invokeDynamic) {
+        this.methodVariables.setInvokeDynamic(invokeDynamic);
+    }
+
     // find interceptor local variable.
     public boolean hasInterceptor() {
         return this.methodVariables.hasInterceptor();
@@ -179,64 +192,161 @@ public class ASMMethodNodeAdapter {
         this.methodVariables.returnValue(instructions);
     }
 
-    private void initInterceptorLocalVariables(int interceptorId, InterceptorDefinition interceptorDefinition) {
-        final InsnList instructions = new InsnList();
-        if (this.methodVariables
-                .initInterceptorLocalVariables(instructions, interceptorId, interceptorDefinition)) {
-            // if first time.
-            this.methodNode.instructions.insertBefore(this.methodVariables.getEnterInsnNode(), instructions);
+    /**
+     * Adds an interceptor to the chain of this method, the chain is woven by {@link #weaveInterceptors()}.
+     */
+    public void addInterceptor(final int interceptorId, final InterceptorDefinition interceptorDefinition,
+            final boolean before, final boolean after) {
+        if (this.interceptorChain == null) {
+            this.interceptorChain = new ASMInterceptorChain();
         }
+        this.interceptorChain.add(interceptorId, interceptorDefinition, before, after);
     }
 
-    public void addBeforeInterceptor(final int interceptorId, final InterceptorDefinition interceptorDefinition) {
-        initInterceptorLocalVariables(interceptorId, interceptorDefinition);
+    public void weaveInterceptors() {
+        final ASMInterceptorChain interceptorChain = this.interceptorChain;
+        if (interceptorChain == null) {
+            return;
+        }
+        this.interceptorChain = null;
 
         final InsnList instructions = new InsnList();
-        this.methodVariables.loadInterceptorLocalVariables(instructions, interceptorDefinition, false);
-
-        final String description = Type.getMethodDescriptor(interceptorDefinition.getBeforeMethod());
-        instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE,
-                Type.getInternalName(interceptorDefinition.getInterceptorBaseClass()), "before", description, true));
+        this.methodVariables.initInterceptorLocalVariables(instructions, interceptorChain);
+        // the handler of the original code does not cover the scopes entered before it starts.
+        final ASMTryCatch enterTryCatch = interceptorChain.hasScope() ? new ASMTryCatch(this.methodNode) : null;
+        if (enterTryCatch != null) {
+            instructions.add(enterTryCatch.getStartLabelNode());
+        }
+        // before, in chain order.
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            if (interceptorChain.isScoped(i)) {
+                this.methodVariables.enterScope(instructions, i);
+            }
+            if (interceptorChain.isBefore(i)) {
+                invokeInterceptor(instructions, interceptorChain, i, false);
+            }
+        }
+        // every return jumps to the exit, out of the range of any handler.
+        final LabelNode exitLabelNode = interceptorChain.hasAfter() ? new LabelNode() : null;
+        if (interceptorChain.hasShortCircuit()) {
+            this.methodVariables.returnShortCircuit(instructions, interceptorChain, exitLabelNode);
+        }
+        if (enterTryCatch != null) {
+            addEnterHandler(instructions, interceptorChain, enterTryCatch);
+        }
         this.methodNode.instructions.insertBefore(this.methodVariables.getEnterInsnNode(), instructions);
+
+        if (exitLabelNode != null) {
+            addAfterInterceptors(interceptorChain, exitLabelNode);
+        }
     }
 
-    public void addAfterInterceptor(int interceptorId, InterceptorDefinition interceptorDefinition) {
-        initInterceptorLocalVariables(interceptorId, interceptorDefinition);
+    // leaves the scopes entered so far and rethrows.
+    private void addEnterHandler(final InsnList instructions, final ASMInterceptorChain interceptorChain,
+            final ASMTryCatch enterTryCatch) {
+        final LabelNode enteredLabelNode = new LabelNode();
+        instructions.add(new JumpInsnNode(Opcodes.GOTO, enteredLabelNode));
+        instructions.add(enterTryCatch.getEndLabelNode());
+        for (int i = interceptorChain.size() - 1; i >= 0; i--) {
+            if (interceptorChain.isScoped(i)) {
+                this.methodVariables.leaveEnteredScope(instructions, i);
+            }
+        }
+        instructions.add(new InsnNode(Opcodes.ATHROW));
+        instructions.add(enteredLabelNode);
+    }
 
+    private void addAfterInterceptors(final ASMInterceptorChain interceptorChain, final LabelNode exitLabelNode) {
         // add try catch block.
         final ASMTryCatch tryCatch = new ASMTryCatch(this.methodNode);
         this.methodNode.instructions
                 .insertBefore(this.methodVariables.getEnterInsnNode(), tryCatch.getStartLabelNode());
         this.methodNode.instructions.insert(this.methodVariables.getExitInsnNode(), tryCatch.getEndLabelNode());
 
-        // find return.
         AbstractInsnNode insnNode = this.methodNode.instructions.getFirst();
         while (insnNode != null) {
-            final int opcode = insnNode.getOpcode();
-            if (this.methodVariables.isReturnCode(opcode)) {
+            final AbstractInsnNode nextInsnNode = insnNode.getNext();
+            if (this.methodVariables.isReturnCode(insnNode.getOpcode())) {
                 final InsnList instructions = new InsnList();
-                this.methodVariables.storeResultVar(instructions, opcode);
-                invokeAfterInterceptor(instructions, interceptorDefinition, false);
+                this.methodVariables.storeReturnVar(instructions);
+                instructions.add(new JumpInsnNode(Opcodes.GOTO, exitLabelNode));
                 this.methodNode.instructions.insertBefore(insnNode, instructions);
+                this.methodNode.instructions.remove(insnNode);
             }
-            insnNode = insnNode.getNext();
+            insnNode = nextInsnNode;
         }
 
         // try catch handler.
         InsnList instructions = new InsnList();
         this.methodVariables.storeThrowableVar(instructions);
-        invokeAfterInterceptor(instructions, interceptorDefinition, true);
+        invokeAfterInterceptors(instructions, interceptorChain);
         // throw exception.
         this.methodVariables.loadInterceptorThrowVar(instructions);
+
+        // exit.
+        instructions.add(exitLabelNode);
+        this.methodVariables.storeResultVar(instructions);
+        invokeAfterInterceptors(instructions, interceptorChain);
+        this.methodVariables.returnReturnVar(instructions);
         this.methodNode.instructions.insert(tryCatch.getEndLabelNode(), instructions);
         tryCatch.sort();
     }
 
-    private void invokeAfterInterceptor(final InsnList instructions, final InterceptorDefinition interceptorDefinition,
-            final boolean throwable) {
-        this.methodVariables.loadInterceptorLocalVariables(instructions, interceptorDefinition, true);
-        final String description = Type.getMethodDescriptor(interceptorDefinition.getAfterMethod());
+    // after, in reverse chain order.
+    private void invokeAfterInterceptors(final InsnList instructions, final ASMInterceptorChain interceptorChain) {
+        for (int i = interceptorChain.size() - 1; i >= 0; i--) {
+            if (interceptorChain.isAfter(i)) {
+                invokeInterceptor(instructions, interceptorChain, i, true);
+            }
+            if (interceptorChain.isScoped(i)) {
+                this.methodVariables.leaveScope(instructions, i);
+            }
+        }
+    }
+
+    // the exceptions of the interceptor are swallowed, the stack must be empty.
+    private void invokeInterceptor(final InsnList instructions, final ASMInterceptorChain interceptorChain,
+            final int interceptorIndex, final boolean after) {
+        final InterceptorDefinition interceptorDefinition = interceptorChain.getInterceptorDefinition(interceptorIndex);
+        final ASMTryCatch tryCatch = new ASMTryCatch(this.methodNode);
+        final LabelNode nextLabelNode = new LabelNode();
+        final boolean timed = interceptorChain.isTimed(interceptorIndex);
+        final LabelNode doneLabelNode = timed ? new LabelNode() : nextLabelNode;
+        if (interceptorChain.isScoped(interceptorIndex)) {
+            this.methodVariables.jumpIfOutOfScope(instructions, interceptorIndex, nextLabelNode);
+        }
+        if (interceptorChain.isSampled(interceptorIndex)) {
+            this.methodVariables.jumpIfNotSampled(instructions, interceptorIndex, nextLabelNode);
+        }
+        if (timed) {
+            this.methodVariables.startCost(instructions, interceptorIndex);
+        }
+        instructions.add(tryCatch.getStartLabelNode());
+        this.methodVariables.loadInterceptorLocalVariables(instructions, interceptorIndex, interceptorDefinition,
+                after);
+        final java.lang.reflect.Method method = after ? interceptorDefinition.getAfterMethod()
+                : interceptorDefinition.getBeforeMethod();
         instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE,
-                Type.getInternalName(interceptorDefinition.getInterceptorBaseClass()), "after", description, true));
+                Type.getInternalName(interceptorDefinition.getInterceptorBaseClass()), method.getName(),
+                Type.getMethodDescriptor(method), true));
+        if (!after && interceptorChain.isShortCircuit(interceptorIndex)) {
+            this.methodVariables.storeShortCircuitVar(instructions, interceptorIndex);
+        } else if (!after && interceptorChain.isStateful(interceptorIndex)) {
+            this.methodVariables.storeStateVar(instructions, interceptorIndex);
+        }
+        instructions.add(new JumpInsnNode(Opcodes.GOTO, doneLabelNode));
+        // handler.
+        instructions.add(tryCatch.getEndLabelNode());
+        this.methodVariables
+                .handleInterceptorException(instructions, interceptorChain.getInterceptorId(interceptorIndex));
+        if (timed) {
+            instructions.add(doneLabelNode);
+            this.methodVariables.endCost(instructions, interceptorIndex);
+            if (after || !interceptorChain.isAfter(interceptorIndex)) {
+                // the last call of the invocation.
+                this.methodVariables.recordSampleCost(instructions, interceptorIndex);
+            }
+        }
+        instructions.add(nextLabelNode);
     }
-}
\ No newline at end of file
+}
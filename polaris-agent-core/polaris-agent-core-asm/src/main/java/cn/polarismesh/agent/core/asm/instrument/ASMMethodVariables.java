@@ -17,6 +17,7 @@
 package cn.polarismesh.agent.core.asm.instrument;
 
 import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorType;
 import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
@@ -31,6 +32,8 @@ import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.LocalVariableNode;
@@ -62,6 +65,10 @@ public class ASMMethodVariables {
 
     private static final Type OBJECT_TYPE = Type.getObjectType("java/lang/Object");
 
+    private static final Type NUMBER_TYPE = Type.getObjectType("java/lang/Number");
+
+    private static final Type SHORT_CIRCUIT_TYPE = Type.getType(ShortCircuit.class);
+
     private static final Comparator<LocalVariableNode> INDEX_COMPARATOR = new Comparator<LocalVariableNode>() {
         @Override
         public int compare(LocalVariableNode o1, LocalVariableNode o2) {
@@ -78,16 +85,30 @@ public class ASMMethodVariables {
     private final Type returnType;
 
     private boolean initializedInterceptorLocalVariables = false;
+    private boolean invokeDynamic = false;
     private AbstractInsnNode enterInsnNode;
     private AbstractInsnNode exitInsnNode;
 
     private int nextLocals;
 
-    private int interceptorVarIndex;
+    private int[] interceptorVarIndexes;
+    // whether the scoped interceptor is called in this invocation, -1 if it is not scoped. The variable holds 1 if it
+    // is called, 0 if it is not and -1 until the scope is entered.
+    private int[] scopeVarIndexes;
+    // whether the sampled interceptor is called in this invocation, -1 if it is not sampled.
+    private int[] sampleVarIndexes;
+    // time spent in the timed interceptor, -1 if it is not timed.
+    private int[] costVarIndexes;
+    // the short circuit returned by before(), -1 if it cannot return one.
+    private int[] shortCircuitVarIndexes;
+    // the state returned by before() and passed to after(), -1 if after() is not called or takes none.
+    private int[] stateVarIndexes;
     private int argsVarIndex;
 
     private int resultVarIndex;
     private int throwableVarIndex;
+    // the value returned by the original code, kept while the after interceptors run.
+    private int returnVarIndex = -1;
 
     public ASMMethodVariables(final String declaringClassInternalName, final MethodNode methodNode) {
         this.declaringClassInternalName = declaringClassInternalName;
@@ -97,6 +118,10 @@ public class ASMMethodVariables {
         this.returnType = Type.getReturnType(methodNode.desc);
     }
 
+    public void setInvokeDynamic(boolean invokeDynamic) {
+        this.invokeDynamic = invokeDynamic;
+    }
+
     public AbstractInsnNode getEnterInsnNode() {
         return enterInsnNode;
     }
@@ -204,8 +229,8 @@ public class ASMMethodVariables {
         }
     }
 
-    public boolean initInterceptorLocalVariables(final InsnList instructions, final int interceptorId,
-            InterceptorDefinition interceptorDefinition) {
+    public boolean initInterceptorLocalVariables(final InsnList instructions,
+            final ASMInterceptorChain interceptorChain) {
         if (this.initializedInterceptorLocalVariables) {
             return false;
         }
@@ -229,14 +254,21 @@ public class ASMMethodVariables {
         this.methodNode.instructions.insertBefore(this.enterInsnNode, this.interceptorVariableStartLabelNode);
         this.methodNode.instructions.insert(this.exitInsnNode, this.interceptorVariableEndLabelNode);
 
-        // initialize interceptor variable.
-        initInterceptorVar(instructions, interceptorId);
+        // initialize interceptor variables.
+        initInterceptorVars(instructions, interceptorChain);
 
-        // initialize argument variable.
-        final InterceptorType interceptorType = interceptorDefinition.getInterceptorType();
-        if (interceptorType == InterceptorType.ARRAY_ARGS) {
+        // sampled before the arguments are built.
+        initSampleVars(instructions, interceptorChain);
+
+        // initialize argument variable, shared by the whole chain.
+        if (interceptorChain.hasArgsArray()) {
             // Object target, Object[] args
-            initArgsVar(instructions);
+            initArgsVar(instructions, interceptorChain);
+        }
+
+        if (interceptorChain.hasAfter() && this.returnType.getSort() != Type.VOID) {
+            this.returnVarIndex = this.nextLocals;
+            this.nextLocals += this.returnType.getSize();
         }
 
         return true;
@@ -266,14 +298,42 @@ public class ASMMethodVariables {
     }
 
 
-    private void initInterceptorVar(final InsnList instructions, final int interceptorId) {
+    private void initInterceptorVars(final InsnList instructions, final ASMInterceptorChain interceptorChain) {
         assertInitializedInterceptorLocalVariables();
-        this.interceptorVarIndex = addInterceptorLocalVariable("_$PINPOINT$_interceptor",
-                "Lcom/navercorp/pinpoint/bootstrap/interceptor/Interceptor;");
-        push(instructions, interceptorId);
-        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
-                "getInterceptor", "(I)" + Type.getDescriptor(Interceptor.class), false));
-        storeVar(instructions, this.interceptorVarIndex);
+        this.interceptorVarIndexes = new int[interceptorChain.size()];
+        this.scopeVarIndexes = new int[interceptorChain.size()];
+        this.shortCircuitVarIndexes = new int[interceptorChain.size()];
+        this.stateVarIndexes = new int[interceptorChain.size()];
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            this.interceptorVarIndexes[i] = addInterceptorLocalVariable("_$PINPOINT$_interceptor",
+                    "Lcom/navercorp/pinpoint/bootstrap/interceptor/Interceptor;");
+            loadInterceptor(instructions, interceptorChain.getInterceptorId(i));
+            storeVar(instructions, this.interceptorVarIndexes[i]);
+            this.scopeVarIndexes[i] = -1;
+            if (interceptorChain.isScoped(i)) {
+                this.scopeVarIndexes[i] = this.nextLocals++;
+                push(instructions, -1);
+                instructions.add(new VarInsnNode(Opcodes.ISTORE, this.scopeVarIndexes[i]));
+            }
+            this.shortCircuitVarIndexes[i] = -1;
+            if (interceptorChain.isShortCircuit(i)) {
+                // null unless before() is called and returns one.
+                this.shortCircuitVarIndexes[i] = this.nextLocals++;
+                loadNull(instructions);
+                storeVar(instructions, this.shortCircuitVarIndexes[i]);
+            }
+            this.stateVarIndexes[i] = -1;
+            if (interceptorChain.isStateful(i) && interceptorChain.isAfter(i)) {
+                // null unless before() is called.
+                this.stateVarIndexes[i] = addInterceptorLocalVariable("_$PINPOINT$_state", "Ljava/lang/Object;");
+                loadNull(instructions);
+                storeVar(instructions, this.stateVarIndexes[i]);
+            }
+        }
+        if (!interceptorChain.hasAfter()) {
+            // before only, the result and the throwable are never captured.
+            return;
+        }
         this.resultVarIndex = addInterceptorLocalVariable("_$PINPOINT$_result", "Ljava/lang/Object;");
         loadNull(instructions);
         storeVar(instructions, this.resultVarIndex);
@@ -282,11 +342,64 @@ public class ASMMethodVariables {
         storeVar(instructions, this.throwableVarIndex);
     }
 
-    private void initArgsVar(final InsnList instructions) {
+    private void loadInterceptor(final InsnList instructions, final int interceptorId) {
+        if (this.invokeDynamic) {
+            instructions.add(new InvokeDynamicInsnNode(ASMInterceptorCallSite.NAME, ASMInterceptorCallSite.DESCRIPTOR,
+                    ASMInterceptorCallSite.BOOTSTRAP_METHOD, interceptorId));
+        } else {
+            push(instructions, interceptorId);
+            instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
+                    "getInterceptor", "(I)" + Type.getDescriptor(Interceptor.class), false));
+        }
+    }
+
+    private void initSampleVars(final InsnList instructions, final ASMInterceptorChain interceptorChain) {
+        this.sampleVarIndexes = new int[interceptorChain.size()];
+        this.costVarIndexes = new int[interceptorChain.size()];
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            this.sampleVarIndexes[i] = -1;
+            this.costVarIndexes[i] = -1;
+            if (interceptorChain.isSampled(i)) {
+                this.sampleVarIndexes[i] = this.nextLocals++;
+                loadVar(instructions, this.interceptorVarIndexes[i]);
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+                        Type.getInternalName(InterceptorRegistry.class), "sample",
+                        "(" + Type.getDescriptor(Interceptor.class) + ")Z", false));
+                instructions.add(new VarInsnNode(Opcodes.ISTORE, this.sampleVarIndexes[i]));
+            }
+            if (interceptorChain.isTimed(i)) {
+                this.costVarIndexes[i] = this.nextLocals;
+                this.nextLocals += 2;
+                instructions.add(new InsnNode(Opcodes.LCONST_0));
+                instructions.add(new VarInsnNode(Opcodes.LSTORE, this.costVarIndexes[i]));
+            }
+        }
+    }
+
+    private void initArgsVar(final InsnList instructions, final ASMInterceptorChain interceptorChain) {
         assertInitializedInterceptorLocalVariables();
         this.argsVarIndex = addInterceptorLocalVariable("_$PINPOINT$_args", "[Ljava/lang/Object;");
+        if (!interceptorChain.isArgsArraySampled()) {
+            loadArgsVar(instructions);
+            storeVar(instructions, this.argsVarIndex);
+            return;
+        }
+        // built only if one of the interceptors taking it sampled the invocation.
+        final LabelNode buildLabelNode = new LabelNode();
+        final LabelNode endLabelNode = new LabelNode();
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            if (interceptorChain.getInterceptorDefinition(i).getInterceptorType() == InterceptorType.ARRAY_ARGS) {
+                instructions.add(new VarInsnNode(Opcodes.ILOAD, this.sampleVarIndexes[i]));
+                instructions.add(new JumpInsnNode(Opcodes.IFNE, buildLabelNode));
+            }
+        }
+        loadNull(instructions);
+        storeVar(instructions, this.argsVarIndex);
+        instructions.add(new JumpInsnNode(Opcodes.GOTO, endLabelNode));
+        instructions.add(buildLabelNode);
         loadArgsVar(instructions);
         storeVar(instructions, this.argsVarIndex);
+        instructions.add(endLabelNode);
     }
 
 
@@ -309,33 +422,173 @@ public class ASMMethodVariables {
         storeVar(instructions, this.resultVarIndex);
     }
 
-    public void storeResultVar(final InsnList instructions, final int opcode) {
+    // on a return instruction, before jumping to the exit.
+    public void storeReturnVar(final InsnList instructions) {
         assertInitializedInterceptorLocalVariables();
-        if (opcode == Opcodes.RETURN) {
+        if (this.returnVarIndex != -1) {
+            instructions.add(new VarInsnNode(this.returnType.getOpcode(Opcodes.ISTORE), this.returnVarIndex));
+        }
+    }
+
+    public void storeResultVar(final InsnList instructions) {
+        assertInitializedInterceptorLocalVariables();
+        if (this.returnVarIndex == -1) {
             // void.
             loadNull(instructions);
-        } else if (opcode == Opcodes.ARETURN) {
-            // object.
-            dup(instructions);
         } else {
-            if (opcode == Opcodes.LRETURN || opcode == Opcodes.DRETURN) {
-                // long or double.
-                dup2(instructions);
-            } else {
-                dup(instructions);
-            }
-            final Type type = Type.getReturnType(this.methodNode.desc);
-            box(instructions, type);
+            instructions.add(new VarInsnNode(this.returnType.getOpcode(Opcodes.ILOAD), this.returnVarIndex));
+            box(instructions, this.returnType);
         }
         storeVar(instructions, this.resultVarIndex);
         loadNull(instructions);
         storeVar(instructions, this.throwableVarIndex);
     }
 
-    public void loadInterceptorLocalVariables(final InsnList instructions,
+    public void returnReturnVar(final InsnList instructions) {
+        assertInitializedInterceptorLocalVariables();
+        if (this.returnVarIndex != -1) {
+            instructions.add(new VarInsnNode(this.returnType.getOpcode(Opcodes.ILOAD), this.returnVarIndex));
+            final int sort = this.returnType.getSort();
+            if ((sort == Type.OBJECT || sort == Type.ARRAY) && !this.returnType.equals(OBJECT_TYPE)) {
+                // the merged type of the returned values may be wider than the return type.
+                instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, this.returnType.getInternalName()));
+            }
+        }
+        returnValue(instructions);
+    }
+
+    // the short circuit returned by before() is on the stack.
+    public void storeShortCircuitVar(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        storeVar(instructions, this.shortCircuitVarIndexes[interceptorIndex]);
+    }
+
+    // the state returned by before() is on the stack, it is dropped if after() is not called.
+    public void storeStateVar(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        if (this.stateVarIndexes[interceptorIndex] == -1) {
+            pop(instructions);
+        } else {
+            storeVar(instructions, this.stateVarIndexes[interceptorIndex]);
+        }
+    }
+
+    /**
+     * Returns the value of the first short circuit of the chain, if any, instead of running the original code. A
+     * value that does not convert to the return type is handled as an exception of its interceptor, and the original
+     * code runs.
+     *
+     * @param exitLabelNode exit calling the after interceptors and leaving the scopes, null to return directly
+     */
+    public void returnShortCircuit(final InsnList instructions, final ASMInterceptorChain interceptorChain,
+            final LabelNode exitLabelNode) {
+        assertInitializedInterceptorLocalVariables();
+        for (int i = 0; i < interceptorChain.size(); i++) {
+            if (!interceptorChain.isShortCircuit(i)) {
+                continue;
+            }
+            final LabelNode nextLabelNode = new LabelNode();
+            loadVar(instructions, this.shortCircuitVarIndexes[i]);
+            instructions.add(new JumpInsnNode(Opcodes.IFNULL, nextLabelNode));
+            final ASMTryCatch tryCatch = new ASMTryCatch(this.methodNode);
+            instructions.add(tryCatch.getStartLabelNode());
+            loadVar(instructions, this.shortCircuitVarIndexes[i]);
+            instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, SHORT_CIRCUIT_TYPE.getInternalName(),
+                    "getValue", "()Ljava/lang/Object;", false));
+            unbox(instructions, this.returnType);
+            if (exitLabelNode != null) {
+                storeReturnVar(instructions);
+                instructions.add(new JumpInsnNode(Opcodes.GOTO, exitLabelNode));
+            } else {
+                returnValue(instructions);
+            }
+            // handler.
+            instructions.add(tryCatch.getEndLabelNode());
+            handleInterceptorException(instructions, interceptorChain.getInterceptorId(i));
+            instructions.add(nextLabelNode);
+        }
+    }
+
+    public void enterScope(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        loadVar(instructions, this.interceptorVarIndexes[interceptorIndex]);
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
+                "enterScope", "(" + Type.getDescriptor(Interceptor.class) + ")Z", false));
+        instructions.add(new VarInsnNode(Opcodes.ISTORE, this.scopeVarIndexes[interceptorIndex]));
+    }
+
+    // skips the interceptor call if the scope did not enter it.
+    public void jumpIfOutOfScope(final InsnList instructions, final int interceptorIndex, final LabelNode labelNode) {
+        assertInitializedInterceptorLocalVariables();
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, this.scopeVarIndexes[interceptorIndex]));
+        instructions.add(new JumpInsnNode(Opcodes.IFEQ, labelNode));
+    }
+
+    // skips the interceptor call if the invocation is not sampled.
+    public void jumpIfNotSampled(final InsnList instructions, final int interceptorIndex, final LabelNode labelNode) {
+        assertInitializedInterceptorLocalVariables();
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, this.sampleVarIndexes[interceptorIndex]));
+        instructions.add(new JumpInsnNode(Opcodes.IFEQ, labelNode));
+    }
+
+    // cost -= System.nanoTime()
+    public void startCost(final InsnList instructions, final int interceptorIndex) {
+        addNanoTime(instructions, interceptorIndex, Opcodes.LSUB);
+    }
+
+    // cost += System.nanoTime()
+    public void endCost(final InsnList instructions, final int interceptorIndex) {
+        addNanoTime(instructions, interceptorIndex, Opcodes.LADD);
+    }
+
+    private void addNanoTime(final InsnList instructions, final int interceptorIndex, final int opcode) {
+        assertInitializedInterceptorLocalVariables();
+        final int costVarIndex = this.costVarIndexes[interceptorIndex];
+        instructions.add(new VarInsnNode(Opcodes.LLOAD, costVarIndex));
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false));
+        instructions.add(new InsnNode(opcode));
+        instructions.add(new VarInsnNode(Opcodes.LSTORE, costVarIndex));
+    }
+
+    public void recordSampleCost(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        loadVar(instructions, this.interceptorVarIndexes[interceptorIndex]);
+        instructions.add(new VarInsnNode(Opcodes.LLOAD, this.costVarIndexes[interceptorIndex]));
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
+                "recordSampleCost", "(" + Type.getDescriptor(Interceptor.class) + "J)V", false));
+    }
+
+    public void leaveScope(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        loadVar(instructions, this.interceptorVarIndexes[interceptorIndex]);
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
+                "leaveScope", "(" + Type.getDescriptor(Interceptor.class) + ")V", false));
+    }
+
+    // leaves the scope only if it was entered, when the code entering the chain throws.
+    public void leaveEnteredScope(final InsnList instructions, final int interceptorIndex) {
+        assertInitializedInterceptorLocalVariables();
+        final LabelNode skipLabelNode = new LabelNode();
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, this.scopeVarIndexes[interceptorIndex]));
+        instructions.add(new JumpInsnNode(Opcodes.IFLT, skipLabelNode));
+        leaveScope(instructions, interceptorIndex);
+        instructions.add(skipLabelNode);
+    }
+
+    // the exception thrown by the interceptor is on the stack, it is swallowed.
+    public void handleInterceptorException(final InsnList instructions, final int interceptorId) {
+        push(instructions, interceptorId);
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, Type.getInternalName(InterceptorRegistry.class),
+                "handleInterceptorException", "(Ljava/lang/Throwable;I)V", false));
+    }
+
+    /**
+     * @param interceptorIndex position of the interceptor in the chain
+     */
+    public void loadInterceptorLocalVariables(final InsnList instructions, final int interceptorIndex,
             final InterceptorDefinition interceptorDefinition, final boolean after) {
         assertInitializedInterceptorLocalVariables();
-        loadVar(instructions, this.interceptorVarIndex);
+        loadVar(instructions, this.interceptorVarIndexes[interceptorIndex]);
         instructions.add(new TypeInsnNode(Opcodes.CHECKCAST,
                 Type.getInternalName(interceptorDefinition.getInterceptorBaseClass())));
 
@@ -346,11 +599,25 @@ public class ASMMethodVariables {
         if (interceptorType == InterceptorType.ARRAY_ARGS) {
             // Object target, Object[] args
             loadVar(instructions, this.argsVarIndex);
+        } else if (interceptorType == InterceptorType.BASIC) {
+            // Object target, Object arg0, Object arg1 ...
+            final int interceptorParameterCount = getInterceptorParameterCount(interceptorDefinition);
+            for (int i = 0; i < interceptorParameterCount; i++) {
+                if (i < this.argumentTypes.length) {
+                    loadArg(instructions, this.argumentTypes, i);
+                    box(instructions, this.argumentTypes[i]);
+                } else {
+                    loadNull(instructions);
+                }
+            }
         }
 
         if (after) {
             loadVar(instructions, this.resultVarIndex);
             loadVar(instructions, this.throwableVarIndex);
+            if (this.stateVarIndexes[interceptorIndex] != -1) {
+                loadVar(instructions, this.stateVarIndexes[interceptorIndex]);
+            }
         }
     }
 
@@ -546,6 +813,39 @@ public class ASMMethodVariables {
         }
     }
 
+    // the value a ShortCircuit holds, converted to the given type.
+    void unbox(final InsnList instructions, final Type type) {
+        final Type boxed;
+        final String valueMethodName;
+        switch (type.getSort()) {
+            case Type.VOID:
+                pop(instructions);
+                return;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                if (!type.equals(OBJECT_TYPE)) {
+                    instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, type.getInternalName()));
+                }
+                return;
+            case Type.BOOLEAN:
+                boxed = BOOLEAN_TYPE;
+                valueMethodName = "booleanValue";
+                break;
+            case Type.CHAR:
+                boxed = CHARACTER_TYPE;
+                valueMethodName = "charValue";
+                break;
+            default:
+                // any number, as the boxed value may be wider or narrower than the return type.
+                boxed = NUMBER_TYPE;
+                valueMethodName = type.getClassName() + "Value";
+                break;
+        }
+        instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, boxed.getInternalName()));
+        instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, boxed.getInternalName(), valueMethodName,
+                "()" + type.getDescriptor(), false));
+    }
+
     void arrayStore(final InsnList instructions, final Type type) {
         instructions.add(new InsnNode(type.getOpcode(Opcodes.IASTORE)));
     }
@@ -18,6 +18,7 @@
 package cn.polarismesh.agent.core.asm.instrument;
 
 import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
 import cn.polarismesh.agent.core.extension.instrument.ClassFilter;
 import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
 import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
@@ -118,6 +119,22 @@ public class ASMNestedClass implements InstrumentClass {
         return this.aClass.hasField(name);
     }
 
+    @Override
+    public void addGetter(Class<?> getterType, String fieldName) throws InstrumentException {
+        throw new InstrumentException("nested class is not instrumentable: " + getName());
+    }
+
+    @Override
+    public void addSetter(Class<?> setterType, String fieldName) throws InstrumentException {
+        throw new InstrumentException("nested class is not instrumentable: " + getName());
+    }
+
+    @Override
+    public void addInvoker(Class<?> invokerType, String methodName, String... parameterTypes)
+            throws InstrumentException {
+        throw new InstrumentException("nested class is not instrumentable: " + getName());
+    }
+
     @Override
     public List<InstrumentClass> getNestedClasses(ClassFilter filter) {
         return this.aClass.getNestedClasses(filter);
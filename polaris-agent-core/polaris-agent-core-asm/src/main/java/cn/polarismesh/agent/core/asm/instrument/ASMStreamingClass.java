@@ -0,0 +1,476 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.classreading.ConstantPoolScanner;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.CaptureType;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinition;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import cn.polarismesh.agent.core.common.utils.JvmUtils;
+import cn.polarismesh.agent.core.common.utils.JvmVersion;
+import cn.polarismesh.agent.core.extension.instrument.ClassFilter;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
+import cn.polarismesh.agent.core.extension.instrument.MethodFilter;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * {@link InstrumentClass} of the {@link ASMStreamingEngine}.
+ * <p>
+ * The class is parsed with {@code SKIP_CODE}, method bodies are only read by {@link #toBytecode()}, once, when the
+ * selected methods are woven. The accessors are generated on the headers and emitted after the original members.
+ */
+public class ASMStreamingClass implements SharableInstrumentClass {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(ASMStreamingClass.class.getCanonicalName());
+
+    private static final byte[] INTERCEPTOR_VARIABLE_NAME = ConstantPoolScanner
+            .encode(ASMInterceptorAdviceAdapter.INTERCEPTOR_VARIABLE_NAME);
+
+    private final InstrumentContext pluginContext;
+    private final ClassLoader classLoader;
+    private final byte[] classFileBuffer;
+    private final ClassReader classReader;
+    // headers only
+    private final ClassNode classNode;
+    private final ASMClassNodeAdapter classNodeAdapter;
+    private final InterceptorDefinitionFactory factory;
+    private final int originalFieldCount;
+    private final int originalMethodCount;
+    // this, or the class a view is bound to another context for, it holds the state of the transform
+    private final ASMStreamingClass shared;
+    private boolean accessorAdded = false;
+
+    // method name and descriptor to the interceptors woven into it
+    private final Map<String, ASMInterceptorChain> weavings;
+    // methods intercepted by a previous transform, lazily read
+    private Set<String> interceptedMethods;
+    private String name;
+
+    public ASMStreamingClass(InstrumentContext pluginContext, ClassLoader classLoader,
+            ProtectionDomain protectionDomain, byte[] classFileBuffer, InterceptorDefinitionFactory factory) {
+        this.pluginContext = Objects.requireNonNull(pluginContext, "pluginContext");
+        this.classLoader = classLoader;
+        this.classFileBuffer = Objects.requireNonNull(classFileBuffer, "classFileBuffer");
+        this.factory = factory;
+        this.classReader = new ClassReader(classFileBuffer);
+        this.classNode = new ClassNode();
+        this.classReader.accept(this.classNode, ClassReader.SKIP_CODE);
+        this.classNodeAdapter = new ASMClassNodeAdapter(pluginContext, classLoader, protectionDomain,
+                this.classNode, true);
+        this.originalFieldCount = this.classNode.fields.size();
+        this.originalMethodCount = this.classNode.methods.size();
+        this.shared = this;
+        this.weavings = new HashMap<>();
+    }
+
+    private ASMStreamingClass(InstrumentContext pluginContext, ASMStreamingClass shared) {
+        this.pluginContext = Objects.requireNonNull(pluginContext, "pluginContext");
+        this.classLoader = shared.classLoader;
+        this.classFileBuffer = shared.classFileBuffer;
+        this.factory = shared.factory;
+        this.classReader = shared.classReader;
+        this.classNode = shared.classNode;
+        this.classNodeAdapter = shared.classNodeAdapter;
+        this.originalFieldCount = shared.originalFieldCount;
+        this.originalMethodCount = shared.originalMethodCount;
+        this.shared = shared;
+        this.weavings = shared.weavings;
+    }
+
+    @Override
+    public InstrumentClass bind(InstrumentContext instrumentContext) {
+        if (instrumentContext == this.pluginContext) {
+            return this;
+        }
+        return new ASMStreamingClass(instrumentContext, this.shared);
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return this.classLoader;
+    }
+
+    @Override
+    public boolean isInterceptable() {
+        if (this.classNodeAdapter.isAnnotation() || isModified()) {
+            return false;
+        }
+        // interface static method or default method is java 1.8 or later
+        if (isInterface() && (this.classNodeAdapter.getMajorVersion() < 52 || !JvmUtils.getVersion()
+                .onOrAfter(JvmVersion.JAVA_8))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isInterface() {
+        return this.classNodeAdapter.isInterface();
+    }
+
+    @Override
+    public String getName() {
+        // for performance.
+        if (this.name == null) {
+            this.name = this.classNodeAdapter.getName();
+        }
+        return this.name;
+    }
+
+    @Override
+    public String getSuperClass() {
+        return this.classNodeAdapter.getSuperClassName();
+    }
+
+    @Override
+    public String[] getInterfaces() {
+        return this.classNodeAdapter.getInterfaceNames();
+    }
+
+    @Override
+    public InstrumentMethod getDeclaredMethod(final String methodName, final String... parameterTypes) {
+        Objects.requireNonNull(methodName, "name");
+
+        final String desc = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        final MethodNode methodNode = this.classNodeAdapter.findDeclaredMethodNode(methodName, desc);
+        if (methodNode == null) {
+            return null;
+        }
+        return newMethod(methodNode);
+    }
+
+    @Override
+    public List<InstrumentMethod> getDeclaredMethods() {
+        return getDeclaredMethods(MethodFilters.ACCEPT_ALL);
+    }
+
+    @Override
+    public List<InstrumentMethod> getDeclaredMethods(final MethodFilter methodFilter) {
+        Objects.requireNonNull(methodFilter, "methodFilter");
+
+        final List<InstrumentMethod> candidateList = new ArrayList<>();
+        for (MethodNode methodNode : this.classNode.methods) {
+            final String methodName = methodNode.name;
+            if (methodName == null || methodName.equals("<init>") || methodName.equals("<clinit>")) {
+                // skip constructor(<init>) and static initializer block(<clinit>)
+                continue;
+            }
+            final InstrumentMethod method = newMethod(methodNode);
+            if (methodFilter.accept(method)) {
+                candidateList.add(method);
+            }
+        }
+        return candidateList;
+    }
+
+    @Override
+    public InstrumentMethod getConstructor(final String... parameterTypes) {
+        return getDeclaredMethod("<init>", parameterTypes);
+    }
+
+    @Override
+    public List<InstrumentMethod> getDeclaredConstructors() {
+        final List<InstrumentMethod> candidateList = new ArrayList<>();
+        for (MethodNode methodNode : this.classNode.methods) {
+            if ("<init>".equals(methodNode.name)) {
+                candidateList.add(newMethod(methodNode));
+            }
+        }
+        return candidateList;
+    }
+
+    private InstrumentMethod newMethod(MethodNode methodNode) {
+        return new ASMStreamingMethod(this.pluginContext, this,
+                new ASMMethodNodeAdapter(this.classNode.name, methodNode), this.factory);
+    }
+
+    @Override
+    public boolean hasDeclaredMethod(final String methodName, final String... parameterTypes) {
+        Objects.requireNonNull(methodName, "methodName");
+
+        final String desc = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        return this.classNodeAdapter.hasDeclaredMethod(methodName, desc);
+    }
+
+    @Override
+    public boolean hasMethod(final String methodName, final String... parameterTypes) {
+        Objects.requireNonNull(methodName, "methodName");
+
+        final String desc = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        return this.classNodeAdapter.hasMethod(methodName, desc);
+    }
+
+    @Override
+    public boolean hasEnclosingMethod(final String methodName, final String... parameterTypes) {
+        Objects.requireNonNull(methodName, "methodName");
+
+        final String desc = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        return this.classNodeAdapter.hasOutClass(methodName, desc);
+    }
+
+    @Override
+    public boolean hasConstructor(final String... parameterTypeArray) {
+        return getConstructor(parameterTypeArray) != null;
+    }
+
+    @Override
+    public boolean hasField(String fieldName, String type) {
+        Objects.requireNonNull(fieldName, "name");
+
+        final String desc = type == null ? null : JavaAssistUtils.toJvmSignature(type);
+        return this.classNodeAdapter.getField(fieldName, desc) != null;
+    }
+
+    @Override
+    public boolean hasField(String name) {
+        return hasField(name, null);
+    }
+
+    @Override
+    public void addGetter(Class<?> getterType, String fieldName) throws InstrumentException {
+        injectAccessorType(getterType);
+        addAccessor(getterType, ASMAccessors.newGetter(this.classNodeAdapter, getterType, fieldName));
+    }
+
+    @Override
+    public void addSetter(Class<?> setterType, String fieldName) throws InstrumentException {
+        injectAccessorType(setterType);
+        addAccessor(setterType, ASMAccessors.newSetter(this.classNodeAdapter, setterType, fieldName));
+    }
+
+    @Override
+    public void addInvoker(Class<?> invokerType, String methodName, String... parameterTypes)
+            throws InstrumentException {
+        injectAccessorType(invokerType);
+        addAccessor(invokerType,
+                ASMAccessors.newInvoker(this.classNodeAdapter, invokerType, methodName, parameterTypes));
+    }
+
+    private void injectAccessorType(Class<?> accessorType) throws InstrumentException {
+        ASMAccessors.injectAccessorType(this.pluginContext, getClassLoader(), getName(), accessorType);
+    }
+
+    private void addAccessor(Class<?> accessorType, MethodNode methodNode) {
+        this.classNodeAdapter.addInterface(Type.getInternalName(accessorType));
+        this.classNodeAdapter.addMethod(methodNode);
+        this.shared.accessorAdded = true;
+    }
+
+    @Override
+    public List<InstrumentClass> getNestedClasses(ClassFilter filter) {
+        Objects.requireNonNull(filter, "filter");
+
+        final List<InstrumentClass> nestedClasses = new ArrayList<>();
+        for (ASMClassNodeAdapter innerClassNode : this.classNodeAdapter.getInnerClasses()) {
+            final ASMNestedClass nestedClass = new ASMNestedClass(this.pluginContext, innerClassNode, factory);
+            if (filter.accept(nestedClass)) {
+                nestedClasses.add(nestedClass);
+            }
+        }
+        return nestedClasses;
+    }
+
+    public boolean isModified() {
+        return !this.weavings.isEmpty();
+    }
+
+    /**
+     * @return false if the method is skipped
+     */
+    boolean addInterceptor(ASMMethodNodeAdapter methodNode, Class<? extends Interceptor> interceptorType,
+            int interceptorId) {
+        Objects.requireNonNull(interceptorType, "interceptorType");
+
+        final InterceptorDefinition interceptorDefinition = this.factory.createInterceptorDefinition(interceptorType);
+        final Class<?> interceptorClass = interceptorDefinition.getInterceptorClass();
+        final CaptureType captureType = interceptorDefinition.getCaptureType();
+        final String methodKey = methodNode.getMethodNode().name.concat(methodNode.getDesc());
+        if (isIntercepted(methodKey)) {
+            logger.warn(String.format("Skip adding interceptor. 'already intercepted method' class=%s, interceptor=%s",
+                    getName(), interceptorClass.getName()));
+            return false;
+        }
+
+        if (methodNode.isAbstract() || methodNode.isNative()) {
+            logger.warn(String.format("Skip adding interceptor. 'abstract or native method' class=%s, interceptor=%s",
+                    getName(), interceptorClass.getName()));
+            return false;
+        }
+
+        final boolean before = isBeforeInterceptor(captureType) && interceptorDefinition.getBeforeMethod() != null;
+        if (!before) {
+            logger.info(
+                    String.format(
+                            "Skip adding before interceptor because the interceptor does not capture before: %s",
+                            interceptorClass.getName()));
+        }
+        final boolean after = isAfterInterceptor(captureType) && interceptorDefinition.getAfterMethod() != null;
+        if (!after) {
+            logger.info(
+                    String.format("Skip adding after interceptor because the interceptor does not capture after: %s",
+                            interceptorClass.getName()));
+        }
+        if (!before && !after) {
+            return false;
+        }
+        // chained with the interceptors already added in this transform.
+        ASMInterceptorChain interceptorChain = this.weavings.get(methodKey);
+        if (interceptorChain == null) {
+            interceptorChain = new ASMInterceptorChain();
+            this.weavings.put(methodKey, interceptorChain);
+        }
+        interceptorChain.add(interceptorId, interceptorDefinition, before, after);
+        return true;
+    }
+
+    private boolean isBeforeInterceptor(CaptureType captureType) {
+        return CaptureType.BEFORE == captureType || CaptureType.AROUND == captureType;
+    }
+
+    private boolean isAfterInterceptor(CaptureType captureType) {
+        return CaptureType.AFTER == captureType || CaptureType.AROUND == captureType;
+    }
+
+    private boolean isIntercepted(String methodKey) {
+        if (this.interceptedMethods == null) {
+            this.interceptedMethods = readInterceptedMethods();
+        }
+        return this.interceptedMethods.contains(methodKey);
+    }
+
+    private Set<String> readInterceptedMethods() {
+        // the local variable name is in the constant pool of any class intercepted before.
+        if (ConstantPoolScanner.findUtf8(this.classFileBuffer, INTERCEPTOR_VARIABLE_NAME)
+                == ConstantPoolScanner.NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        final Set<String> interceptedMethods = new HashSet<>();
+        this.classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, final String name, final String descriptor,
+                    String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitLocalVariable(String variableName, String variableDescriptor,
+                            String variableSignature, Label start, Label end, int index) {
+                        if (ASMInterceptorAdviceAdapter.INTERCEPTOR_VARIABLE_NAME.equals(variableName)) {
+                            interceptedMethods.add(name.concat(descriptor));
+                        }
+                    }
+                };
+            }
+        }, ClassReader.SKIP_FRAMES);
+        return interceptedMethods;
+    }
+
+    @Override
+    public byte[] toBytecode() {
+        if (this.weavings.isEmpty() && !this.shared.accessorAdded) {
+            return this.classFileBuffer;
+        }
+
+        final int majorVersion = this.classNodeAdapter.getMajorVersion();
+        int flags = ClassWriter.COMPUTE_FRAMES;
+        if (majorVersion <= 49) {
+            // java 1.5 and less.
+            flags = ClassWriter.COMPUTE_MAXS;
+        }
+
+        // the unmodified methods are copied as is, the others are woven with recomputed frames.
+        final ClassWriter classWriter = new ASMClassWriter(this.classReader, this.pluginContext, flags,
+                this.classLoader);
+        final boolean invokeDynamic = ASMInterceptorCallSite.isEnabled(majorVersion);
+        this.classReader.accept(new WeavingClassVisitor(classWriter, invokeDynamic), ClassReader.SKIP_FRAMES);
+        return classWriter.toByteArray();
+    }
+
+    private class WeavingClassVisitor extends ClassVisitor {
+
+        private final boolean invokeDynamic;
+
+        private int fieldIndex = 0;
+
+        WeavingClassVisitor(ClassVisitor classVisitor, boolean invokeDynamic) {
+            super(Opcodes.ASM9, classVisitor);
+            this.invokeDynamic = invokeDynamic;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                String[] interfaces) {
+            // with the interfaces of the accessors.
+            super.visit(version, access, name, signature, superName, classNode.interfaces.toArray(new String[0]));
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+                Object value) {
+            if (fieldIndex < originalFieldCount) {
+                // a setter may have removed the final modifier.
+                access = classNode.fields.get(fieldIndex++).access;
+            }
+            return super.visitField(access, name, descriptor, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                String[] exceptions) {
+            final MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+            final ASMInterceptorChain interceptorChain = weavings.get(name.concat(descriptor));
+            if (interceptorChain == null || methodVisitor == null) {
+                return methodVisitor;
+            }
+            return new ASMInterceptorAdviceAdapter(methodVisitor, access, name, descriptor, interceptorChain,
+                    invokeDynamic);
+        }
+
+        @Override
+        public void visitEnd() {
+            final List<MethodNode> methods = classNode.methods;
+            for (int i = originalMethodCount; i < methods.size(); i++) {
+                methods.get(i).accept(this.cv);
+            }
+            super.visitEnd();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.common.exception.NotFoundInstrumentException;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.Objects;
+import java.util.jar.JarFile;
+
+/**
+ * Engine weaving the interceptors in a single pass over the class file, without building the class on the tree API.
+ * <p>
+ * {@link #getClass} only parses the class headers. The methods selected through {@code addInterceptor()} are
+ * recorded, and {@code toBytecode()} streams the original class file through the writer once, rewriting only the
+ * selected methods with {@link ASMInterceptorAdviceAdapter}.
+ */
+public class ASMStreamingEngine implements InstrumentEngine {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(ASMStreamingEngine.class.getCanonicalName());
+
+    private final Instrumentation instrumentation;
+
+    private final InterceptorDefinitionFactory factory;
+
+    public ASMStreamingEngine(Instrumentation instrumentation, InterceptorDefinitionFactory factory) {
+        this.instrumentation = instrumentation;
+        this.factory = factory;
+    }
+
+    @Override
+    public InstrumentClass getClass(InstrumentContext instrumentContext, ClassLoader classLoader,
+            String className, ProtectionDomain protectionDomain, byte[] classFileBuffer)
+            throws NotFoundInstrumentException {
+        Objects.requireNonNull(className, "className");
+
+        try {
+            byte[] bytes = classFileBuffer;
+            if (bytes == null) {
+                final String classPath = JavaAssistUtils.javaNameToJvmName(className).concat(".class");
+                bytes = ASMClassNodeAdapter.readStream(classPath, instrumentContext, protectionDomain, classLoader);
+                if (bytes == null) {
+                    return null;
+                }
+            }
+            return new ASMStreamingClass(instrumentContext, classLoader, protectionDomain, bytes, factory);
+        } catch (Exception e) {
+            throw new NotFoundInstrumentException(e);
+        }
+    }
+
+    @Override
+    public void appendToBootstrapClassPath(JarFile jarFile) {
+        Objects.requireNonNull(jarFile, "jarFile");
+        logger.info(String.format("appendToBootstrapClassPath:%s", jarFile.getName()));
+        instrumentation.appendToBootstrapClassLoaderSearch(jarFile);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder;
+import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.Sampled;
+import java.lang.reflect.Constructor;
+import java.util.Objects;
+
+/**
+ * {@link InstrumentMethod} of the {@link ASMStreamingEngine}, {@link #addInterceptor(Class)} only records the
+ * interceptor, it is woven by {@link ASMStreamingClass#toBytecode()}.
+ */
+public class ASMStreamingMethod implements InstrumentMethod {
+
+    private final InstrumentContext pluginContext;
+
+    private final ASMStreamingClass declaringClass;
+    // headers only, no instructions
+    private final ASMMethodNodeAdapter methodNode;
+
+    private final InterceptorDefinitionFactory factory;
+
+    public ASMStreamingMethod(InstrumentContext pluginContext, ASMStreamingClass declaringClass,
+            ASMMethodNodeAdapter methodNode, InterceptorDefinitionFactory factory) {
+        this.pluginContext = Objects.requireNonNull(pluginContext, "pluginContext");
+        this.declaringClass = Objects.requireNonNull(declaringClass, "declaringClass");
+        this.methodNode = Objects.requireNonNull(methodNode, "methodNode");
+        this.factory = Objects.requireNonNull(factory, "factory");
+    }
+
+    @Override
+    public String getName() {
+        return this.methodNode.getName();
+    }
+
+    @Override
+    public String[] getParameterTypes() {
+        return this.methodNode.getParameterTypes();
+    }
+
+    @Override
+    public String getReturnType() {
+        return this.methodNode.getReturnType();
+    }
+
+    @Override
+    public int getModifiers() {
+        return this.methodNode.getAccess();
+    }
+
+    @Override
+    public boolean isConstructor() {
+        return this.methodNode.isConstructor();
+    }
+
+    @Override
+    public int addInterceptor(Class<? extends Interceptor> interceptorClass) throws InstrumentException {
+        Objects.requireNonNull(interceptorClass, "interceptorClass");
+
+        assertInterceptable(interceptorClass);
+        // same as ASMMethod, a speculative transform only reserves the id
+        final boolean speculative = TransformRecorder.isSpeculative();
+        final Interceptor interceptor = speculative ? null : createInterceptor(interceptorClass);
+        // registered and recorded only once it is woven
+        final int interceptorId = InterceptorRegistry.reserveInterceptorId();
+        boolean woven = false;
+        try {
+            woven = this.declaringClass.addInterceptor(this.methodNode, interceptorClass, interceptorId);
+        } finally {
+            if (!woven) {
+                InterceptorRegistry.releaseInterceptorId(interceptorId);
+            }
+        }
+        if (!woven) {
+            return NOT_WOVEN;
+        }
+        if (!speculative && !InterceptorRegistry.setInterceptor(interceptorId, interceptor,
+                this.declaringClass.getClassLoader())) {
+            throw new PolarisAgentException("interceptor id already in use: " + interceptorId);
+        }
+        TransformRecorder.recordInterceptor(this.pluginContext, interceptorId, interceptorClass);
+        return interceptorId;
+    }
+
+    private void assertInterceptable(Class<? extends Interceptor> interceptorClass) throws InstrumentException {
+        final Class<?> interceptorBaseClass = this.factory.createInterceptorDefinition(interceptorClass)
+                .getInterceptorBaseClass();
+        // the original code of a constructor initializes the instance, it can not be skipped.
+        if (isConstructor() && interceptorBaseClass == ShortCircuitInterceptor.class) {
+            throw new InstrumentException(String.format(
+                    "ShortCircuitInterceptor can not intercept a constructor, class=%s, interceptor=%s",
+                    this.declaringClass.getName(), interceptorClass.getName()));
+        }
+        // an unsampled before() returns nothing, neither a short circuit nor the state its after() expects.
+        if (interceptorClass.isAnnotationPresent(Sampled.class) && (interceptorBaseClass
+                == ShortCircuitInterceptor.class || interceptorBaseClass == StatefulInterceptor.class
+                || interceptorBaseClass == StatefulInterceptor0.class)) {
+            throw new InstrumentException(String.format(
+                    "@Sampled is not supported by %s, class=%s, interceptor=%s", interceptorBaseClass.getSimpleName(),
+                    this.declaringClass.getName(), interceptorClass.getName()));
+        }
+    }
+
+    private Interceptor createInterceptor(Class<? extends Interceptor> interceptorClass) {
+        // exception handling.
+        try {
+            Constructor<? extends Interceptor> constructor = interceptorClass.getConstructor();
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new PolarisAgentException("Fail to invoke constructor: " + interceptorClass.getCanonicalName(), e);
+        }
+    }
+}
@@ -53,6 +53,12 @@ public class GuardInstrumentContext implements InstrumentContext {
         return instrumentContext.injectClass(targetClassLoader, className);
     }
 
+    @Override
+    public <T> Class<? extends T> loadPluginClass(String className) {
+        checkOpen();
+        return instrumentContext.loadPluginClass(className);
+    }
+
     @Override
     public InputStream getResourceAsStream(ClassLoader targetClassLoader, String classPath) {
         checkOpen();
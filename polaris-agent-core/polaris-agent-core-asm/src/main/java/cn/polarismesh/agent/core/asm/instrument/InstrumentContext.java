@@ -31,6 +31,12 @@ public interface InstrumentContext extends ClassInputStreamProvider {
 
     <T> Class<? extends T> injectClass(ClassLoader targetClassLoader, String className);
 
+    /**
+     * Resolves a class of the plugin through the plugin class loader, as the plugin itself refers to it, e.g. an
+     * interceptor class restored from the transform cache.
+     */
+    <T> Class<? extends T> loadPluginClass(String className);
+
     void addClassFileTransformer(ClassLoader classLoader, String targetClassName, TransformCallback transformCallback);
 
     void addClassFileTransformer(ClassLoader classLoader, String targetClassName, String transformCallbackClassName);
@@ -0,0 +1,231 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.concurrent.jsr166.ConcurrentWeakHashMap;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Type hierarchy lookups for {@link ASMClassWriter#getCommonSuperClass(String, String)}, shared by every transform.
+ * <p>
+ * Entries are kept per ClassLoader, weakly keyed so that an unloaded class loader releases its entries, and each
+ * class loader holds at most {@link #MAX_TYPES_PER_CLASS_LOADER} types, once it is full the cached types are kept and
+ * the others are looked up again on every use. A type already defined by the class loader or one of its parents is
+ * described from its {@code Class}, any other type is read once from the class file resource.
+ * <p>
+ * Loaded types are found through {@code ClassLoader.findLoadedClass}. On JDK 16+ it is only accessible if
+ * {@code java.base/java.lang} is opened to the agent, otherwise the cache logs it once and reads class files only.
+ */
+final class TypeHierarchyCache {
+
+    static final int MAX_TYPES_PER_CLASS_LOADER = 4096;
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(TypeHierarchyCache.class.getCanonicalName());
+
+    private static final TypeHierarchyCache INSTANCE = new TypeHierarchyCache();
+
+    private static final String OBJECT_CLASS_INTERNAL_NAME = "java/lang/Object";
+
+    private static final String[] EMPTY_INTERFACES = new String[0];
+
+    private static final Method FIND_LOADED_CLASS = getFindLoadedClassMethod();
+
+    // cleared once findLoadedClass fails, from then on class files are read only
+    private final AtomicBoolean findLoadedClassEnabled = new AtomicBoolean(FIND_LOADED_CLASS != null);
+
+    private final ConcurrentMap<ClassLoader, ConcurrentMap<String, TypeInfo>> cache =
+            new ConcurrentWeakHashMap<ClassLoader, ConcurrentMap<String, TypeInfo>>();
+
+    private final ConcurrentMap<String, TypeInfo> bootstrapCache = new ConcurrentHashMap<String, TypeInfo>();
+
+    private TypeHierarchyCache() {
+    }
+
+    static TypeHierarchyCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static Method getFindLoadedClassMethod() {
+        try {
+            final Method method = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+            method.setAccessible(true);
+            return method;
+        } catch (Exception ex) {
+            logger.warn(String.format("ClassLoader.findLoadedClass not accessible, fall back to reading class files, "
+                    + "open java.base/java.lang to the agent to avoid it, cause:%s", ex));
+            return null;
+        }
+    }
+
+    /**
+     * @return null if the type can neither be found loaded nor read through the provider
+     */
+    TypeInfo getTypeInfo(ClassInputStreamProvider classInputStreamProvider, ClassLoader classLoader,
+            String classInternalName) {
+        Objects.requireNonNull(classInputStreamProvider, "classInputStreamProvider");
+        if (classInternalName == null) {
+            return null;
+        }
+        final ConcurrentMap<String, TypeInfo> types = getTypes(classLoader);
+        final TypeInfo cached = types.get(classInternalName);
+        if (cached != null) {
+            return cached;
+        }
+        TypeInfo typeInfo = findLoadedType(classLoader, classInternalName);
+        if (typeInfo == null) {
+            typeInfo = readType(classInputStreamProvider, classLoader, classInternalName);
+            if (typeInfo == null) {
+                // not cached, the class may become visible later
+                return null;
+            }
+        }
+        if (types.size() < MAX_TYPES_PER_CLASS_LOADER) {
+            types.put(classInternalName, typeInfo);
+        }
+        return typeInfo;
+    }
+
+    private TypeInfo findLoadedType(ClassLoader classLoader, String classInternalName) {
+        if (!findLoadedClassEnabled.get()) {
+            return null;
+        }
+        final String className = classInternalName.replace('/', '.');
+        for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent()) {
+            final Class<?> clazz;
+            try {
+                clazz = (Class<?>) FIND_LOADED_CLASS.invoke(cl, className);
+            } catch (Exception ex) {
+                if (findLoadedClassEnabled.compareAndSet(true, false)) {
+                    logger.warn(String.format("ClassLoader.findLoadedClass failed, fall back to reading class files, "
+                            + "classLoader=%s, cause:%s", cl, ex));
+                }
+                return null;
+            }
+            if (clazz != null) {
+                return newTypeInfo(clazz);
+            }
+        }
+        return null;
+    }
+
+    private static TypeInfo newTypeInfo(Class<?> clazz) {
+        final Class<?> superClass = clazz.getSuperclass();
+        final Class<?>[] interfaces = clazz.getInterfaces();
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceNames[i] = toInternalName(interfaces[i]);
+        }
+        final String superName;
+        if (superClass != null) {
+            superName = toInternalName(superClass);
+        } else if (clazz.isInterface()) {
+            // as recorded in the class file
+            superName = OBJECT_CLASS_INTERNAL_NAME;
+        } else {
+            superName = null;
+        }
+        return new TypeInfo(toInternalName(clazz), superName, interfaceNames, clazz.isInterface());
+    }
+
+    private static String toInternalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+    private static TypeInfo readType(ClassInputStreamProvider classInputStreamProvider, ClassLoader classLoader,
+            String classInternalName) {
+        final String classFileName = classInternalName.concat(".class");
+        InputStream in = null;
+        try {
+            in = classInputStreamProvider.getResourceAsStream(classLoader, classFileName);
+            if (in == null) {
+                return null;
+            }
+            final ClassReader classReader = new ClassReader(IOUtils.toByteArray(in));
+            final String[] interfaces = classReader.getInterfaces();
+            return new TypeInfo(classReader.getClassName(), classReader.getSuperName(),
+                    interfaces == null ? EMPTY_INTERFACES : interfaces,
+                    (classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+        } catch (Exception ex) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private ConcurrentMap<String, TypeInfo> getTypes(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapCache;
+        }
+        ConcurrentMap<String, TypeInfo> types = cache.get(classLoader);
+        if (types != null) {
+            return types;
+        }
+        types = new ConcurrentHashMap<String, TypeInfo>();
+        final ConcurrentMap<String, TypeInfo> exist = cache.putIfAbsent(classLoader, types);
+        if (exist != null) {
+            return exist;
+        }
+        return types;
+    }
+
+    static final class TypeInfo {
+
+        private final String className;
+
+        // null for java/lang/Object only
+        private final String superName;
+
+        private final String[] interfaces;
+
+        private final boolean isInterface;
+
+        private TypeInfo(String className, String superName, String[] interfaces, boolean isInterface) {
+            this.className = className;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        String getSuperName() {
+            return superName;
+        }
+
+        String[] getInterfaces() {
+            return interfaces;
+        }
+
+        boolean isInterface() {
+            return isInterface;
+        }
+    }
+}
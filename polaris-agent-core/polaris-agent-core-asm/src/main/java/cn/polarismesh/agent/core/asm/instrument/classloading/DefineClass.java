@@ -19,5 +19,5 @@ package cn.polarismesh.agent.core.asm.instrument.classloading;
 
 interface DefineClass {
 
-    Class<?> defineClass(ClassLoader classLoader, String className, byte[] b);
+    Class<?> defineClass(ClassLoader classLoader, String className, byte[] b, int off, int len);
 }
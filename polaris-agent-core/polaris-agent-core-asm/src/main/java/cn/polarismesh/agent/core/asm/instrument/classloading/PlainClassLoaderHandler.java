@@ -18,39 +18,44 @@
 package cn.polarismesh.agent.core.asm.instrument.classloading;
 
 import cn.polarismesh.agent.core.asm.concurrent.jsr166.ConcurrentWeakHashMap;
-import cn.polarismesh.agent.core.asm.instrument.classreading.SimpleClassMetadata;
-import cn.polarismesh.agent.core.asm.instrument.classreading.SimpleClassMetadataReader;
 import cn.polarismesh.agent.core.asm.instrument.plugin.PluginConfig;
 import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
 import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
-import cn.polarismesh.agent.core.common.utils.ClassLoadingChecker;
-import cn.polarismesh.agent.core.common.utils.ExtensionFilter;
-import cn.polarismesh.agent.core.common.utils.FileBinary;
 import cn.polarismesh.agent.core.common.utils.JarReader;
 import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 public class PlainClassLoaderHandler implements ClassInjector {
 
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
     private final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE.getLogger(getClass().getName());
 
+    // never closed, read for the lifetime of the agent like the plugin jar itself
     private final JarReader pluginJarReader;
 
     private final ConcurrentMap<ClassLoader, ClassLoaderAttachment> classLoaderAttachment = new ConcurrentWeakHashMap<ClassLoader, ClassLoaderAttachment>();
 
-
     private final PluginConfig pluginConfig;
 
+    // null for the one of the running JVM, looked up on the first define
+    private final DefineClass defineClass;
+
     public PlainClassLoaderHandler(PluginConfig pluginConfig) {
+        this(pluginConfig, null);
+    }
+
+    PlainClassLoaderHandler(PluginConfig pluginConfig, DefineClass defineClass) {
         this.pluginConfig = Objects.requireNonNull(pluginConfig, "pluginConfig");
+        this.defineClass = defineClass;
 
         this.pluginJarReader = new JarReader(pluginConfig.getPluginJarFile());
     }
@@ -82,7 +87,6 @@ public class PlainClassLoaderHandler implements ClassInjector {
                 return targetClassLoader.getResourceAsStream(internalName);
             }
 
-            getClassLoaderAttachment(targetClassLoader, internalName);
             final InputStream inputStream = getPluginInputStream(internalName);
             if (inputStream != null) {
                 return inputStream;
@@ -108,9 +112,8 @@ public class PlainClassLoaderHandler implements ClassInjector {
 
     private Class<?> injectClass0(ClassLoader classLoader, String className) throws IllegalArgumentException {
         logger.info(String.format("Inject class className:%s cl:%s", className, classLoader));
-        final String pluginJarPath = pluginConfig.getPluginJarURLExternalForm();
-        final ClassLoaderAttachment attachment = getClassLoaderAttachment(classLoader, pluginJarPath);
-        final Class<?> findClazz = attachment.getClass(className);
+        final ClassLoaderAttachment attachment = getClassLoaderAttachment(classLoader);
+        final Class<?> findClazz = getClass(classLoader, attachment, className);
         if (findClazz != null) {
             return findClazz;
         }
@@ -124,6 +127,16 @@ public class PlainClassLoaderHandler implements ClassInjector {
     private InputStream getPluginInputStream(String classPath) throws IllegalArgumentException {
         logger.info(String.format("get input stream className:%s", classPath));
         try {
+            if (classPath.endsWith(CLASS_FILE_EXTENSION)) {
+                final PluginJarIndex pluginJarIndex = getPluginJarIndex();
+                final String className = JavaAssistUtils.jvmNameToJavaName(
+                        classPath.substring(0, classPath.length() - CLASS_FILE_EXTENSION.length()));
+                final int classId = pluginJarIndex.getClassId(className);
+                if (classId != PluginJarIndex.NOT_FOUND) {
+                    return new ByteArrayInputStream(pluginJarIndex.getArena(), pluginJarIndex.getOffset(classId),
+                            pluginJarIndex.getLength(classId));
+                }
+            }
             return pluginJarReader.getInputStream(classPath);
         } catch (Exception ex) {
             logger.warn(String.format("failed to read plugin jar: %s", pluginConfig.getPluginJarURLExternalForm()), ex);
@@ -133,18 +146,30 @@ public class PlainClassLoaderHandler implements ClassInjector {
         return null;
     }
 
-    private ClassLoaderAttachment getClassLoaderAttachment(ClassLoader classLoader, final String pluginJarPath) {
-        final ClassLoaderAttachment attachment = getClassLoaderAttachment(classLoader);
+    private PluginJarIndex getPluginJarIndex() {
+        return PluginJarIndex.get(pluginConfig.getPluginJarFile());
+    }
 
-        final PluginLock pluginLock = attachment.getPluginLock(pluginJarPath);
-        synchronized (pluginLock) {
-            if (!pluginLock.isLoaded()) {
-                pluginLock.setLoaded();
-                defineJarClass(classLoader, attachment);
+    // only the requested class and the plugin classes it depends on are defined.
+    private Class<?> getClass(ClassLoader classLoader, ClassLoaderAttachment attachment, String className) {
+        final Class<?> exist = attachment.getClass(className);
+        if (exist != null) {
+            return exist;
+        }
+        final PluginJarIndex pluginJarIndex = getPluginJarIndex();
+        final int classId = pluginJarIndex.getClassId(className);
+        if (classId == PluginJarIndex.NOT_FOUND) {
+            return null;
+        }
+        synchronized (attachment) {
+            final BitSet dependencies = resolveDependencies(pluginJarIndex, attachment, classId);
+            // class ids follow the define order.
+            for (int id = dependencies.nextSetBit(0); id >= 0; id = dependencies.nextSetBit(id + 1)) {
+                final Class<?> clazz = defineClass(classLoader, pluginJarIndex, id);
+                attachment.putClass(pluginJarIndex.getClassName(id), clazz);
             }
         }
-
-        return attachment;
+        return attachment.getClass(className);
     }
 
     private ClassLoaderAttachment getClassLoaderAttachment(ClassLoader classLoader) {
@@ -175,113 +200,55 @@ public class PlainClassLoaderHandler implements ClassInjector {
         }
     }
 
-    private void defineJarClass(ClassLoader classLoader, ClassLoaderAttachment attachment) {
-        List<FileBinary> fileBinaryList = readJar();
-
-        Map<String, SimpleClassMetadata> classEntryMap = parse(fileBinaryList);
-
-        for (Map.Entry<String, SimpleClassMetadata> entry : classEntryMap.entrySet()) {
-
-            final SimpleClassMetadata classMetadata = entry.getValue();
-            ClassLoadingChecker classLoadingChecker = new ClassLoadingChecker();
-            classLoadingChecker.isFirstLoad(classMetadata.getClassName());
-            define0(classLoader, attachment, classMetadata, classEntryMap, classLoadingChecker);
+    // the class and the plugin classes it depends on, which are not defined yet. Super types are resolved by the
+    // JVM while defining the class, the other referenced classes are resolved later through the class loader,
+    // which can not find them in the plugin jar.
+    private BitSet resolveDependencies(PluginJarIndex pluginJarIndex, ClassLoaderAttachment attachment,
+            int classId) {
+        final BitSet dependencies = new BitSet();
+        if (attachment.containsClass(pluginJarIndex.getClassName(classId))) {
+            return dependencies;
         }
-    }
-
-    private List<FileBinary> readJar() {
-        try {
-            return pluginJarReader.read(ExtensionFilter.CLASS_FILTER);
-        } catch (IOException ex) {
-            throw new RuntimeException(pluginConfig.getPluginJarURLExternalForm() + " read fail." + ex.getMessage(),
-                    ex);
-        }
-    }
-
-    private Map<String, SimpleClassMetadata> parse(List<FileBinary> fileBinaryList) {
-        Map<String, SimpleClassMetadata> parseMap = new HashMap<String, SimpleClassMetadata>();
-        for (FileBinary fileBinary : fileBinaryList) {
-            SimpleClassMetadata classNode = parseClass(fileBinary);
-            parseMap.put(classNode.getClassName(), classNode);
+        final Deque<Integer> unresolved = new ArrayDeque<Integer>();
+        dependencies.set(classId);
+        unresolved.push(classId);
+        while (!unresolved.isEmpty()) {
+            final int current = unresolved.pop();
+            addDependencies(pluginJarIndex, attachment, pluginJarIndex.getSuperTypes(current), dependencies,
+                    unresolved);
+            addDependencies(pluginJarIndex, attachment, pluginJarIndex.getReferences(current), dependencies,
+                    unresolved);
         }
-        return parseMap;
-    }
-
-    private SimpleClassMetadata parseClass(FileBinary fileBinary) {
-        byte[] fileBinaryArray = fileBinary.getFileBinary();
-        SimpleClassMetadata classMetadata = SimpleClassMetadataReader.readSimpleClassMetadata(fileBinaryArray);
-        return classMetadata;
+        return dependencies;
     }
 
-    private void define0(final ClassLoader classLoader, ClassLoaderAttachment attachment,
-            SimpleClassMetadata currentClass, Map<String, SimpleClassMetadata> classMetaMap,
-            ClassLoadingChecker classLoadingChecker) {
-        if ("java.lang.Object".equals(currentClass.getClassName())) {
-            return;
-        }
-        if (attachment.containsClass(currentClass.getClassName())) {
-            return;
-        }
-
-        final String superName = currentClass.getSuperClassName();
-        if (!"java.lang.Object".equals(superName)) {
-            if (!isSkipClass(superName, classLoadingChecker)) {
-                SimpleClassMetadata superClassBinary = classMetaMap.get(superName);
-                define0(classLoader, attachment, superClassBinary, classMetaMap, classLoadingChecker);
-
+    private void addDependencies(PluginJarIndex pluginJarIndex, ClassLoaderAttachment attachment,
+            int[] classIds, BitSet dependencies, Deque<Integer> unresolved) {
+        for (int classId : classIds) {
+            if (dependencies.get(classId)) {
+                continue;
             }
-        }
-
-        final List<String> interfaceList = currentClass.getInterfaceNames();
-        for (String interfaceName : interfaceList) {
-            if (!isSkipClass(interfaceName, classLoadingChecker)) {
-                SimpleClassMetadata interfaceClassBinary = classMetaMap.get(interfaceName);
-                define0(classLoader, attachment, interfaceClassBinary, classMetaMap, classLoadingChecker);
+            final String className = pluginJarIndex.getClassName(classId);
+            if (!isPluginPackage(className) || attachment.containsClass(className)) {
+                continue;
             }
+            dependencies.set(classId);
+            unresolved.push(classId);
         }
-
-        final Class<?> clazz = defineClass(classLoader, currentClass);
-        attachment.putClass(currentClass.getClassName(), clazz);
     }
 
-    private Class<?> defineClass(ClassLoader classLoader, SimpleClassMetadata classMetadata) {
-        final String className = classMetadata.getClassName();
-        final byte[] classBytes = classMetadata.getClassBinary();
-        return DefineClassFactory
-                .getDefineClass().defineClass(classLoader, className, classBytes);
-    }
-
-    private boolean isSkipClass(final String className, final ClassLoadingChecker classLoadingChecker) {
-        if (!isPluginPackage(className)) {
-            return true;
-        }
-        if (!classLoadingChecker.isFirstLoad(className)) {
-            return true;
-        }
-
-        return false;
+    private Class<?> defineClass(ClassLoader classLoader, PluginJarIndex pluginJarIndex, int classId) {
+        final String className = pluginJarIndex.getClassName(classId);
+        final DefineClass defineClass = this.defineClass != null ? this.defineClass
+                : DefineClassFactory.getDefineClass();
+        return defineClass.defineClass(classLoader, className, pluginJarIndex.getArena(),
+                pluginJarIndex.getOffset(classId), pluginJarIndex.getLength(classId));
     }
 
     private class ClassLoaderAttachment {
 
-        private final ConcurrentMap<String, PluginLock> pluginLock = new ConcurrentHashMap<String, PluginLock>();
-
         private final ConcurrentMap<String, Class<?>> classCache = new ConcurrentHashMap<String, Class<?>>();
 
-        public PluginLock getPluginLock(String jarFile) {
-            final PluginLock exist = this.pluginLock.get(jarFile);
-            if (exist != null) {
-                return exist;
-            }
-
-            final PluginLock newPluginLock = new PluginLock();
-            final PluginLock old = this.pluginLock.putIfAbsent(jarFile, newPluginLock);
-            if (old != null) {
-                return old;
-            }
-            return newPluginLock;
-        }
-
         public void putClass(String className, Class<?> clazz) {
             final Class<?> duplicatedClass = this.classCache.putIfAbsent(className, clazz);
             if (duplicatedClass != null) {
@@ -300,18 +267,4 @@ public class PlainClassLoaderHandler implements ClassInjector {
         }
     }
 
-    private static class PluginLock {
-
-        private boolean loaded = false;
-
-        public boolean isLoaded() {
-            return this.loaded;
-        }
-
-        public void setLoaded() {
-            this.loaded = true;
-        }
-
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.classloading;
+
+import cn.polarismesh.agent.core.asm.instrument.classreading.SimpleClassMetadata;
+import cn.polarismesh.agent.core.asm.instrument.classreading.SimpleClassMetadataReader;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.ExtensionFilter;
+import cn.polarismesh.agent.core.common.utils.FileBinary;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import cn.polarismesh.agent.core.common.utils.JarReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarFile;
+
+/**
+ * Immutable index of the classes of a plugin jar, built once per jar and shared by every class loader the plugin is
+ * injected into. The class files are kept in a single byte arena, the classes are numbered in define order: a super
+ * type always has a smaller number than its sub types.
+ */
+final class PluginJarIndex {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(PluginJarIndex.class.getCanonicalName());
+
+    private static final ConcurrentMap<String, PluginJarIndex> indexes =
+            new ConcurrentHashMap<String, PluginJarIndex>();
+
+    private static final int[] EMPTY_DEPENDENCIES = new int[0];
+
+    static final int NOT_FOUND = -1;
+
+    private final byte[] arena;
+
+    private final int[] offsets;
+
+    private final int[] lengths;
+
+    private final String[] classNames;
+
+    private final Map<String, Integer> classIds;
+
+    // in jar super class and interfaces.
+    private final int[][] superTypes;
+
+    // in jar classes referenced by the class file, super types excluded.
+    private final int[][] references;
+
+    static PluginJarIndex get(JarFile pluginJar) {
+        Objects.requireNonNull(pluginJar, "pluginJar");
+        final String key = pluginJar.getName();
+        final PluginJarIndex exist = indexes.get(key);
+        if (exist != null) {
+            return exist;
+        }
+        synchronized (indexes) {
+            final PluginJarIndex old = indexes.get(key);
+            if (old != null) {
+                return old;
+            }
+            final PluginJarIndex newIndex = build(pluginJar);
+            indexes.put(key, newIndex);
+            return newIndex;
+        }
+    }
+
+    private static PluginJarIndex build(JarFile pluginJar) {
+        final long start = System.currentTimeMillis();
+        final List<FileBinary> fileBinaryList;
+        final JarReader jarReader = new JarReader(pluginJar);
+        try {
+            fileBinaryList = jarReader.read(ExtensionFilter.CLASS_FILTER);
+        } catch (IOException ex) {
+            throw new RuntimeException(pluginJar.getName() + " read fail." + ex.getMessage(), ex);
+        } finally {
+            IOUtils.closeQuietly(jarReader);
+        }
+        final Map<String, SimpleClassMetadata> classMetadataMap = new HashMap<String, SimpleClassMetadata>();
+        for (FileBinary fileBinary : fileBinaryList) {
+            if (fileBinary.getFileName().startsWith("META-INF/")) {
+                continue;
+            }
+            final SimpleClassMetadata classMetadata = SimpleClassMetadataReader
+                    .readSimpleClassMetadata(fileBinary.getFileBinary());
+            classMetadataMap.put(classMetadata.getClassName(), classMetadata);
+        }
+
+        final List<SimpleClassMetadata> defineOrder = new ArrayList<SimpleClassMetadata>(classMetadataMap.size());
+        final Map<String, Integer> classIds = new HashMap<String, Integer>();
+        for (SimpleClassMetadata classMetadata : classMetadataMap.values()) {
+            addInDefineOrder(classMetadata, classMetadataMap, classIds, defineOrder);
+        }
+        final PluginJarIndex index = new PluginJarIndex(defineOrder, classIds);
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("plugin jar indexed. jar:%s classes:%d bytes:%d elapsed:%dms",
+                    pluginJar.getName(), index.classNames.length, index.arena.length,
+                    System.currentTimeMillis() - start));
+        }
+        return index;
+    }
+
+    // depth first over the super types, the class is numbered after all of them.
+    private static void addInDefineOrder(SimpleClassMetadata classMetadata,
+            Map<String, SimpleClassMetadata> classMetadataMap, Map<String, Integer> classIds,
+            List<SimpleClassMetadata> defineOrder) {
+        if (classIds.containsKey(classMetadata.getClassName())) {
+            return;
+        }
+        final SimpleClassMetadata superClass = getSuperClass(classMetadata, classMetadataMap);
+        if (superClass != null) {
+            addInDefineOrder(superClass, classMetadataMap, classIds, defineOrder);
+        }
+        for (String interfaceName : classMetadata.getInterfaceNames()) {
+            final SimpleClassMetadata superInterface = classMetadataMap.get(interfaceName);
+            if (superInterface != null) {
+                addInDefineOrder(superInterface, classMetadataMap, classIds, defineOrder);
+            }
+        }
+        classIds.put(classMetadata.getClassName(), defineOrder.size());
+        defineOrder.add(classMetadata);
+    }
+
+    private static SimpleClassMetadata getSuperClass(SimpleClassMetadata classMetadata,
+            Map<String, SimpleClassMetadata> classMetadataMap) {
+        final String superClassName = classMetadata.getSuperClassName();
+        if (superClassName == null) {
+            return null;
+        }
+        return classMetadataMap.get(superClassName);
+    }
+
+    private PluginJarIndex(List<SimpleClassMetadata> defineOrder, Map<String, Integer> classIds) {
+        final int size = defineOrder.size();
+        int arenaSize = 0;
+        for (SimpleClassMetadata classMetadata : defineOrder) {
+            arenaSize += classMetadata.getClassBinary().length;
+        }
+        this.arena = new byte[arenaSize];
+        this.offsets = new int[size];
+        this.lengths = new int[size];
+        this.classNames = new String[size];
+        this.classIds = classIds;
+        this.superTypes = new int[size][];
+        this.references = new int[size][];
+
+        int offset = 0;
+        for (int id = 0; id < size; id++) {
+            final SimpleClassMetadata classMetadata = defineOrder.get(id);
+            final byte[] classBinary = classMetadata.getClassBinary();
+            System.arraycopy(classBinary, 0, this.arena, offset, classBinary.length);
+            this.offsets[id] = offset;
+            this.lengths[id] = classBinary.length;
+            offset += classBinary.length;
+            this.classNames[id] = classMetadata.getClassName();
+
+            final List<String> superTypeNames = new ArrayList<String>(classMetadata.getInterfaceNames());
+            if (classMetadata.getSuperClassName() != null) {
+                superTypeNames.add(classMetadata.getSuperClassName());
+            }
+            this.superTypes[id] = toClassIds(superTypeNames, classIds);
+            final List<String> referencedClassNames = new ArrayList<String>(
+                    classMetadata.getReferencedClassNames());
+            referencedClassNames.removeAll(superTypeNames);
+            this.references[id] = toClassIds(referencedClassNames, classIds);
+        }
+    }
+
+    private static int[] toClassIds(List<String> classNames, Map<String, Integer> classIds) {
+        final List<Integer> ids = new ArrayList<Integer>(classNames.size());
+        for (String className : classNames) {
+            final Integer id = classIds.get(className);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return EMPTY_DEPENDENCIES;
+        }
+        final int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the id of the class, or {@link #NOT_FOUND} if the jar does not contain it
+     */
+    int getClassId(String className) {
+        final Integer id = classIds.get(className);
+        if (id == null) {
+            return NOT_FOUND;
+        }
+        return id;
+    }
+
+    String getClassName(int classId) {
+        return classNames[classId];
+    }
+
+    int[] getSuperTypes(int classId) {
+        return superTypes[classId];
+    }
+
+    int[] getReferences(int classId) {
+        return references[classId];
+    }
+
+    byte[] getArena() {
+        return arena;
+    }
+
+    int getOffset(int classId) {
+        return offsets[classId];
+    }
+
+    int getLength(int classId) {
+        return lengths[classId];
+    }
+}
@@ -43,9 +43,9 @@ final class ReflectionDefineClass implements DefineClass {
     }
 
     @Override
-    public final Class<?> defineClass(ClassLoader classLoader, String name, byte[] bytes) {
+    public final Class<?> defineClass(ClassLoader classLoader, String name, byte[] bytes, int off, int len) {
         try {
-            return (Class<?>) DEFINE_CLASS.invoke(classLoader, name, bytes, 0, bytes.length);
+            return (Class<?>) DEFINE_CLASS.invoke(classLoader, name, bytes, off, len);
         } catch (IllegalAccessException | InvocationTargetException e) {
             throw handleDefineClassFail(classLoader, name, e);
         }
@@ -35,11 +35,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
 
 public class ClassReaderWrapper {
 
@@ -120,6 +126,35 @@ public class ClassReaderWrapper {
         return this.classReader.b;
     }
 
+    /**
+     * Internal names of the classes referenced by the class file, from the constant pool, descriptors, signatures,
+     * annotations and stack map frames. Array types are reported by their element type.
+     */
+    public List<String> getReferencedClassInternalNames() {
+        final String className = this.classReader.getClassName();
+        final Set<String> referencedClassNames = new LinkedHashSet<>();
+        final Remapper collector = new Remapper() {
+            @Override
+            public String map(String internalName) {
+                if (internalName.charAt(0) != '[' && !internalName.equals(className)) {
+                    referencedClassNames.add(internalName);
+                }
+                return internalName;
+            }
+        };
+        // the remapper only visits the method bodies the delegate asks for.
+        final ClassVisitor classVisitor = new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                    String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                };
+            }
+        };
+        this.classReader.accept(new ClassRemapper(classVisitor, collector), ClassReader.SKIP_DEBUG);
+        return new ArrayList<>(referencedClassNames);
+    }
+
     public List<String> getAnnotationInternalNames() {
         return this.annotationInternalNames;
     }
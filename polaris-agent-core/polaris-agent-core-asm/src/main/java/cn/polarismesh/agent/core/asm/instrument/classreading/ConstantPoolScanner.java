@@ -0,0 +1,452 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.classreading;
+
+/**
+ * Allocation free scanner over the constant pool of a raw class file.
+ * <p>
+ * Every method walks the buffer in place, no {@code ClassReader} or {@code ClassNode} is created. Utf8 entries are
+ * compared against pre-encoded (modified UTF-8) byte arrays, see {@link #encode(String)}. Only
+ * {@link #readSuperTypes(byte[])} allocates, the names it returns. A malformed buffer never throws, it simply does
+ * not match.
+ */
+public final class ConstantPoolScanner {
+
+    public static final int NOT_FOUND = 0;
+
+    private static final int CONSTANT_POOL_OFFSET = 10;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = encode("RuntimeVisibleAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS = encode("RuntimeInvisibleAnnotations");
+
+    private ConstantPoolScanner() {
+    }
+
+    /**
+     * Encodes the given value the way the class file stores it in a CONSTANT_Utf8_info entry.
+     */
+    public static byte[] encode(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        final byte[] bytes = new byte[length];
+        int position = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[position++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                bytes[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return constant pool index of the first Utf8 entry equal to {@code utf8}, or {@link #NOT_FOUND}
+     */
+    public static int findUtf8(byte[] classFileBuffer, byte[] utf8) {
+        try {
+            final int count = readUnsignedShort(classFileBuffer, CONSTANT_POOL_OFFSET - 2);
+            int offset = CONSTANT_POOL_OFFSET;
+            for (int index = 1; index < count; index++) {
+                final int tag = classFileBuffer[offset] & 0xFF;
+                if (tag == CONSTANT_UTF8) {
+                    final int length = readUnsignedShort(classFileBuffer, offset + 1);
+                    if (length == utf8.length && regionEquals(classFileBuffer, offset + 3, utf8)) {
+                        return index;
+                    }
+                } else if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    index++;
+                }
+                offset = nextEntry(classFileBuffer, offset, tag);
+            }
+        } catch (RuntimeException ignore) {
+            // malformed class file
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @return {@code true} if a Utf8 entry contains {@code fragment} preceded by a descriptor boundary, e.g. a type
+     * descriptor {@code Lcom/foo/Bar;} inside a method descriptor or a generic signature
+     */
+    public static boolean containsDescriptor(byte[] classFileBuffer, byte[] fragment) {
+        try {
+            final int count = readUnsignedShort(classFileBuffer, CONSTANT_POOL_OFFSET - 2);
+            int offset = CONSTANT_POOL_OFFSET;
+            for (int index = 1; index < count; index++) {
+                final int tag = classFileBuffer[offset] & 0xFF;
+                if (tag == CONSTANT_UTF8) {
+                    final int length = readUnsignedShort(classFileBuffer, offset + 1);
+                    if (containsDescriptor(classFileBuffer, offset + 3, length, fragment)) {
+                        return true;
+                    }
+                } else if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    index++;
+                }
+                offset = nextEntry(classFileBuffer, offset, tag);
+            }
+        } catch (RuntimeException ignore) {
+            // malformed class file
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if a CONSTANT_Class_info entry points to the Utf8 entry at {@code utf8Index}
+     */
+    public static boolean hasClassConstant(byte[] classFileBuffer, int utf8Index) {
+        return hasReference(classFileBuffer, CONSTANT_CLASS, utf8Index);
+    }
+
+    /**
+     * @return {@code true} if a CONSTANT_String_info entry points to the Utf8 entry at {@code utf8Index}
+     */
+    public static boolean hasStringConstant(byte[] classFileBuffer, int utf8Index) {
+        return hasReference(classFileBuffer, CONSTANT_STRING, utf8Index);
+    }
+
+    /**
+     * @return {@code true} if the class level RuntimeVisibleAnnotations / RuntimeInvisibleAnnotations attributes
+     * contain an annotation whose type descriptor is the Utf8 entry at {@code typeUtf8Index}
+     */
+    public static boolean hasClassAnnotation(byte[] classFileBuffer, int typeUtf8Index) {
+        if (typeUtf8Index == NOT_FOUND) {
+            return false;
+        }
+        final int visible = findUtf8(classFileBuffer, RUNTIME_VISIBLE_ANNOTATIONS);
+        final int invisible = findUtf8(classFileBuffer, RUNTIME_INVISIBLE_ANNOTATIONS);
+        if (visible == NOT_FOUND && invisible == NOT_FOUND) {
+            return false;
+        }
+        try {
+            int offset = constantPoolEnd(classFileBuffer);
+            // access_flags, this_class, super_class
+            offset += 6;
+            final int interfacesCount = readUnsignedShort(classFileBuffer, offset);
+            offset += 2 + interfacesCount * 2;
+            // fields, methods
+            for (int member = 0; member < 2; member++) {
+                final int membersCount = readUnsignedShort(classFileBuffer, offset);
+                offset += 2;
+                for (int i = 0; i < membersCount; i++) {
+                    // access_flags, name_index, descriptor_index
+                    offset = skipAttributes(classFileBuffer, offset + 6);
+                }
+            }
+            final int attributesCount = readUnsignedShort(classFileBuffer, offset);
+            offset += 2;
+            for (int i = 0; i < attributesCount; i++) {
+                final int nameIndex = readUnsignedShort(classFileBuffer, offset);
+                final int length = readInt(classFileBuffer, offset + 2);
+                final int start = offset + 6;
+                if ((nameIndex == visible || nameIndex == invisible) && hasAnnotation(classFileBuffer, start,
+                        typeUtf8Index)) {
+                    return true;
+                }
+                offset = start + length;
+            }
+        } catch (RuntimeException ignore) {
+            // malformed class file
+        }
+        return false;
+    }
+
+    /**
+     * @return internal names of the direct super types, the superclass first ({@code null} for {@code Object} and
+     * module-info) followed by the interfaces, or {@code null} if the class file is malformed
+     */
+    public static String[] readSuperTypes(byte[] classFileBuffer) {
+        try {
+            final int count = readUnsignedShort(classFileBuffer, CONSTANT_POOL_OFFSET - 2);
+            final int[] offsets = new int[count];
+            int offset = CONSTANT_POOL_OFFSET;
+            for (int index = 1; index < count; index++) {
+                offsets[index] = offset;
+                final int tag = classFileBuffer[offset] & 0xFF;
+                if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    index++;
+                }
+                offset = nextEntry(classFileBuffer, offset, tag);
+            }
+            // access_flags, this_class
+            offset += 4;
+            final int superClass = readUnsignedShort(classFileBuffer, offset);
+            final int interfacesCount = readUnsignedShort(classFileBuffer, offset + 2);
+            final String[] superTypes = new String[1 + interfacesCount];
+            if (superClass != 0) {
+                superTypes[0] = readClassName(classFileBuffer, offsets, superClass);
+            }
+            for (int i = 0; i < interfacesCount; i++) {
+                superTypes[1 + i] = readClassName(classFileBuffer, offsets,
+                        readUnsignedShort(classFileBuffer, offset + 4 + i * 2));
+            }
+            return superTypes;
+        } catch (RuntimeException ignore) {
+            // malformed class file
+            return null;
+        }
+    }
+
+    private static String readClassName(byte[] classFileBuffer, int[] offsets, int classIndex) {
+        final int classOffset = offsets[classIndex];
+        if ((classFileBuffer[classOffset] & 0xFF) != CONSTANT_CLASS) {
+            throw new IllegalArgumentException("not a class constant:" + classIndex);
+        }
+        final int utf8Offset = offsets[readUnsignedShort(classFileBuffer, classOffset + 1)];
+        if ((classFileBuffer[utf8Offset] & 0xFF) != CONSTANT_UTF8) {
+            throw new IllegalArgumentException("not a utf8 constant:" + classIndex);
+        }
+        return decode(classFileBuffer, utf8Offset + 3, readUnsignedShort(classFileBuffer, utf8Offset + 1));
+    }
+
+    private static String decode(byte[] classFileBuffer, int start, int length) {
+        final char[] chars = new char[length];
+        int charsLength = 0;
+        final int end = start + length;
+        for (int i = start; i < end; ) {
+            final int b = classFileBuffer[i++] & 0xFF;
+            if ((b & 0x80) == 0) {
+                chars[charsLength++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[charsLength++] = (char) (((b & 0x1F) << 6) | (classFileBuffer[i++] & 0x3F));
+            } else {
+                chars[charsLength++] = (char) (((b & 0x0F) << 12) | ((classFileBuffer[i++] & 0x3F) << 6)
+                        | (classFileBuffer[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, charsLength);
+    }
+
+    private static boolean hasAnnotation(byte[] classFileBuffer, int offset, int typeUtf8Index) {
+        final int annotationsCount = readUnsignedShort(classFileBuffer, offset);
+        offset += 2;
+        for (int i = 0; i < annotationsCount; i++) {
+            if (readUnsignedShort(classFileBuffer, offset) == typeUtf8Index) {
+                return true;
+            }
+            offset = skipAnnotation(classFileBuffer, offset);
+        }
+        return false;
+    }
+
+    private static int skipAnnotation(byte[] classFileBuffer, int offset) {
+        // type_index
+        offset += 2;
+        final int pairsCount = readUnsignedShort(classFileBuffer, offset);
+        offset += 2;
+        for (int i = 0; i < pairsCount; i++) {
+            // element_name_index
+            offset = skipElementValue(classFileBuffer, offset + 2);
+        }
+        return offset;
+    }
+
+    private static int skipElementValue(byte[] classFileBuffer, int offset) {
+        final char tag = (char) (classFileBuffer[offset] & 0xFF);
+        offset += 1;
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 's':
+            case 'c':
+                return offset + 2;
+            case 'e':
+                return offset + 4;
+            case '@':
+                return skipAnnotation(classFileBuffer, offset);
+            case '[':
+                final int valuesCount = readUnsignedShort(classFileBuffer, offset);
+                offset += 2;
+                for (int i = 0; i < valuesCount; i++) {
+                    offset = skipElementValue(classFileBuffer, offset);
+                }
+                return offset;
+            default:
+                throw new IllegalArgumentException("unknown element_value tag:" + tag);
+        }
+    }
+
+    private static int skipAttributes(byte[] classFileBuffer, int offset) {
+        final int attributesCount = readUnsignedShort(classFileBuffer, offset);
+        offset += 2;
+        for (int i = 0; i < attributesCount; i++) {
+            offset += 6 + readInt(classFileBuffer, offset + 2);
+        }
+        return offset;
+    }
+
+    private static boolean hasReference(byte[] classFileBuffer, int referenceTag, int utf8Index) {
+        if (utf8Index == NOT_FOUND) {
+            return false;
+        }
+        try {
+            final int count = readUnsignedShort(classFileBuffer, CONSTANT_POOL_OFFSET - 2);
+            int offset = CONSTANT_POOL_OFFSET;
+            for (int index = 1; index < count; index++) {
+                final int tag = classFileBuffer[offset] & 0xFF;
+                if (tag == referenceTag && readUnsignedShort(classFileBuffer, offset + 1) == utf8Index) {
+                    return true;
+                } else if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    index++;
+                }
+                offset = nextEntry(classFileBuffer, offset, tag);
+            }
+        } catch (RuntimeException ignore) {
+            // malformed class file
+        }
+        return false;
+    }
+
+    private static int constantPoolEnd(byte[] classFileBuffer) {
+        final int count = readUnsignedShort(classFileBuffer, CONSTANT_POOL_OFFSET - 2);
+        int offset = CONSTANT_POOL_OFFSET;
+        for (int index = 1; index < count; index++) {
+            final int tag = classFileBuffer[offset] & 0xFF;
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                index++;
+            }
+            offset = nextEntry(classFileBuffer, offset, tag);
+        }
+        return offset;
+    }
+
+    private static int nextEntry(byte[] classFileBuffer, int offset, int tag) {
+        switch (tag) {
+            case CONSTANT_UTF8:
+                return offset + 3 + readUnsignedShort(classFileBuffer, offset + 1);
+            case CONSTANT_CLASS:
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return offset + 3;
+            case CONSTANT_METHOD_HANDLE:
+                return offset + 4;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return offset + 5;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return offset + 9;
+            default:
+                throw new IllegalArgumentException("unknown constant pool tag:" + tag);
+        }
+    }
+
+    private static boolean containsDescriptor(byte[] classFileBuffer, int start, int length, byte[] fragment) {
+        final int last = start + length - fragment.length;
+        for (int i = start; i <= last; i++) {
+            if (classFileBuffer[i] == fragment[0] && regionEquals(classFileBuffer, i, fragment)
+                    && (i == start || isDescriptorBoundary(classFileBuffer[i - 1]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDescriptorBoundary(byte b) {
+        switch (b) {
+            case '(':
+            case ')':
+            case ';':
+            case '[':
+            case '<':
+            case '>':
+            case ':':
+            case '^':
+            case '+':
+            case '-':
+            case '*':
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 'V':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean regionEquals(byte[] classFileBuffer, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (classFileBuffer[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] classFileBuffer, int offset) {
+        return ((classFileBuffer[offset] & 0xFF) << 8) | (classFileBuffer[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] classFileBuffer, int offset) {
+        return ((classFileBuffer[offset] & 0xFF) << 24) | ((classFileBuffer[offset + 1] & 0xFF) << 16)
+                | ((classFileBuffer[offset + 2] & 0xFF) << 8) | (classFileBuffer[offset + 3] & 0xFF);
+    }
+}
@@ -33,16 +33,20 @@ public class DefaultSimpleClassMetadata implements SimpleClassMetadata {
 
     private final List<String> interfaceNames;
 
+    private final List<String> referencedClassNames;
+
     private final byte[] classBinary;
 
     public DefaultSimpleClassMetadata(final int version, final int accessFlag, final String classInternalName,
-            final String superClassInternalName, final List<String> interfaceInternalNames, final byte[] classBinary) {
+            final String superClassInternalName, final List<String> interfaceInternalNames,
+            final List<String> referencedClassInternalNames, final byte[] classBinary) {
         this.version = version;
         this.accessFlag = accessFlag;
         this.className = JavaAssistUtils.jvmNameToJavaName(classInternalName);
 
         this.superClassName = defaultSuperClassName(superClassInternalName);
-        this.interfaceNames = defaultInterfaceName(interfaceInternalNames);
+        this.interfaceNames = defaultClassNames(interfaceInternalNames);
+        this.referencedClassNames = defaultClassNames(referencedClassInternalNames);
 
         this.classBinary = classBinary;
     }
@@ -54,11 +58,11 @@ public class DefaultSimpleClassMetadata implements SimpleClassMetadata {
         return JavaAssistUtils.jvmNameToJavaName(superClassInternalName);
     }
 
-    private List<String> defaultInterfaceName(List<String> interfaceInternalNames) {
-        if (interfaceInternalNames == null) {
+    private List<String> defaultClassNames(List<String> classInternalNames) {
+        if (classInternalNames == null) {
             return Collections.emptyList();
         }
-        return Collections.unmodifiableList(JavaAssistUtils.jvmNameToJavaName(interfaceInternalNames));
+        return Collections.unmodifiableList(JavaAssistUtils.jvmNameToJavaName(classInternalNames));
     }
 
     @Override
@@ -85,6 +89,11 @@ public class DefaultSimpleClassMetadata implements SimpleClassMetadata {
         return interfaceNames;
     }
 
+    @Override
+    public List<String> getReferencedClassNames() {
+        return referencedClassNames;
+    }
+
     @Override
     public byte[] getClassBinary() {
         return classBinary;
@@ -31,5 +31,7 @@ public interface SimpleClassMetadata {
 
     List<String> getInterfaceNames();
 
+    List<String> getReferencedClassNames();
+
     byte[] getClassBinary();
 }
\ No newline at end of file
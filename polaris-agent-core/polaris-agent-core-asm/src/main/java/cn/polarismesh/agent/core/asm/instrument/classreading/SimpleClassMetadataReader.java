@@ -30,7 +30,8 @@ public class SimpleClassMetadataReader {
     SimpleClassMetadataReader(final ClassReaderWrapper classReader) {
         this.simpleClassMetadata = new DefaultSimpleClassMetadata(classReader.getVersion(), classReader.getAccess(),
                 classReader.getClassInternalName(), classReader.getSuperClassInternalName(),
-                classReader.getInterfaceInternalNames(), classReader.getClassBinary());
+                classReader.getInterfaceInternalNames(), classReader.getReferencedClassInternalNames(),
+                classReader.getClassBinary());
     }
 
     public SimpleClassMetadata getSimpleClassMetadata() {
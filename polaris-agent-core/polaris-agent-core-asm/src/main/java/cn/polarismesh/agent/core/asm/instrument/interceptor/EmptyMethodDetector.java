@@ -0,0 +1,167 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.interceptor;
+
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Tells whether an interceptor method does nothing, i.e. its body is a single {@code return}.
+ */
+final class EmptyMethodDetector {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(EmptyMethodDetector.class.getCanonicalName());
+
+    private EmptyMethodDetector() {
+    }
+
+    /**
+     * @return false if the method has code or its class file cannot be read
+     */
+    static boolean isEmpty(Method method) {
+        if (method == null) {
+            return false;
+        }
+        final Class<?> declaringClass = method.getDeclaringClass();
+        final ClassLoader classLoader = declaringClass.getClassLoader();
+        final String classPath = Type.getInternalName(declaringClass).concat(".class");
+        InputStream in = null;
+        try {
+            in = classLoader == null ? ClassLoader.getSystemResourceAsStream(classPath)
+                    : classLoader.getResourceAsStream(classPath);
+            if (in == null) {
+                return false;
+            }
+            final MethodFinder methodFinder = new MethodFinder(method.getName(), Type.getMethodDescriptor(method));
+            new ClassReader(IOUtils.toByteArray(in))
+                    .accept(methodFinder, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return methodFinder.empty;
+        } catch (Exception ex) {
+            logger.warn(String.format("fail to read %s, cause:%s", classPath, ex.getMessage()));
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static final class MethodFinder extends ClassVisitor {
+
+        private final String name;
+        private final String descriptor;
+
+        private boolean empty = false;
+
+        private MethodFinder(String name, String descriptor) {
+            super(Opcodes.ASM9);
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                String[] exceptions) {
+            if (!this.name.equals(name) || !this.descriptor.equals(descriptor)
+                    || (access & Opcodes.ACC_ABSTRACT) != 0) {
+                return null;
+            }
+            this.empty = true;
+            return new MethodVisitor(Opcodes.ASM9) {
+
+                @Override
+                public void visitInsn(int opcode) {
+                    if (opcode != Opcodes.RETURN) {
+                        empty = false;
+                    }
+                }
+
+                @Override
+                public void visitIntInsn(int opcode, int operand) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitVarInsn(int opcode, int var) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitTypeInsn(int opcode, String type) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                        boolean isInterface) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                        Object... bootstrapMethodArguments) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitJumpInsn(int opcode, Label label) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitLdcInsn(Object value) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitIincInsn(int var, int increment) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                    empty = false;
+                }
+
+                @Override
+                public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                    empty = false;
+                }
+            };
+        }
+    }
+}
@@ -19,10 +19,21 @@ package cn.polarismesh.agent.core.asm.instrument.interceptor;
 
 import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
 import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor1;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor2;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor3;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor4;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor5;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -32,6 +43,14 @@ public class InterceptorDefinitionFactory {
             .getLogger(InterceptorDefinitionFactory.class.getCanonicalName());
     private final List<TypeHandler> detectHandlers;
 
+    // the capture type is resolved from the class file, once per interceptor class.
+    private final ClassValue<InterceptorDefinition> interceptorDefinitions = new ClassValue<InterceptorDefinition>() {
+        @Override
+        protected InterceptorDefinition computeValue(Class<?> type) {
+            return createInterceptorDefinition0(type);
+        }
+    };
+
     public InterceptorDefinitionFactory() {
         this.detectHandlers = register();
     }
@@ -39,7 +58,21 @@ public class InterceptorDefinitionFactory {
     public InterceptorDefinition createInterceptorDefinition(
             Class<?> interceptorClazz) {
         Objects.requireNonNull(interceptorClazz, "interceptorClazz");
+        return interceptorDefinitions.get(interceptorClazz);
+    }
+
+    /**
+     * @return the interceptor types the instrumented code may invoke, in detection order
+     */
+    public List<Class<? extends Interceptor>> getInterceptorBaseClasses() {
+        final List<Class<? extends Interceptor>> interceptorBaseClasses = new ArrayList<Class<? extends Interceptor>>();
+        for (TypeHandler typeHandler : detectHandlers) {
+            interceptorBaseClasses.add(typeHandler.interceptorClazz);
+        }
+        return Collections.unmodifiableList(interceptorBaseClasses);
+    }
 
+    private InterceptorDefinition createInterceptorDefinition0(Class<?> interceptorClazz) {
         for (TypeHandler typeHandler : detectHandlers) {
             final InterceptorDefinition interceptorDefinition = typeHandler
                     .resolveType(interceptorClazz);
@@ -54,6 +87,19 @@ public class InterceptorDefinitionFactory {
     private List<TypeHandler> register() {
         final List<TypeHandler> typeHandlerList = new ArrayList<TypeHandler>();
 
+        // the fixed arity types extend Interceptor, they must be detected first.
+        addTypeHandler(typeHandlerList, Interceptor0.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, Interceptor1.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, Interceptor2.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, Interceptor3.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, Interceptor4.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, Interceptor5.class, InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, ShortCircuitInterceptor.class, "beforeInvoke", "after",
+                InterceptorType.ARRAY_ARGS);
+        addTypeHandler(typeHandlerList, StatefulInterceptor0.class, "beforeInvoke", "afterInvoke",
+                InterceptorType.BASIC);
+        addTypeHandler(typeHandlerList, StatefulInterceptor.class, "beforeInvoke", "afterInvoke",
+                InterceptorType.ARRAY_ARGS);
         addTypeHandler(typeHandlerList, Interceptor.class, InterceptorType.ARRAY_ARGS);
 
         return typeHandlerList;
@@ -61,24 +107,30 @@ public class InterceptorDefinitionFactory {
 
     private void addTypeHandler(List<TypeHandler> typeHandlerList, Class<? extends Interceptor> interceptorClazz,
             InterceptorType arrayArgs) {
-        final TypeHandler typeHandler = createInterceptorTypeHandler(interceptorClazz, arrayArgs);
+        addTypeHandler(typeHandlerList, interceptorClazz, "before", "after", arrayArgs);
+    }
+
+    private void addTypeHandler(List<TypeHandler> typeHandlerList, Class<? extends Interceptor> interceptorClazz,
+            String beforeMethodName, String afterMethodName, InterceptorType arrayArgs) {
+        final TypeHandler typeHandler = createInterceptorTypeHandler(interceptorClazz, beforeMethodName,
+                afterMethodName, arrayArgs);
         typeHandlerList.add(typeHandler);
     }
 
     private TypeHandler createInterceptorTypeHandler(Class<? extends Interceptor> interceptorClazz,
-            InterceptorType interceptorType) {
+            String beforeMethodName, String afterMethodName, InterceptorType interceptorType) {
         Objects.requireNonNull(interceptorClazz, "interceptorClazz");
         Objects.requireNonNull(interceptorType, "interceptorType");
 
-        final Method[] declaredMethods = interceptorClazz.getDeclaredMethods();
+        final Method[] declaredMethods = getAbstractMethods(interceptorClazz);
         if (declaredMethods.length != 2) {
             throw new RuntimeException("invalid Type");
         }
-        final String before = "before";
+        final String before = beforeMethodName;
         final Method beforeMethod = findMethodByName(declaredMethods, before);
         final Class<?>[] beforeParamList = beforeMethod.getParameterTypes();
 
-        final String after = "after";
+        final String after = afterMethodName;
         final Method afterMethod = findMethodByName(declaredMethods, after);
         final Class<?>[] afterParamList = afterMethod.getParameterTypes();
 
@@ -86,6 +138,17 @@ public class InterceptorDefinitionFactory {
     }
 
 
+    // default methods only bridge to the Interceptor contract.
+    private Method[] getAbstractMethods(Class<? extends Interceptor> interceptorClazz) {
+        final List<Method> abstractMethods = new ArrayList<Method>();
+        for (Method method : interceptorClazz.getDeclaredMethods()) {
+            if (!method.isDefault()) {
+                abstractMethods.add(method);
+            }
+        }
+        return abstractMethods.toArray(new Method[0]);
+    }
+
     private Method findMethodByName(Method[] declaredMethods, String methodName) {
         Method findMethod = null;
         int count = 0;
@@ -137,18 +200,44 @@ public class InterceptorDefinitionFactory {
         private InterceptorDefinition createInterceptorDefinition(
                 Class<? extends Interceptor> targetInterceptorClazz) {
 
-            final Method beforeMethod = searchMethod(targetInterceptorClazz, before, beforeParamList);
+            // the instrumented code invokes the methods of the interceptor type, an implementation may narrow the
+            // return type.
+            final Method beforeMethod = searchMethod(interceptorClazz, before, beforeParamList);
             if (beforeMethod == null) {
                 throw new RuntimeException(before + " method not found. " + Arrays.toString(beforeParamList));
             }
 
-            final Method afterMethod = searchMethod(targetInterceptorClazz, after, afterParamList);
+            final Method afterMethod = searchMethod(interceptorClazz, after, afterParamList);
             if (afterMethod == null) {
                 throw new RuntimeException(after + " method not found. " + Arrays.toString(afterParamList));
             }
 
+            final CaptureType captureType = resolveCaptureType(targetInterceptorClazz,
+                    searchMethod(targetInterceptorClazz, before, beforeParamList),
+                    searchMethod(targetInterceptorClazz, after, afterParamList));
             return new DefaultInterceptorDefinition(interceptorClazz, targetInterceptorClazz, interceptorType,
-                    CaptureType.AROUND, beforeMethod, afterMethod);
+                    captureType, beforeMethod, afterMethod);
+        }
+
+        // declared by @Capture, otherwise an empty before() or after() is not captured.
+        private CaptureType resolveCaptureType(Class<? extends Interceptor> targetInterceptorClazz,
+                Method beforeMethod, Method afterMethod) {
+            final Capture capture = targetInterceptorClazz.getAnnotation(Capture.class);
+            if (capture != null) {
+                return CaptureType.valueOf(capture.value().name());
+            }
+            final boolean before = !EmptyMethodDetector.isEmpty(beforeMethod);
+            final boolean after = !EmptyMethodDetector.isEmpty(afterMethod);
+            if (before && after) {
+                return CaptureType.AROUND;
+            }
+            if (before) {
+                return CaptureType.BEFORE;
+            }
+            if (after) {
+                return CaptureType.AFTER;
+            }
+            return CaptureType.NON;
         }
 
         private Method searchMethod(Class<?> interceptorClazz, String searchMethodName,
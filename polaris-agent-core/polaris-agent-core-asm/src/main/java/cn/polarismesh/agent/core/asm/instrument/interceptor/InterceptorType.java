@@ -18,5 +18,7 @@
 package cn.polarismesh.agent.core.asm.instrument.interceptor;
 
 public enum InterceptorType {
-    ARRAY_ARGS
+    ARRAY_ARGS,
+    // Object target, Object arg0 ... argN
+    BASIC
 }
@@ -0,0 +1,29 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.matcher;
+
+/**
+ * Matcher evaluated against the constant pool of the raw class file, before any {@code ClassNode} is built.
+ */
+public interface ConstantPoolMatcher extends Matcher {
+
+    /**
+     * Must not allocate on a miss and must not throw on a malformed buffer.
+     */
+    boolean matches(byte[] classFileBuffer);
+}
@@ -0,0 +1,75 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.matcher;
+
+import cn.polarismesh.agent.core.asm.instrument.classreading.ConstantPoolScanner;
+import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import java.util.Objects;
+
+/**
+ * Matches classes directly annotated with the given annotation type.
+ */
+public class DefaultAnnotationMatcher implements ConstantPoolMatcher {
+
+    private final String annotationClassName;
+
+    private final byte[] annotationDescriptor;
+
+    DefaultAnnotationMatcher(String annotationClassName) {
+        this.annotationClassName = Objects.requireNonNull(annotationClassName, "annotationClassName");
+        this.annotationDescriptor = ConstantPoolScanner
+                .encode("L" + JavaAssistUtils.javaNameToJvmName(annotationClassName) + ";");
+    }
+
+    public String getAnnotationClassName() {
+        return annotationClassName;
+    }
+
+    @Override
+    public boolean matches(byte[] classFileBuffer) {
+        final int typeIndex = ConstantPoolScanner.findUtf8(classFileBuffer, annotationDescriptor);
+        return ConstantPoolScanner.hasClassAnnotation(classFileBuffer, typeIndex);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DefaultAnnotationMatcher that = (DefaultAnnotationMatcher) o;
+
+        return annotationClassName.equals(that.annotationClassName);
+    }
+
+    @Override
+    public int hashCode() {
+        return annotationClassName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultAnnotationMatcher{");
+        sb.append(annotationClassName);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.matcher;
+
+import cn.polarismesh.agent.core.asm.instrument.classreading.ConstantPoolScanner;
+import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import java.util.Objects;
+
+/**
+ * Matches classes whose constant pool references the given type, either as a class constant (new, checkcast, method
+ * owner, ...) or inside a field / method descriptor or a generic signature.
+ */
+public class DefaultReferencedTypeMatcher implements ConstantPoolMatcher {
+
+    private final String className;
+
+    private final byte[] internalName;
+
+    private final byte[] descriptor;
+
+    DefaultReferencedTypeMatcher(String className) {
+        this.className = Objects.requireNonNull(className, "className");
+        final String classInternalName = JavaAssistUtils.javaNameToJvmName(className);
+        this.internalName = ConstantPoolScanner.encode(classInternalName);
+        this.descriptor = ConstantPoolScanner.encode("L" + classInternalName + ";");
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean matches(byte[] classFileBuffer) {
+        final int nameIndex = ConstantPoolScanner.findUtf8(classFileBuffer, internalName);
+        if (ConstantPoolScanner.hasClassConstant(classFileBuffer, nameIndex)) {
+            return true;
+        }
+        return ConstantPoolScanner.containsDescriptor(classFileBuffer, descriptor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DefaultReferencedTypeMatcher that = (DefaultReferencedTypeMatcher) o;
+
+        return className.equals(that.className);
+    }
+
+    @Override
+    public int hashCode() {
+        return className.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultReferencedTypeMatcher{");
+        sb.append(className);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.matcher;
+
+import cn.polarismesh.agent.core.asm.instrument.classreading.ConstantPoolScanner;
+import java.util.Objects;
+
+/**
+ * Matches classes that contain the given string literal.
+ */
+public class DefaultStringConstantMatcher implements ConstantPoolMatcher {
+
+    private final String value;
+
+    private final byte[] encodedValue;
+
+    DefaultStringConstantMatcher(String value) {
+        this.value = Objects.requireNonNull(value, "value");
+        this.encodedValue = ConstantPoolScanner.encode(value);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean matches(byte[] classFileBuffer) {
+        final int valueIndex = ConstantPoolScanner.findUtf8(classFileBuffer, encodedValue);
+        return ConstantPoolScanner.hasStringConstant(classFileBuffer, valueIndex);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DefaultStringConstantMatcher that = (DefaultStringConstantMatcher) o;
+
+        return value.equals(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultStringConstantMatcher{");
+        sb.append(value);
+        sb.append('}');
+        return sb.toString();
+    }
+}
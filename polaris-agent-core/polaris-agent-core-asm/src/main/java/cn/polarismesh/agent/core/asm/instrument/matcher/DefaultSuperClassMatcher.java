@@ -0,0 +1,61 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.matcher;
+
+import java.util.Objects;
+
+public class DefaultSuperClassMatcher implements SuperClassMatcher {
+
+    private final String superClassName;
+
+    DefaultSuperClassMatcher(String superClassName) {
+        this.superClassName = Objects.requireNonNull(superClassName, "superClassName");
+    }
+
+    @Override
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DefaultSuperClassMatcher that = (DefaultSuperClassMatcher) o;
+
+        return superClassName.equals(that.superClassName);
+    }
+
+    @Override
+    public int hashCode() {
+        return superClassName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultSuperClassMatcher{");
+        sb.append(superClassName);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -30,6 +30,26 @@ public final class Matchers {
     public static Matcher newMultiClassNameMatcher(List<String> classNameList) {
         return new DefaultMultiClassNameMatcher(classNameList);
     }
+
+    public static Matcher newSuperClassMatcher(String superClassName) {
+        return new DefaultSuperClassMatcher(superClassName);
+    }
+
+    public static Matcher newInterfaceMatcher(String interfaceName) {
+        return new DefaultInterfaceMatcher(interfaceName);
+    }
+
+    public static Matcher newAnnotationMatcher(String annotationClassName) {
+        return new DefaultAnnotationMatcher(annotationClassName);
+    }
+
+    public static Matcher newReferencedTypeMatcher(String className) {
+        return new DefaultReferencedTypeMatcher(className);
+    }
+
+    public static Matcher newStringConstantMatcher(String value) {
+        return new DefaultStringConstantMatcher(value);
+    }
 //
 //    public static Matcher newPackageBasedMatcher(String basePackageName) {
 //        return new DefaultPackageBasedMatcher(basePackageName);
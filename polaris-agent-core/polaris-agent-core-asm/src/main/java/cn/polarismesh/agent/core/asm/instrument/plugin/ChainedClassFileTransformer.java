@@ -0,0 +1,333 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.plugin;
+
+import cn.polarismesh.agent.core.asm.instrument.GuardInstrumentor;
+import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
+import cn.polarismesh.agent.core.asm.instrument.SharableInstrumentClass;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.extension.instrument.ClassFilter;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
+import cn.polarismesh.agent.core.extension.instrument.Instrumentor;
+import cn.polarismesh.agent.core.extension.instrument.MethodFilter;
+import cn.polarismesh.agent.core.extension.transform.TransformCallback;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Runs the transformers of several plugins registered for the same class name against one {@link InstrumentClass}.
+ * <p>
+ * The transformers run in plugin order. Their callbacks share the class, so the interceptors they add to the same
+ * method form one chain, woven in a single block, instead of the later ones being skipped as already intercepted.
+ * {@code toBytecode()} of the shared class is deferred until every callback has run. Bytes a callback builds without
+ * the shared class are only used if no callback modified the shared class.
+ */
+public class ChainedClassFileTransformer implements ClassFileTransformer {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(ChainedClassFileTransformer.class.getCanonicalName());
+
+    private final MatchableClassFileTransformerDelegate[] transformers;
+
+    public ChainedClassFileTransformer(List<? extends ClassFileTransformer> transformers) {
+        Objects.requireNonNull(transformers, "transformers");
+        this.transformers = new MatchableClassFileTransformerDelegate[transformers.size()];
+        for (int i = 0; i < transformers.size(); i++) {
+            final ClassFileTransformer transformer = transformers.get(i);
+            if (!(transformer instanceof MatchableClassFileTransformerDelegate)) {
+                throw new IllegalArgumentException("transformer can not be chained:" + transformer);
+            }
+            this.transformers[i] = (MatchableClassFileTransformerDelegate) transformer;
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        final Chain chain = new Chain(loader, protectionDomain, classfileBuffer);
+        byte[] transformed = null;
+        for (MatchableClassFileTransformerDelegate transformer : this.transformers) {
+            final byte[] bytes = transformer
+                    .transform0(chain, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+            if (bytes == Chain.DEFERRED) {
+                chain.deferred = true;
+            } else if (bytes != null && bytes != classfileBuffer) {
+                transformed = bytes;
+            }
+        }
+        if (!chain.deferred) {
+            return transformed;
+        }
+        if (transformed != null) {
+            logger.warn(String.format("drop the bytes of %s built outside of the chained transform", className));
+        }
+        try {
+            return chain.instrumentClass.toBytecode();
+        } catch (InstrumentException e) {
+            throw new IllegalStateException("fail to build the chained transform of " + className, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ChainedClassFileTransformer{");
+        sb.append("transformers=").append(Arrays.toString(transformers));
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * State of one chained transform.
+     */
+    static final class Chain {
+
+        // returned by the shared class to the callbacks, the class is only built once they have all run
+        private static final byte[] DEFERRED = new byte[0];
+
+        private final ClassLoader classLoader;
+        private final ProtectionDomain protectionDomain;
+        private final byte[] classfileBuffer;
+
+        // created by the first callback asking for it
+        private InstrumentClass instrumentClass;
+        // the other callbacks of the chain do not make the class uninterceptable
+        private boolean interceptable;
+        private boolean deferred = false;
+
+        private Chain(ClassLoader classLoader, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            this.classLoader = classLoader;
+            this.protectionDomain = protectionDomain;
+            this.classfileBuffer = classfileBuffer;
+        }
+
+        Instrumentor newInstrumentor(GuardInstrumentor guard, InstrumentContext instrumentContext) {
+            return new ChainedInstrumentor(this, guard, instrumentContext);
+        }
+
+        // the class as seen by the callback of the given plugin
+        private InstrumentClass newSharedClass(InstrumentContext instrumentContext, String className) {
+            if (this.instrumentClass == null) {
+                this.instrumentClass = instrumentContext
+                        .getInstrumentClass(this.classLoader, className, this.protectionDomain, this.classfileBuffer);
+                if (this.instrumentClass == null) {
+                    return null;
+                }
+                this.interceptable = this.instrumentClass.isInterceptable();
+            }
+            InstrumentClass instrumentClass = this.instrumentClass;
+            if (instrumentClass instanceof SharableInstrumentClass) {
+                // the classes and interceptors the plugin adds are injected and recorded through its own context
+                instrumentClass = ((SharableInstrumentClass) instrumentClass).bind(instrumentContext);
+            }
+            return new SharedInstrumentClass(instrumentClass, this.interceptable);
+        }
+
+        private boolean isTransformed(ClassLoader classLoader, byte[] classfileBuffer) {
+            return classLoader == this.classLoader && classfileBuffer == this.classfileBuffer;
+        }
+    }
+
+    private static final class ChainedInstrumentor implements Instrumentor {
+
+        private final Chain chain;
+        private final GuardInstrumentor guard;
+        private final InstrumentContext instrumentContext;
+        // created by the first getInstrumentClass() of the callback
+        private InstrumentClass sharedClass;
+
+        private ChainedInstrumentor(Chain chain, GuardInstrumentor guard, InstrumentContext instrumentContext) {
+            this.chain = chain;
+            this.guard = guard;
+            this.instrumentContext = instrumentContext;
+        }
+
+        @Override
+        public InstrumentClass getInstrumentClass(ClassLoader classLoader, String className,
+                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            if (!this.chain.isTransformed(classLoader, classfileBuffer)) {
+                return this.guard.getInstrumentClass(classLoader, className, protectionDomain, classfileBuffer);
+            }
+            if (this.sharedClass == null) {
+                this.sharedClass = this.chain.newSharedClass(this.instrumentContext, className);
+            }
+            return this.sharedClass;
+        }
+
+        @Override
+        public InstrumentClass getInstrumentClass(ClassLoader classLoader, String className, byte[] classfileBuffer) {
+            return getInstrumentClass(classLoader, className, null, classfileBuffer);
+        }
+
+        @Override
+        public boolean exist(ClassLoader classLoader, String className) {
+            return this.guard.exist(classLoader, className);
+        }
+
+        @Override
+        public boolean exist(ClassLoader classLoader, String className, ProtectionDomain protectionDomain) {
+            return this.guard.exist(classLoader, className, protectionDomain);
+        }
+
+        @Override
+        public <T> Class<? extends T> injectClass(ClassLoader targetClassLoader, String className) {
+            return this.guard.injectClass(targetClassLoader, className);
+        }
+
+        @Override
+        public void transform(ClassLoader classLoader, String targetClassName,
+                Class<? extends TransformCallback> transformCallbackClass) {
+            this.guard.transform(classLoader, targetClassName, transformCallbackClass);
+        }
+
+        @Override
+        public void retransform(Class<?> target, TransformCallback transformCallback) {
+            this.guard.retransform(target, transformCallback);
+        }
+    }
+
+    /**
+     * The class as seen by one callback of the chain.
+     */
+    private static final class SharedInstrumentClass implements InstrumentClass {
+
+        private final InstrumentClass instrumentClass;
+        private final boolean interceptable;
+
+        private SharedInstrumentClass(InstrumentClass instrumentClass, boolean interceptable) {
+            this.instrumentClass = instrumentClass;
+            this.interceptable = interceptable;
+        }
+
+        @Override
+        public boolean isInterface() {
+            return this.instrumentClass.isInterface();
+        }
+
+        @Override
+        public String getName() {
+            return this.instrumentClass.getName();
+        }
+
+        @Override
+        public String getSuperClass() {
+            return this.instrumentClass.getSuperClass();
+        }
+
+        @Override
+        public String[] getInterfaces() {
+            return this.instrumentClass.getInterfaces();
+        }
+
+        @Override
+        public InstrumentMethod getConstructor(String... parameterTypes) {
+            return this.instrumentClass.getConstructor(parameterTypes);
+        }
+
+        @Override
+        public List<InstrumentMethod> getDeclaredConstructors() {
+            return this.instrumentClass.getDeclaredConstructors();
+        }
+
+        @Override
+        public List<InstrumentMethod> getDeclaredMethods() {
+            return this.instrumentClass.getDeclaredMethods();
+        }
+
+        @Override
+        public List<InstrumentMethod> getDeclaredMethods(MethodFilter filter) {
+            return this.instrumentClass.getDeclaredMethods(filter);
+        }
+
+        @Override
+        public InstrumentMethod getDeclaredMethod(String name, String... parameterTypes) {
+            return this.instrumentClass.getDeclaredMethod(name, parameterTypes);
+        }
+
+        @Override
+        public List<InstrumentClass> getNestedClasses(ClassFilter filter) {
+            return this.instrumentClass.getNestedClasses(filter);
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return this.instrumentClass.getClassLoader();
+        }
+
+        @Override
+        public boolean isInterceptable() {
+            return this.interceptable;
+        }
+
+        @Override
+        public boolean hasConstructor(String... parameterTypes) {
+            return this.instrumentClass.hasConstructor(parameterTypes);
+        }
+
+        @Override
+        public boolean hasDeclaredMethod(String methodName, String... parameterTypes) {
+            return this.instrumentClass.hasDeclaredMethod(methodName, parameterTypes);
+        }
+
+        @Override
+        public boolean hasMethod(String methodName, String... parameterTypes) {
+            return this.instrumentClass.hasMethod(methodName, parameterTypes);
+        }
+
+        @Override
+        public boolean hasEnclosingMethod(String methodName, String... parameterTypes) {
+            return this.instrumentClass.hasEnclosingMethod(methodName, parameterTypes);
+        }
+
+        @Override
+        public boolean hasField(String name, String type) {
+            return this.instrumentClass.hasField(name, type);
+        }
+
+        @Override
+        public boolean hasField(String name) {
+            return this.instrumentClass.hasField(name);
+        }
+
+        @Override
+        public void addGetter(Class<?> getterType, String fieldName) throws InstrumentException {
+            this.instrumentClass.addGetter(getterType, fieldName);
+        }
+
+        @Override
+        public void addSetter(Class<?> setterType, String fieldName) throws InstrumentException {
+            this.instrumentClass.addSetter(setterType, fieldName);
+        }
+
+        @Override
+        public void addInvoker(Class<?> invokerType, String methodName, String... parameterTypes)
+                throws InstrumentException {
+            this.instrumentClass.addInvoker(invokerType, methodName, parameterTypes);
+        }
+
+        @Override
+        public byte[] toBytecode() {
+            return Chain.DEFERRED;
+        }
+    }
+}
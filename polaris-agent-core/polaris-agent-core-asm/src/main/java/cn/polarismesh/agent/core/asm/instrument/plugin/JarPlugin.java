@@ -55,6 +55,10 @@ public class JarPlugin<T> implements Plugin<T> {
         return pluginJar.getJarFile();
     }
 
+    public int getOrder() {
+        return pluginJar.getPluginOrder();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("JarPlugin{");
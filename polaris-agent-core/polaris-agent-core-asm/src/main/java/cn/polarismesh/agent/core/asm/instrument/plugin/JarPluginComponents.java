@@ -24,6 +24,8 @@ import cn.polarismesh.agent.core.extension.AgentPlugin;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,14 @@ public class JarPluginComponents {
     private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
             .getLogger(JarPluginComponents.class.getCanonicalName());
 
+    private static final Comparator<JarPlugin<AgentPlugin>> ORDER_COMPARATOR =
+            new Comparator<JarPlugin<AgentPlugin>>() {
+                @Override
+                public int compare(JarPlugin<AgentPlugin> o1, JarPlugin<AgentPlugin> o2) {
+                    return Integer.compare(o1.getOrder(), o2.getOrder());
+                }
+            };
+
     private final Map<String, JarPluginComponent> componentMap;
 
     public JarPluginComponents(List<PluginJar> pluginJars) {
@@ -63,11 +73,15 @@ public class JarPluginComponents {
         jarPluginComponent.addAgentPlugin(AgentPlugin);
     }
 
+    /**
+     * @return the plugins sorted by their order, plugins of the same order keep the plugin jar order
+     */
     public Collection<JarPlugin<AgentPlugin>> buildJarPlugins() {
         List<JarPlugin<AgentPlugin>> jarPlugins = new ArrayList<>(componentMap.size());
         for (JarPluginComponent component : componentMap.values()) {
             jarPlugins.add(component.toJarPlugin());
         }
+        Collections.sort(jarPlugins, ORDER_COMPARATOR);
         return jarPlugins;
     }
 
@@ -21,6 +21,7 @@ import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
 import cn.polarismesh.agent.core.asm.instrument.GuardInstrumentor;
 import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
 import cn.polarismesh.agent.core.asm.instrument.matcher.Matcher;
+import cn.polarismesh.agent.core.extension.instrument.Instrumentor;
 import cn.polarismesh.agent.core.extension.transform.TransformCallback;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
@@ -52,16 +53,25 @@ public class MatchableClassFileTransformerDelegate implements MatchableClassFile
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
             ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+        return transform0(null, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+
+    /**
+     * @param chain the transform shared with the other transformers of the class, null if there is none
+     */
+    byte[] transform0(ChainedClassFileTransformer.Chain chain, ClassLoader loader, String className,
+            Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
         Objects.requireNonNull(className, "className");
 
         final InstrumentContext instrumentContext = this.instrumentContext;
         final GuardInstrumentor guard = new GuardInstrumentor(instrumentContext);
         try {
+            final Instrumentor instrumentor = chain == null ? guard : chain.newInstrumentor(guard, instrumentContext);
             // WARN external plugin api
             final TransformCallback transformCallback = transformCallbackProvider
                     .getTransformCallback(instrumentContext, loader);
-            return transformCallback
-                    .doInTransform(guard, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+            return transformCallback.doInTransform(instrumentor, loader, className, classBeingRedefined,
+                    protectionDomain, classfileBuffer);
         } catch (InstrumentException e) {
             throw new PolarisAgentException(e);
         } finally {
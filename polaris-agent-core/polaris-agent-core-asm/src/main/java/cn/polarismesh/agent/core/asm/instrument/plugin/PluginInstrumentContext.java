@@ -22,9 +22,11 @@ import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
 import cn.polarismesh.agent.core.asm.instrument.InstrumentEngine;
 import cn.polarismesh.agent.core.asm.instrument.classloading.ClassInjector;
 import cn.polarismesh.agent.core.asm.instrument.matcher.Matcher;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder;
 import cn.polarismesh.agent.core.asm.scanner.ClassScannerFactory;
 import cn.polarismesh.agent.core.asm.scanner.Scanner;
 import cn.polarismesh.agent.core.common.exception.NotFoundInstrumentException;
+import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
 import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
 import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
 import cn.polarismesh.agent.core.extension.transform.TransformCallback;
@@ -40,13 +42,27 @@ public class PluginInstrumentContext implements InstrumentContext {
 
     private final ClassFileTransformerLoader transformerRegistry;
 
+    // nullable, the classes seen by a speculative transform
+    private final ClassLoader pluginClassLoader;
+
     public PluginInstrumentContext(InstrumentEngine instrumentEngine,
             DynamicTransformTrigger dynamicTransformTrigger, ClassInjector classInjector,
             ClassFileTransformerLoader transformerRegistry) {
+        this(instrumentEngine, dynamicTransformTrigger, classInjector, transformerRegistry, null);
+    }
+
+    /**
+     * @param pluginClassLoader nullable, the class loader of the plugin classes, a speculative transform gets them
+     * from it instead of injecting them
+     */
+    public PluginInstrumentContext(InstrumentEngine instrumentEngine,
+            DynamicTransformTrigger dynamicTransformTrigger, ClassInjector classInjector,
+            ClassFileTransformerLoader transformerRegistry, ClassLoader pluginClassLoader) {
         this.instrumentEngine = Objects.requireNonNull(instrumentEngine, "instrumentEngine");
         this.dynamicTransformTrigger = Objects.requireNonNull(dynamicTransformTrigger, "dynamicTransformTrigger");
         this.classInjector = Objects.requireNonNull(classInjector, "classInjector");
         this.transformerRegistry = Objects.requireNonNull(transformerRegistry, "transformerRegistry");
+        this.pluginClassLoader = pluginClassLoader;
     }
 
     @Override
@@ -87,6 +103,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         Objects.requireNonNull(transformCallback, "transformCallback");
         final TransformCallbackProvider transformCallbackProvider = new InstanceTransformCallbackProvider(
                 transformCallback);
+        TransformRecorder.recordUncacheable("addClassFileTransformer");
         transformerRegistry.addClassFileTransformer(this, matcher, transformCallbackProvider);
     }
 
@@ -96,6 +113,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         Objects.requireNonNull(transformCallbackClassName, "transformCallbackClassName");
         final TransformCallbackProvider transformCallbackProvider = new DynamicTransformCallbackProvider(
                 transformCallbackClassName);
+        TransformRecorder.recordUncacheable("addClassFileTransformer");
         transformerRegistry.addClassFileTransformer(this, matcher, transformCallbackProvider);
     }
 
@@ -106,6 +124,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         Objects.requireNonNull(transformCallbackClassName, "transformCallbackClassName");
         final TransformCallbackProvider transformCallbackProvider = new DynamicTransformCallbackProvider(
                 transformCallbackClassName, parameters, parameterTypes);
+        TransformRecorder.recordUncacheable("addClassFileTransformer");
         transformerRegistry.addClassFileTransformer(this, matcher, transformCallbackProvider);
     }
 
@@ -116,6 +135,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         Objects.requireNonNull(transformCallback, "transformCallback");
         final TransformCallbackProvider transformCallbackProvider = new InstanceTransformCallbackProvider(
                 transformCallback);
+        TransformRecorder.recordUncacheable("addClassFileTransformer");
         this.transformerRegistry.addClassFileTransformer(this, classLoader, targetClassName, transformCallbackProvider);
     }
 
@@ -126,6 +146,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         Objects.requireNonNull(transformCallbackClassName, "transformCallbackClassName");
         final TransformCallbackProvider transformCallbackProvider = new DynamicTransformCallbackProvider(
                 transformCallbackClassName);
+        TransformRecorder.recordUncacheable("addClassFileTransformer");
         this.transformerRegistry.addClassFileTransformer(this, classLoader, targetClassName, transformCallbackProvider);
     }
 
@@ -140,6 +161,7 @@ public class PluginInstrumentContext implements InstrumentContext {
         final ClassFileTransformerDelegate classFileTransformerGuardDelegate = new ClassFileTransformerDelegate(this,
                 transformCallbackProvider);
 
+        TransformRecorder.recordUncacheable("retransform");
         this.dynamicTransformTrigger.retransform(target, classFileTransformerGuardDelegate);
     }
 
@@ -148,7 +170,32 @@ public class PluginInstrumentContext implements InstrumentContext {
     public <T> Class<? extends T> injectClass(ClassLoader targetClassLoader, String className) {
         Objects.requireNonNull(className, "className");
 
-        return classInjector.injectClass(targetClassLoader, className);
+        if (TransformRecorder.isSpeculative()) {
+            // injected once the bytecode of the speculative transform is used
+            if (this.pluginClassLoader == null) {
+                TransformRecorder.recordUncacheable("injectClass");
+            }
+            final Class<? extends T> pluginClass = loadPluginClass(className);
+            TransformRecorder.recordInjectedClass(this, className);
+            return pluginClass;
+        }
+        final Class<? extends T> injectedClass = classInjector.injectClass(targetClassLoader, className);
+        TransformRecorder.recordInjectedClass(this, className);
+        return injectedClass;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Class<? extends T> loadPluginClass(String className) {
+        Objects.requireNonNull(className, "className");
+        if (this.pluginClassLoader == null) {
+            throw new PolarisAgentException("no plugin class loader to load " + className);
+        }
+        try {
+            return (Class<? extends T>) Class.forName(className, false, this.pluginClassLoader);
+        } catch (ClassNotFoundException e) {
+            throw new PolarisAgentException("Failed to load plugin class " + className, e);
+        }
     }
 
     @Override
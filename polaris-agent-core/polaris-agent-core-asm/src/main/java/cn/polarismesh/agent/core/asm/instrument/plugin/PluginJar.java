@@ -31,6 +31,9 @@ public class PluginJar {
     public static final String PLUGIN_ID = "Plugin-Id";
     public static final String PLUGIN_PACKAGE = "Plugin-Package";
     public static final String PLUGIN_COMPILER_VERSION = "Plugin-Compiler-Version";
+    // plugins with a lower order are initialized first, their interceptors wrap the ones of the later plugins
+    public static final String PLUGIN_ORDER = "Plugin-Order";
+    public static final int DEFAULT_PLUGIN_ORDER = 0;
     public static final String DEFAULT_PLUGIN_PACKAGE_NAME = "cn.polarismesh.agent.core.asm.extension";
 
     private final URL url;
@@ -39,6 +42,7 @@ public class PluginJar {
     private final String pluginId;
     private final String pluginCompilerVersion;
     private final List<String> pluginPackages;
+    private final int pluginOrder;
 
     public PluginJar(URL url, JarFile jarFile) {
         this.url = Objects.requireNonNull(url, "url");
@@ -48,6 +52,18 @@ public class PluginJar {
         String pluginPackages = JarFileUtils
                 .getManifestValue(jarFile, PLUGIN_PACKAGE, DEFAULT_PLUGIN_PACKAGE_NAME);
         this.pluginPackages = StringUtils.tokenizeToStringList(pluginPackages, ",");
+        this.pluginOrder = parseOrder(JarFileUtils.getManifestValue(jarFile, PLUGIN_ORDER, null));
+    }
+
+    private static int parseOrder(String pluginOrder) {
+        if (!StringUtils.hasText(pluginOrder)) {
+            return DEFAULT_PLUGIN_ORDER;
+        }
+        try {
+            return Integer.parseInt(pluginOrder.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid " + PLUGIN_ORDER + ":" + pluginOrder, e);
+        }
     }
 
     public static PluginJar fromFilePath(String filePath) {
@@ -111,6 +127,10 @@ public class PluginJar {
         return pluginPackages;
     }
 
+    public int getPluginOrder() {
+        return pluginOrder;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("PluginJar{");
@@ -119,6 +139,7 @@ public class PluginJar {
         sb.append(", pluginId='").append(pluginId).append('\'');
         sb.append(", pluginCompilerVersion='").append(pluginCompilerVersion).append('\'');
         sb.append(", pluginPackages=").append(pluginPackages);
+        sb.append(", pluginOrder=").append(pluginOrder);
         sb.append('}');
         return sb.toString();
     }
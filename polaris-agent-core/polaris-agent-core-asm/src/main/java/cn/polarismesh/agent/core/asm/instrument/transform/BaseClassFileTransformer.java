@@ -21,6 +21,7 @@ import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 import cn.polarismesh.agent.core.common.utils.CodeSourceUtils;
 import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Recording;
 import java.lang.instrument.ClassFileTransformer;
 import java.net.URL;
 import java.security.ProtectionDomain;
@@ -32,40 +33,121 @@ public class BaseClassFileTransformer {
 
     private final ClassLoader agentClassLoader;
 
+    private final TransformCache transformCache;
+
     public BaseClassFileTransformer(ClassLoader agentClassLoader) {
+        this(agentClassLoader, null);
+    }
+
+    /**
+     * @param transformCache nullable, the transform cache is disabled if null
+     */
+    public BaseClassFileTransformer(ClassLoader agentClassLoader, TransformCache transformCache) {
         this.agentClassLoader = agentClassLoader;
+        this.transformCache = transformCache;
     }
 
     public byte[] transform(ClassLoader classLoader, String classInternalName, Class<?> classBeingRedefined,
             ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer) {
+        return transform(classLoader, classInternalName, classBeingRedefined, protectionDomain, classFileBuffer,
+                transformer, false);
+    }
+
+    /**
+     * @param cacheable whether the output only depends on the class file and the plugins, i.e. not a dynamic or
+     * retransform request
+     */
+    public byte[] transform(ClassLoader classLoader, String classInternalName, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer,
+            boolean cacheable) {
+        try {
+            return transformOrThrow(classLoader, classInternalName, classBeingRedefined, protectionDomain,
+                    classFileBuffer, transformer, cacheable);
+        } catch (Throwable e) {
+            logger.warn(String.format(
+                    "Transformer:%s threw an exception. codeLocation:%s cl:%s ctxCl:%s agentCl:%s Cause:%s",
+                    transformer.getClass().getName(), CodeSourceUtils.getCodeLocation(protectionDomain),
+                    classLoader, Thread.currentThread().getContextClassLoader(), agentClassLoader, e.getMessage()),
+                    e);
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #transform(ClassLoader, String, Class, ProtectionDomain, byte[], ClassFileTransformer,
+     * boolean)}, but a failure is thrown instead of being logged, so that it can be told apart from an unmodified
+     * class.
+     */
+    byte[] transformOrThrow(ClassLoader classLoader, String classInternalName, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer,
+            boolean cacheable) throws Throwable {
+        if (transformCache == null || !cacheable || classBeingRedefined != null) {
+            return transform0(classLoader, classInternalName, classBeingRedefined, protectionDomain, classFileBuffer,
+                    transformer, null, new Recording(false));
+        }
+        final byte[] key = transformCache.newKey(classInternalName, classFileBuffer);
+        final TransformCache.Entry entry = transformCache.load(key, classLoader);
+        if (entry != null) {
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("[cached] classLoader:%s className:%s", classLoader,
+                        JavaAssistUtils.jvmNameToJavaName(classInternalName)));
+            }
+            return entry.getTransformedBytes();
+        }
+        return transform0(classLoader, classInternalName, classBeingRedefined, protectionDomain, classFileBuffer,
+                transformer, key, new Recording(false));
+    }
+
+    /**
+     * Transforms the class without side effects, see {@link TransformRecorder#isSpeculative()}.
+     *
+     * @param recording receives the side effects to replay if the bytecode is used, must be speculative
+     */
+    byte[] speculate(ClassLoader classLoader, String classInternalName, ProtectionDomain protectionDomain,
+            byte[] classFileBuffer, ClassFileTransformer transformer, Recording recording) throws Throwable {
+        return transform0(classLoader, classInternalName, null, protectionDomain, classFileBuffer, transformer, null,
+                recording);
+    }
+
+    private byte[] transform0(ClassLoader classLoader, String classInternalName, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer,
+            byte[] cacheKey, Recording recording) throws Throwable {
         final String className = JavaAssistUtils.jvmNameToJavaName(classInternalName);
 
         final URL codeLocation = CodeSourceUtils.getCodeLocation(protectionDomain);
-        final String transform = getTransformState(classBeingRedefined);
+        final String transform = getTransformState(classBeingRedefined, recording);
         logger.info(String.format("[%s] classLoader:%s className:%s transformer:%s codeSource:%s",
                 transform, classLoader, className, transformer.getClass().getName(), codeLocation));
 
+        final Thread thread = Thread.currentThread();
+        final ClassLoader before = getContextClassLoader(thread);
+        thread.setContextClassLoader(this.agentClassLoader);
+        // always recorded, so that a nested transform does not record into the enclosing one
+        final Recording previous = TransformRecorder.begin(recording);
+        final byte[] transformedBytes;
         try {
-            final Thread thread = Thread.currentThread();
-            final ClassLoader before = getContextClassLoader(thread);
-            thread.setContextClassLoader(this.agentClassLoader);
-            try {
-                return transformer
-                        .transform(classLoader, className, classBeingRedefined, protectionDomain, classFileBuffer);
-            } finally {
-                // The context class loader have to be recovered even if it was null.
-                thread.setContextClassLoader(before);
+            transformedBytes = transformer
+                    .transform(classLoader, className, classBeingRedefined, protectionDomain, classFileBuffer);
+        } finally {
+            TransformRecorder.end(previous);
+            // The context class loader have to be recovered even if it was null.
+            thread.setContextClassLoader(before);
+        }
+        if (cacheKey != null) {
+            if (recording.getUncacheableCause() == null) {
+                transformCache.store(cacheKey, transformedBytes, recording.getRecords());
+            } else if (logger.isInfoEnabled()) {
+                logger.info(String.format("skip transform cache for %s, cause:%s", className,
+                        recording.getUncacheableCause()));
             }
-        } catch (Throwable e) {
-            logger.warn(String.format(
-                    "Transformer:%s threw an exception. codeLocation:%s cl:%s ctxCl:%s agentCl:%s Cause:%s",
-                    transformer.getClass().getName(), codeLocation, classLoader,
-                    Thread.currentThread().getContextClassLoader(), agentClassLoader, e.getMessage()), e);
-            return null;
         }
+        return transformedBytes;
     }
 
-    private String getTransformState(Class<?> classBeingRedefined) {
+    private String getTransformState(Class<?> classBeingRedefined, Recording recording) {
+        if (recording.isSpeculative()) {
+            return "speculate";
+        }
         if (classBeingRedefined == null) {
             return "transform";
         }
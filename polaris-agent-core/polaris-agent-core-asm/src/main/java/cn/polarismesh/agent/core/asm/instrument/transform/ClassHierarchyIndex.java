@@ -0,0 +1,225 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.concurrent.jsr166.ConcurrentWeakHashMap;
+import cn.polarismesh.agent.core.asm.instrument.classreading.ConstantPoolScanner;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per ClassLoader index of the class hierarchy, fed by the dispatcher as classes stream through
+ * {@code transform()}.
+ * <p>
+ * Every registered hierarchy target (superclass or interface) owns one bit. Each indexed type stores the bits of the
+ * targets reachable through its superclass chain and through all of its super types, so matching a class is a
+ * constant time mask test once its direct super types are indexed.
+ * <p>
+ * The JVM calls the transformer of a subclass before its super types are loaded, so a super type the dispatcher
+ * has not seen yet is resolved once from the class loader resources and kept in the index. When it is loaded later
+ * the index entry is simply refreshed from the streamed bytes. JDK types are never read unless a target is a JDK
+ * type, since they cannot extend application types. Super types are read by {@link ConstantPoolScanner}, no
+ * {@code ClassReader} is created per class.
+ * <p>
+ * Each class loader holds at most {@link #MAX_TYPES_PER_CLASS_LOADER} types. Once it is full the indexed types are
+ * kept and refreshed, new types are no longer indexed and a super type missing from the index is read again from
+ * the class loader resources whenever a subclass needs it.
+ */
+final class ClassHierarchyIndex {
+
+    static final int MAX_TARGETS = Long.SIZE;
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(ClassHierarchyIndex.class.getCanonicalName());
+
+    static final int MAX_TYPES_PER_CLASS_LOADER = 16384;
+
+    private static final int MAX_DEPTH = 128;
+
+    private static final String JDK_PACKAGE = "java/";
+
+    private static final TypeNode EMPTY = new TypeNode(0L, 0L);
+
+    private final Map<String, Long> targetBits;
+
+    private final long superClassMatchers;
+
+    private final long interfaceMatchers;
+
+    private final boolean jdkTarget;
+
+    private final ConcurrentMap<ClassLoader, ConcurrentMap<String, TypeNode>> index =
+            new ConcurrentWeakHashMap<ClassLoader, ConcurrentMap<String, TypeNode>>();
+
+    private final ConcurrentMap<String, TypeNode> bootstrapIndex = new ConcurrentHashMap<String, TypeNode>();
+
+    /**
+     * @param targetBits internal name of each target to the bits of the matchers targeting it
+     * @param superClassMatchers bits of the matchers following the superclass chain only
+     * @param interfaceMatchers bits of the matchers following every super type
+     */
+    ClassHierarchyIndex(Map<String, Long> targetBits, long superClassMatchers, long interfaceMatchers) {
+        this.targetBits = Objects.requireNonNull(targetBits, "targetBits");
+        this.superClassMatchers = superClassMatchers;
+        this.interfaceMatchers = interfaceMatchers;
+        boolean jdkTarget = false;
+        for (String target : targetBits.keySet()) {
+            if (target.startsWith(JDK_PACKAGE)) {
+                jdkTarget = true;
+                break;
+            }
+        }
+        this.jdkTarget = jdkTarget;
+    }
+
+    /**
+     * Indexes the given class and returns the bits of the matchers it satisfies.
+     */
+    long index(ClassLoader classLoader, String classInternalName, byte[] classFileBuffer) {
+        final String[] superTypes = ConstantPoolScanner.readSuperTypes(classFileBuffer);
+        if (superTypes == null) {
+            logger.warn(String.format("failed to index class hierarchy of %s", classInternalName));
+            return 0L;
+        }
+        final TypeNode node = newTypeNode(classLoader, superTypes, 0);
+        put(classLoader, classInternalName, node);
+        return (node.superClassMask & superClassMatchers) | (node.hierarchyMask & interfaceMatchers);
+    }
+
+    // superTypes: the superclass followed by the interfaces, see ConstantPoolScanner.readSuperTypes()
+    private TypeNode newTypeNode(ClassLoader classLoader, String[] superTypes, int depth) {
+        long superClassMask = 0L;
+        long hierarchyMask = 0L;
+        final String superName = superTypes[0];
+        if (superName != null) {
+            final TypeNode superNode = findTypeNode(classLoader, superName, depth + 1);
+            superClassMask = getTargetBits(superName) | superNode.superClassMask;
+            hierarchyMask = getTargetBits(superName) | superNode.hierarchyMask;
+        }
+        for (int i = 1; i < superTypes.length; i++) {
+            final String interfaceName = superTypes[i];
+            final TypeNode interfaceNode = findTypeNode(classLoader, interfaceName, depth + 1);
+            hierarchyMask |= getTargetBits(interfaceName) | interfaceNode.hierarchyMask;
+        }
+        if (superClassMask == 0L && hierarchyMask == 0L) {
+            return EMPTY;
+        }
+        return new TypeNode(superClassMask, hierarchyMask);
+    }
+
+    private long getTargetBits(String classInternalName) {
+        final Long bits = targetBits.get(classInternalName);
+        if (bits == null) {
+            return 0L;
+        }
+        return bits;
+    }
+
+    private TypeNode findTypeNode(ClassLoader classLoader, String classInternalName, int depth) {
+        if (!jdkTarget && classInternalName.startsWith(JDK_PACKAGE)) {
+            return EMPTY;
+        }
+        // parent first, as the class loader delegation would resolve it
+        for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent()) {
+            final TypeNode node = getIndex(cl).get(classInternalName);
+            if (node != null) {
+                return node;
+            }
+        }
+        final TypeNode node = bootstrapIndex.get(classInternalName);
+        if (node != null) {
+            return node;
+        }
+        if (depth > MAX_DEPTH) {
+            return EMPTY;
+        }
+        final TypeNode resolved = readTypeNode(classLoader, classInternalName, depth);
+        put(classLoader, classInternalName, resolved);
+        return resolved;
+    }
+
+    private TypeNode readTypeNode(ClassLoader classLoader, String classInternalName, int depth) {
+        final String classPath = classInternalName.concat(".class");
+        InputStream in = null;
+        try {
+            in = classLoader == null ? ClassLoader.getSystemResourceAsStream(classPath)
+                    : classLoader.getResourceAsStream(classPath);
+            if (in == null) {
+                return EMPTY;
+            }
+            final String[] superTypes = ConstantPoolScanner.readSuperTypes(IOUtils.toByteArray(in));
+            if (superTypes == null) {
+                return EMPTY;
+            }
+            return newTypeNode(classLoader, superTypes, depth);
+        } catch (Exception ex) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("failed to read class hierarchy of %s", classInternalName));
+            }
+            return EMPTY;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void put(ClassLoader classLoader, String classInternalName, TypeNode node) {
+        final ConcurrentMap<String, TypeNode> types = getIndex(classLoader);
+        if (types.size() >= MAX_TYPES_PER_CLASS_LOADER) {
+            // full, only an indexed type is refreshed
+            types.replace(classInternalName, node);
+            return;
+        }
+        types.put(classInternalName, node);
+    }
+
+    private ConcurrentMap<String, TypeNode> getIndex(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapIndex;
+        }
+        ConcurrentMap<String, TypeNode> types = index.get(classLoader);
+        if (types != null) {
+            return types;
+        }
+        types = new ConcurrentHashMap<String, TypeNode>();
+        final ConcurrentMap<String, TypeNode> exist = index.putIfAbsent(classLoader, types);
+        if (exist != null) {
+            return exist;
+        }
+        return types;
+    }
+
+    private static final class TypeNode {
+
+        // targets reachable through the superclass chain
+        private final long superClassMask;
+
+        // targets reachable through every super type
+        private final long hierarchyMask;
+
+        private TypeNode(long superClassMask, long hierarchyMask) {
+            this.superClassMask = superClassMask;
+            this.hierarchyMask = hierarchyMask;
+        }
+    }
+}
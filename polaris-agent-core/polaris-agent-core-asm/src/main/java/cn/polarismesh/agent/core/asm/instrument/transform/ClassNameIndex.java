@@ -0,0 +1,102 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable open-addressing index over class internal names.
+ * <p>
+ * The table is sized to keep the load factor at or below 1/4, so a lookup for a class that is not registered
+ * usually ends on the first probe. Only the cached {@link String#hashCode()} of the name is needed to reach the
+ * slot, the name itself is compared only when the slot is occupied by a key with the same hash.
+ *
+ * @param <V> value type
+ */
+final class ClassNameIndex<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final String[] keys;
+
+    private final int[] hashes;
+
+    private final Object[] values;
+
+    private final int mask;
+
+    private final int size;
+
+    ClassNameIndex(Map<String, ? extends V> source) {
+        Objects.requireNonNull(source, "source");
+        final int capacity = tableSizeFor(source.size() * 4);
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, ? extends V> entry : source.entrySet()) {
+            put(Objects.requireNonNull(entry.getKey(), "key"), Objects.requireNonNull(entry.getValue(), "value"));
+        }
+        this.size = source.size();
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int spread(int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    private void put(String key, V value) {
+        final int hash = spread(key.hashCode());
+        int index = hash & mask;
+        while (keys[index] != null) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        hashes[index] = hash;
+        values[index] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String classInternalName) {
+        if (classInternalName == null) {
+            return null;
+        }
+        final int hash = spread(classInternalName.hashCode());
+        int index = hash & mask;
+        String key;
+        while ((key = keys[index]) != null) {
+            if (hashes[index] == hash && key.equals(classInternalName)) {
+                return (V) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+}
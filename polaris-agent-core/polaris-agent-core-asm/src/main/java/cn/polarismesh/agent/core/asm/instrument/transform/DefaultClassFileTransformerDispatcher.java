@@ -32,23 +32,43 @@ public class DefaultClassFileTransformerDispatcher implements ClassFileTransform
 
     private final List<ClassFileFilter> classFileFilters = new ArrayList<>();
 
-    private final TransformerRegistry transformerRegistry;
+    private final DefaultTransformerRegistry transformerRegistry;
 
     private final DynamicTransformerRegistry dynamicTransformerRegistry;
 
     private final BaseClassFileTransformer baseClassFileTransformer;
 
+    private final SpeculativeTransformer speculativeTransformer;
+
     public DefaultClassFileTransformerDispatcher(List<ClassFileTransformer> classFileTransformers,
             DynamicTransformerRegistry dynamicTransformerRegistry) {
-        this.baseClassFileTransformer = new BaseClassFileTransformer(this.getClass().getClassLoader());
+        this(classFileTransformers, dynamicTransformerRegistry, null);
+    }
+
+    /**
+     * @param transformCache nullable, the transform cache is disabled if null
+     */
+    public DefaultClassFileTransformerDispatcher(List<ClassFileTransformer> classFileTransformers,
+            DynamicTransformerRegistry dynamicTransformerRegistry, TransformCache transformCache) {
+        this.baseClassFileTransformer = new BaseClassFileTransformer(this.getClass().getClassLoader(),
+                transformCache);
         //this.classFileFilters.add(new DefaultClassloaderFilter(this.getClass().getClassLoader()));
         this.classFileFilters.add(new DefaultClassFilter());
         this.classFileFilters.add(new UnmodifiableClassFilter());
         this.transformerRegistry = newTransformerRegistry(classFileTransformers);
         this.dynamicTransformerRegistry = dynamicTransformerRegistry;
+        this.speculativeTransformer = new SpeculativeTransformer(transformerRegistry, baseClassFileTransformer);
     }
 
-    private TransformerRegistry newTransformerRegistry(List<ClassFileTransformer> classFileTransformers) {
+    /**
+     * Starts transforming the classes registered by name in background, using the given class loader to locate
+     * them.
+     */
+    public void startSpeculativeTransform(ClassLoader classLoader, int threads) {
+        speculativeTransformer.start(classLoader, transformerRegistry.getClassInternalNames(), threads);
+    }
+
+    private DefaultTransformerRegistry newTransformerRegistry(List<ClassFileTransformer> classFileTransformers) {
         return new DefaultTransformerRegistry(getMatchableTransformers(classFileTransformers));
     }
 
@@ -88,10 +108,18 @@ public class DefaultClassFileTransformerDispatcher implements ClassFileTransform
         if (transformer == null) {
             return null;
         }
+        final SpeculativeTransformer.Speculation speculation = speculativeTransformer
+                .take(loader, className, classBeingRedefined, protectionDomain, classfileBuffer, transformer);
+        if (speculation != null) {
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("[speculative] classLoader:%s className:%s", loader, className));
+            }
+            return speculation.getTransformedBytes();
+        }
 
         return baseClassFileTransformer
                 .transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer,
-                        transformer);
+                        transformer, true);
 
     }
 }
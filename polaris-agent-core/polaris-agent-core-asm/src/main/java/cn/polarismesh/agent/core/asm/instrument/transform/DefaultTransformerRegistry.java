@@ -18,47 +18,142 @@
 package cn.polarismesh.agent.core.asm.instrument.transform;
 
 import cn.polarismesh.agent.core.asm.instrument.matcher.ClassNameMatcher;
+import cn.polarismesh.agent.core.asm.instrument.matcher.ConstantPoolMatcher;
+import cn.polarismesh.agent.core.asm.instrument.matcher.InterfaceMatcher;
 import cn.polarismesh.agent.core.asm.instrument.matcher.Matcher;
 import cn.polarismesh.agent.core.asm.instrument.matcher.MultiClassNameMatcher;
+import cn.polarismesh.agent.core.asm.instrument.matcher.SuperClassMatcher;
+import cn.polarismesh.agent.core.asm.instrument.plugin.ChainedClassFileTransformer;
 import cn.polarismesh.agent.core.asm.instrument.plugin.MatchableClassFileTransformer;
 import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 import cn.polarismesh.agent.core.common.utils.JavaAssistUtils;
 import java.lang.instrument.ClassFileTransformer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DefaultTransformerRegistry implements TransformerRegistry {
 
     private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
             .getLogger(DefaultTransformerRegistry.class.getCanonicalName());
 
-    private final Map<String, ClassFileTransformer> registry;
+    private final ClassNameIndex<ClassFileTransformer> registry;
+
+    private final Set<String> classInternalNames;
+
+    // transformers registered by name, before chaining
+    private final Map<String, List<ClassFileTransformer>> classNameTransformers;
+
+    private final ConstantPoolMatcher[] constantPoolMatchers;
+
+    private final ClassFileTransformer[] constantPoolTransformers;
+
+    private final ClassHierarchyIndex classHierarchyIndex;
+
+    private final ClassFileTransformer[] classHierarchyTransformers;
+
+    // matched bits of several class hierarchy matchers to their chained transformer
+    private final ConcurrentMap<Long, ClassFileTransformer> chainedClassHierarchyTransformers =
+            new ConcurrentHashMap<Long, ClassFileTransformer>();
 
     public DefaultTransformerRegistry(List<MatchableClassFileTransformer> matchableClassFileTransformerList) {
         Objects.requireNonNull(matchableClassFileTransformerList, "matchableClassFileTransformerList");
-        this.registry = newRegistry(matchableClassFileTransformerList);
-    }
-
-    private Map<String, ClassFileTransformer> newRegistry(
-            List<MatchableClassFileTransformer> matchableClassFileTransformerList) {
-        final Map<String, ClassFileTransformer> registry = new HashMap<String, ClassFileTransformer>(512);
+        // transformers in registration order, that is plugin order
+        final Map<String, List<ClassFileTransformer>> registry = new LinkedHashMap<String, List<ClassFileTransformer>>(
+                512);
+        final List<MatchableClassFileTransformer> constantPoolTransformerList =
+                new ArrayList<MatchableClassFileTransformer>();
+        final List<MatchableClassFileTransformer> classHierarchyTransformerList =
+                new ArrayList<MatchableClassFileTransformer>();
         for (MatchableClassFileTransformer transformer : matchableClassFileTransformerList) {
             try {
-                addTransformer(registry, transformer.getMatcher(), transformer);
+                addTransformer(registry, constantPoolTransformerList, classHierarchyTransformerList,
+                        transformer.getMatcher(), transformer);
             } catch (Exception ex) {
                 if (logger.isWarnEnabled()) {
                     logger.warn(String.format("failed to add transformer %s", transformer), ex);
                 }
             }
         }
-        return registry;
+        this.registry = new ClassNameIndex<ClassFileTransformer>(chainTransformers(registry));
+        this.classInternalNames = Collections.unmodifiableSet(new HashSet<String>(registry.keySet()));
+        this.classNameTransformers = registry;
+        final int size = constantPoolTransformerList.size();
+        this.constantPoolMatchers = new ConstantPoolMatcher[size];
+        this.constantPoolTransformers = new ClassFileTransformer[size];
+        for (int i = 0; i < size; i++) {
+            final MatchableClassFileTransformer transformer = constantPoolTransformerList.get(i);
+            this.constantPoolMatchers[i] = (ConstantPoolMatcher) transformer.getMatcher();
+            this.constantPoolTransformers[i] = transformer;
+        }
+        this.classHierarchyTransformers = classHierarchyTransformerList
+                .toArray(new ClassFileTransformer[0]);
+        this.classHierarchyIndex = newClassHierarchyIndex(classHierarchyTransformerList);
+    }
+
+    private ClassHierarchyIndex newClassHierarchyIndex(
+            List<MatchableClassFileTransformer> classHierarchyTransformerList) {
+        if (classHierarchyTransformerList.isEmpty()) {
+            return null;
+        }
+        final Map<String, Long> targetBits = new HashMap<String, Long>();
+        long superClassMatchers = 0L;
+        long interfaceMatchers = 0L;
+        for (int i = 0; i < classHierarchyTransformerList.size(); i++) {
+            final Matcher matcher = classHierarchyTransformerList.get(i).getMatcher();
+            final long bit = 1L << i;
+            final String targetName;
+            if (matcher instanceof SuperClassMatcher) {
+                targetName = ((SuperClassMatcher) matcher).getSuperClassName();
+                superClassMatchers |= bit;
+            } else {
+                targetName = ((InterfaceMatcher) matcher).getInterfaceName();
+                interfaceMatchers |= bit;
+            }
+            final String classInternalName = JavaAssistUtils.javaNameToJvmName(targetName);
+            final Long bits = targetBits.get(classInternalName);
+            targetBits.put(classInternalName, bits == null ? bit : bits | bit);
+        }
+        return new ClassHierarchyIndex(targetBits, superClassMatchers, interfaceMatchers);
+    }
+
+    private static Map<String, ClassFileTransformer> chainTransformers(
+            Map<String, List<ClassFileTransformer>> registry) {
+        final Map<String, ClassFileTransformer> transformers = new HashMap<String, ClassFileTransformer>(
+                registry.size() * 2);
+        for (Map.Entry<String, List<ClassFileTransformer>> entry : registry.entrySet()) {
+            final List<ClassFileTransformer> transformerList = entry.getValue();
+            if (transformerList.size() == 1) {
+                transformers.put(entry.getKey(), transformerList.get(0));
+                continue;
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("chain %d transformers of %s", transformerList.size(), entry.getKey()));
+            }
+            try {
+                transformers.put(entry.getKey(), new ChainedClassFileTransformer(transformerList));
+            } catch (IllegalArgumentException ex) {
+                logger.warn(String.format("failed to chain transformers of %s, keep the first one:%s",
+                        entry.getKey(), transformerList.get(0)), ex);
+                transformers.put(entry.getKey(), transformerList.get(0));
+            }
+        }
+        return transformers;
     }
 
-    private void addTransformer(Map<String, ClassFileTransformer> registry, Matcher matcher,
-            ClassFileTransformer transformer) {
+    private void addTransformer(Map<String, List<ClassFileTransformer>> registry,
+            List<MatchableClassFileTransformer> constantPoolTransformerList,
+            List<MatchableClassFileTransformer> classHierarchyTransformerList, Matcher matcher,
+            MatchableClassFileTransformer transformer) {
         if (matcher instanceof ClassNameMatcher) {
             final ClassNameMatcher classNameMatcher = (ClassNameMatcher) matcher;
             String className = classNameMatcher.getClassName();
@@ -69,25 +164,145 @@ public class DefaultTransformerRegistry implements TransformerRegistry {
             for (String className : classNameList) {
                 addModifier0(registry, transformer, className);
             }
+        } else if (matcher instanceof ConstantPoolMatcher) {
+            constantPoolTransformerList.add(transformer);
+        } else if (matcher instanceof SuperClassMatcher || matcher instanceof InterfaceMatcher) {
+            if (classHierarchyTransformerList.size() >= ClassHierarchyIndex.MAX_TARGETS) {
+                throw new IllegalStateException(
+                        "too many class hierarchy matchers, max:" + ClassHierarchyIndex.MAX_TARGETS);
+            }
+            classHierarchyTransformerList.add(transformer);
         } else {
             throw new IllegalArgumentException("unsupported matcher :" + matcher);
         }
     }
 
-    private void addModifier0(Map<String, ClassFileTransformer> registry, ClassFileTransformer transformer,
+    private void addModifier0(Map<String, List<ClassFileTransformer>> registry, ClassFileTransformer transformer,
             String className) {
         final String classInternalName = JavaAssistUtils.javaNameToJvmName(className);
-        final ClassFileTransformer old = registry.put(classInternalName, transformer);
-        if (old != null) {
-            throw new IllegalStateException(
-                    "Transformer already exist. className:" + classInternalName + " new:" + transformer.getClass()
-                            + " old:" + old.getClass());
+        List<ClassFileTransformer> transformerList = registry.get(classInternalName);
+        if (transformerList == null) {
+            transformerList = new ArrayList<ClassFileTransformer>(1);
+            registry.put(classInternalName, transformerList);
+        }
+        if (!transformerList.contains(transformer)) {
+            // the transformers of the same class are chained
+            transformerList.add(transformer);
         }
     }
 
+    /**
+     * @return internal names of the classes registered by name
+     */
+    public Set<String> getClassInternalNames() {
+        return classInternalNames;
+    }
+
     @Override
     public ClassFileTransformer findTransformer(ClassLoader classLoader, String classInternalName,
             byte[] classFileBuffer) {
-        return registry.get(classInternalName);
+        final ClassFileTransformer transformer = registry.get(classInternalName);
+        if (classFileBuffer == null) {
+            return transformer;
+        }
+        // every class is indexed, so its subclasses can be matched without reading it again
+        final long matched = classHierarchyIndex == null ? 0L
+                : classHierarchyIndex.index(classLoader, classInternalName, classFileBuffer);
+        // constant pool pre-scan, only the matched class is handed over to the instrument engine
+        final List<ClassFileTransformer> constantPoolTransformerList = matchConstantPool(classFileBuffer);
+        if (constantPoolTransformerList == null) {
+            if (matched != 0L) {
+                return getClassHierarchyTransformer(classInternalName, transformer, matched);
+            }
+            return transformer;
+        }
+        if (transformer == null && matched == 0L && constantPoolTransformerList.size() == 1) {
+            return constantPoolTransformerList.get(0);
+        }
+        // the transformers registered by name run first, then the class hierarchy and the constant pool ones
+        final List<ClassFileTransformer> transformerList = new ArrayList<ClassFileTransformer>();
+        if (transformer != null) {
+            transformerList.addAll(classNameTransformers.get(classInternalName));
+        }
+        addClassHierarchyTransformers(transformerList, matched);
+        for (ClassFileTransformer constantPoolTransformer : constantPoolTransformerList) {
+            if (!transformerList.contains(constantPoolTransformer)) {
+                transformerList.add(constantPoolTransformer);
+            }
+        }
+        if (transformerList.size() == 1) {
+            return transformerList.get(0);
+        }
+        return chain(classInternalName, transformerList);
+    }
+
+    /**
+     * @return the transformers of every matched constant pool matcher in registration order, null if none matched
+     */
+    private List<ClassFileTransformer> matchConstantPool(byte[] classFileBuffer) {
+        List<ClassFileTransformer> transformerList = null;
+        for (int i = 0; i < constantPoolMatchers.length; i++) {
+            if (constantPoolMatchers[i].matches(classFileBuffer)) {
+                if (transformerList == null) {
+                    transformerList = new ArrayList<ClassFileTransformer>(2);
+                }
+                transformerList.add(constantPoolTransformers[i]);
+            }
+        }
+        return transformerList;
+    }
+
+    private ClassFileTransformer getClassHierarchyTransformer(String classInternalName,
+            ClassFileTransformer transformer, long matched) {
+        if (transformer != null) {
+            // matched by name as well, the transformers registered by name run first
+            final List<ClassFileTransformer> transformerList = new ArrayList<ClassFileTransformer>(
+                    classNameTransformers.get(classInternalName));
+            addClassHierarchyTransformers(transformerList, matched);
+            return chain(classInternalName, transformerList);
+        }
+        if (Long.bitCount(matched) == 1) {
+            return classHierarchyTransformers[Long.numberOfTrailingZeros(matched)];
+        }
+        return getChainedClassHierarchyTransformer(classInternalName, matched);
+    }
+
+    private ClassFileTransformer getChainedClassHierarchyTransformer(String classInternalName, long matched) {
+        final Long key = matched;
+        final ClassFileTransformer chained = chainedClassHierarchyTransformers.get(key);
+        if (chained != null) {
+            return chained;
+        }
+        final List<ClassFileTransformer> transformerList = new ArrayList<ClassFileTransformer>(Long.bitCount(matched));
+        addClassHierarchyTransformers(transformerList, matched);
+        final ClassFileTransformer transformer = chain(classInternalName, transformerList);
+        final ClassFileTransformer exist = chainedClassHierarchyTransformers.putIfAbsent(key, transformer);
+        if (exist != null) {
+            return exist;
+        }
+        return transformer;
+    }
+
+    private void addClassHierarchyTransformers(List<ClassFileTransformer> transformerList, long matched) {
+        // bit order is registration order, that is plugin order
+        for (long bits = matched; bits != 0L; bits &= bits - 1) {
+            final ClassFileTransformer transformer = classHierarchyTransformers[Long.numberOfTrailingZeros(bits)];
+            if (!transformerList.contains(transformer)) {
+                transformerList.add(transformer);
+            }
+        }
+    }
+
+    private static ClassFileTransformer chain(String classInternalName, List<ClassFileTransformer> transformerList) {
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("chain %d transformers of %s", transformerList.size(), classInternalName));
+        }
+        try {
+            return new ChainedClassFileTransformer(transformerList);
+        } catch (IllegalArgumentException ex) {
+            logger.warn(String.format("failed to chain transformers of %s, keep the first one:%s",
+                    classInternalName, transformerList.get(0)), ex);
+            return transformerList.get(0);
+        }
     }
 }
@@ -0,0 +1,274 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Record;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Recording;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.CodeSourceUtils;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Transforms the classes registered by name on background threads, before the JVM asks for them.
+ * <p>
+ * The class bytes are located through the given class loader, usually the system class loader, and the transform
+ * result is kept until the dispatcher sees the class. A speculative transform only builds the bytecode, the classes it
+ * injects and the interceptors it adds are recorded, see {@link TransformRecorder}, and only injected and registered
+ * by the dispatcher if it uses the result. The result is used only if the class is defined by the same class loader
+ * from the same code location with exactly the same bytes; otherwise the dispatcher falls back to the inline
+ * transform. The dispatcher never waits for a speculation in progress, and every entry is removed once the dispatcher
+ * has seen its class.
+ */
+public class SpeculativeTransformer {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(SpeculativeTransformer.class.getCanonicalName());
+
+    private static final String THREAD_NAME_PREFIX = "polaris-speculative-transform-";
+
+    private static final String JAR_URL_PREFIX = "jar:";
+
+    private static final String JAR_URL_SEPARATOR = "!/";
+
+    // the classes beyond are transformed inline
+    static final int MAX_SPECULATIONS = 1024;
+
+    // not speculated yet
+    private static final Speculation PENDING = new Speculation(null, null, null, null, null, null);
+
+    private static final Speculation IN_PROGRESS = new Speculation(null, null, null, null, null, null);
+
+    private final TransformerRegistry transformerRegistry;
+
+    private final BaseClassFileTransformer baseClassFileTransformer;
+
+    private final ConcurrentMap<String, Speculation> speculations = new ConcurrentHashMap<String, Speculation>();
+
+    private volatile boolean started = false;
+
+    public SpeculativeTransformer(TransformerRegistry transformerRegistry,
+            BaseClassFileTransformer baseClassFileTransformer) {
+        this.transformerRegistry = Objects.requireNonNull(transformerRegistry, "transformerRegistry");
+        this.baseClassFileTransformer = Objects.requireNonNull(baseClassFileTransformer, "baseClassFileTransformer");
+    }
+
+    public void start(final ClassLoader classLoader, Collection<String> classInternalNames, int threads) {
+        Objects.requireNonNull(classInternalNames, "classInternalNames");
+        if (classInternalNames.isEmpty() || threads <= 0) {
+            return;
+        }
+        final List<String> names = new ArrayList<String>(classInternalNames);
+        if (names.size() > MAX_SPECULATIONS) {
+            logger.warn(String.format("%d classes to speculate, only the first %d are", names.size(),
+                    MAX_SPECULATIONS));
+            names.subList(MAX_SPECULATIONS, names.size()).clear();
+        }
+        for (String name : names) {
+            speculations.put(name, PENDING);
+        }
+        this.started = true;
+        final Queue<String> queue = new ConcurrentLinkedQueue<String>(names);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                String classInternalName;
+                while ((classInternalName = queue.poll()) != null) {
+                    speculate(classLoader, classInternalName);
+                }
+            }
+        };
+        final int threadCount = Math.min(threads, names.size());
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(task, THREAD_NAME_PREFIX + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.info(String.format("speculative transform started, classes:%d threads:%d", names.size(),
+                threadCount));
+    }
+
+    private void speculate(ClassLoader classLoader, String classInternalName) {
+        // the class may have been claimed already
+        if (!speculations.replace(classInternalName, PENDING, IN_PROGRESS)) {
+            return;
+        }
+        final Speculation speculation = speculate0(classLoader, classInternalName);
+        if (speculation == null) {
+            speculations.remove(classInternalName, IN_PROGRESS);
+        } else if (!speculations.replace(classInternalName, IN_PROGRESS, speculation)) {
+            // the class has been claimed meanwhile
+            TransformRecorder.release(speculation.records);
+        }
+    }
+
+    private Speculation speculate0(ClassLoader classLoader, String classInternalName) {
+        final String classPath = classInternalName.concat(".class");
+        final URL classUrl = classLoader == null ? ClassLoader.getSystemResource(classPath)
+                : classLoader.getResource(classPath);
+        if (classUrl == null) {
+            return null;
+        }
+        final String codeLocation = getCodeLocation(classUrl, classPath);
+        final byte[] classFileBuffer = readClassFile(classUrl);
+        if (codeLocation == null || classFileBuffer == null) {
+            return null;
+        }
+        final ClassFileTransformer transformer = transformerRegistry
+                .findTransformer(classLoader, classInternalName, classFileBuffer);
+        if (transformer == null) {
+            return null;
+        }
+        final Recording recording = new Recording(true);
+        final byte[] transformedBytes;
+        try {
+            transformedBytes = baseClassFileTransformer.speculate(classLoader, classInternalName,
+                    newProtectionDomain(classLoader, codeLocation), classFileBuffer, transformer, recording);
+        } catch (Throwable th) {
+            logger.warn(String.format("speculative transform of %s failed, leave it to the inline transform, "
+                    + "cause:%s", classInternalName, th.getMessage()));
+            TransformRecorder.release(recording.getRecords());
+            return null;
+        }
+        if (recording.getUncacheableCause() != null) {
+            logger.info(String.format("speculative transform of %s aborted by %s, leave it to the inline transform",
+                    classInternalName, recording.getUncacheableCause()));
+            TransformRecorder.release(recording.getRecords());
+            return null;
+        }
+        return new Speculation(classLoader, transformer, codeLocation, classFileBuffer, transformedBytes,
+                recording.getRecords());
+    }
+
+    private byte[] readClassFile(URL classUrl) {
+        InputStream in = null;
+        try {
+            in = classUrl.openStream();
+            return IOUtils.toByteArray(in);
+        } catch (Exception ex) {
+            logger.warn(String.format("fail to read %s, cause:%s", classUrl, ex.getMessage()));
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the location of the code source the class loader defines the class with, e.g. {@code file:/app.jar}
+     * for {@code jar:file:/app.jar!/a/B.class}, null if unknown
+     */
+    static String getCodeLocation(URL classUrl, String classPath) {
+        final String url = classUrl.toExternalForm();
+        if (url.startsWith(JAR_URL_PREFIX)) {
+            final int index = url.lastIndexOf(JAR_URL_SEPARATOR);
+            return index == -1 ? null : url.substring(JAR_URL_PREFIX.length(), index);
+        }
+        if (url.endsWith(classPath)) {
+            return url.substring(0, url.length() - classPath.length());
+        }
+        return null;
+    }
+
+    // the result is only used if the class is defined with the same code location, certificates and permissions
+    // are not known before.
+    private static ProtectionDomain newProtectionDomain(ClassLoader classLoader, String codeLocation)
+            throws MalformedURLException {
+        final CodeSource codeSource = new CodeSource(new URL(codeLocation), (Certificate[]) null);
+        return new ProtectionDomain(codeSource, null, classLoader, null);
+    }
+
+    /**
+     * Claims the class for the dispatcher and returns the speculated result if it can be used as is, its side
+     * effects are then performed.
+     *
+     * @return null if there is no usable result, the class must then be transformed inline
+     */
+    Speculation take(ClassLoader classLoader, String classInternalName, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer) {
+        if (!started || classBeingRedefined != null) {
+            return null;
+        }
+        final Speculation speculation = speculations.remove(classInternalName);
+        if (speculation == null || speculation == PENDING || speculation == IN_PROGRESS) {
+            return null;
+        }
+        final URL codeLocation = CodeSourceUtils.getCodeLocation(protectionDomain);
+        if (speculation.classLoader != classLoader || speculation.transformer != transformer || codeLocation == null
+                || !speculation.codeLocation.equals(codeLocation.toExternalForm()) || !Arrays
+                .equals(speculation.classFileBuffer, classFileBuffer)) {
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("speculative transform of %s does not match, transform inline",
+                        classInternalName));
+            }
+            TransformRecorder.release(speculation.records);
+            return null;
+        }
+        if (!TransformRecorder.replay(speculation.records, classLoader, true)) {
+            return null;
+        }
+        return speculation;
+    }
+
+    static final class Speculation {
+
+        private final ClassLoader classLoader;
+
+        private final ClassFileTransformer transformer;
+
+        private final String codeLocation;
+
+        private final byte[] classFileBuffer;
+
+        // null if the transformer left the class unmodified
+        private final byte[] transformedBytes;
+
+        // injected and registered when the result is used
+        private final List<Record> records;
+
+        private Speculation(ClassLoader classLoader, ClassFileTransformer transformer, String codeLocation,
+                byte[] classFileBuffer, byte[] transformedBytes, List<Record> records) {
+            this.classLoader = classLoader;
+            this.transformer = transformer;
+            this.codeLocation = codeLocation;
+            this.classFileBuffer = classFileBuffer;
+            this.transformedBytes = transformedBytes;
+            this.records = records == null ? Collections.<Record>emptyList() : records;
+        }
+
+        byte[] getTransformedBytes() {
+            return transformedBytes;
+        }
+    }
+}
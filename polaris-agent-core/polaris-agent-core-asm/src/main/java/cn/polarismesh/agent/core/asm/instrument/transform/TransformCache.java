@@ -0,0 +1,279 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Record;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * On-disk cache of transformed bytecode.
+ * <p>
+ * An entry is keyed by the digest of the agent fingerprint (agent jars, plugin jars, config), the class name and the
+ * original class file bytes. It stores the emitted bytes together with the side effects recorded by
+ * {@link TransformRecorder}. A hit injects the same classes and registers the same interceptors under the same ids
+ * through the {@link InstrumentContext} of the plugin that did it, the bytecode refers to the interceptors by id, and
+ * is only used if every id is still free; otherwise the interceptors already registered are removed and the class is
+ * transformed again as usual. The instrument contexts are identified by their index, the fingerprint covers the
+ * plugins, so they are created in the same order by every run sharing the cache.
+ */
+public class TransformCache {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(TransformCache.class.getCanonicalName());
+
+    private static final int MAGIC = 0x504F4C54;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int UNMODIFIED = -1;
+
+    private final File cacheDir;
+
+    private final byte[] fingerprint;
+
+    private final List<InstrumentContext> instrumentContexts;
+
+    /**
+     * @param instrumentContexts the instrument contexts of the plugins, in creation order
+     */
+    public TransformCache(File cacheDir, byte[] fingerprint, List<? extends InstrumentContext> instrumentContexts) {
+        this.cacheDir = Objects.requireNonNull(cacheDir, "cacheDir");
+        this.fingerprint = Objects.requireNonNull(fingerprint, "fingerprint");
+        Objects.requireNonNull(instrumentContexts, "instrumentContexts");
+        this.instrumentContexts = new ArrayList<InstrumentContext>(instrumentContexts);
+    }
+
+    /**
+     * Digest of everything the emitted bytecode depends on besides the class itself.
+     *
+     * @param filePaths agent and plugin jars, config files
+     * @param extras additional values such as the agent version
+     */
+    public static byte[] newFingerprint(List<String> filePaths, String... extras) throws IOException {
+        final MessageDigest digest = newDigest();
+        digest.update(intToBytes(FORMAT_VERSION));
+        final byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        for (String filePath : filePaths) {
+            digest.update(filePath.getBytes(StandardCharsets.UTF_8));
+            InputStream in = null;
+            try {
+                in = new FileInputStream(filePath);
+                int read;
+                while ((read = in.read(buffer)) != IOUtils.EOF) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        for (String extra : extras) {
+            digest.update(String.valueOf(extra).getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    byte[] newKey(String classInternalName, byte[] classFileBuffer) {
+        final MessageDigest digest = newDigest();
+        digest.update(fingerprint);
+        digest.update(classInternalName.getBytes(StandardCharsets.UTF_8));
+        digest.update(classFileBuffer);
+        return digest.digest();
+    }
+
+    /**
+     * @return the cached entry if it exists and its side effects could be replayed, null otherwise
+     */
+    Entry load(byte[] key, ClassLoader classLoader) {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        final Entry entry;
+        try {
+            entry = read(file, key, instrumentContexts);
+        } catch (IOException ex) {
+            logger.warn(String.format("drop unreadable transform cache entry %s, cause:%s", file, ex.getMessage()));
+            file.delete();
+            return null;
+        }
+        if (entry == null || !TransformRecorder.replay(entry.records, classLoader, false)) {
+            return null;
+        }
+        return entry;
+    }
+
+    void store(byte[] key, byte[] transformedBytes, List<Record> records) {
+        final int[] contextIndexes = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            contextIndexes[i] = indexOf(records.get(i).getInstrumentContext());
+            if (contextIndexes[i] == -1) {
+                if (logger.isInfoEnabled()) {
+                    logger.info(String.format("unknown instrument context %s, skip transform cache",
+                            records.get(i).getInstrumentContext()));
+                }
+                return;
+            }
+        }
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            logger.warn(String.format("fail to create transform cache dir %s", cacheDir));
+            return;
+        }
+        final File file = getFile(key);
+        final File tempFile = new File(cacheDir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            write(out, key, transformedBytes, records, contextIndexes);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException ex) {
+            logger.warn(String.format("fail to write transform cache entry %s, cause:%s", file, ex.getMessage()));
+            tempFile.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private int indexOf(InstrumentContext instrumentContext) {
+        for (int i = 0; i < instrumentContexts.size(); i++) {
+            if (instrumentContexts.get(i) == instrumentContext) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private File getFile(byte[] key) {
+        final StringBuilder name = new StringBuilder(key.length * 2 + 6);
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16));
+            name.append(Character.forDigit(b & 0xF, 16));
+        }
+        name.append(".class");
+        return new File(cacheDir, name.toString());
+    }
+
+    private static void write(DataOutputStream out, byte[] key, byte[] transformedBytes, List<Record> records,
+            int[] contextIndexes) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeInt(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            out.writeInt(records.get(i).getInterceptorId());
+            out.writeInt(contextIndexes[i]);
+            out.writeUTF(records.get(i).getClassName());
+        }
+        if (transformedBytes == null) {
+            out.writeInt(UNMODIFIED);
+        } else {
+            out.writeInt(transformedBytes.length);
+            out.write(transformedBytes);
+        }
+    }
+
+    private static Entry read(File file, byte[] key, List<InstrumentContext> instrumentContexts)
+            throws IOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final byte[] storedKey = new byte[in.readInt()];
+            in.readFully(storedKey);
+            if (!Arrays.equals(key, storedKey)) {
+                return null;
+            }
+            final int recordCount = in.readInt();
+            final List<Record> records = new ArrayList<Record>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                final int interceptorId = in.readInt();
+                final int contextIndex = in.readInt();
+                if (contextIndex < 0 || contextIndex >= instrumentContexts.size()) {
+                    throw new IOException("invalid instrument context index " + contextIndex);
+                }
+                records.add(new Record(interceptorId, instrumentContexts.get(contextIndex), in.readUTF()));
+            }
+            final int length = in.readInt();
+            if (length == UNMODIFIED) {
+                return new Entry(null, records);
+            }
+            final byte[] transformedBytes = new byte[length];
+            in.readFully(transformedBytes);
+            return new Entry(transformedBytes, records);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not supported", ex);
+        }
+    }
+
+    private static byte[] intToBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    static final class Entry {
+
+        // null if the transformer left the class unmodified
+        private final byte[] transformedBytes;
+
+        private final List<Record> records;
+
+        private Entry(byte[] transformedBytes, List<Record> records) {
+            this.transformedBytes = transformedBytes;
+            this.records = Collections.unmodifiableList(records);
+        }
+
+        byte[] getTransformedBytes() {
+            return transformedBytes;
+        }
+    }
+}
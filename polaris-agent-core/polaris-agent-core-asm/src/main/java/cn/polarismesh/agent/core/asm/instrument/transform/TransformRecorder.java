@@ -0,0 +1,259 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
+import cn.polarismesh.agent.core.asm.registry.InterceptorRegistry;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the side effects of a class transform on the current thread, so that the transform cache can replay them
+ * when the cached bytecode is reused: the classes injected into the class loader of the transformed class and the
+ * interceptors registered, with their ids. The interceptor classes are recorded by name and resolved through the
+ * plugin class loader again. A transform with a side effect that cannot be replayed, e.g. adding a transformer or
+ * retransforming another class, is marked as not cacheable.
+ * <p>
+ * A speculative transform has no side effect at all: the classes are only recorded, not injected, and the interceptor
+ * ids are reserved, the interceptors are created and registered by {@link #replay(List, ClassLoader, boolean)} once
+ * the bytecode is used. A side effect that cannot be replayed aborts it.
+ */
+public final class TransformRecorder {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(TransformRecorder.class.getCanonicalName());
+
+    private static final ThreadLocal<Recording> RECORDING = new ThreadLocal<Recording>();
+
+    private TransformRecorder() {
+    }
+
+    /**
+     * @return the recording of the enclosing transform, if any, to be passed back to {@link #end(Recording)}
+     */
+    static Recording begin() {
+        return begin(new Recording(false));
+    }
+
+    static Recording begin(Recording recording) {
+        final Recording previous = RECORDING.get();
+        RECORDING.set(recording);
+        return previous;
+    }
+
+    static Recording end(Recording previous) {
+        final Recording recording = RECORDING.get();
+        if (previous == null) {
+            RECORDING.remove();
+        } else {
+            RECORDING.set(previous);
+        }
+        return recording;
+    }
+
+    public static void recordInjectedClass(InstrumentContext instrumentContext, String className) {
+        final Recording recording = RECORDING.get();
+        if (recording != null) {
+            recording.add(new Record(Record.NO_INTERCEPTOR, instrumentContext, className));
+        }
+    }
+
+    public static void recordInterceptor(InstrumentContext instrumentContext, int interceptorId,
+            Class<?> interceptorClass) {
+        final Recording recording = RECORDING.get();
+        if (recording != null) {
+            recording.add(new Record(interceptorId, instrumentContext, interceptorClass.getName()));
+        }
+    }
+
+    /**
+     * Marks the current transform as not cacheable, to be called before the side effect.
+     *
+     * @throws IllegalStateException if the current transform is speculative
+     */
+    public static void recordUncacheable(String cause) {
+        final Recording recording = RECORDING.get();
+        if (recording != null && recording.uncacheableCause == null) {
+            recording.uncacheableCause = cause;
+        }
+        if (recording != null && recording.speculative) {
+            // the cause is kept, in case the plugin swallows the exception
+            throw new IllegalStateException("speculative transform aborted by " + cause);
+        }
+    }
+
+    /**
+     * @return true if the side effects of the current transform must only be recorded
+     */
+    public static boolean isSpeculative() {
+        final Recording recording = RECORDING.get();
+        return recording != null && recording.speculative;
+    }
+
+    /**
+     * Injects the recorded classes into the class loader and registers the recorded interceptors under their ids.
+     * Nothing is left registered if it fails.
+     *
+     * @param reserved whether the ids were reserved by a speculative transform, the ones not registered are
+     * released if it fails
+     * @return false if an id is already in use, or a class cannot be injected or instantiated
+     */
+    static boolean replay(List<Record> records, ClassLoader classLoader, boolean reserved) {
+        // the classes injected by the replay belong to the replayed transform, not to an enclosing one
+        final Recording previous = begin();
+        final List<Record> registered = new ArrayList<Record>(records.size());
+        final List<Interceptor> interceptors = new ArrayList<Interceptor>(records.size());
+        try {
+            for (Record record : records) {
+                if (!record.isInterceptor()) {
+                    record.getInstrumentContext().injectClass(classLoader, record.getClassName());
+                    continue;
+                }
+                // same class as the transform, the one the plugin refers to, see ASMMethod#addInterceptor()
+                final Class<?> type = record.getInstrumentContext().loadPluginClass(record.getClassName());
+                final Interceptor interceptor = (Interceptor) type.getConstructor().newInstance();
+                if (!InterceptorRegistry.setInterceptor(record.getInterceptorId(), interceptor, classLoader)) {
+                    // id layout differs from the recorded transform
+                    if (logger.isInfoEnabled()) {
+                        logger.info(String.format("interceptor id %d already in use, skip replay",
+                                record.getInterceptorId()));
+                    }
+                    rollback(records, registered, interceptors, classLoader, reserved, record);
+                    return false;
+                }
+                registered.add(record);
+                interceptors.add(interceptor);
+            }
+            return true;
+        } catch (Throwable th) {
+            // LinkageError and ExceptionInInitializerError included, the class is transformed again instead
+            logger.warn(String.format("fail to replay transform, cause:%s", th.getMessage()), th);
+            rollback(records, registered, interceptors, classLoader, reserved, null);
+            return false;
+        } finally {
+            end(previous);
+        }
+    }
+
+    // the injected classes are kept, the transform injects them again anyway.
+    private static void rollback(List<Record> records, List<Record> registered, List<Interceptor> interceptors,
+            ClassLoader classLoader, boolean reserved, Record inUse) {
+        for (int i = 0; i < registered.size(); i++) {
+            InterceptorRegistry.removeInterceptor(registered.get(i).getInterceptorId(), interceptors.get(i),
+                    classLoader);
+        }
+        if (!reserved) {
+            return;
+        }
+        for (Record record : records) {
+            // the id in use belongs to the interceptor registered with it
+            if (record.isInterceptor() && record != inUse && !registered.contains(record)) {
+                InterceptorRegistry.releaseInterceptorId(record.getInterceptorId());
+            }
+        }
+    }
+
+    /**
+     * Releases the ids reserved by a speculative transform whose bytecode is not used.
+     */
+    static void release(List<Record> records) {
+        for (Record record : records) {
+            if (record.isInterceptor()) {
+                InterceptorRegistry.releaseInterceptorId(record.getInterceptorId());
+            }
+        }
+    }
+
+    static final class Recording {
+
+        private final List<Record> records = new ArrayList<Record>();
+
+        private final boolean speculative;
+
+        private String uncacheableCause;
+
+        Recording(boolean speculative) {
+            this.speculative = speculative;
+        }
+
+        private void add(Record record) {
+            // the interceptor classes are injected as well, once is enough
+            for (Record exist : records) {
+                if (exist.instrumentContext == record.instrumentContext && exist.className.equals(record.className)
+                        && !record.isInterceptor()) {
+                    return;
+                }
+            }
+            records.add(record);
+        }
+
+        List<Record> getRecords() {
+            return records;
+        }
+
+        boolean isSpeculative() {
+            return speculative;
+        }
+
+        /**
+         * @return null if the transform can be cached, or used if it is speculative
+         */
+        String getUncacheableCause() {
+            return uncacheableCause;
+        }
+    }
+
+    static final class Record {
+
+        static final int NO_INTERCEPTOR = -1;
+
+        private final int interceptorId;
+
+        private final InstrumentContext instrumentContext;
+
+        private final String className;
+
+        Record(int interceptorId, InstrumentContext instrumentContext, String className) {
+            this.interceptorId = interceptorId;
+            this.instrumentContext = instrumentContext;
+            this.className = className;
+        }
+
+        boolean isInterceptor() {
+            return interceptorId != NO_INTERCEPTOR;
+        }
+
+        /**
+         * @return {@link #NO_INTERCEPTOR} for an injected class
+         */
+        int getInterceptorId() {
+            return interceptorId;
+        }
+
+        InstrumentContext getInstrumentContext() {
+            return instrumentContext;
+        }
+
+        String getClassName() {
+            return className;
+        }
+    }
+}
@@ -68,4 +68,47 @@ public class TransformTemplate implements TransformOperations {
         final String transformCallbackName = transformCallbackClass.getName();
         this.instrumentContext.addClassFileTransformer(matcher, transformCallbackName, parameters, parameterTypes);
     }
+
+    @Override
+    public void transformSubclassesOf(String superClassName,
+            Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(superClassName, "superClassName");
+        transform(Matchers.newSuperClassMatcher(superClassName), transformCallbackClass);
+    }
+
+    @Override
+    public void transformImplementationsOf(String interfaceName,
+            Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(interfaceName, "interfaceName");
+        transform(Matchers.newInterfaceMatcher(interfaceName), transformCallbackClass);
+    }
+
+    @Override
+    public void transformAnnotatedWith(String annotationClassName,
+            Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(annotationClassName, "annotationClassName");
+        transform(Matchers.newAnnotationMatcher(annotationClassName), transformCallbackClass);
+    }
+
+    @Override
+    public void transformReferencing(String className, Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(className, "className");
+        transform(Matchers.newReferencedTypeMatcher(className), transformCallbackClass);
+    }
+
+    @Override
+    public void transformContainingString(String value, Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(value, "value");
+        transform(Matchers.newStringConstantMatcher(value), transformCallbackClass);
+    }
+
+    private void transform(Matcher matcher, Class<? extends TransformCallback> transformCallbackClass) {
+        Objects.requireNonNull(transformCallbackClass, "transformCallbackClass");
+
+        TransformCallbackChecker.validate(transformCallbackClass);
+
+        // release class reference
+        final String transformCallbackName = transformCallbackClass.getName();
+        this.instrumentContext.addClassFileTransformer(matcher, transformCallbackName);
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor1;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor2;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor3;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor4;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor5;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
+
+/**
+ * No-op interceptor standing in for a switched off one. It implements every interceptor type of
+ * {@link cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory}, so it passes the cast the
+ * instrumented code applies to its interceptor. A short circuit interceptor lets the method run, a stateful one gets
+ * a null state.
+ */
+final class DisabledInterceptor implements Interceptor0, Interceptor1, Interceptor2, Interceptor3, Interceptor4,
+        Interceptor5, ShortCircuitInterceptor, StatefulInterceptor, StatefulInterceptor0 {
+
+    static final DisabledInterceptor INSTANCE = new DisabledInterceptor();
+
+    private DisabledInterceptor() {
+    }
+
+    @Override
+    public void before(Object target, Object[] args) {
+    }
+
+    @Override
+    public void after(Object target, Object[] args, Object result, Throwable throwable) {
+    }
+
+    // returns null for StatefulInterceptor as well
+    @Override
+    public ShortCircuit beforeInvoke(Object target, Object[] args) {
+        return null;
+    }
+
+    @Override
+    public void afterInvoke(Object target, Object[] args, Object result, Throwable throwable, Object state) {
+    }
+
+    @Override
+    public Object beforeInvoke(Object target) {
+        return null;
+    }
+
+    @Override
+    public void afterInvoke(Object target, Object result, Throwable throwable, Object state) {
+    }
+
+    @Override
+    public void before(Object target) {
+    }
+
+    @Override
+    public void after(Object target, Object result, Throwable throwable) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0) {
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object result, Throwable throwable) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1) {
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object result, Throwable throwable) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2) {
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object result, Throwable throwable) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3) {
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object result,
+            Throwable throwable) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4) {
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4, Object result,
+            Throwable throwable) {
+    }
+}
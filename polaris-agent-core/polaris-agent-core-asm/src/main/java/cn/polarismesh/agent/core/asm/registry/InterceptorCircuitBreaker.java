@@ -0,0 +1,150 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the exceptions thrown by the interceptors, the woven code swallows them instead of letting them reach the
+ * instrumented method.
+ * <p>
+ * An interceptor failing {@code threshold} times within one window is tripped through the {@link InterceptorSwitch}
+ * and replaced by a no-op one, until it is enabled again by id. A threshold of zero or less only counts. Only the
+ * first failure of each interceptor is logged with its stack trace.
+ */
+public final class InterceptorCircuitBreaker {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(InterceptorCircuitBreaker.class.getCanonicalName());
+
+    public static final int DEFAULT_THRESHOLD = 10;
+
+    public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000L;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private static volatile long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+    private static final ConcurrentMap<Integer, Failures> failures = new ConcurrentHashMap<Integer, Failures>();
+
+    private static final AtomicLong totalFailureCount = new AtomicLong();
+
+    private InterceptorCircuitBreaker() {
+    }
+
+    public static void configure(int threshold, long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive:" + windowMillis);
+        }
+        InterceptorCircuitBreaker.threshold = threshold;
+        InterceptorCircuitBreaker.windowMillis = windowMillis;
+        logger.info(String.format("interceptor circuit breaker configured, threshold:%d window:%dms", threshold,
+                windowMillis));
+    }
+
+    static void onFailure(int interceptorId, Throwable throwable) {
+        totalFailureCount.incrementAndGet();
+        final Failures interceptorFailures = getFailures(interceptorId);
+        final int threshold = InterceptorCircuitBreaker.threshold;
+        final boolean trip = interceptorFailures.record(System.currentTimeMillis(), windowMillis, threshold);
+        if (interceptorFailures.getCount() == 1) {
+            logger.warn(String.format("interceptor %d failed, its exceptions are swallowed and counted",
+                    interceptorId), throwable);
+        }
+        if (trip) {
+            logger.warn(String.format("interceptor %d failed %d times within %dms, trip it", interceptorId,
+                    threshold, windowMillis));
+            InterceptorSwitch.trip(interceptorId);
+        }
+    }
+
+    private static Failures getFailures(int interceptorId) {
+        final Integer key = interceptorId;
+        final Failures exist = failures.get(key);
+        if (exist != null) {
+            return exist;
+        }
+        final Failures newFailures = new Failures();
+        final Failures old = failures.putIfAbsent(key, newFailures);
+        return old == null ? newFailures : old;
+    }
+
+    /**
+     * Forgets the failures of a reclaimed interceptor id, before it is reused.
+     */
+    static void reset(int interceptorId) {
+        if (failures.remove(interceptorId) != null) {
+            InterceptorSwitch.setInterceptorEnabled(interceptorId, true);
+        }
+    }
+
+    public static long getFailureCount(int interceptorId) {
+        final Failures interceptorFailures = failures.get(interceptorId);
+        return interceptorFailures == null ? 0L : interceptorFailures.getCount();
+    }
+
+    /**
+     * @return failure count of each interceptor that failed, by id
+     */
+    public static Map<Integer, Long> getFailureCounts() {
+        final Map<Integer, Long> failureCounts = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, Failures> entry : failures.entrySet()) {
+            failureCounts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return failureCounts;
+    }
+
+    public static long getTotalFailureCount() {
+        return totalFailureCount.get();
+    }
+
+    private static final class Failures {
+
+        private volatile long count = 0L;
+
+        // guarded by this.
+        private long windowStart = 0L;
+        private int windowCount = 0;
+
+        /**
+         * @return true if the failure reaches the threshold of the current window
+         */
+        private synchronized boolean record(long now, long windowMillis, int threshold) {
+            count++;
+            if (now - windowStart >= windowMillis) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            if (threshold > 0 && ++windowCount >= threshold) {
+                windowCount = 0;
+                return true;
+            }
+            return false;
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+}
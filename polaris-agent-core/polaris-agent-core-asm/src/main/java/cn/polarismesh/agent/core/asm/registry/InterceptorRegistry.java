@@ -18,16 +18,107 @@
 package cn.polarismesh.agent.core.asm.registry;
 
 import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
 
 public class InterceptorRegistry {
 
     private static final InterceptorRegistryAdaptor REGISTRY = new InterceptorRegistryAdaptor();
 
     public static Interceptor getInterceptor(int key) {
+        return InterceptorSwitch.apply(key, REGISTRY.getInterceptor(key));
+    }
+
+    // ignores the interceptor switch.
+    static Interceptor lookupInterceptor(int key) {
         return REGISTRY.getInterceptor(key);
     }
 
+    /**
+     * Registers the interceptor for the lifetime of the agent.
+     */
     public static int addInterceptor(Interceptor interceptor) {
-        return REGISTRY.addInterceptor(interceptor);
+        return REGISTRY.addInterceptor(interceptor, null);
+    }
+
+    /**
+     * Registers the interceptor as long as the class loader of the instrumented class is alive, its id is reused
+     * afterwards.
+     */
+    public static int addInterceptor(Interceptor interceptor, ClassLoader classLoader) {
+        return REGISTRY.addInterceptor(interceptor, classLoader);
+    }
+
+    public static boolean setInterceptor(int key, Interceptor interceptor, ClassLoader classLoader) {
+        return REGISTRY.setInterceptor(key, interceptor, classLoader);
+    }
+
+    public static int reserveInterceptorId() {
+        return REGISTRY.reserveInterceptorId();
+    }
+
+    public static void releaseInterceptorId(int key) {
+        REGISTRY.releaseInterceptorId(key);
+    }
+
+    /**
+     * Undoes {@link #setInterceptor(int, Interceptor, ClassLoader)}, the id is free again.
+     */
+    public static boolean removeInterceptor(int key, Interceptor interceptor, ClassLoader classLoader) {
+        return REGISTRY.removeInterceptor(key, interceptor, classLoader);
+    }
+
+    /**
+     * Called by the woven code with the exception an interceptor threw, which is swallowed.
+     */
+    public static void handleInterceptorException(Throwable throwable, int key) {
+        InterceptorCircuitBreaker.onFailure(key, throwable);
+    }
+
+    /**
+     * Called by the woven code before an interceptor annotated with {@code @Scope} is called.
+     *
+     * @return false if the interceptor is skipped at the current depth of its scope
+     */
+    public static boolean enterScope(Interceptor interceptor) {
+        return InterceptorScopes.enter(interceptor);
+    }
+
+    /**
+     * Called by the woven code on exit, for every {@link #enterScope(Interceptor)}.
+     */
+    public static void leaveScope(Interceptor interceptor) {
+        InterceptorScopes.leave(interceptor);
+    }
+
+    /**
+     * Called by the woven code before an interceptor annotated with {@code @Sampled} is called, before its arguments
+     * are built.
+     *
+     * @return false if the interceptor skips the current invocation
+     */
+    public static boolean sample(Interceptor interceptor) {
+        return InterceptorSamplers.sample(interceptor);
+    }
+
+    /**
+     * Called by the woven code with the time a sampled invocation spent in an interceptor whose sampler adapts to
+     * its cost.
+     */
+    public static void recordSampleCost(Interceptor interceptor, long costNanos) {
+        InterceptorSamplers.recordCost(interceptor, costNanos);
+    }
+
+    /**
+     * Bootstrap method of the invokedynamic interceptor call sites. The interceptor registered with the given id is
+     * bound into the call site as a constant, so the JIT sees a constant receiver and may inline it. The target only
+     * changes when the {@link InterceptorSwitch} does.
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, int key) {
+        final MutableCallSite callSite = new MutableCallSite(type);
+        InterceptorSwitch.link(key, callSite);
+        return callSite;
     }
 }
@@ -17,21 +17,78 @@
 
 package cn.polarismesh.agent.core.asm.registry;
 
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
 import cn.polarismesh.agent.core.extension.interceptor.LoggingInterceptor;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Registry of the interceptors called by the instrumented code, indexed by id.
+ * <p>
+ * The registry only holds weak references. An interceptor is kept alive by the class loader of the class it was
+ * registered for, so the interceptors of an undeployed application do not pin its class loader. Once the class loader
+ * is collected, the ids of its interceptors are reused by the following registrations. The slots are allocated by
+ * segments when the ids grow, a lookup stays an array read.
+ * <p>
+ * The anchors are {@link ClassValue}s of a class defined by that class loader, so an interceptor referring to its
+ * class loader does not keep it reachable. If the interceptor class is defined by an ancestor of the class loader,
+ * the {@link Proxy} class of {@link #ANCHOR_INTERFACE} defined by the class loader is used.
+ */
 public class InterceptorRegistryAdaptor {
 
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(InterceptorRegistryAdaptor.class.getCanonicalName());
+
     private static final LoggingInterceptor LOGGING_INTERCEPTOR = new LoggingInterceptor(
             "cn.polarismesh.agent.core.asm.extension.LOGGING_INTERCEPTOR");
 
-    private final static int DEFAULT_MAX = 8192;
+    private final static int DEFAULT_MAX = 1 << 20;
+
+    private final static int SEGMENT_SHIFT = 10;
+    private final static int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private final static int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // visible from every class loader, the proxy classes are cached by the class loader which defines them
+    private static final Class<?> ANCHOR_INTERFACE = Runnable.class;
+
+    private static final InvocationHandler ANCHOR_HANDLER = new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+        }
+    };
+
     private final int registrySize;
 
     private final AtomicInteger id = new AtomicInteger(0);
 
-    private final WeakAtomicReferenceArray<Interceptor> index;
+    private final Queue<Integer> freeIds = new ConcurrentLinkedQueue<Integer>();
+
+    private final ReferenceQueue<Interceptor> collectedInterceptors = new ReferenceQueue<Interceptor>();
+
+    // grows by copy on write, the segments themselves are never replaced.
+    private final AtomicReference<WeakAtomicReferenceArray<Interceptor>[]> segments;
+
+    private final Queue<Interceptor> bootstrapAnchors = new ConcurrentLinkedQueue<Interceptor>();
+
+    private final AtomicBoolean anchorClassWarned = new AtomicBoolean(false);
+
+    private final ClassValue<Queue<Interceptor>> classAnchors = new ClassValue<Queue<Interceptor>>() {
+        @Override
+        protected Queue<Interceptor> computeValue(Class<?> type) {
+            return new ConcurrentLinkedQueue<Interceptor>();
+        }
+    };
 
     public InterceptorRegistryAdaptor() {
         this(DEFAULT_MAX);
@@ -42,30 +99,200 @@ public class InterceptorRegistryAdaptor {
             throw new IllegalArgumentException("negative maxRegistrySize:" + maxRegistrySize);
         }
         this.registrySize = maxRegistrySize;
-        this.index = new WeakAtomicReferenceArray<Interceptor>(maxRegistrySize, Interceptor.class);
+        this.segments = new AtomicReference<WeakAtomicReferenceArray<Interceptor>[]>(newSegments(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WeakAtomicReferenceArray<Interceptor>[] newSegments(int length) {
+        return (WeakAtomicReferenceArray<Interceptor>[]) new WeakAtomicReferenceArray<?>[length];
     }
 
-    public int addInterceptor(Interceptor interceptor) {
+    /**
+     * @param classLoader class loader of the instrumented class, the interceptor is kept as long as it is alive
+     */
+    public int addInterceptor(Interceptor interceptor, ClassLoader classLoader) {
         if (interceptor == null) {
             return -1;
         }
+        reclaimIds();
+
+        while (true) {
+            final int newId = nextId();
+            if (newId >= registrySize) {
+                throw new IndexOutOfBoundsException(
+                        "Interceptor registry size exceeded. size=" + registrySize + " id=" + newId);
+            }
+            // the slot may have been taken by setInterceptor
+            if (getSegment(newId).setIfAbsent(newId & SEGMENT_MASK, interceptor)) {
+                anchor(interceptor, classLoader);
+                return newId;
+            }
+        }
+    }
+
+    /**
+     * Reserves a free id, the interceptor is registered later with
+     * {@link #setInterceptor(int, Interceptor, ClassLoader)}, or the id released by
+     * {@link #releaseInterceptorId(int)}.
+     */
+    public int reserveInterceptorId() {
+        reclaimIds();
+
+        while (true) {
+            final int newId = nextId();
+            if (newId >= registrySize) {
+                throw new IndexOutOfBoundsException(
+                        "Interceptor registry size exceeded. size=" + registrySize + " id=" + newId);
+            }
+            // the slot may have been taken by setInterceptor
+            if (getSegment(newId).get(newId & SEGMENT_MASK) == null) {
+                return newId;
+            }
+        }
+    }
 
-        final int newId = nextId();
-        if (newId >= registrySize) {
-            throw new IndexOutOfBoundsException(
-                    "Interceptor registry size exceeded. Check the \"profiler.interceptorregistry.size\" setting. size="
-                            + index.length() + " id=" + id);
+    /**
+     * Releases an id reserved by {@link #reserveInterceptorId()} which no interceptor was registered with.
+     */
+    public void releaseInterceptorId(int interceptorId) {
+        if (interceptorId >= 0 && interceptorId < registrySize) {
+            freeIds.offer(interceptorId);
         }
-        index.set(newId, interceptor);
-        return newId;
+    }
+
+    /**
+     * Registers the interceptor with a well known id, e.g. one restored from the transform cache.
+     *
+     * @return false if the id is out of range or already in use
+     */
+    public boolean setInterceptor(int interceptorId, Interceptor interceptor, ClassLoader classLoader) {
+        if (interceptor == null || interceptorId < 0 || interceptorId >= registrySize) {
+            return false;
+        }
+        reclaimIds();
+        if (!getSegment(interceptorId).setIfAbsent(interceptorId & SEGMENT_MASK, interceptor)) {
+            return false;
+        }
+        anchor(interceptor, classLoader);
+        return true;
+    }
+
+    /**
+     * Removes the interceptor if it is still registered with this id.
+     *
+     * @param classLoader the class loader it was registered for
+     */
+    public boolean removeInterceptor(int interceptorId, Interceptor interceptor, ClassLoader classLoader) {
+        if (interceptor == null || interceptorId < 0 || interceptorId >= registrySize) {
+            return false;
+        }
+        if (!getSegment(interceptorId).remove(interceptorId & SEGMENT_MASK, interceptor)) {
+            return false;
+        }
+        unanchor(interceptor, classLoader);
+        InterceptorCircuitBreaker.reset(interceptorId);
+        freeIds.offer(interceptorId);
+        return true;
     }
 
     private int nextId() {
+        final Integer freeId = freeIds.poll();
+        if (freeId != null) {
+            return freeId;
+        }
         return id.getAndIncrement();
     }
 
+    @SuppressWarnings("unchecked")
+    private void reclaimIds() {
+        Reference<? extends Interceptor> reference;
+        while ((reference = collectedInterceptors.poll()) != null) {
+            final WeakAtomicReferenceArray.Entry<Interceptor> entry =
+                    (WeakAtomicReferenceArray.Entry<Interceptor>) reference;
+            if (getSegment(entry.getIndex()).clear(entry)) {
+                InterceptorCircuitBreaker.reset(entry.getIndex());
+                freeIds.offer(entry.getIndex());
+            }
+        }
+    }
+
+    private void anchor(Interceptor interceptor, ClassLoader classLoader) {
+        getAnchors(interceptor, classLoader).offer(interceptor);
+    }
+
+    private void unanchor(Interceptor interceptor, ClassLoader classLoader) {
+        getAnchors(interceptor, classLoader).remove(interceptor);
+    }
+
+    private Queue<Interceptor> getAnchors(Interceptor interceptor, ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapAnchors;
+        }
+        final Class<?> interceptorClass = interceptor.getClass();
+        if (isSameOrDescendant(interceptorClass.getClassLoader(), classLoader)) {
+            // dies with the interceptor class, which does not outlive the class loader
+            return classAnchors.get(interceptorClass);
+        }
+        final Class<?> anchorClass = getAnchorClass(classLoader);
+        if (anchorClass == null) {
+            return bootstrapAnchors;
+        }
+        return classAnchors.get(anchorClass);
+    }
+
+    // a class defined by the class loader, null if the class loader can not see the anchor interface
+    private Class<?> getAnchorClass(ClassLoader classLoader) {
+        try {
+            final Class<?> anchorClass = Proxy.newProxyInstance(classLoader, new Class<?>[]{ANCHOR_INTERFACE},
+                    ANCHOR_HANDLER).getClass();
+            if (anchorClass.getClassLoader() == classLoader) {
+                return anchorClass;
+            }
+        } catch (RuntimeException e) {
+            // falls through, logged below
+        }
+        // the interceptors are kept until they are removed, the class loader is pinned by them
+        if (anchorClassWarned.compareAndSet(false, true)) {
+            logger.warn(String.format("Can not define an anchor class in %s, the interceptors registered for it "
+                    + "are never collected", classLoader));
+        }
+        return null;
+    }
+
+    private static boolean isSameOrDescendant(ClassLoader classLoader, ClassLoader ancestor) {
+        for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent()) {
+            if (cl == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WeakAtomicReferenceArray<Interceptor> getSegment(int key) {
+        final int segmentIndex = key >>> SEGMENT_SHIFT;
+        while (true) {
+            final WeakAtomicReferenceArray<Interceptor>[] current = segments.get();
+            if (segmentIndex < current.length) {
+                return current[segmentIndex];
+            }
+            final WeakAtomicReferenceArray<Interceptor>[] grown = newSegments(segmentIndex + 1);
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new WeakAtomicReferenceArray<Interceptor>(SEGMENT_SIZE, i << SEGMENT_SHIFT,
+                        collectedInterceptors);
+            }
+            // another thread may have grown the segments meanwhile, then retry with its segments.
+            segments.compareAndSet(current, grown);
+        }
+    }
+
     public Interceptor getInterceptor(int key) {
-        final Interceptor interceptor = this.index.get(key);
+        final WeakAtomicReferenceArray<Interceptor>[] segments = this.segments.get();
+        final int segmentIndex = key >>> SEGMENT_SHIFT;
+        if (segmentIndex >= segments.length) {
+            return LOGGING_INTERCEPTOR;
+        }
+        final Interceptor interceptor = segments[segmentIndex].get(key & SEGMENT_MASK);
         if (interceptor == null) {
             return LOGGING_INTERCEPTOR;
         } else {
@@ -0,0 +1,58 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.InterceptorSampler;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.Sampled;
+
+/**
+ * Binds the interceptor classes annotated with {@link Sampled} to their {@link InterceptorSampler}, shared by every
+ * method the class intercepts.
+ * <p>
+ * Like the scopes, the sampler is resolved from the class of the interceptor instance the woven code loaded. An
+ * interceptor replaced by the {@link InterceptorSwitch} is not sampled.
+ */
+final class InterceptorSamplers {
+
+    private static final ClassValue<InterceptorSampler> samplers = new ClassValue<InterceptorSampler>() {
+        @Override
+        protected InterceptorSampler computeValue(Class<?> type) {
+            final Sampled sampled = type.getAnnotation(Sampled.class);
+            if (sampled == null) {
+                return null;
+            }
+            return InterceptorSampler.of(sampled);
+        }
+    };
+
+    private InterceptorSamplers() {
+    }
+
+    static boolean sample(Interceptor interceptor) {
+        final InterceptorSampler sampler = samplers.get(interceptor.getClass());
+        return sampler == null || sampler.sample();
+    }
+
+    static void recordCost(Interceptor interceptor, long costNanos) {
+        final InterceptorSampler sampler = samplers.get(interceptor.getClass());
+        if (sampler != null) {
+            sampler.recordCost(costNanos);
+        }
+    }
+}
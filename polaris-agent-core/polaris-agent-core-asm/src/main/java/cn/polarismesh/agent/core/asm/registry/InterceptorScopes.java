@@ -0,0 +1,75 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.scope.ExecutionPolicy;
+import cn.polarismesh.agent.core.extension.interceptor.scope.InterceptorScope;
+import cn.polarismesh.agent.core.extension.interceptor.scope.Scope;
+
+/**
+ * Binds the interceptor classes annotated with {@link Scope} to their {@link InterceptorScope}.
+ * <p>
+ * The binding is resolved from the class of the interceptor instance the woven code loaded, so the bytecode only
+ * refers to interceptor ids. An interceptor replaced by the {@link InterceptorSwitch} is not scoped.
+ */
+final class InterceptorScopes {
+
+    private static final Binding UNSCOPED = new Binding(null, null);
+
+    private static final ClassValue<Binding> bindings = new ClassValue<Binding>() {
+        @Override
+        protected Binding computeValue(Class<?> type) {
+            final Scope scope = type.getAnnotation(Scope.class);
+            if (scope == null) {
+                return UNSCOPED;
+            }
+            return new Binding(InterceptorScope.getScope(scope.value()), scope.policy());
+        }
+    };
+
+    private InterceptorScopes() {
+    }
+
+    static boolean enter(Interceptor interceptor) {
+        final Binding binding = bindings.get(interceptor.getClass());
+        if (binding.scope == null) {
+            return true;
+        }
+        return binding.scope.tryEnter(binding.policy);
+    }
+
+    static void leave(Interceptor interceptor) {
+        final Binding binding = bindings.get(interceptor.getClass());
+        if (binding.scope != null) {
+            binding.scope.leave();
+        }
+    }
+
+    private static final class Binding {
+
+        private final InterceptorScope scope;
+
+        private final ExecutionPolicy policy;
+
+        private Binding(InterceptorScope scope, ExecutionPolicy policy) {
+            this.scope = scope;
+            this.policy = policy;
+        }
+    }
+}
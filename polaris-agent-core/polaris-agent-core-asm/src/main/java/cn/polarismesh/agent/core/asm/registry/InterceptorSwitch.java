@@ -0,0 +1,227 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runtime kill switch of the interceptors, globally, per interceptor id or per interceptor class.
+ * <p>
+ * The {@link InterceptorCircuitBreaker} trips failing interceptors through the switch as well. A tripped interceptor
+ * stays off until it is enabled again by id, replacing the rest of the state does not reset it.
+ * <p>
+ * A switched off interceptor is replaced by a no-op one. While every interceptor is enabled, a registry lookup only
+ * pays for one volatile read. The invokedynamic call sites are relinked on every change instead, so they keep a
+ * constant target the JIT can inline, down to nothing for the no-op interceptor.
+ */
+public final class InterceptorSwitch {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(InterceptorSwitch.class.getCanonicalName());
+
+    // null while every interceptor is enabled.
+    private static volatile State state;
+
+    // guarded by the class lock, identity set of the linked call sites.
+    private static final Set<CallSiteReference> callSites = new HashSet<CallSiteReference>();
+
+    // call sites of the unloaded classes, pruned on link
+    private static final ReferenceQueue<MutableCallSite> clearedCallSites = new ReferenceQueue<MutableCallSite>();
+
+    private InterceptorSwitch() {
+    }
+
+    static Interceptor apply(int interceptorId, Interceptor interceptor) {
+        final State state = InterceptorSwitch.state;
+        if (state == null || state.isEnabled(interceptorId, interceptor)) {
+            return interceptor;
+        }
+        return DisabledInterceptor.INSTANCE;
+    }
+
+    static synchronized void link(int interceptorId, MutableCallSite callSite) {
+        pruneCallSites();
+        callSites.add(new CallSiteReference(interceptorId, callSite));
+        callSite.setTarget(newTarget(interceptorId, callSite));
+    }
+
+    public static boolean isEnabled() {
+        final State state = InterceptorSwitch.state;
+        return state == null || state.enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        final State current = getState();
+        update(enabled, current.disabledIds, current.disabledClassNames);
+    }
+
+    public static synchronized void setInterceptorEnabled(int interceptorId, boolean enabled) {
+        final State current = getState();
+        final Set<Integer> disabledIds = new HashSet<Integer>(current.disabledIds);
+        Set<Integer> trippedIds = current.trippedIds;
+        if (enabled) {
+            disabledIds.remove(interceptorId);
+            if (trippedIds.contains(interceptorId)) {
+                trippedIds = new HashSet<Integer>(trippedIds);
+                trippedIds.remove(interceptorId);
+            }
+        } else {
+            disabledIds.add(interceptorId);
+        }
+        update(new State(current.enabled, disabledIds, current.disabledClassNames, trippedIds));
+    }
+
+    /**
+     * Switches the interceptor off until it is enabled again by id.
+     */
+    static synchronized void trip(int interceptorId) {
+        final State current = getState();
+        if (current.trippedIds.contains(interceptorId)) {
+            return;
+        }
+        final Set<Integer> trippedIds = new HashSet<Integer>(current.trippedIds);
+        trippedIds.add(interceptorId);
+        update(new State(current.enabled, current.disabledIds, current.disabledClassNames, trippedIds));
+    }
+
+    public static Set<Integer> getTrippedInterceptorIds() {
+        return getState().trippedIds;
+    }
+
+    public static synchronized void setInterceptorClassEnabled(String interceptorClassName, boolean enabled) {
+        final State current = getState();
+        final Set<String> disabledClassNames = new HashSet<String>(current.disabledClassNames);
+        if (enabled) {
+            disabledClassNames.remove(interceptorClassName);
+        } else {
+            disabledClassNames.add(interceptorClassName);
+        }
+        update(current.enabled, current.disabledIds, disabledClassNames);
+    }
+
+    /**
+     * Replaces the whole switch state, but the tripped interceptors.
+     */
+    public static synchronized void update(boolean enabled, Set<Integer> disabledIds,
+            Set<String> disabledClassNames) {
+        update(new State(enabled, disabledIds, disabledClassNames, getState().trippedIds));
+    }
+
+    private static void update(State newState) {
+        if (newState.sameAs(getState())) {
+            return;
+        }
+        state = newState.isAllEnabled() ? null : newState;
+        logger.info(String.format(
+                "interceptor switch updated, enabled:%s disabledIds:%s disabledClasses:%s trippedIds:%s",
+                newState.enabled, newState.disabledIds, newState.disabledClassNames, newState.trippedIds));
+        relink();
+    }
+
+    private static State getState() {
+        final State state = InterceptorSwitch.state;
+        return state == null ? State.ALL_ENABLED : state;
+    }
+
+    private static void relink() {
+        final List<MutableCallSite> relinked = new ArrayList<MutableCallSite>(callSites.size());
+        for (Iterator<CallSiteReference> it = callSites.iterator(); it.hasNext(); ) {
+            final CallSiteReference reference = it.next();
+            final MutableCallSite callSite = reference.get();
+            if (callSite == null) {
+                // the instrumented class is gone.
+                it.remove();
+                continue;
+            }
+            callSite.setTarget(newTarget(reference.interceptorId, callSite));
+            relinked.add(callSite);
+        }
+        if (!relinked.isEmpty()) {
+            MutableCallSite.syncAll(relinked.toArray(new MutableCallSite[0]));
+        }
+    }
+
+    private static void pruneCallSites() {
+        Reference<? extends MutableCallSite> reference;
+        while ((reference = clearedCallSites.poll()) != null) {
+            callSites.remove(reference);
+        }
+    }
+
+    private static MethodHandle newTarget(int interceptorId, MutableCallSite callSite) {
+        final Interceptor interceptor = apply(interceptorId, InterceptorRegistry.lookupInterceptor(interceptorId));
+        return MethodHandles.constant(callSite.type().returnType(), interceptor);
+    }
+
+    private static final class CallSiteReference extends WeakReference<MutableCallSite> {
+
+        private final int interceptorId;
+
+        private CallSiteReference(int interceptorId, MutableCallSite callSite) {
+            super(callSite, clearedCallSites);
+            this.interceptorId = interceptorId;
+        }
+    }
+
+    private static final class State {
+
+        private static final State ALL_ENABLED = new State(true, Collections.<Integer>emptySet(),
+                Collections.<String>emptySet(), Collections.<Integer>emptySet());
+
+        private final boolean enabled;
+        private final Set<Integer> disabledIds;
+        private final Set<String> disabledClassNames;
+        private final Set<Integer> trippedIds;
+
+        private State(boolean enabled, Set<Integer> disabledIds, Set<String> disabledClassNames,
+                Set<Integer> trippedIds) {
+            this.enabled = enabled;
+            this.disabledIds = Collections.unmodifiableSet(new HashSet<Integer>(disabledIds));
+            this.disabledClassNames = Collections.unmodifiableSet(new HashSet<String>(disabledClassNames));
+            this.trippedIds = Collections.unmodifiableSet(new HashSet<Integer>(trippedIds));
+        }
+
+        private boolean isAllEnabled() {
+            return enabled && disabledIds.isEmpty() && disabledClassNames.isEmpty() && trippedIds.isEmpty();
+        }
+
+        private boolean isEnabled(int interceptorId, Interceptor interceptor) {
+            return enabled && !disabledIds.contains(interceptorId) && !trippedIds.contains(interceptorId)
+                    && !disabledClassNames.contains(interceptor.getClass().getName());
+        }
+
+        private boolean sameAs(State that) {
+            return enabled == that.enabled && disabledIds.equals(that.disabledIds) && disabledClassNames
+                    .equals(that.disabledClassNames) && trippedIds.equals(that.trippedIds);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import javax.management.ObjectName;
+
+public class InterceptorSwitchControl implements InterceptorSwitchControlMBean {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(InterceptorSwitchControl.class.getCanonicalName());
+
+    public static final String OBJECT_NAME = "cn.polarismesh.agent:type=InterceptorSwitch";
+
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new InterceptorSwitchControl(), new ObjectName(OBJECT_NAME));
+            logger.info(String.format("interceptor switch registered as %s", OBJECT_NAME));
+        } catch (Exception e) {
+            logger.warn(String.format("fail to register interceptor switch mbean, cause:%s", e.getMessage()));
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return InterceptorSwitch.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        InterceptorSwitch.setEnabled(enabled);
+    }
+
+    @Override
+    public void enableInterceptor(int interceptorId) {
+        InterceptorSwitch.setInterceptorEnabled(interceptorId, true);
+    }
+
+    @Override
+    public void disableInterceptor(int interceptorId) {
+        InterceptorSwitch.setInterceptorEnabled(interceptorId, false);
+    }
+
+    @Override
+    public void enableInterceptorClass(String interceptorClassName) {
+        InterceptorSwitch.setInterceptorClassEnabled(interceptorClassName, true);
+    }
+
+    @Override
+    public void disableInterceptorClass(String interceptorClassName) {
+        InterceptorSwitch.setInterceptorClassEnabled(interceptorClassName, false);
+    }
+
+    @Override
+    public int[] getTrippedInterceptorIds() {
+        final Set<Integer> trippedIds = InterceptorSwitch.getTrippedInterceptorIds();
+        final int[] ids = new int[trippedIds.size()];
+        int i = 0;
+        for (Integer trippedId : trippedIds) {
+            ids[i++] = trippedId;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Override
+    public long getTotalFailureCount() {
+        return InterceptorCircuitBreaker.getTotalFailureCount();
+    }
+
+    @Override
+    public long getFailureCount(int interceptorId) {
+        return InterceptorCircuitBreaker.getFailureCount(interceptorId);
+    }
+
+    @Override
+    public Map<Integer, Long> getFailureCounts() {
+        return InterceptorCircuitBreaker.getFailureCounts();
+    }
+}
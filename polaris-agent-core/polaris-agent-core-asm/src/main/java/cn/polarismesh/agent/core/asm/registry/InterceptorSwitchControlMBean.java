@@ -0,0 +1,46 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link InterceptorSwitch} and of the {@link InterceptorCircuitBreaker} counters.
+ */
+public interface InterceptorSwitchControlMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void enableInterceptor(int interceptorId);
+
+    void disableInterceptor(int interceptorId);
+
+    void enableInterceptorClass(String interceptorClassName);
+
+    void disableInterceptorClass(String interceptorClassName);
+
+    int[] getTrippedInterceptorIds();
+
+    long getTotalFailureCount();
+
+    long getFailureCount(int interceptorId);
+
+    Map<Integer, Long> getFailureCounts();
+}
@@ -0,0 +1,137 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Polls a properties file and applies it to the {@link InterceptorSwitch} whenever it changes:
+ * <pre>
+ * enabled=false
+ * disabled.ids=12,13
+ * disabled.classes=cn.polarismesh.agent.plugin.FooInterceptor
+ * </pre>
+ * A missing file enables every interceptor.
+ */
+public class InterceptorSwitchFileWatcher implements Runnable {
+
+    private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+            .getLogger(InterceptorSwitchFileWatcher.class.getCanonicalName());
+
+    private static final String THREAD_NAME = "polaris-interceptor-switch";
+
+    private static final long CHECK_INTERVAL_MILLIS = 1000L;
+
+    static final String KEY_ENABLED = "enabled";
+
+    static final String KEY_DISABLED_IDS = "disabled.ids";
+
+    static final String KEY_DISABLED_CLASSES = "disabled.classes";
+
+    private final File file;
+
+    private long lastModified = 0L;
+
+    private long lastLength = -1L;
+
+    public InterceptorSwitchFileWatcher(File file) {
+        this.file = Objects.requireNonNull(file, "file");
+    }
+
+    public void start() {
+        check();
+        final Thread thread = new Thread(this, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+        logger.info(String.format("interceptor switch file watch started, file:%s", file));
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            check();
+        }
+    }
+
+    private void check() {
+        final long modified = file.lastModified();
+        final long length = file.length();
+        if (modified == lastModified && length == lastLength) {
+            return;
+        }
+        lastModified = modified;
+        lastLength = length;
+        if (!file.isFile()) {
+            InterceptorSwitch.update(true, Collections.<Integer>emptySet(), Collections.<String>emptySet());
+            return;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e) {
+            logger.warn(String.format("fail to read interceptor switch file %s, cause:%s", file, e.getMessage()));
+            return;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        final boolean enabled = !"false".equalsIgnoreCase(properties.getProperty(KEY_ENABLED, "true").trim());
+        final Set<Integer> disabledIds = new HashSet<Integer>();
+        for (String id : split(properties.getProperty(KEY_DISABLED_IDS))) {
+            try {
+                disabledIds.add(Integer.parseInt(id));
+            } catch (NumberFormatException e) {
+                logger.warn(String.format("invalid interceptor id %s in %s", id, file));
+            }
+        }
+        final Set<String> disabledClassNames = new HashSet<String>(split(properties.getProperty(KEY_DISABLED_CLASSES)));
+        InterceptorSwitch.update(enabled, disabledIds, disabledClassNames);
+    }
+
+    private static Set<String> split(String value) {
+        if (value == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> values = new HashSet<String>();
+        for (String token : value.split(",")) {
+            final String trimmed = token.trim();
+            if (!trimmed.isEmpty()) {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
+}
@@ -17,30 +17,78 @@
 
 package cn.polarismesh.agent.core.asm.registry;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Array of weak references. A slot keeps its cleared reference until {@link #clear(Entry)} is called for it, so the
+ * slot cannot be taken again before the owner has processed the enqueued reference.
+ */
 public final class WeakAtomicReferenceArray<T> {
 
     private final int length;
-    private final AtomicReferenceArray<T> atomicArray;
+    private final int offset;
+    private final ReferenceQueue<? super T> queue;
+    private final AtomicReferenceArray<Entry<T>> atomicArray;
 
-    public WeakAtomicReferenceArray(int length, Class<? extends T> clazz) {
+    /**
+     * @param offset added to the slot index to get the {@link Entry#getIndex()} of its references
+     * @param queue queue the references are registered with once their referent is collected
+     */
+    public WeakAtomicReferenceArray(int length, int offset, ReferenceQueue<? super T> queue) {
         this.length = length;
-        this.atomicArray = new AtomicReferenceArray<T>(length);
+        this.offset = offset;
+        this.queue = queue;
+        this.atomicArray = new AtomicReferenceArray<Entry<T>>(length);
+    }
+
+    /**
+     * @return false if the slot is already taken, even by a cleared reference
+     */
+    public boolean setIfAbsent(int index, T newValue) {
+        return this.atomicArray.compareAndSet(index, null, new Entry<T>(newValue, this.offset + index, this.queue));
+    }
+
+    /**
+     * Frees the slot of the given reference.
+     */
+    public boolean clear(Entry<T> entry) {
+        return this.atomicArray.compareAndSet(entry.getIndex() - this.offset, entry, null);
     }
 
-    public void set(int index, T newValue) {
-        this.atomicArray.set(index, newValue);
+    /**
+     * Frees the slot if it still holds the given value.
+     */
+    public boolean remove(int index, T value) {
+        final Entry<T> entry = this.atomicArray.get(index);
+        return entry != null && entry.get() == value && this.atomicArray.compareAndSet(index, entry, null);
     }
 
     public int length() {
         return length;
     }
 
-
     public T get(int index) {
         // thread safe read
-        return this.atomicArray.get(index);
+        final Entry<T> entry = this.atomicArray.get(index);
+        if (entry == null) {
+            return null;
+        }
+        return entry.get();
     }
 
+    public static final class Entry<T> extends WeakReference<T> {
+
+        private final int index;
+
+        private Entry(T referent, int index, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
 }
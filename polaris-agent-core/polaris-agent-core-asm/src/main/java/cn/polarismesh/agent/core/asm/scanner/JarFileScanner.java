@@ -17,6 +17,7 @@
 
 package cn.polarismesh.agent.core.asm.scanner;
 
+import cn.polarismesh.agent.core.common.utils.MappedJarFile;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Objects;
@@ -25,10 +26,17 @@ import java.util.jar.JarFile;
 
 public class JarFileScanner implements Scanner {
 
+    // shared mapping of the jar, the JarFile is only opened if the jar can not be mapped.
+    private final MappedJarFile mappedJarFile;
     private final JarFile jarFile;
 
     public JarFileScanner(String path) {
         Objects.requireNonNull(path, "path");
+        this.mappedJarFile = openMappedJarFile(path);
+        if (this.mappedJarFile != null) {
+            this.jarFile = null;
+            return;
+        }
         try {
             this.jarFile = new JarFile(path);
         } catch (IOException e) {
@@ -36,8 +44,19 @@ public class JarFileScanner implements Scanner {
         }
     }
 
+    private static MappedJarFile openMappedJarFile(String path) {
+        try {
+            return MappedJarFile.open(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean exist(String fileName) {
+        if (mappedJarFile != null) {
+            return mappedJarFile.contains(fileName);
+        }
         final JarEntry jarEntry = jarFile.getJarEntry(fileName);
         if (jarEntry == null) {
             return false;
@@ -47,6 +66,13 @@ public class JarFileScanner implements Scanner {
 
     @Override
     public InputStream openStream(String fileName) {
+        if (mappedJarFile != null) {
+            try {
+                return mappedJarFile.getInputStream(fileName);
+            } catch (IOException e) {
+                return null;
+            }
+        }
         final JarEntry jarEntry = jarFile.getJarEntry(fileName);
         if (jarEntry == null) {
             return null;
@@ -60,6 +86,9 @@ public class JarFileScanner implements Scanner {
 
     @Override
     public void close() {
+        if (mappedJarFile != null) {
+            mappedJarFile.release();
+        }
         if (jarFile != null) {
             try {
                 jarFile.close();
@@ -72,7 +101,7 @@ public class JarFileScanner implements Scanner {
     @Override
     public String toString() {
         return "JarFileScanner{" +
-                "jarFile=" + jarFile.getName() +
+                "jarFile=" + (mappedJarFile != null ? mappedJarFile.getName() : jarFile.getName()) +
                 '}';
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+public class ASMClassNodeAdapterTest {
+
+    private static final ClassInputStreamProvider PROVIDER = new ClassInputStreamProvider() {
+        @Override
+        public InputStream getResourceAsStream(ClassLoader targetClassLoader, String classPath) {
+            return ASMClassNodeAdapterTest.class.getClassLoader().getResourceAsStream(classPath);
+        }
+    };
+
+    @Test
+    public void loadCodeOfStaleAdapter() throws IOException {
+        final ASMClassNodeAdapter classNode = new ASMClassNodeAdapter(PROVIDER, getClass().getClassLoader(), null,
+                new ClassReader(Target.class.getName()), false);
+        final ASMMethodNodeAdapter stale = classNode.getDeclaredMethod("add", "(II)I");
+        final ASMMethodNodeAdapter parsed = classNode.loadCode(stale);
+        Assert.assertNotEquals(0, parsed.getMethodNode().instructions.size());
+        Assert.assertSame(parsed, classNode.loadCode(parsed));
+
+        // the adapter still refers to the header only node
+        final ASMMethodNodeAdapter reloaded = classNode.loadCode(stale);
+        Assert.assertSame(parsed.getMethodNode(), reloaded.getMethodNode());
+    }
+
+    @Test
+    public void copyThroughAccessChange() throws Exception {
+        final ASMClassNodeAdapter classNode = new ASMClassNodeAdapter(PROVIDER, getClass().getClassLoader(), null,
+                new ClassReader(Target.class.getName()), false);
+        final ASMMethodNodeAdapter header = classNode.getDeclaredMethod("add", "(II)I");
+        header.setAccess(header.getAccess() | Opcodes.ACC_SYNCHRONIZED);
+        final ASMMethodNodeAdapter subtract = classNode.getDeclaredMethod("subtract", "(II)I");
+        subtract.setAccess(subtract.getAccess() | Opcodes.ACC_SYNCHRONIZED);
+        // parsed after the header changed
+        Assert.assertTrue((classNode.loadCode(subtract).getAccess() & Opcodes.ACC_SYNCHRONIZED) != 0);
+
+        final byte[] classFileBuffer = classNode.toByteArray();
+        final Class<?> woven = new ClassLoader(getClass().getClassLoader()) {
+            {
+                defineClass(Target.class.getName(), classFileBuffer, 0, classFileBuffer.length);
+            }
+
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                final Class<?> loadedClass = findLoadedClass(name);
+                return loadedClass != null ? loadedClass : super.loadClass(name, resolve);
+            }
+        }.loadClass(Target.class.getName());
+        final Object target = woven.getConstructor().newInstance();
+        for (String name : new String[]{"add", "subtract"}) {
+            Assert.assertTrue(Modifier.isSynchronized(woven.getMethod(name, int.class, int.class).getModifiers()));
+        }
+        Assert.assertEquals(3, woven.getMethod("add", int.class, int.class).invoke(target, 1, 2));
+        Assert.assertEquals(-1, woven.getMethod("subtract", int.class, int.class).invoke(target, 1, 2));
+    }
+
+    public static class Target {
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public int subtract(int a, int b) {
+            return a - b;
+        }
+    }
+}
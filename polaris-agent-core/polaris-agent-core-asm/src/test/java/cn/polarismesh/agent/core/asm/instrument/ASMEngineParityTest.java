@@ -0,0 +1,457 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentMethod;
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
+import cn.polarismesh.agent.core.extension.interceptor.CaptureMode;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor0;
+import cn.polarismesh.agent.core.extension.interceptor.sampling.Sampled;
+import cn.polarismesh.agent.core.extension.interceptor.scope.InterceptorScope;
+import cn.polarismesh.agent.core.extension.interceptor.scope.Scope;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Weaves the same interceptors with {@link ASMEngine} and {@link ASMStreamingEngine}, and expects the woven classes
+ * to behave the same.
+ */
+public class ASMEngineParityTest {
+
+    private static final List<String> LOG = Collections.synchronizedList(new ArrayList<String>());
+
+    private static final InstrumentContext CONTEXT = (InstrumentContext) Proxy.newProxyInstance(
+            ASMEngineParityTest.class.getClassLoader(), new Class<?>[]{InstrumentContext.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getResourceAsStream")) {
+                        return ASMEngineParityTest.class.getClassLoader().getResourceAsStream((String) args[1]);
+                    }
+                    if (method.getName().equals("injectClass")) {
+                        return Class.forName((String) args[1], false, (ClassLoader) args[0]);
+                    }
+                    return null;
+                }
+            });
+
+    private final InterceptorDefinitionFactory factory = new InterceptorDefinitionFactory();
+
+    @Before
+    public void clearLog() {
+        LOG.clear();
+    }
+
+    @Test
+    public void aroundInterceptor() throws Exception {
+        assertParity(new Weaver() {
+            @Override
+            public void weave(InstrumentClass instrumentClass) throws InstrumentException {
+                for (InstrumentMethod method : instrumentClass.getDeclaredMethods()) {
+                    method.addInterceptor(Recorder.class);
+                }
+                for (InstrumentMethod constructor : instrumentClass.getDeclaredConstructors()) {
+                    constructor.addInterceptor(Recorder.class);
+                }
+                // already intercepted
+                instrumentClass.getDeclaredMethod("v").addInterceptor(Recorder.class);
+            }
+        });
+    }
+
+    @Test
+    public void captureModes() throws Exception {
+        assertParity(new Weaver() {
+            @Override
+            public void weave(InstrumentClass instrumentClass) throws InstrumentException {
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(BeforeRecorder.class);
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(AfterRecorder.class);
+                instrumentClass.getDeclaredMethod("lmul", "long", "long").addInterceptor(AfterRecorder.class);
+                instrumentClass.getDeclaredMethod("boom").addInterceptor(AfterRecorder.class);
+                instrumentClass.getDeclaredMethod("caught").addInterceptor(BeforeRecorder.class);
+            }
+        });
+    }
+
+    @Test
+    public void scopedInterceptor() throws Exception {
+        assertParity(new Weaver() {
+            @Override
+            public void weave(InstrumentClass instrumentClass) throws InstrumentException {
+                instrumentClass.getDeclaredMethod("nested").addInterceptor(ScopedRecorder.class);
+                instrumentClass.getDeclaredMethod("nested").addInterceptor(Recorder.class);
+                instrumentClass.getDeclaredMethod("v").addInterceptor(ScopedRecorder.class);
+                instrumentClass.getDeclaredMethod("boom").addInterceptor(ScopedRecorder.class);
+            }
+        });
+        Assert.assertEquals(0, InterceptorScope.getScope(ScopedRecorder.SCOPE).getDepth());
+    }
+
+    @Test
+    public void statefulInterceptor() throws Exception {
+        assertParity(new Weaver() {
+            @Override
+            public void weave(InstrumentClass instrumentClass) throws InstrumentException {
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(StatefulRecorder.class);
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(StatefulRecorder0.class);
+                instrumentClass.getDeclaredMethod("boom").addInterceptor(StatefulRecorder.class);
+                instrumentClass.getConstructor("java.lang.String").addInterceptor(StatefulRecorder0.class);
+            }
+        });
+    }
+
+    @Test
+    public void shortCircuitInterceptor() throws Exception {
+        assertParity(new Weaver() {
+            @Override
+            public void weave(InstrumentClass instrumentClass) throws InstrumentException {
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(Failing.class);
+                instrumentClass.getDeclaredMethod("add", "int", "int").addInterceptor(ShortCircuitRecorder.class);
+                instrumentClass.getDeclaredMethod("s", "java.lang.String").addInterceptor(ShortCircuitRecorder.class);
+                instrumentClass.getDeclaredMethod("bool", "boolean").addInterceptor(ShortCircuitRecorder.class);
+                instrumentClass.getDeclaredMethod("ch").addInterceptor(ShortCircuitRecorder.class);
+                instrumentClass.getDeclaredMethod("boom").addInterceptor(ShortCircuitRecorder.class);
+            }
+        });
+    }
+
+    @Test
+    public void sampledStatefulInterceptorRejected() throws Exception {
+        for (InstrumentEngine engine : Arrays.asList(new ASMEngine(null, factory),
+                new ASMStreamingEngine(null, factory))) {
+            final InstrumentClass instrumentClass = engine.getClass(CONTEXT, getClass().getClassLoader(),
+                    Target.class.getName(), null, readClass(Target.class));
+            assertRejected(instrumentClass.getDeclaredMethod("add", "int", "int"), SampledStatefulRecorder.class);
+            assertRejected(instrumentClass.getDeclaredMethod("add", "int", "int"), SampledShortCircuitRecorder.class);
+        }
+    }
+
+    private static void assertRejected(InstrumentMethod method, Class<? extends Interceptor> interceptorClass) {
+        try {
+            method.addInterceptor(interceptorClass);
+            Assert.fail("expected InstrumentException for " + interceptorClass.getName());
+        } catch (InstrumentException expected) {
+            // rejected before it is woven
+        }
+    }
+
+    private void assertParity(Weaver weaver) throws Exception {
+        final List<String> expected = run(new ASMEngine(null, factory), weaver);
+        final List<String> actual = run(new ASMStreamingEngine(null, factory), weaver);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    private List<String> run(InstrumentEngine engine, Weaver weaver) throws Exception {
+        final InstrumentClass instrumentClass = engine.getClass(CONTEXT, getClass().getClassLoader(),
+                Target.class.getName(), null, readClass(Target.class));
+        weaver.weave(instrumentClass);
+        final Class<?> woven = new WovenClassLoader(Target.class.getName(), instrumentClass.toBytecode())
+                .loadClass(Target.class.getName());
+
+        LOG.clear();
+        final Object target = woven.getConstructor(String.class).newInstance(" 42 ");
+        woven.getConstructor().newInstance();
+        invoke(woven, target, "add", new Class<?>[]{int.class, int.class}, 1, 2);
+        invoke(woven, target, "add", new Class<?>[]{int.class, int.class}, 2, 2);
+        invoke(woven, target, "lmul", new Class<?>[]{long.class, long.class}, 3L, 4L);
+        invoke(woven, target, "half", new Class<?>[]{double.class}, 3.0);
+        invoke(woven, target, "v", new Class<?>[0]);
+        invoke(woven, null, "s", new Class<?>[]{String.class}, "hit");
+        invoke(woven, null, "s", new Class<?>[]{String.class}, "miss");
+        invoke(woven, null, "sv", new Class<?>[0]);
+        invoke(woven, target, "caught", new Class<?>[0]);
+        invoke(woven, target, "loop", new Class<?>[]{int.class}, 20);
+        invoke(woven, target, "boom", new Class<?>[0]);
+        invoke(woven, target, "bool", new Class<?>[]{boolean.class}, false);
+        invoke(woven, target, "ch", new Class<?>[0]);
+        invoke(woven, target, "nested", new Class<?>[0]);
+        return new ArrayList<String>(LOG);
+    }
+
+    private static void invoke(Class<?> woven, Object target, String name, Class<?>[] parameterTypes,
+            Object... args) throws ReflectiveOperationException {
+        try {
+            LOG.add(name + Arrays.toString(args) + "=" + woven.getMethod(name, parameterTypes).invoke(target, args));
+        } catch (InvocationTargetException e) {
+            LOG.add(name + Arrays.toString(args) + " threw " + e.getCause());
+        }
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        final InputStream inputStream = clazz.getClassLoader()
+                .getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        return IOUtils.toByteArray(inputStream);
+    }
+
+    private interface Weaver {
+
+        void weave(InstrumentClass instrumentClass) throws InstrumentException;
+    }
+
+    private static class WovenClassLoader extends ClassLoader {
+
+        private final String className;
+        private final byte[] classFileBuffer;
+
+        private WovenClassLoader(String className, byte[] classFileBuffer) {
+            super(ASMEngineParityTest.class.getClassLoader());
+            this.className = className;
+            this.classFileBuffer = classFileBuffer;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(name, resolve);
+            }
+            final Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass != null) {
+                return loadedClass;
+            }
+            return defineClass(name, classFileBuffer, 0, classFileBuffer.length);
+        }
+    }
+
+    public static class Target {
+
+        private final String name;
+
+        public Target(String name) {
+            String trimmed;
+            try {
+                trimmed = name.trim();
+            } catch (NullPointerException e) {
+                trimmed = "null";
+            }
+            this.name = trimmed;
+        }
+
+        public Target() {
+            this("default");
+        }
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public long lmul(long a, long b) {
+            return a * b;
+        }
+
+        public double half(double d) {
+            return d / 2;
+        }
+
+        public void v() {
+        }
+
+        public static String s(String x) {
+            return x + "!";
+        }
+
+        public static void sv() {
+        }
+
+        public String caught() {
+            try {
+                throw new IllegalArgumentException(name);
+            } catch (IllegalArgumentException e) {
+                return "caught:" + e.getMessage();
+            }
+        }
+
+        public int loop(int n) {
+            int result = 0;
+            for (int i = 0; i < n; i++) {
+                switch (i % 3) {
+                    case 0:
+                        result += i;
+                        break;
+                    case 1:
+                        result -= 1;
+                        break;
+                    default:
+                        result *= 2;
+                }
+            }
+            if (result > 100) {
+                return -1;
+            }
+            return result;
+        }
+
+        public void boom() {
+            throw new IllegalStateException("boom");
+        }
+
+        public boolean bool(boolean b) {
+            return !b;
+        }
+
+        public char ch() {
+            return 'c';
+        }
+
+        public Object nested() {
+            try {
+                try {
+                    return Integer.valueOf(name);
+                } finally {
+                    v();
+                }
+            } catch (NumberFormatException e) {
+                return e.getClass().getSimpleName();
+            }
+        }
+    }
+
+    public static class Recorder implements Interceptor {
+
+        @Override
+        public void before(Object target, Object[] args) {
+            LOG.add("before " + (target != null) + " " + Arrays.toString(args));
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+            LOG.add("after " + (target != null) + " " + Arrays.toString(args) + " result=" + result + " throwable="
+                    + throwable);
+        }
+    }
+
+    @Capture(CaptureMode.BEFORE)
+    public static class BeforeRecorder extends Recorder {
+    }
+
+    public static class AfterRecorder implements Interceptor0 {
+
+        @Override
+        public void before(Object target) {
+        }
+
+        @Override
+        public void after(Object target, Object result, Throwable throwable) {
+            LOG.add("after0 result=" + result + " throwable=" + throwable);
+        }
+    }
+
+    @Scope(ScopedRecorder.SCOPE)
+    public static class ScopedRecorder implements Interceptor0 {
+
+        static final String SCOPE = "parity.scope";
+
+        @Override
+        public void before(Object target) {
+            LOG.add("scoped before depth=" + InterceptorScope.getScope(SCOPE).getDepth());
+        }
+
+        @Override
+        public void after(Object target, Object result, Throwable throwable) {
+            LOG.add("scoped after result=" + result + " throwable=" + throwable);
+        }
+    }
+
+    public static class StatefulRecorder implements StatefulInterceptor {
+
+        @Override
+        public Object beforeInvoke(Object target, Object[] args) {
+            return "state" + Arrays.toString(args);
+        }
+
+        @Override
+        public void afterInvoke(Object target, Object[] args, Object result, Throwable throwable, Object state) {
+            LOG.add("stateful after result=" + result + " throwable=" + throwable + " state=" + state);
+        }
+    }
+
+    public static class StatefulRecorder0 implements StatefulInterceptor0 {
+
+        @Override
+        public Object beforeInvoke(Object target) {
+            return 5L;
+        }
+
+        @Override
+        public void afterInvoke(Object target, Object result, Throwable throwable, Object state) {
+            LOG.add("stateful0 after result=" + result + " state=" + state);
+        }
+    }
+
+    public static class ShortCircuitRecorder implements ShortCircuitInterceptor {
+
+        @Override
+        public ShortCircuit beforeInvoke(Object target, Object[] args) {
+            LOG.add("short circuit before " + Arrays.toString(args));
+            // no arguments are passed as null
+            if (args == null) {
+                return ShortCircuit.returnValue(Character.valueOf('z'));
+            }
+            if (Integer.valueOf(1).equals(args[0]) || "hit".equals(args[0]) || Boolean.FALSE.equals(args[0])) {
+                return ShortCircuit.returnValue(args[0] instanceof Integer ? Integer.valueOf(42) : args[0]);
+            }
+            return null;
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+            LOG.add("short circuit after result=" + result + " throwable=" + throwable);
+        }
+    }
+
+    @Sampled(rate = 0.5)
+    public static class SampledStatefulRecorder extends StatefulRecorder {
+    }
+
+    @Sampled(rate = 0.5)
+    public static class SampledShortCircuitRecorder extends ShortCircuitRecorder {
+    }
+
+    public static class Failing implements ShortCircuitInterceptor {
+
+        @Override
+        public ShortCircuit beforeInvoke(Object target, Object[] args) {
+            throw new IllegalStateException("failing");
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+            LOG.add("failing after result=" + result);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.classloading;
+
+import cn.polarismesh.agent.core.asm.instrument.plugin.ClassNameFilter;
+import cn.polarismesh.agent.core.asm.instrument.plugin.JarPlugin;
+import cn.polarismesh.agent.core.asm.instrument.plugin.PluginConfig;
+import cn.polarismesh.agent.core.asm.instrument.plugin.PluginJar;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Defines plugin classes into a class loader which can not see the test classes, only the plugin jar.
+ */
+public class PlainClassLoaderHandlerTest {
+
+    private static final Class<?>[] PLUGIN_CLASSES = {Api.class, BaseInterceptor.class, TargetInterceptor.class,
+            OtherInterceptor.class, Helper.class, Unrelated.class, Shared.class};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> definedClasses = new ArrayList<String>();
+
+    private PluginJar pluginJar;
+
+    private PlainClassLoaderHandler classLoaderHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        final File file = temporaryFolder.newFile("plugin.jar");
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (Class<?> pluginClass : PLUGIN_CLASSES) {
+                final String classPath = pluginClass.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(classPath));
+                final InputStream in = getClass().getClassLoader().getResourceAsStream(classPath);
+                out.write(IOUtils.toByteArray(in));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        this.pluginJar = PluginJar.fromFile(file);
+        final ClassNameFilter pluginPackageFilter = new ClassNameFilter() {
+            @Override
+            public boolean accept(String className) {
+                // a plugin class outside of the plugin package, resolved through the class loader
+                return className.startsWith(PlainClassLoaderHandlerTest.class.getName())
+                        && !className.equals(Shared.class.getName());
+            }
+        };
+        final PluginConfig pluginConfig = new PluginConfig(new JarPlugin<Object>(pluginJar,
+                Collections.emptyList(), Collections.<String>emptyList()), pluginPackageFilter);
+        this.classLoaderHandler = new PlainClassLoaderHandler(pluginConfig, new DefineClass() {
+            @Override
+            public Class<?> defineClass(ClassLoader classLoader, String className, byte[] b, int off, int len) {
+                definedClasses.add(className);
+                return ((IsolatedClassLoader) classLoader).define(className, b, off, len);
+            }
+        });
+    }
+
+    @Test
+    public void superTypesBeforeSubTypes() {
+        final PluginJarIndex pluginJarIndex = PluginJarIndex.get(pluginJar.getJarFile());
+        Assert.assertTrue(pluginJarIndex.getClassId(Api.class.getName())
+                < pluginJarIndex.getClassId(BaseInterceptor.class.getName()));
+        Assert.assertTrue(pluginJarIndex.getClassId(BaseInterceptor.class.getName())
+                < pluginJarIndex.getClassId(TargetInterceptor.class.getName()));
+        Assert.assertTrue(pluginJarIndex.getClassId(BaseInterceptor.class.getName())
+                < pluginJarIndex.getClassId(OtherInterceptor.class.getName()));
+        Assert.assertEquals(PluginJarIndex.NOT_FOUND, pluginJarIndex.getClassId(Object.class.getName()));
+    }
+
+    @Test
+    public void defineDependencyClosureOnly() throws Exception {
+        final IsolatedClassLoader classLoader = new IsolatedClassLoader();
+        final Class<?> interceptorClass = classLoaderHandler.injectClass(classLoader,
+                TargetInterceptor.class.getName());
+        Assert.assertSame(classLoader, interceptorClass.getClassLoader());
+
+        // the super types, then the referenced classes of the plugin package, in define order
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(Api.class.getName(), BaseInterceptor.class.getName(),
+                TargetInterceptor.class.getName(), Helper.class.getName())), new HashSet<String>(definedClasses));
+        Assert.assertEquals(4, definedClasses.size());
+        Assert.assertTrue(definedClasses.indexOf(Api.class.getName())
+                < definedClasses.indexOf(BaseInterceptor.class.getName()));
+        Assert.assertTrue(definedClasses.indexOf(BaseInterceptor.class.getName())
+                < definedClasses.indexOf(TargetInterceptor.class.getName()));
+        Assert.assertEquals("helper", interceptorClass.getMethod("call").invoke(interceptorClass.newInstance()));
+
+        // the classes already defined are neither defined again
+        definedClasses.clear();
+        Assert.assertSame(interceptorClass, classLoaderHandler.injectClass(classLoader,
+                TargetInterceptor.class.getName()));
+        final Class<?> otherClass = classLoaderHandler.injectClass(classLoader, OtherInterceptor.class.getName());
+        Assert.assertSame(interceptorClass.getSuperclass(), otherClass.getSuperclass());
+        Assert.assertEquals(Collections.singletonList(OtherInterceptor.class.getName()), definedClasses);
+    }
+
+    private static class IsolatedClassLoader extends ClassLoader {
+
+        private IsolatedClassLoader() {
+            // the bootstrap class loader only
+            super(null);
+        }
+
+        private Class<?> define(String className, byte[] b, int off, int len) {
+            return defineClass(className, b, off, len);
+        }
+    }
+
+    public interface Api {
+
+        String call();
+    }
+
+    public abstract static class BaseInterceptor implements Api {
+
+    }
+
+    public static class TargetInterceptor extends BaseInterceptor {
+
+        @Override
+        public String call() {
+            return new Helper().name();
+        }
+
+        public Object shared() {
+            return new Shared();
+        }
+    }
+
+    public static class OtherInterceptor extends BaseInterceptor {
+
+        @Override
+        public String call() {
+            return "other";
+        }
+    }
+
+    public static class Helper {
+
+        public String name() {
+            return "helper";
+        }
+    }
+
+    public static class Unrelated implements Api {
+
+        @Override
+        public String call() {
+            return new Helper().name();
+        }
+    }
+
+    public static class Shared {
+
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.interceptor;
+
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuit;
+import cn.polarismesh.agent.core.extension.interceptor.ShortCircuitInterceptor;
+import cn.polarismesh.agent.core.extension.interceptor.StatefulInterceptor;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InterceptorDefinitionFactoryTest {
+
+    private final InterceptorDefinitionFactory factory = new InterceptorDefinitionFactory();
+
+    @Test
+    public void resolvesMethodsOfTheInterceptorType() {
+        final InterceptorDefinition definition = factory.createInterceptorDefinition(NarrowingInterceptor.class);
+        Assert.assertEquals(StatefulInterceptor.class, definition.getInterceptorBaseClass());
+        Assert.assertEquals(StatefulInterceptor.class, definition.getBeforeMethod().getDeclaringClass());
+        Assert.assertEquals(Object.class, definition.getBeforeMethod().getReturnType());
+        Assert.assertEquals(CaptureType.BEFORE, definition.getCaptureType());
+    }
+
+    @Test
+    public void detectsShortCircuitBeforeStateful() {
+        final InterceptorDefinition definition = factory.createInterceptorDefinition(BothInterceptor.class);
+        Assert.assertEquals(ShortCircuitInterceptor.class, definition.getInterceptorBaseClass());
+        Assert.assertEquals(ShortCircuit.class, definition.getBeforeMethod().getReturnType());
+    }
+
+    public static class NarrowingInterceptor implements StatefulInterceptor {
+
+        @Override
+        public Long beforeInvoke(Object target, Object[] args) {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void afterInvoke(Object target, Object[] args, Object result, Throwable throwable, Object state) {
+        }
+    }
+
+    public static class BothInterceptor implements ShortCircuitInterceptor, StatefulInterceptor {
+
+        @Override
+        public ShortCircuit beforeInvoke(Object target, Object[] args) {
+            return null;
+        }
+
+        @Override
+        public void before(Object target, Object[] args) {
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+        }
+
+        @Override
+        public void afterInvoke(Object target, Object[] args, Object result, Throwable throwable, Object state) {
+        }
+    }
+}
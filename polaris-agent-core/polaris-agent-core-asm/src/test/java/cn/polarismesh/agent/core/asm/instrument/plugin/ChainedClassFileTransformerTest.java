@@ -0,0 +1,250 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.plugin;
+
+import cn.polarismesh.agent.core.asm.instrument.ASMEngine;
+import cn.polarismesh.agent.core.asm.instrument.ASMStreamingEngine;
+import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
+import cn.polarismesh.agent.core.asm.instrument.InstrumentEngine;
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.asm.instrument.matcher.Matchers;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecordings;
+import cn.polarismesh.agent.core.common.exception.InstrumentException;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import cn.polarismesh.agent.core.extension.instrument.InstrumentClass;
+import cn.polarismesh.agent.core.extension.instrument.Instrumentor;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor1;
+import cn.polarismesh.agent.core.extension.transform.TransformCallback;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two plugins chaining their interceptors on the same method, each through its own {@link InstrumentContext}.
+ */
+public class ChainedClassFileTransformerTest {
+
+    private static final List<String> LOG = Collections.synchronizedList(new ArrayList<String>());
+
+    private static final String TARGET_INTERNAL_NAME = Target.class.getName().replace('.', '/');
+
+    private final InterceptorDefinitionFactory factory = new InterceptorDefinitionFactory();
+
+    @Before
+    public void clearLog() {
+        LOG.clear();
+    }
+
+    @Test
+    public void chainTwoPlugins() throws Exception {
+        assertChained(new ASMEngine(null, factory));
+    }
+
+    @Test
+    public void chainTwoPluginsStreaming() throws Exception {
+        assertChained(new ASMStreamingEngine(null, factory));
+    }
+
+    private void assertChained(InstrumentEngine engine) throws Exception {
+        final PluginContext pluginA = new PluginContext("pluginA", engine);
+        final PluginContext pluginB = new PluginContext("pluginB", engine);
+        final ChainedClassFileTransformer transformer = new ChainedClassFileTransformer(Arrays.asList(
+                newTransformer(pluginA.context, new AddInterceptor(RecorderA.class, false)),
+                newTransformer(pluginB.context, new AddInterceptor(RecorderB.class, true))));
+        final byte[] classFileBuffer = readClass(Target.class);
+        final byte[][] transformed = new byte[1][];
+
+        final List<String> records = TransformRecordings.record(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                transformed[0] = transformer.transform(getClass().getClassLoader(), TARGET_INTERNAL_NAME, null,
+                        null, classFileBuffer);
+                return null;
+            }
+        });
+
+        // the interceptors are recorded, and the accessor type injected, for the plugin that added them
+        Assert.assertEquals(Arrays.asList("pluginA:" + RecorderA.class.getName(),
+                "pluginB:" + RecorderB.class.getName()), records);
+        Assert.assertEquals(Collections.emptyList(), pluginA.injectedClasses);
+        Assert.assertEquals(Collections.singletonList(NameGetter.class.getName()), pluginB.injectedClasses);
+
+        Assert.assertNotNull(transformed[0]);
+        final Class<?> woven = new WovenClassLoader(Target.class.getName(), transformed[0])
+                .loadClass(Target.class.getName());
+        final Object target = woven.getConstructor(String.class).newInstance("polaris");
+        Assert.assertEquals("hello polaris", woven.getMethod("hello", String.class).invoke(target, "polaris"));
+        Assert.assertEquals("polaris", ((NameGetter) target)._$POLARIS$_getName());
+        // one chain, the first plugin wraps the second one
+        Assert.assertEquals(Arrays.asList("A before polaris", "B before polaris", "B after hello polaris",
+                "A after hello polaris"), LOG);
+    }
+
+    private static MatchableClassFileTransformerDelegate newTransformer(InstrumentContext instrumentContext,
+            TransformCallback transformCallback) {
+        return new MatchableClassFileTransformerDelegate(instrumentContext,
+                Matchers.newClassNameMatcher(Target.class.getName()),
+                new InstanceTransformCallbackProvider(transformCallback));
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws Exception {
+        return IOUtils.toByteArray(clazz.getClassLoader()
+                .getResourceAsStream(clazz.getName().replace('.', '/') + ".class"));
+    }
+
+    private static final class PluginContext implements InvocationHandler {
+
+        private final String name;
+        private final InstrumentEngine engine;
+        private final InstrumentContext context;
+        private final List<String> injectedClasses = new ArrayList<String>();
+
+        private PluginContext(String name, InstrumentEngine engine) {
+            this.name = name;
+            this.engine = engine;
+            this.context = (InstrumentContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{InstrumentContext.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String methodName = method.getName();
+            if (methodName.equals("getInstrumentClass")) {
+                return engine.getClass(context, (ClassLoader) args[0], (String) args[1], (ProtectionDomain) args[2],
+                        (byte[]) args[3]);
+            }
+            if (methodName.equals("injectClass")) {
+                injectedClasses.add((String) args[1]);
+                return Class.forName((String) args[1], false, (ClassLoader) args[0]);
+            }
+            if (methodName.equals("getResourceAsStream")) {
+                return getClass().getClassLoader().getResourceAsStream((String) args[1]);
+            }
+            if (methodName.equals("toString")) {
+                return name;
+            }
+            if (methodName.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (methodName.equals("equals")) {
+                return proxy == args[0];
+            }
+            throw new UnsupportedOperationException(methodName);
+        }
+    }
+
+    private static final class AddInterceptor implements TransformCallback {
+
+        private final Class<? extends Interceptor1> interceptorClass;
+        private final boolean addGetter;
+
+        private AddInterceptor(Class<? extends Interceptor1> interceptorClass, boolean addGetter) {
+            this.interceptorClass = interceptorClass;
+            this.addGetter = addGetter;
+        }
+
+        @Override
+        public byte[] doInTransform(Instrumentor instrumentor, ClassLoader classLoader, String className,
+                Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer)
+                throws InstrumentException {
+            final InstrumentClass target = instrumentor.getInstrumentClass(classLoader, className, classfileBuffer);
+            target.getDeclaredMethod("hello", "java.lang.String").addInterceptor(interceptorClass);
+            if (addGetter) {
+                target.addGetter(NameGetter.class, "name");
+            }
+            return target.toBytecode();
+        }
+    }
+
+    private static class WovenClassLoader extends ClassLoader {
+
+        private final String className;
+        private final byte[] classFileBuffer;
+
+        private WovenClassLoader(String className, byte[] classFileBuffer) {
+            super(ChainedClassFileTransformerTest.class.getClassLoader());
+            this.className = className;
+            this.classFileBuffer = classFileBuffer;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(name, resolve);
+            }
+            final Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass != null) {
+                return loadedClass;
+            }
+            return defineClass(name, classFileBuffer, 0, classFileBuffer.length);
+        }
+    }
+
+    public interface NameGetter {
+
+        String _$POLARIS$_getName();
+    }
+
+    public static class Target {
+
+        private final String name;
+
+        public Target(String name) {
+            this.name = name;
+        }
+
+        public String hello(String who) {
+            return "hello " + who;
+        }
+    }
+
+    public static class RecorderA implements Interceptor1 {
+
+        @Override
+        public void before(Object target, Object arg0) {
+            LOG.add("A before " + arg0);
+        }
+
+        @Override
+        public void after(Object target, Object arg0, Object result, Throwable throwable) {
+            LOG.add("A after " + result);
+        }
+    }
+
+    public static class RecorderB implements Interceptor1 {
+
+        @Override
+        public void before(Object target, Object arg0) {
+            LOG.add("B before " + arg0);
+        }
+
+        @Override
+        public void after(Object target, Object arg0, Object result, Throwable throwable) {
+            LOG.add("B after " + result);
+        }
+    }
+}
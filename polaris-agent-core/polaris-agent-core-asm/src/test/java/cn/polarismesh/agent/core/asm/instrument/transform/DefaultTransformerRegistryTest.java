@@ -0,0 +1,111 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
+import cn.polarismesh.agent.core.asm.instrument.matcher.Matcher;
+import cn.polarismesh.agent.core.asm.instrument.matcher.Matchers;
+import cn.polarismesh.agent.core.asm.instrument.plugin.InstanceTransformCallbackProvider;
+import cn.polarismesh.agent.core.asm.instrument.plugin.MatchableClassFileTransformer;
+import cn.polarismesh.agent.core.asm.instrument.plugin.MatchableClassFileTransformerDelegate;
+import cn.polarismesh.agent.core.common.utils.IOUtils;
+import cn.polarismesh.agent.core.extension.instrument.Instrumentor;
+import cn.polarismesh.agent.core.extension.transform.TransformCallback;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DefaultTransformerRegistryTest {
+
+    private static final String TARGET_INTERNAL_NAME = Target.class.getName().replace('.', '/');
+
+    private final List<String> log = new ArrayList<String>();
+
+    @Test
+    public void chainConstantPoolMatches() throws Exception {
+        final DefaultTransformerRegistry registry = new DefaultTransformerRegistry(Arrays.asList(
+                newTransformer("first", Matchers.newStringConstantMatcher("polaris")),
+                newTransformer("missed", Matchers.newStringConstantMatcher("missed constant")),
+                newTransformer("second", Matchers.newReferencedTypeMatcher(StringBuilder.class.getName()))));
+
+        transform(registry);
+        Assert.assertEquals(Arrays.asList("first", "second"), log);
+    }
+
+    @Test
+    public void chainConstantPoolMatchesAfterClassName() throws Exception {
+        final DefaultTransformerRegistry registry = new DefaultTransformerRegistry(Arrays.asList(
+                newTransformer("constantPool", Matchers.newStringConstantMatcher("polaris")),
+                newTransformer("className", Matchers.newClassNameMatcher(Target.class.getName())),
+                newTransformer("superClass", Matchers.newSuperClassMatcher(Base.class.getName()))));
+
+        transform(registry);
+        Assert.assertEquals(Arrays.asList("className", "superClass", "constantPool"), log);
+    }
+
+    private void transform(DefaultTransformerRegistry registry) throws Exception {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final byte[] classFileBuffer = IOUtils.toByteArray(
+                classLoader.getResourceAsStream(TARGET_INTERNAL_NAME + ".class"));
+        final ClassFileTransformer transformer = registry.findTransformer(classLoader, TARGET_INTERNAL_NAME,
+                classFileBuffer);
+        Assert.assertNotNull(transformer);
+        transformer.transform(classLoader, TARGET_INTERNAL_NAME, null, null, classFileBuffer);
+    }
+
+    private MatchableClassFileTransformer newTransformer(final String name, Matcher matcher) {
+        final InstrumentContext instrumentContext = (InstrumentContext) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{InstrumentContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("toString")) {
+                            return name;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        final TransformCallback transformCallback = new TransformCallback() {
+            @Override
+            public byte[] doInTransform(Instrumentor instrumentor, ClassLoader classLoader, String className,
+                    Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                log.add(name);
+                return null;
+            }
+        };
+        return new MatchableClassFileTransformerDelegate(instrumentContext, matcher,
+                new InstanceTransformCallbackProvider(transformCallback));
+    }
+
+    public static class Base {
+
+    }
+
+    public static class Target extends Base {
+
+        public String hello(int count) {
+            return new StringBuilder("polaris").append(count).toString();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.instrument.transform;
+
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Record;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformRecorder.Recording;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Opens {@link TransformRecorder} to the tests of the other packages.
+ */
+public final class TransformRecordings {
+
+    private TransformRecordings() {
+    }
+
+    /**
+     * Runs the task in a recording of its own.
+     *
+     * @return {@code <instrument context>:<class name>} of every recorded side effect, in order
+     */
+    public static List<String> record(Callable<?> task) throws Exception {
+        final Recording previous = TransformRecorder.begin();
+        Recording recording = null;
+        try {
+            task.call();
+        } finally {
+            recording = TransformRecorder.end(previous);
+        }
+        final List<String> records = new ArrayList<String>();
+        for (Record record : recording.getRecords()) {
+            records.add(record.getInstrumentContext() + ":" + record.getClassName());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.asm.registry;
+
+import cn.polarismesh.agent.core.asm.instrument.interceptor.InterceptorDefinitionFactory;
+import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DisabledInterceptorTest {
+
+    @Test
+    public void coversEveryInterceptorType() {
+        for (Class<? extends Interceptor> interceptorBaseClass : new InterceptorDefinitionFactory()
+                .getInterceptorBaseClasses()) {
+            Assert.assertTrue(interceptorBaseClass.getName(),
+                    interceptorBaseClass.isInstance(DisabledInterceptor.INSTANCE));
+        }
+    }
+
+    @Test
+    public void beforeInvokeReturnsNull() {
+        Assert.assertNull(DisabledInterceptor.INSTANCE.beforeInvoke(null, new Object[0]));
+        Assert.assertNull(DisabledInterceptor.INSTANCE.beforeInvoke(null));
+    }
+}
@@ -18,6 +18,7 @@
 package cn.polarismesh.agent.core.bootstrap.starter;
 
 import cn.polarismesh.agent.core.asm.instrument.ASMEngine;
+import cn.polarismesh.agent.core.asm.instrument.ASMStreamingEngine;
 import cn.polarismesh.agent.core.asm.instrument.DynamicTransformTrigger;
 import cn.polarismesh.agent.core.asm.instrument.GuardInstrumentContext;
 import cn.polarismesh.agent.core.asm.instrument.InstrumentContext;
@@ -42,15 +43,22 @@ import cn.polarismesh.agent.core.asm.instrument.transform.DefaultClassFileTransf
 import cn.polarismesh.agent.core.asm.instrument.transform.DefaultDynamicTransformerRegistry;
 import cn.polarismesh.agent.core.asm.instrument.transform.DynamicTransformService;
 import cn.polarismesh.agent.core.asm.instrument.transform.DynamicTransformerRegistry;
+import cn.polarismesh.agent.core.asm.instrument.transform.TransformCache;
 import cn.polarismesh.agent.core.asm.instrument.transform.TransformTemplate;
+import cn.polarismesh.agent.core.asm.registry.InterceptorCircuitBreaker;
+import cn.polarismesh.agent.core.asm.registry.InterceptorSwitchControl;
+import cn.polarismesh.agent.core.asm.registry.InterceptorSwitchFileWatcher;
 import cn.polarismesh.agent.core.bootstrap.BootLogger;
 import cn.polarismesh.agent.core.bootstrap.util.AgentDirUtils;
 import cn.polarismesh.agent.core.common.conf.ConfigManager;
 import cn.polarismesh.agent.core.common.utils.CollectionUtils;
+import cn.polarismesh.agent.core.common.utils.StringUtils;
 import cn.polarismesh.agent.core.extension.AgentPlugin;
 import cn.polarismesh.agent.core.extension.PluginContext;
-import java.lang.instrument.ClassFileTransformer;
+import java.io.File;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -64,6 +72,12 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
 
     private static final String BOOT_DIR = "boot";
 
+    private static final String TRANSFORM_CACHE_DIR = "cache";
+
+    private static final String INSTRUMENT_ENGINE_TREE = "tree";
+
+    private static final String INSTRUMENT_ENGINE_STREAMING = "streaming";
+
     @Override
     public String name() {
         return NAME;
@@ -72,8 +86,9 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
     @Override
     public void start(String agentDirPath, String agentArgs, Instrumentation instrumentation) {
         ConfigManager.INSTANCE.initConfig(agentDirPath);
+        startInterceptorSwitch();
         InterceptorDefinitionFactory interceptorDefinitionFactory = new InterceptorDefinitionFactory();
-        InstrumentEngine instrumentEngine = new ASMEngine(instrumentation, interceptorDefinitionFactory);
+        InstrumentEngine instrumentEngine = createInstrumentEngine(instrumentation, interceptorDefinitionFactory);
         DynamicTransformerRegistry dynamicTransformerRegistry = new DefaultDynamicTransformerRegistry();
         DynamicTransformTrigger dynamicTransformTrigger = new DynamicTransformService(instrumentation,
                 dynamicTransformerRegistry);
@@ -93,6 +108,7 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
             jarPluginComponents.addAgentPlugin(agentPlugin);
         }
         Iterable<JarPlugin<AgentPlugin>> jarPlugins = jarPluginComponents.buildJarPlugins();
+        List<InstrumentContext> instrumentContexts = new ArrayList<>();
         for (JarPlugin<AgentPlugin> jarPlugin : jarPlugins) {
             logger.info(
                     String.format("%s Plugin %s:%s", jarPlugin.getClass().getCanonicalName(), PluginJar.PLUGIN_PACKAGE,
@@ -103,7 +119,8 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
             PluginConfig pluginConfig = new PluginConfig(jarPlugin, pluginFilterChain);
             ClassInjector classInjector = classInjectorFactory.newClassInjector(pluginConfig);
             InstrumentContext instrumentContext = new PluginInstrumentContext(instrumentEngine, dynamicTransformTrigger,
-                    classInjector, transformerRegistry);
+                    classInjector, transformerRegistry, pluginClassLoader);
+            instrumentContexts.add(instrumentContext);
             List<AgentPlugin> instanceList = jarPlugin.getInstanceList();
             for (AgentPlugin agentPlugin : instanceList) {
                 GuardInstrumentContext guardInstrumentContext = new GuardInstrumentContext(instrumentContext);
@@ -116,9 +133,30 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
                     guardInstrumentContext.close();
                 }
             }
-            ClassFileTransformer classFileTransformer = new DefaultClassFileTransformerDispatcher(
-                    transformerRegistry.getClassTransformerList(), dynamicTransformerRegistry);
-            instrumentation.addTransformer(classFileTransformer, true);
+        }
+        // one dispatcher for the whole agent, built once every plugin has registered its transformers
+        TransformCache transformCache = createTransformCache(agentDirPath, pluginJars, instrumentContexts);
+        DefaultClassFileTransformerDispatcher classFileTransformer = new DefaultClassFileTransformerDispatcher(
+                transformerRegistry.getClassTransformerList(), dynamicTransformerRegistry, transformCache);
+        instrumentation.addTransformer(classFileTransformer, true);
+        if (ConfigManager.INSTANCE.getBooleanValue(ConfigManager.KEY_TRANSFORM_SPECULATIVE_ENABLE, false)) {
+            classFileTransformer.startSpeculativeTransform(ClassLoader.getSystemClassLoader(),
+                    ConfigManager.INSTANCE.getIntValue(ConfigManager.KEY_TRANSFORM_SPECULATIVE_THREADS, 1));
+        }
+    }
+
+    private void startInterceptorSwitch() {
+        InterceptorCircuitBreaker.configure(
+                ConfigManager.INSTANCE.getIntValue(ConfigManager.KEY_INTERCEPTOR_FAILURE_THRESHOLD,
+                        InterceptorCircuitBreaker.DEFAULT_THRESHOLD),
+                ConfigManager.INSTANCE.getIntValue(ConfigManager.KEY_INTERCEPTOR_FAILURE_WINDOW,
+                        (int) InterceptorCircuitBreaker.DEFAULT_WINDOW_MILLIS));
+        String switchFilePath = ConfigManager.INSTANCE.getConfigValue(ConfigManager.KEY_INTERCEPTOR_SWITCH_FILE);
+        if (StringUtils.hasText(switchFilePath)) {
+            new InterceptorSwitchFileWatcher(new File(switchFilePath.trim())).start();
+        }
+        if (ConfigManager.INSTANCE.getBooleanValue(ConfigManager.KEY_INTERCEPTOR_SWITCH_JMX_ENABLE, false)) {
+            InterceptorSwitchControl.register();
         }
     }
 
@@ -131,6 +169,48 @@ public class DefaultBootStrapStarter implements BootStrapStarter {
         return new ClassNameFilterChain(chain);
     }
 
+    private InstrumentEngine createInstrumentEngine(Instrumentation instrumentation,
+            InterceptorDefinitionFactory interceptorDefinitionFactory) {
+        String engine = ConfigManager.INSTANCE
+                .getConfigValue(ConfigManager.KEY_INSTRUMENT_ENGINE, INSTRUMENT_ENGINE_TREE).trim();
+        if (INSTRUMENT_ENGINE_STREAMING.equalsIgnoreCase(engine)) {
+            logger.info("use streaming instrument engine");
+            return new ASMStreamingEngine(instrumentation, interceptorDefinitionFactory);
+        }
+        if (!INSTRUMENT_ENGINE_TREE.equalsIgnoreCase(engine)) {
+            logger.warn(String.format("unknown instrument engine %s, use %s", engine, INSTRUMENT_ENGINE_TREE));
+        }
+        return new ASMEngine(instrumentation, interceptorDefinitionFactory);
+    }
+
+    private TransformCache createTransformCache(String agentDirPath, List<PluginJar> pluginJars,
+            List<InstrumentContext> instrumentContexts) {
+        if (!ConfigManager.INSTANCE.getBooleanValue(ConfigManager.KEY_TRANSFORM_CACHE_ENABLE, false)) {
+            return null;
+        }
+        String cacheDirPath = ConfigManager.INSTANCE.getConfigValue(ConfigManager.KEY_TRANSFORM_CACHE_DIR,
+                agentDirPath + File.separator + TRANSFORM_CACHE_DIR);
+        // agent version, plugin versions and plugin config are all part of the fingerprint
+        List<String> fingerprintFiles = new ArrayList<>(
+                AgentDirUtils.resolveJarPaths(AgentDirUtils.getBootDir(agentDirPath)));
+        for (PluginJar pluginJar : pluginJars) {
+            fingerprintFiles.add(pluginJar.getJarFile().getName());
+        }
+        File configFile = new File(agentDirPath + File.separator + "conf", ConfigManager.CONFIG_FILE_NAME);
+        if (configFile.isFile()) {
+            fingerprintFiles.add(configFile.getPath());
+        }
+        try {
+            byte[] fingerprint = TransformCache
+                    .newFingerprint(fingerprintFiles, System.getProperty("java.specification.version"));
+            logger.info(String.format("transform cache enabled, dir:%s", cacheDirPath));
+            return new TransformCache(new File(cacheDirPath), fingerprint, instrumentContexts);
+        } catch (IOException e) {
+            logger.warn(String.format("fail to create transform cache, cause:%s", e.getMessage()));
+            return null;
+        }
+    }
+
     private BootstrapCore createBootstrapCore(String agentDirPath) {
         List<String> fileNames = AgentDirUtils.resolveJarPaths(AgentDirUtils.getBootDir(agentDirPath));
         return new BootstrapCore(fileNames);
@@ -30,9 +30,32 @@ public class ConfigManager {
 
     public static final String KEY_PLUGIN_ENABLE = "plugins.enable";
 
-    private static final String CONFIG_FILE_NAME = "polaris-agent.config";
+    public static final String KEY_TRANSFORM_CACHE_ENABLE = "transform.cache.enable";
 
-    private static final String[] KEYS = new String[]{KEY_PLUGIN_ENABLE};
+    public static final String KEY_TRANSFORM_CACHE_DIR = "transform.cache.dir";
+
+    public static final String KEY_TRANSFORM_SPECULATIVE_ENABLE = "transform.speculative.enable";
+
+    public static final String KEY_TRANSFORM_SPECULATIVE_THREADS = "transform.speculative.threads";
+
+    public static final String KEY_INSTRUMENT_ENGINE = "instrument.engine";
+
+    public static final String KEY_INSTRUMENT_INVOKEDYNAMIC = "instrument.invokedynamic";
+
+    public static final String KEY_INTERCEPTOR_SWITCH_FILE = "interceptor.switch.file";
+
+    public static final String KEY_INTERCEPTOR_SWITCH_JMX_ENABLE = "interceptor.switch.jmx.enable";
+
+    public static final String KEY_INTERCEPTOR_FAILURE_THRESHOLD = "interceptor.failure.threshold";
+
+    public static final String KEY_INTERCEPTOR_FAILURE_WINDOW = "interceptor.failure.window";
+
+    public static final String CONFIG_FILE_NAME = "polaris-agent.config";
+
+    private static final String[] KEYS = new String[]{KEY_PLUGIN_ENABLE, KEY_TRANSFORM_CACHE_ENABLE,
+            KEY_TRANSFORM_CACHE_DIR, KEY_TRANSFORM_SPECULATIVE_ENABLE, KEY_TRANSFORM_SPECULATIVE_THREADS,
+            KEY_INSTRUMENT_ENGINE, KEY_INSTRUMENT_INVOKEDYNAMIC, KEY_INTERCEPTOR_SWITCH_FILE,
+            KEY_INTERCEPTOR_SWITCH_JMX_ENABLE, KEY_INTERCEPTOR_FAILURE_THRESHOLD, KEY_INTERCEPTOR_FAILURE_WINDOW};
 
     private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
             .getLogger(ConfigManager.class.getCanonicalName());
@@ -77,4 +100,29 @@ public class ConfigManager {
         return properties.getProperty(key);
     }
 
+    public String getConfigValue(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    public int getIntValue(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (!StringUtils.hasText(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn(String.format("[BootConfig] invalid int value %s for %s, use %d", value, key, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    public boolean getBooleanValue(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (!StringUtils.hasText(value)) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
 }
@@ -20,6 +20,7 @@ package cn.polarismesh.agent.core.common.utils;
 import cn.polarismesh.agent.core.common.logger.CommonLogger;
 import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -29,7 +30,11 @@ import java.util.Objects;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
-public class JarReader {
+/**
+ * Reads the entries of a jar, through a shared {@link MappedJarFile} if the jar can be mapped. {@link #close()} gives
+ * the mapping back, the {@link JarFile} is closed by its owner.
+ */
+public class JarReader implements Closeable {
 
     private final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE.getLogger(getClass().getName());
 
@@ -37,11 +42,29 @@ public class JarReader {
 
     private final JarFile jarFile;
 
+    // held until close(), null if the jar can not be mapped.
+    private volatile MappedJarFile mappedJarFile;
+
     public JarReader(JarFile jarFile) {
         this.jarFile = Objects.requireNonNull(jarFile, "jarFile");
+        this.mappedJarFile = openMappedJarFile(jarFile);
+    }
+
+    private MappedJarFile openMappedJarFile(JarFile jarFile) {
+        try {
+            return MappedJarFile.open(jarFile.getName());
+        } catch (IOException e) {
+            logger.info(String.format("jarFile is read without mapping. jarFile:%s %s", jarFile.getName(),
+                    e.getMessage()));
+            return null;
+        }
     }
 
     public InputStream getInputStream(String name) throws IOException {
+        final MappedJarFile mappedJarFile = this.mappedJarFile;
+        if (mappedJarFile != null) {
+            return mappedJarFile.getInputStream(name);
+        }
         final JarEntry jarEntry = this.jarFile.getJarEntry(name);
         if (jarEntry != null) {
             return this.jarFile.getInputStream(jarEntry);
@@ -53,6 +76,11 @@ public class JarReader {
     public List<FileBinary> read(JarEntryFilter jarEntryFilter) throws IOException {
         Objects.requireNonNull(jarEntryFilter, "jarEntryFilter");
 
+        final MappedJarFile mappedJarFile = this.mappedJarFile;
+        if (mappedJarFile != null) {
+            return readMapped(mappedJarFile, jarEntryFilter);
+        }
+
         final BufferedContext bufferedContext = new BufferedContext();
 
         Enumeration<JarEntry> entries = jarFile.entries();
@@ -67,6 +95,29 @@ public class JarReader {
         return fileBinaryList;
     }
 
+    private List<FileBinary> readMapped(MappedJarFile mappedJarFile, JarEntryFilter jarEntryFilter)
+            throws IOException {
+        List<FileBinary> fileBinaryList = new ArrayList<>();
+        for (String entryName : mappedJarFile.getEntryNames()) {
+            if (jarEntryFilter.filter(new JarEntry(entryName))) {
+                fileBinaryList.add(new FileBinary(entryName, mappedJarFile.read(entryName)));
+            }
+        }
+        return fileBinaryList;
+    }
+
+    /**
+     * Releases the mapping, the following reads go through the {@link JarFile}.
+     */
+    @Override
+    public synchronized void close() {
+        final MappedJarFile mappedJarFile = this.mappedJarFile;
+        if (mappedJarFile != null) {
+            this.mappedJarFile = null;
+            mappedJarFile.release();
+        }
+    }
+
     private FileBinary newFileBinary(BufferedContext bufferedContext, JarEntry jarEntry) throws IOException {
         byte[] binary = bufferedContext.read(jarEntry);
         return new FileBinary(jarEntry.getName(), binary);
@@ -0,0 +1,370 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.common.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Read only jar file mapped into memory. The central directory is parsed once into an open addressing hash table,
+ * a lookup is a hash probe, and reading an entry is a copy or an inflate out of the mapping, no file descriptor is
+ * kept open.
+ * <p>
+ * Mappings are cached for the lifetime of the agent and shared through {@link #open(String)}, every open must be
+ * paired with a {@link #release()}. The cache is keyed by the path given to {@link #open(String)}, a hit neither
+ * canonicalizes the path nor checks the file. On a miss the canonical path is looked up, so the paths of the same
+ * file share a mapping, and a mapping whose file has changed is replaced. The replaced one is dropped once it is
+ * released by its last user. A file changed after it was mapped is only noticed through a path not opened before.
+ * ZIP64 archives are not supported, {@link #open(String)} fails with an {@link IOException} and the caller falls back
+ * to {@link java.util.jar.JarFile}.
+ */
+public final class MappedJarFile {
+
+    // by the path given to open()
+    private static final ConcurrentMap<String, MappedJarFile> mappedJarFiles =
+            new ConcurrentHashMap<String, MappedJarFile>();
+
+    // by canonical path, replaced on a miss under the lock of mappedJarFiles
+    private static final ConcurrentMap<String, MappedJarFile> canonicalMappedJarFiles =
+            new ConcurrentHashMap<String, MappedJarFile>();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final String name;
+    private final long lastModified;
+    private final long length;
+
+    // cleared when released by the last user after being replaced.
+    private volatile ByteBuffer buffer;
+    private int referenceCount;
+
+    private final String[] entryNames;
+    private final int[] entryHashes;
+    private final int[] localHeaderOffsets;
+    private final int[] methods;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    // entry id + 1, 0 is an empty slot.
+    private final int[] table;
+
+    public static MappedJarFile open(String path) throws IOException {
+        Objects.requireNonNull(path, "path");
+        final MappedJarFile exist = mappedJarFiles.get(path);
+        if (exist != null && exist.retain()) {
+            return exist;
+        }
+        final File file = new File(path).getCanonicalFile();
+        final String key = file.getPath();
+        synchronized (mappedJarFiles) {
+            final MappedJarFile old = canonicalMappedJarFiles.get(key);
+            if (old != null && old.isCurrent(file) && old.retain()) {
+                mappedJarFiles.put(path, old);
+                return old;
+            }
+            final MappedJarFile newMappedJarFile = new MappedJarFile(file);
+            newMappedJarFile.retain();
+            canonicalMappedJarFiles.put(key, newMappedJarFile);
+            if (old != null) {
+                // the other paths of the file are looked up again
+                mappedJarFiles.values().removeAll(Collections.singleton(old));
+                old.evicted();
+            }
+            mappedJarFiles.put(path, newMappedJarFile);
+            return newMappedJarFile;
+        }
+    }
+
+    private MappedJarFile(File file) throws IOException {
+        this.name = file.getPath();
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.buffer = map(file);
+
+        final ByteBuffer buffer = this.buffer;
+        final int end = findEndHeader(buffer);
+        final int entryCount = buffer.getShort(end + 10) & 0xFFFF;
+        final long centralDirectorySize = buffer.getInt(end + 12) & 0xFFFFFFFFL;
+        final long centralDirectoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || centralDirectorySize == ZIP64_MAGIC || centralDirectoryOffset == ZIP64_MAGIC) {
+            throw new IOException("zip64 is not supported. " + name);
+        }
+        // data prepended to the archive, e.g. a launch script, shifts every offset.
+        final int base = (int) (end - centralDirectorySize - centralDirectoryOffset);
+        if (base < 0) {
+            throw new IOException("invalid central directory. " + name);
+        }
+
+        this.entryNames = new String[entryCount];
+        this.entryHashes = new int[entryCount];
+        this.localHeaderOffsets = new int[entryCount];
+        this.methods = new int[entryCount];
+        this.compressedSizes = new int[entryCount];
+        this.sizes = new int[entryCount];
+        this.table = new int[tableSize(entryCount)];
+
+        int offset = (int) (base + centralDirectoryOffset);
+        for (int id = 0; id < entryCount; id++) {
+            if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("invalid central directory header. " + name);
+            }
+            final long compressedSize = buffer.getInt(offset + 20) & 0xFFFFFFFFL;
+            final long size = buffer.getInt(offset + 24) & 0xFFFFFFFFL;
+            final long localHeaderOffset = buffer.getInt(offset + 42) & 0xFFFFFFFFL;
+            if (compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                throw new IOException("zip64 is not supported. " + name);
+            }
+            final int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+            final int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+            final int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+
+            final String entryName = readString(buffer, offset + CENTRAL_HEADER_SIZE, nameLength);
+            this.entryNames[id] = entryName;
+            this.entryHashes[id] = entryName.hashCode();
+            this.methods[id] = buffer.getShort(offset + 10) & 0xFFFF;
+            this.compressedSizes[id] = (int) compressedSize;
+            this.sizes[id] = (int) size;
+            this.localHeaderOffsets[id] = (int) (base + localHeaderOffset);
+            put(id);
+
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("jar file is too large to map. " + file);
+            }
+            final MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mappedByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            return mappedByteBuffer;
+        } finally {
+            // the mapping stays valid after the channel is closed.
+            IOUtils.closeQuietly(randomAccessFile);
+        }
+    }
+
+    private int findEndHeader(ByteBuffer buffer) throws IOException {
+        final int limit = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = buffer.limit() - END_HEADER_SIZE; offset >= limit; offset--) {
+            if (buffer.getInt(offset) == END_HEADER_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new IOException("end of central directory not found. " + name);
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        final byte[] bytes = new byte[length];
+        copy(buffer, offset, bytes, length);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void copy(ByteBuffer buffer, int offset, byte[] bytes, int length) {
+        // a duplicate has its own position, the shared buffer is only read with absolute gets.
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes, 0, length);
+    }
+
+    private static int tableSize(int entryCount) {
+        int tableSize = 16;
+        while (tableSize < entryCount * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private void put(int id) {
+        final int mask = table.length - 1;
+        int slot = spread(entryHashes[id]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private int find(String entryName) {
+        final int hash = entryName.hashCode();
+        final int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            final int id = entry - 1;
+            if (entryHashes[id] == hash && entryNames[id].equals(entryName)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean isCurrent(File file) {
+        return this.lastModified == file.lastModified() && this.length == file.length();
+    }
+
+    private synchronized boolean retain() {
+        if (this.buffer == null) {
+            return false;
+        }
+        this.referenceCount++;
+        return true;
+    }
+
+    private synchronized void evicted() {
+        if (this.referenceCount == 0) {
+            this.buffer = null;
+        }
+    }
+
+    /**
+     * Gives back a reference obtained from {@link #open(String)}.
+     */
+    public synchronized void release() {
+        if (this.referenceCount == 0) {
+            throw new IllegalStateException("already released. " + name);
+        }
+        this.referenceCount--;
+        if (this.referenceCount == 0 && canonicalMappedJarFiles.get(name) != this) {
+            // the mapping is unmapped when collected.
+            this.buffer = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getEntryNames() {
+        return Collections.unmodifiableList(Arrays.asList(entryNames));
+    }
+
+    public boolean contains(String entryName) {
+        return find(entryName) != -1;
+    }
+
+    /**
+     * @return the content of the entry, or {@code null} if the jar does not contain it
+     */
+    public InputStream getInputStream(String entryName) throws IOException {
+        final byte[] bytes = read(entryName);
+        if (bytes == null) {
+            return null;
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * @return the content of the entry, or {@code null} if the jar does not contain it
+     */
+    public byte[] read(String entryName) throws IOException {
+        Objects.requireNonNull(entryName, "entryName");
+        final int id = find(entryName);
+        if (id == -1) {
+            return null;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            throw new IllegalStateException("already released. " + name);
+        }
+
+        final int localHeaderOffset = localHeaderOffsets[id];
+        if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("invalid local header. " + name + "!/" + entryName);
+        }
+        final int dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE
+                + (buffer.getShort(localHeaderOffset + 26) & 0xFFFF)
+                + (buffer.getShort(localHeaderOffset + 28) & 0xFFFF);
+        final int method = methods[id];
+        if (method == ZipEntry.STORED) {
+            final byte[] bytes = new byte[sizes[id]];
+            copy(buffer, dataOffset, bytes, bytes.length);
+            return bytes;
+        }
+        if (method == ZipEntry.DEFLATED) {
+            return inflate(buffer, dataOffset, compressedSizes[id], sizes[id], entryName);
+        }
+        throw new IOException("unsupported compression method " + method + ". " + name + "!/" + entryName);
+    }
+
+    private byte[] inflate(ByteBuffer buffer, int offset, int compressedSize, int size, String entryName)
+            throws IOException {
+        // nowrap mode needs an extra dummy byte at the end of the input.
+        final byte[] input = new byte[compressedSize + 1];
+        copy(buffer, offset, input, compressedSize);
+        final byte[] bytes = new byte[size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int inflated = 0;
+            while (inflated < size) {
+                final int count = inflater.inflate(bytes, inflated, size - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated entry. " + name + "!/" + entryName);
+                }
+                inflated += count;
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("invalid entry. " + name + "!/" + entryName, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJarFile{" +
+                "name='" + name + '\'' +
+                ", entries=" + entryNames.length +
+                '}';
+    }
+}
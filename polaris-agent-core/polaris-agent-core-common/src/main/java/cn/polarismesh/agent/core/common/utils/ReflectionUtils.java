@@ -17,6 +17,9 @@
 
 package cn.polarismesh.agent.core.common.utils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -28,8 +31,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import cn.polarismesh.agent.core.common.exception.PolarisAgentException;
+import cn.polarismesh.agent.core.common.logger.CommonLogger;
+import cn.polarismesh.agent.core.common.logger.StdoutCommonLoggerFactory;
 
 // copy from https://github.com/spring-projects/spring-framework/blob/main/spring-core/src/main/java/org/springframework/util/ReflectionUtils.java
 public final class ReflectionUtils {
@@ -375,6 +382,24 @@ public final class ReflectionUtils {
 	}
 
 
+	/**
+	 * Resolved member handles of a class, collected with the class.
+	 */
+	private static final ClassValue<MemberHandles> memberHandles = new ClassValue<MemberHandles>() {
+		@Override
+		protected MemberHandles computeValue(Class<?> type) {
+			return new MemberHandles();
+		}
+	};
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+
 	/**
 	 * 根据属性名返回对象的属性
 	 *
@@ -384,11 +409,12 @@ public final class ReflectionUtils {
 	 */
 	public static Object getObjectByFieldName(Object target, String fieldName) {
 		try {
-			Field field = target.getClass().getDeclaredField(fieldName);
-			field.setAccessible(true);
-			return field.get(target);
+			return (Object) getterHandle(target.getClass(), fieldName).invokeExact(target);
+		}
+		catch (Error e) {
+			throw e;
 		}
-		catch (Exception e) {
+		catch (Throwable e) {
 			throw new PolarisAgentException("getObjectByFieldName", e);
 		}
 	}
@@ -402,17 +428,19 @@ public final class ReflectionUtils {
 	 */
 	public static Object getSuperObjectByFieldName(Object target, String fieldName) {
 		try {
-			Field field = target.getClass().getSuperclass().getDeclaredField(fieldName);
-			field.setAccessible(true);
-			return field.get(target);
+			return (Object) getterHandle(target.getClass().getSuperclass(), fieldName).invokeExact(target);
+		}
+		catch (Error e) {
+			throw e;
 		}
-		catch (Exception e) {
+		catch (Throwable e) {
 			throw new PolarisAgentException("getSuperObjectByFieldName", e);
 		}
 	}
 
 	/**
 	 * 根据属性名重新设置对象的属性
+	 * <p>static final 属性通过 {@code sun.misc.Unsafe} 写入，已经内联该常量的代码仍使用旧值
 	 *
 	 * @param target    对象
 	 * @param fieldName 对象的属性名
@@ -420,16 +448,19 @@ public final class ReflectionUtils {
 	 */
 	public static void setValueByFieldName(Object target, String fieldName, Object value) {
 		try {
-			Field field = target.getClass().getDeclaredField(fieldName);
-			setValue(target, field, value);
+			setterHandle(target.getClass(), fieldName).invokeExact(target, value);
 		}
-		catch (Exception e) {
+		catch (Error e) {
+			throw e;
+		}
+		catch (Throwable e) {
 			throw new PolarisAgentException("setValueByFieldName", e);
 		}
 	}
 
 	/**
 	 * 根据属性名重新设置对象父类的属性
+	 * <p>static final 属性通过 {@code sun.misc.Unsafe} 写入，已经内联该常量的代码仍使用旧值
 	 *
 	 * @param target    对象
 	 * @param fieldName 对象父类的属性名
@@ -437,24 +468,13 @@ public final class ReflectionUtils {
 	 */
 	public static void setSuperValueByFieldName(Object target, String fieldName, Object value) {
 		try {
-			Field field = target.getClass().getSuperclass().getDeclaredField(fieldName);
-			setValue(target, field, value);
+			setterHandle(target.getClass().getSuperclass(), fieldName).invokeExact(target, value);
 		}
-		catch (Exception e) {
-			throw new PolarisAgentException("setSuperValueByFieldName", e);
+		catch (Error e) {
+			throw e;
 		}
-	}
-
-	private static void setValue(Object target, Field field, Object value) {
-		try {
-			Field modifiers = Field.class.getDeclaredField("modifiers");
-			modifiers.setAccessible(true);
-			modifiers.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-			field.setAccessible(true);
-			field.set(target, value);
-		}
-		catch (Exception e) {
-			throw new PolarisAgentException("setValue", e);
+		catch (Throwable e) {
+			throw new PolarisAgentException("setSuperValueByFieldName", e);
 		}
 	}
 
@@ -468,18 +488,179 @@ public final class ReflectionUtils {
 	 */
 	public static Object invokeMethodByName(Object target, String methodName, Object arg) {
 		try {
-			Method m;
-			if (arg == null) {
-				m = target.getClass().getDeclaredMethod(methodName);
+			return (Object) invokerHandle(target.getClass(), methodName, arg == null ? null : arg.getClass())
+					.invokeExact(target, arg);
+		}
+		catch (Error e) {
+			throw e;
+		}
+		catch (Throwable e) {
+			throw new PolarisAgentException("invokeMethodByName", e);
+		}
+	}
+
+	// (Object target) -> Object, the target is ignored by a static field.
+	private static MethodHandle getterHandle(Class<?> clazz, String fieldName) throws ReflectiveOperationException {
+		final ConcurrentMap<String, MethodHandle> getters = memberHandles.get(clazz).getters;
+		MethodHandle handle = getters.get(fieldName);
+		if (handle == null) {
+			final Field field = clazz.getDeclaredField(fieldName);
+			field.setAccessible(true);
+			handle = LOOKUP.unreflectGetter(field);
+			if (Modifier.isStatic(field.getModifiers())) {
+				handle = MethodHandles.dropArguments(handle, 0, Object.class);
+			}
+			handle = handle.asType(GETTER_TYPE);
+			getters.putIfAbsent(fieldName, handle);
+		}
+		return handle;
+	}
+
+	// (Object target, Object value) -> void, the target is ignored by a static field.
+	private static MethodHandle setterHandle(Class<?> clazz, String fieldName) throws ReflectiveOperationException {
+		final ConcurrentMap<String, MethodHandle> setters = memberHandles.get(clazz).setters;
+		MethodHandle handle = setters.get(fieldName);
+		if (handle == null) {
+			final Field field = clazz.getDeclaredField(fieldName);
+			final int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+				handle = MethodHandles.dropArguments(StaticFinalFieldWriter.setter(field), 0, Object.class);
 			}
 			else {
-				m = target.getClass().getDeclaredMethod(methodName, arg.getClass());
+				// an accessible instance final field is writable through the lookup.
+				field.setAccessible(true);
+				handle = LOOKUP.unreflectSetter(field);
+				if (Modifier.isStatic(modifiers)) {
+					handle = MethodHandles.dropArguments(handle, 0, Object.class);
+				}
 			}
-			m.setAccessible(true);
-			return arg == null ? m.invoke(target) : m.invoke(target, arg);
+			handle = handle.asType(SETTER_TYPE);
+			setters.putIfAbsent(fieldName, handle);
 		}
-		catch (Exception e) {
-			throw new PolarisAgentException("invokeMethodByName", e);
+		return handle;
+	}
+
+	// (Object target, Object arg) -> Object, the arg is ignored by a method without parameter.
+	private static MethodHandle invokerHandle(Class<?> clazz, String methodName, Class<?> argType)
+			throws ReflectiveOperationException {
+		final ConcurrentMap<String, ConcurrentMap<Class<?>, MethodHandle>> invokers = memberHandles.get(clazz).invokers;
+		ConcurrentMap<Class<?>, MethodHandle> overloads = invokers.get(methodName);
+		if (overloads == null) {
+			overloads = new ConcurrentHashMap<>();
+			final ConcurrentMap<Class<?>, MethodHandle> exist = invokers.putIfAbsent(methodName, overloads);
+			if (exist != null) {
+				overloads = exist;
+			}
+		}
+		final Class<?> key = argType == null ? void.class : argType;
+		MethodHandle handle = overloads.get(key);
+		if (handle == null) {
+			final Method method = argType == null
+					? clazz.getDeclaredMethod(methodName)
+					: clazz.getDeclaredMethod(methodName, argType);
+			method.setAccessible(true);
+			handle = LOOKUP.unreflect(method);
+			if (Modifier.isStatic(method.getModifiers())) {
+				handle = MethodHandles.dropArguments(handle, 0, Object.class);
+			}
+			if (argType == null) {
+				handle = MethodHandles.dropArguments(handle, 1, Object.class);
+			}
+			// a void method returns null.
+			handle = handle.asType(INVOKER_TYPE);
+			overloads.putIfAbsent(key, handle);
+		}
+		return handle;
+	}
+
+	private static final class MemberHandles {
+
+		// by field name
+		private final ConcurrentMap<String, MethodHandle> getters = new ConcurrentHashMap<>();
+
+		// by field name
+		private final ConcurrentMap<String, MethodHandle> setters = new ConcurrentHashMap<>();
+
+		// by method name, then by argument type, void for a method without parameter
+		private final ConcurrentMap<String, ConcurrentMap<Class<?>, MethodHandle>> invokers =
+				new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Writes static final fields, which neither reflection nor a lookup may write since JDK 12. The write goes
+	 * through {@code sun.misc.Unsafe}, so it is not seen by code that has already inlined the constant, e.g. a
+	 * compiled caller or a {@code static final} primitive or String folded by javac. The first write is logged,
+	 * and if {@code sun.misc.Unsafe} is not available the fields stay read only and every write fails with an
+	 * {@link IllegalAccessException}.
+	 */
+	private static final class StaticFinalFieldWriter {
+
+		private static final CommonLogger logger = StdoutCommonLoggerFactory.INSTANCE
+				.getLogger(StaticFinalFieldWriter.class.getCanonicalName());
+
+		private static final AtomicBoolean WARNED = new AtomicBoolean(false);
+
+		private static final Object UNSAFE;
+
+		private static final MethodHandle STATIC_FIELD_BASE;
+
+		private static final MethodHandle STATIC_FIELD_OFFSET;
+
+		static {
+			Object unsafe = null;
+			MethodHandle staticFieldBase = null;
+			MethodHandle staticFieldOffset = null;
+			try {
+				final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+				staticFieldBase = LOOKUP.unreflect(unsafeClass.getMethod("staticFieldBase", Field.class))
+						.bindTo(unsafe);
+				staticFieldOffset = LOOKUP.unreflect(unsafeClass.getMethod("staticFieldOffset", Field.class))
+						.bindTo(unsafe);
+			}
+			catch (Exception e) {
+				unsafe = null;
+				logger.warn(String.format("sun.misc.Unsafe is not available, static final fields are read only. %s",
+						e));
+			}
+			UNSAFE = unsafe;
+			STATIC_FIELD_BASE = staticFieldBase;
+			STATIC_FIELD_OFFSET = staticFieldOffset;
+		}
+
+		// (value) -> void
+		static MethodHandle setter(Field field) throws ReflectiveOperationException {
+			if (UNSAFE == null) {
+				throw new IllegalAccessException("static final field is read only: " + field);
+			}
+			final Object base;
+			final long offset;
+			try {
+				base = (Object) STATIC_FIELD_BASE.invokeExact(field);
+				offset = (long) STATIC_FIELD_OFFSET.invokeExact(field);
+			}
+			catch (Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				final IllegalAccessException exception =
+						new IllegalAccessException("static final field is read only: " + field);
+				exception.initCause(e);
+				throw exception;
+			}
+			if (WARNED.compareAndSet(false, true)) {
+				logger.warn(String.format("static final field %s is written through sun.misc.Unsafe, code which "
+						+ "has inlined it keeps the old value", field));
+			}
+			final Class<?> type = field.getType();
+			final Class<?> valueType = type.isPrimitive() ? type : Object.class;
+			final String put = type.isPrimitive() ? "put" + Character.toUpperCase(type.getName().charAt(0))
+					+ type.getName().substring(1) + "Volatile" : "putObjectVolatile";
+			final MethodHandle handle = LOOKUP
+					.unreflect(UNSAFE.getClass().getMethod(put, Object.class, long.class, valueType));
+			return MethodHandles.insertArguments(handle.bindTo(UNSAFE), 0, base, offset);
 		}
 	}
 }
@@ -0,0 +1,170 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.common.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedJarFileTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] STORED_CONTENT = "stored entry".getBytes(UTF_8);
+
+    private static final byte[] DEFLATED_CONTENT = repeat("deflated entry ", 256);
+
+    private static final byte[] LAUNCH_SCRIPT = repeat("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n", 4);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readEntries() throws IOException {
+        final File file = writeJar("entries.jar", new byte[0]);
+        final MappedJarFile jarFile = MappedJarFile.open(file.getPath());
+        try {
+            assertEntries(jarFile);
+        } finally {
+            jarFile.release();
+        }
+    }
+
+    @Test
+    public void readEntriesAfterLaunchScript() throws IOException {
+        final File file = writeJar("executable.jar", LAUNCH_SCRIPT);
+        final MappedJarFile jarFile = MappedJarFile.open(file.getPath());
+        try {
+            assertEntries(jarFile);
+        } finally {
+            jarFile.release();
+        }
+    }
+
+    @Test
+    public void readMissingEntry() throws IOException {
+        final File file = writeJar("missing.jar", new byte[0]);
+        final MappedJarFile jarFile = MappedJarFile.open(file.getPath());
+        try {
+            Assert.assertFalse(jarFile.contains("missing.txt"));
+            Assert.assertNull(jarFile.read("missing.txt"));
+            Assert.assertNull(jarFile.getInputStream("missing.txt"));
+            // a directory is not the entries below it
+            Assert.assertNull(jarFile.read("dir"));
+        } finally {
+            jarFile.release();
+        }
+    }
+
+    @Test
+    public void readAfterRelease() throws IOException {
+        final File file = writeJar("released.jar", new byte[0]);
+        final MappedJarFile jarFile = MappedJarFile.open(file.getPath());
+        jarFile.release();
+        // still cached, the next open shares it
+        Assert.assertArrayEquals(STORED_CONTENT, jarFile.read("dir/stored.txt"));
+        final MappedJarFile reopened = MappedJarFile.open(file.getPath());
+        Assert.assertSame(jarFile, reopened);
+        reopened.release();
+        try {
+            jarFile.release();
+            Assert.fail("released twice");
+        } catch (IllegalStateException expected) {
+        }
+
+        // changed and opened through another path, the released mapping is dropped
+        writeJar("released.jar", LAUNCH_SCRIPT);
+        final MappedJarFile replaced = MappedJarFile.open(
+                new File(file.getParentFile(), "." + File.separator + file.getName()).getPath());
+        try {
+            Assert.assertNotSame(jarFile, replaced);
+            assertEntries(replaced);
+            try {
+                jarFile.read("dir/stored.txt");
+                Assert.fail("read after release");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            replaced.release();
+        }
+    }
+
+    private static void assertEntries(MappedJarFile jarFile) throws IOException {
+        Assert.assertEquals(Arrays.asList("dir/", "dir/stored.txt", "dir/deflated.txt"), jarFile.getEntryNames());
+        Assert.assertTrue(jarFile.contains("dir/stored.txt"));
+        Assert.assertArrayEquals(STORED_CONTENT, jarFile.read("dir/stored.txt"));
+        Assert.assertArrayEquals(DEFLATED_CONTENT, jarFile.read("dir/deflated.txt"));
+        Assert.assertArrayEquals(DEFLATED_CONTENT, IOUtils.toByteArray(jarFile.getInputStream("dir/deflated.txt")));
+        Assert.assertArrayEquals(new byte[0], jarFile.read("dir/"));
+    }
+
+    private File writeJar(String name, byte[] launchScript) throws IOException {
+        final ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        final ZipOutputStream zip = new ZipOutputStream(jar);
+        zip.putNextEntry(newStoredEntry("dir/", new byte[0]));
+        zip.closeEntry();
+        zip.putNextEntry(newStoredEntry("dir/stored.txt", STORED_CONTENT));
+        zip.write(STORED_CONTENT);
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("dir/deflated.txt"));
+        zip.write(DEFLATED_CONTENT);
+        zip.closeEntry();
+        zip.close();
+
+        final File file = new File(temporaryFolder.getRoot(), name);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            // the offsets in the archive are relative to its start, not to the start of the file
+            out.write(launchScript);
+            out.write(jar.toByteArray());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static ZipEntry newStoredEntry(String name, byte[] content) {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
+    private static byte[] repeat(String value, int count) {
+        final StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString().getBytes(UTF_8);
+    }
+}
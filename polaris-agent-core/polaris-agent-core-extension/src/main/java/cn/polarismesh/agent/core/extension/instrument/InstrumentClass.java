@@ -58,6 +58,24 @@ public interface InstrumentClass {
 
     boolean hasField(String name);
 
+    /**
+     * Makes the class implement the getter interface, whose single method returns the value of the declared field.
+     * An interceptor casts the target to the interface instead of reading the field reflectively.
+     */
+    void addGetter(Class<?> getterType, String fieldName) throws InstrumentException;
+
+    /**
+     * Makes the class implement the setter interface, whose single method writes the declared field. The field
+     * loses its {@code final} modifier.
+     */
+    void addSetter(Class<?> setterType, String fieldName) throws InstrumentException;
+
+    /**
+     * Makes the class implement the invoker interface, whose single method calls the declared method, even if it
+     * is private.
+     */
+    void addInvoker(Class<?> invokerType, String methodName, String... parameterTypes) throws InstrumentException;
+
     byte[] toBytecode() throws InstrumentException;
 
 }
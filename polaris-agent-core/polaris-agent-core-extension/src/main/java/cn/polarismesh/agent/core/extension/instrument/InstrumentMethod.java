@@ -23,6 +23,11 @@ import cn.polarismesh.agent.core.extension.interceptor.Interceptor;
 
 public interface InstrumentMethod {
 
+    /**
+     * Returned by {@link #addInterceptor(Class)} if the method is skipped, e.g. abstract or already intercepted.
+     */
+    int NOT_WOVEN = -1;
+
     String getName();
 
     String[] getParameterTypes();
@@ -33,5 +38,8 @@ public interface InstrumentMethod {
 
     boolean isConstructor();
 
+    /**
+     * @return the id of the interceptor, or {@link #NOT_WOVEN} if the method is skipped
+     */
     int addInterceptor(Class<? extends Interceptor> interceptorClass) throws InstrumentException;
 }
@@ -0,0 +1,45 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor;
+
+/**
+ * {@link Interceptor} receiving the first 5 arguments of the intercepted method as separate parameters.
+ * <p>
+ * The instrumented method passes the arguments directly and does not allocate the argument array, only primitive
+ * arguments are boxed. Arguments the method does not declare are passed as null. The array based methods are only
+ * kept for callers using the {@link Interceptor} contract.
+ */
+public interface Interceptor5 extends Interceptor {
+
+    void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4);
+
+    void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4, Object result,
+            Throwable throwable);
+
+    @Override
+    default void before(Object target, Object[] args) {
+        before(target, InterceptorArgs.get(args, 0), InterceptorArgs.get(args, 1), InterceptorArgs.get(args, 2),
+                InterceptorArgs.get(args, 3), InterceptorArgs.get(args, 4));
+    }
+
+    @Override
+    default void after(Object target, Object[] args, Object result, Throwable throwable) {
+        after(target, InterceptorArgs.get(args, 0), InterceptorArgs.get(args, 1), InterceptorArgs.get(args, 2),
+                InterceptorArgs.get(args, 3), InterceptorArgs.get(args, 4), result, throwable);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor;
+
+/**
+ * Value an {@link ShortCircuitInterceptor} returns instead of invoking the intercepted method.
+ */
+public final class ShortCircuit {
+
+    private static final ShortCircuit NULL = new ShortCircuit(null);
+
+    private final Object value;
+
+    private ShortCircuit(Object value) {
+        this.value = value;
+    }
+
+    /**
+     * @param value returned by the intercepted method, boxed for a primitive return type and ignored for void. It
+     * must be assignable to the return type, a wrapper of the return type for a primitive one.
+     */
+    public static ShortCircuit returnValue(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        return new ShortCircuit(value);
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortCircuit{value=" + value + '}';
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor;
+
+/**
+ * {@link Interceptor} which may return a value in place of the intercepted method, e.g. to serve it from a cache or
+ * to fail fast.
+ * <p>
+ * When {@link #beforeInvoke(Object, Object[])} returns a {@link ShortCircuit}, the instrumented method skips its
+ * original code and returns the value, {@code after()} of the chain is still called with it as the result. When
+ * several interceptors of the same method short circuit, the first one in the chain wins. A value which does not
+ * convert to the return type is handled as an exception of the interceptor, and the original code runs.
+ * <p>
+ * Constructors can not be short circuited, adding such an interceptor to one fails.
+ */
+public interface ShortCircuitInterceptor extends Interceptor {
+
+    /**
+     * @return null to invoke the intercepted method, {@link ShortCircuit#returnValue(Object)} to return instead
+     */
+    ShortCircuit beforeInvoke(Object target, Object[] args);
+
+    @Override
+    void after(Object target, Object[] args, Object result, Throwable throwable);
+
+    @Override
+    default void before(Object target, Object[] args) {
+        beforeInvoke(target, args);
+    }
+}
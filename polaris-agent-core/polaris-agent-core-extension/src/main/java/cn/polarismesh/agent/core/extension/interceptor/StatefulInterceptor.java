@@ -0,0 +1,46 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor;
+
+/**
+ * {@link Interceptor} carrying state of its own from {@code before} to {@code after} of the same invocation, such as
+ * a start time or a decision, without a {@code ThreadLocal} or a map keyed by the target.
+ * <p>
+ * The instrumented method keeps what {@link #beforeInvoke(Object, Object[])} returns in a local and passes it to
+ * {@link #afterInvoke(Object, Object[], Object, Throwable, Object)}. The state is null when {@code before} is not
+ * called, e.g. outside of its scope or when it throws.
+ */
+public interface StatefulInterceptor extends Interceptor {
+
+    /**
+     * @return state of this invocation, may be null
+     */
+    Object beforeInvoke(Object target, Object[] args);
+
+    void afterInvoke(Object target, Object[] args, Object result, Throwable throwable, Object state);
+
+    @Override
+    default void before(Object target, Object[] args) {
+        beforeInvoke(target, args);
+    }
+
+    @Override
+    default void after(Object target, Object[] args, Object result, Throwable throwable) {
+        afterInvoke(target, args, result, throwable, null);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor;
+
+/**
+ * {@link StatefulInterceptor} of methods whose arguments it does not need, the argument array is not allocated.
+ */
+public interface StatefulInterceptor0 extends Interceptor {
+
+    /**
+     * @return state of this invocation, may be null
+     */
+    Object beforeInvoke(Object target);
+
+    void afterInvoke(Object target, Object result, Throwable throwable, Object state);
+
+    @Override
+    default void before(Object target, Object[] args) {
+        beforeInvoke(target);
+    }
+
+    @Override
+    default void after(Object target, Object[] args, Object result, Throwable throwable) {
+        afterInvoke(target, result, throwable, null);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor.sampling;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which invocations an interceptor annotated with {@link Sampled} sees.
+ * <p>
+ * The fixed rate is drawn from the thread local random generator. The per second limit and the adaptive rate use
+ * windows of one second: at the end of a window the cost measured on the sampled invocations gives the number of
+ * invocations the overhead budget allows, and the rate of the next window is set to cover that many of the
+ * invocations seen. The rate never drops below {@link #MIN_RATE}, so the cost keeps being measured.
+ */
+public final class InterceptorSampler {
+
+    public static final double MIN_RATE = 0.0001;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final double rate;
+
+    private final int maxPerSecond;
+
+    private final double targetOverhead;
+
+    private volatile double adaptiveRate = 1.0;
+
+    private volatile long windowSecond = 0L;
+
+    private final AtomicInteger windowPermits = new AtomicInteger();
+
+    private final AtomicInteger windowCalls = new AtomicInteger();
+
+    private final AtomicInteger windowSampled = new AtomicInteger();
+
+    private final AtomicLong windowCostNanos = new AtomicLong();
+
+    public InterceptorSampler(double rate, int maxPerSecond, double targetOverhead) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate must be in (0, 1]:" + rate);
+        }
+        if (maxPerSecond < 0) {
+            throw new IllegalArgumentException("negative maxPerSecond:" + maxPerSecond);
+        }
+        if (!(targetOverhead >= 0)) {
+            throw new IllegalArgumentException("negative targetOverhead:" + targetOverhead);
+        }
+        this.rate = rate;
+        this.maxPerSecond = maxPerSecond;
+        this.targetOverhead = targetOverhead;
+    }
+
+    public static InterceptorSampler of(Sampled sampled) {
+        Objects.requireNonNull(sampled, "sampled");
+        return new InterceptorSampler(sampled.rate(), sampled.maxPerSecond(), sampled.targetOverhead());
+    }
+
+    /**
+     * @return true if the current invocation is intercepted
+     */
+    public boolean sample() {
+        final boolean adaptive = targetOverhead > 0;
+        if (maxPerSecond > 0 || adaptive) {
+            rollWindow(System.currentTimeMillis() / MILLIS_PER_SECOND);
+            if (adaptive) {
+                windowCalls.incrementAndGet();
+            }
+        }
+        final double probability = rate * adaptiveRate;
+        if (probability < 1.0 && ThreadLocalRandom.current().nextDouble() >= probability) {
+            return false;
+        }
+        return maxPerSecond <= 0 || windowPermits.incrementAndGet() <= maxPerSecond;
+    }
+
+    /**
+     * @return true if the woven code measures the cost of the sampled invocations
+     */
+    public boolean isTimed() {
+        return targetOverhead > 0;
+    }
+
+    /**
+     * @param costNanos time spent in the interceptor by one sampled invocation
+     */
+    public void recordCost(long costNanos) {
+        windowCostNanos.addAndGet(costNanos);
+        windowSampled.incrementAndGet();
+    }
+
+    /**
+     * @return probability an invocation is intercepted in the current window, before the per second limit
+     */
+    public double getEffectiveRate() {
+        return rate * adaptiveRate;
+    }
+
+    private void rollWindow(long second) {
+        if (second == windowSecond) {
+            return;
+        }
+        synchronized (this) {
+            final long previousSecond = windowSecond;
+            if (second == previousSecond) {
+                return;
+            }
+            if (targetOverhead > 0 && previousSecond != 0L) {
+                adapt(second - previousSecond);
+            }
+            windowPermits.set(0);
+            windowCalls.set(0);
+            windowSampled.set(0);
+            windowCostNanos.set(0L);
+            windowSecond = second;
+        }
+    }
+
+    private void adapt(long elapsedSeconds) {
+        final int calls = windowCalls.get();
+        final int sampled = windowSampled.get();
+        if (calls == 0 || sampled == 0) {
+            return;
+        }
+        final double costPerCall = (double) windowCostNanos.get() / sampled;
+        if (costPerCall <= 0) {
+            adaptiveRate = 1.0;
+            return;
+        }
+        final double allowedCalls = targetOverhead * NANOS_PER_SECOND * elapsedSeconds / costPerCall;
+        adaptiveRate = Math.max(MIN_RATE, Math.min(1.0, allowedCalls / (calls * rate)));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor.sampling;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Intercepts only a sample of the invocations with the annotated interceptor.
+ * <p>
+ * The woven code asks the {@link InterceptorSampler} of the interceptor class before the arguments of the
+ * interceptor are built, an invocation left out of the sample calls neither {@code before()} nor {@code after()}.
+ * Only interceptors which observe, e.g. report telemetry, may be sampled; interceptors changing the behavior of the
+ * application, such as routing or rate limiting, must never be annotated. The limits below are combined.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Sampled {
+
+    /**
+     * @return probability an invocation is intercepted, in (0, 1]
+     */
+    double rate() default 1.0;
+
+    /**
+     * @return most invocations intercepted per second, 0 for no limit
+     */
+    int maxPerSecond() default 0;
+
+    /**
+     * @return share of one CPU the interceptor may spend, e.g. 0.01, the rate adapts to the measured cost of the
+     * interceptor; 0 does not measure
+     */
+    double targetOverhead() default 0;
+}
@@ -0,0 +1,39 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor.scope;
+
+/**
+ * Which invocations of a {@link Scope} call the interceptor, by depth of the invocation in the scope.
+ */
+public enum ExecutionPolicy {
+
+    /**
+     * Every invocation, nested or not.
+     */
+    ALWAYS,
+
+    /**
+     * Only the outermost invocation, the ones nested in it on the same thread are skipped.
+     */
+    BOUNDARY,
+
+    /**
+     * Only the invocations nested in another invocation of the scope.
+     */
+    INTERNAL
+}
@@ -0,0 +1,102 @@
+/*
+ * Tencent is pleased to support the open source community by making Polaris available.
+ *
+ * Copyright (C) 2019 THL A29 Limited, a Tencent company. All rights reserved.
+ *
+ * Licensed under the BSD 3-Clause License (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package cn.polarismesh.agent.core.extension.interceptor.scope;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named scope tracking how deep the current thread is in the intercepted methods of the scope.
+ * <p>
+ * The depth is a plain counter per thread, entering and leaving the scope cost one thread local lookup each and
+ * allocate nothing once the thread entered the scope the first time.
+ */
+public final class InterceptorScope {
+
+    private static final ConcurrentMap<String, InterceptorScope> scopes =
+            new ConcurrentHashMap<String, InterceptorScope>();
+
+    private final String name;
+
+    private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private InterceptorScope(String name) {
+        this.name = name;
+    }
+
+    public static InterceptorScope getScope(String name) {
+        Objects.requireNonNull(name, "name");
+        final InterceptorScope exist = scopes.get(name);
+        if (exist != null) {
+            return exist;
+        }
+        final InterceptorScope scope = new InterceptorScope(name);
+        final InterceptorScope old = scopes.putIfAbsent(name, scope);
+        return old == null ? scope : old;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Enters the scope, every call must be followed by {@link #leave()}.
+     *
+     * @return true if the interceptor is called at this depth
+     */
+    public boolean tryEnter(ExecutionPolicy policy) {
+        final int current = ++depth.get()[0];
+        switch (policy) {
+            case BOUNDARY:
+                return current == 1;
+            case INTERNAL:
+                return current > 1;
+            default:
+                return true;
+        }
+    }
+
+    public void leave() {
+        final int[] current = depth.get();
+        if (current[0] > 0) {
+            current[0]--;
+        }
+    }
+
+    /**
+     * @return number of invocations of the scope the current thread is in
+     */
+    public int getDepth() {
+        return depth.get()[0];
+    }
+
+    public boolean isActive() {
+        return getDepth() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "InterceptorScope{name='" + name + "'}";
+    }
+}
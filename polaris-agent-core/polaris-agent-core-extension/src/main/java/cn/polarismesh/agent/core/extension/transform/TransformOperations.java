@@ -25,4 +25,29 @@ public interface TransformOperations {
     void transform(String className, Class<? extends TransformCallback> transformCallbackClass, Object[] parameters,
             Class<?>[] parameterTypes);
 
+    /**
+     * transform every class extending the given class, directly or transitively
+     */
+    void transformSubclassesOf(String superClassName, Class<? extends TransformCallback> transformCallbackClass);
+
+    /**
+     * transform every class or interface implementing the given interface, directly or transitively
+     */
+    void transformImplementationsOf(String interfaceName, Class<? extends TransformCallback> transformCallbackClass);
+
+    /**
+     * transform every class directly annotated with the given annotation type
+     */
+    void transformAnnotatedWith(String annotationClassName, Class<? extends TransformCallback> transformCallbackClass);
+
+    /**
+     * transform every class whose constant pool references the given type
+     */
+    void transformReferencing(String className, Class<? extends TransformCallback> transformCallbackClass);
+
+    /**
+     * transform every class containing the given string literal
+     */
+    void transformContainingString(String value, Class<? extends TransformCallback> transformCallbackClass);
+
 }
@@ -142,6 +142,10 @@ public class MainPlugin implements AgentPlugin {
 				Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classFileBuffer) throws InstrumentException {
 
 			InstrumentClass target = instrumentor.getInstrumentClass(classLoader, className, classFileBuffer);
+			target.addGetter(ServiceInstanceListSupplierBuilderInterceptor.BaseCreatorGetter.class, "baseCreator");
+			target.addSetter(ServiceInstanceListSupplierBuilderInterceptor.BaseCreatorSetter.class, "baseCreator");
+			target.addSetter(ServiceInstanceListSupplierBuilderInterceptor.CachingCreatorSetter.class,
+					"cachingCreator");
 
 			InstrumentMethod withBlockingDiscoveryClient = target.getDeclaredMethod("withBlockingDiscoveryClient");
 			if (withBlockingDiscoveryClient != null) {
@@ -28,6 +28,9 @@ import com.tencent.cloud.common.metadata.MetadataContextHolder;
 import org.springframework.util.ReflectionUtils;
 
 /**
+ * {@link #before(Object, Object[])} initializes the agent configuration ahead of the intercepted code, so a subclass
+ * is never captured after only.
+ *
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
 public abstract class BaseInterceptor implements Interceptor {
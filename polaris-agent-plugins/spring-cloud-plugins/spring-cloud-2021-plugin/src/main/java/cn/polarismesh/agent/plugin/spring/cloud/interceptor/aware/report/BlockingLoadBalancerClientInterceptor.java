@@ -1,5 +1,7 @@
 package cn.polarismesh.agent.plugin.spring.cloud.interceptor.aware.report;
 
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
+import cn.polarismesh.agent.core.extension.interceptor.CaptureMode;
 import cn.polarismesh.agent.plugin.spring.cloud.interceptor.BaseInterceptor;
 import com.tencent.cloud.common.metadata.MetadataContextHolder;
 
@@ -8,6 +10,7 @@ import org.springframework.cloud.client.ServiceInstance;
 /**
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
+@Capture(CaptureMode.BEFORE)
 public class BlockingLoadBalancerClientInterceptor extends BaseInterceptor {
 
 	@Override
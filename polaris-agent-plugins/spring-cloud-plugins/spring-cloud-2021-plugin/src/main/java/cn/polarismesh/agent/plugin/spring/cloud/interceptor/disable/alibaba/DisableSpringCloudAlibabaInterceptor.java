@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
+import cn.polarismesh.agent.core.extension.interceptor.CaptureMode;
 import cn.polarismesh.agent.plugin.spring.cloud.interceptor.BaseInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +38,7 @@ import org.springframework.core.env.PropertiesPropertySource;
  *
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
+@Capture(CaptureMode.BEFORE)
 public class DisableSpringCloudAlibabaInterceptor extends BaseInterceptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DisableSpringCloudAlibabaInterceptor.class);
@@ -20,6 +20,8 @@ package cn.polarismesh.agent.plugin.spring.cloud.interceptor.filter.reactive;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
+import cn.polarismesh.agent.core.extension.interceptor.CaptureMode;
 import cn.polarismesh.agent.plugin.spring.cloud.interceptor.BaseInterceptor;
 import cn.polarismesh.agent.plugin.spring.cloud.common.Holder;
 import cn.polarismesh.agent.plugin.spring.cloud.common.PolarisOperator;
@@ -38,6 +40,7 @@ import org.springframework.web.server.WebFilter;
  *
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
+@Capture(CaptureMode.BEFORE)
 public class ReactiveWebFilterInterceptor extends BaseInterceptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveWebFilterInterceptor.class);
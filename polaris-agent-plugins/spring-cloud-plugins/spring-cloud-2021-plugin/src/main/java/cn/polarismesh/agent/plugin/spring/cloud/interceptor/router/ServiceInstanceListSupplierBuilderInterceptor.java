@@ -20,7 +20,6 @@ package cn.polarismesh.agent.plugin.spring.cloud.interceptor.router;
 import java.util.Arrays;
 import java.util.Collections;
 
-import cn.polarismesh.agent.core.common.utils.ReflectionUtils;
 import cn.polarismesh.agent.plugin.spring.cloud.interceptor.BaseInterceptor;
 import cn.polarismesh.agent.plugin.spring.cloud.common.Holder;
 import cn.polarismesh.agent.plugin.spring.cloud.common.PolarisOperator;
@@ -56,9 +55,9 @@ public class ServiceInstanceListSupplierBuilderInterceptor {
 			}
 			LOGGER.info("[PolarisAgent] build loadbalancer for BlockingClient ability");
 			ServiceInstanceListSupplierBuilder.Creator creator =
-					(ServiceInstanceListSupplierBuilder.Creator) ReflectionUtils.getObjectByFieldName(target, "baseCreator");
+					((BaseCreatorGetter) target)._$POLARIS$_getBaseCreator();
 
-			ReflectionUtils.setValueByFieldName(target, "baseCreator", new ProxyCreator(creator));
+			((BaseCreatorSetter) target)._$POLARIS$_setBaseCreator(new ProxyCreator(creator));
 		}
 	}
 
@@ -76,9 +75,9 @@ public class ServiceInstanceListSupplierBuilderInterceptor {
 			}
 			LOGGER.info("[PolarisAgent] build loadbalancer for ReactiveClient ability");
 			ServiceInstanceListSupplierBuilder.Creator creator =
-					(ServiceInstanceListSupplierBuilder.Creator) ReflectionUtils.getObjectByFieldName(target, "baseCreator");
+					((BaseCreatorGetter) target)._$POLARIS$_getBaseCreator();
 
-			ReflectionUtils.setValueByFieldName(target, "baseCreator", new ProxyCreator(creator));
+			((BaseCreatorSetter) target)._$POLARIS$_setBaseCreator(new ProxyCreator(creator));
 		}
 	}
 
@@ -95,10 +94,34 @@ public class ServiceInstanceListSupplierBuilderInterceptor {
 				return;
 			}
 			LOGGER.info("[PolarisAgent] disable loadbalancer caching ability");
-			ReflectionUtils.setValueByFieldName(target, "cachingCreator", null);
+			((CachingCreatorSetter) target)._$POLARIS$_setCachingCreator(null);
 		}
 	}
 
+	/**
+	 * Generated on ServiceInstanceListSupplierBuilder, returns its baseCreator field.
+	 */
+	public interface BaseCreatorGetter {
+
+		ServiceInstanceListSupplierBuilder.Creator _$POLARIS$_getBaseCreator();
+	}
+
+	/**
+	 * Generated on ServiceInstanceListSupplierBuilder, writes its baseCreator field.
+	 */
+	public interface BaseCreatorSetter {
+
+		void _$POLARIS$_setBaseCreator(ServiceInstanceListSupplierBuilder.Creator creator);
+	}
+
+	/**
+	 * Generated on ServiceInstanceListSupplierBuilder, writes its cachingCreator field.
+	 */
+	public interface CachingCreatorSetter {
+
+		void _$POLARIS$_setCachingCreator(Object creator);
+	}
+
 	public static class ProxyCreator implements ServiceInstanceListSupplierBuilder.Creator {
 
 		private final ServiceInstanceListSupplierBuilder.Creator creator;
@@ -20,6 +20,8 @@ package cn.polarismesh.agent.plugin.spring.cloud.interceptor.serviceregistry;
 
 import cn.polarismesh.agent.core.common.utils.ReflectionUtils;
 import cn.polarismesh.agent.core.common.utils.StringUtils;
+import cn.polarismesh.agent.core.extension.interceptor.Capture;
+import cn.polarismesh.agent.core.extension.interceptor.CaptureMode;
 import cn.polarismesh.agent.plugin.spring.cloud.common.DiscoveryUtils;
 import cn.polarismesh.agent.plugin.spring.cloud.common.Holder;
 import cn.polarismesh.agent.plugin.spring.cloud.common.PolarisOperator;
@@ -39,6 +41,7 @@ import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
  * <p>
  * Polaris Ribbon Server 实现类
  */
+@Capture(CaptureMode.BEFORE)
 public class RegistryInterceptor extends BaseInterceptor {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(RegistryInterceptor.class);